@@ -11,972 +11,12266 @@ package hajjguide;
 import javax.swing.*;
 import java.awt.*;
 import java.awt.event.*;
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
 import javax.swing.table.DefaultTableModel;
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
 import java.util.List;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.Spliterator;
+import java.util.SplittableRandom;
+import java.util.Spliterators;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.function.BiFunction;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.IntFunction;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+import java.util.function.ToDoubleFunction;
+import java.util.function.ToIntFunction;
+import java.util.function.UnaryOperator;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.lang.reflect.RecordComponent;
 import java.sql.*;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.text.Normalizer;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.temporal.ChronoUnit;
 
 /**
- * The DBConnection class manages the database connection for the Hajj Guide application.
- * It provides methods to establish and close a connection to the MySQL database.
- * This class implements the Singleton pattern to ensure only one database connection
- * is active throughout the application lifecycle.
+ * The DBConnection class manages the database connections for the Hajj Guide application.
+ * Connections are handed out by a shared {@link ConnectionPool}, so every caller gets its
+ * own connection and closing it simply returns it to the pool instead of tearing down
+ * the underlying MySQL session.
  */
 class DBConnection {
-    /** The JDBC URL for connecting to the MySQL database */
-    private static final String DB_URL = "jdbc:mysql://localhost:3306/PilgrimSystem?useSSL=false";
-    
-    /** The database username */
-    private static final String DB_USER = "root";
-    
-    /** The database password */
-    private static final String DB_PASSWORD = "&Ghadeer123&";
-    
-    /** The static Connection instance (Singleton pattern) */
-    private static Connection connection = null;
-    
+    /** The JDBC URL for connecting to the MySQL database, set with {@code hajjguide.db.url} */
+    private static final String DB_URL = System.getProperty("hajjguide.db.url",
+            "jdbc:mysql://localhost:3306/PilgrimSystem?useSSL=false&useServerPrepStmts=true&rewriteBatchedStatements=true&useCursorFetch=true");
+
+    /** The database username, set with {@code hajjguide.db.user} */
+    private static final String DB_USER = System.getProperty("hajjguide.db.user", "root");
+
+    /** The database password, set with {@code hajjguide.db.password} */
+    private static final String DB_PASSWORD = System.getProperty("hajjguide.db.password", "&Ghadeer123&");
+
+    /** The shared connection pool, created lazily on first use */
+    private static volatile ConnectionPool pool = null;
+
     /**
-     * Gets the database connection instance. If no connection exists,
-     * it creates a new one using the configured URL, username and password.
-     * Implements lazy initialization for the Singleton pattern.
-     * 
-     * @return The active database Connection object
-     * @throws ClassNotFoundException if the JDBC driver class is not found
-     * @throws SQLException if a database access error occurs
+     * Gets the shared connection pool, creating it on first use.
+     * Pool sizing and timeouts can be tuned with the {@code hajjguide.pool.*} system properties.
+     *
+     * @return The active ConnectionPool
+     * @throws SQLException if the JDBC driver cannot be loaded
      */
-    public static Connection getConnection() {
-        if (connection == null) {
-            try {
-                Class.forName("com.mysql.cj.jdbc.Driver");
-                connection = DriverManager.getConnection(DB_URL, DB_USER, DB_PASSWORD);
-            } catch (ClassNotFoundException | SQLException e) {
-                e.printStackTrace();
-                JOptionPane.showMessageDialog(null, "Database connection failed: " + e.getMessage(), 
-                    "Error", JOptionPane.ERROR_MESSAGE);
+    public static ConnectionPool getPool() throws SQLException {
+        ConnectionPool p = pool;
+        if (p == null) {
+            synchronized (DBConnection.class) {
+                p = pool;
+                if (p == null) {
+                    try {
+                        Class.forName("com.mysql.cj.jdbc.Driver");
+                    } catch (ClassNotFoundException e) {
+                        throw new SQLException("MySQL JDBC driver not found", e);
+                    }
+                    p = new ConnectionPool(DB_URL, DB_USER, DB_PASSWORD,
+                            Integer.getInteger("hajjguide.pool.minSize", 2),
+                            Integer.getInteger("hajjguide.pool.maxSize", 10),
+                            Long.getLong("hajjguide.pool.borrowTimeoutMs", 5000L),
+                            Long.getLong("hajjguide.pool.idleTimeoutMs", 300000L),
+                            Long.getLong("hajjguide.pool.leakThresholdMs", 30000L),
+                            Boolean.getBoolean("hajjguide.pool.leakDiagnostics"),
+                            Integer.getInteger("hajjguide.pool.statementCacheSize", 64));
+                    if (SqlTracer.isEnabled()) {
+                        p.setConnectionDecorator(SqlTracer::wrap);
+                    }
+                    pool = p;
+                }
             }
         }
-        return connection;
+        return p;
     }
-    
+
     /**
-     * Closes the current database connection if it exists.
-     * Sets the connection instance to null to allow garbage collection.
-     * This method handles any SQLException that might occur during connection closing.
+     * Borrows a connection from the pool. The returned connection must be closed
+     * by the caller (preferably with try-with-resources), which returns it to the pool.
+     *
+     * @return A pooled database Connection
+     * @throws DataAccessException if no connection could be obtained
+     */
+    public static Connection getConnection() {
+        try {
+            return getPool().borrow();
+        } catch (SQLException e) {
+            throw new DataAccessException("Database connection failed: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Describes the connection pool without creating it.
+     *
+     * @return The pool's statistics, or a note that no pool has been created yet
+     */
+    public static String getPoolStats() {
+        ConnectionPool p = pool;
+        return p != null ? p.getStats() : "not started";
+    }
+
+    /**
+     * Shuts down the connection pool and closes every physical connection.
+     * A new pool is created on the next call to {@link #getConnection()}.
      */
     public static void closeConnection() {
-        if (connection != null) {
-            try {
-                connection.close();
-                connection = null;
-            } catch (SQLException e) {
-                e.printStackTrace();
-            }
+        ConnectionPool p;
+        synchronized (DBConnection.class) {
+            p = pool;
+            pool = null;
+        }
+        if (p != null) {
+            p.shutdown();
         }
     }
 }
 
 /**
- * The PilgrimDAO class provides data access operations for Pilgrim entities.
- * It handles CRUD (Create, Read, Update, Delete) operations for pilgrims in the database.
- * This class follows the Data Access Object (DAO) pattern to separate database operations
- * from business logic.
+ * The ConnectionPool class keeps a bounded set of physical JDBC connections and lends them
+ * out to the DAO classes. Borrowed connections are wrapped in a proxy whose {@code close()}
+ * returns the connection to the pool.
+ *
+ * The pool enforces a maximum size with a borrow timeout, validates idle connections before
+ * handing them out, evicts connections that have been idle for too long (never going below
+ * the minimum size), and reports connections that are held longer than the leak threshold.
+ * A leak report says where the connection was borrowed only when leak diagnostics are
+ * turned on ({@code -Dhajjguide.pool.leakDiagnostics=true}), since recording the borrow
+ * site takes a stack trace on every borrow. Reports go to the {@link ErrorLog}.
  */
-class PilgrimDAO {
-    
+class ConnectionPool {
+    /** Seconds to wait for {@link Connection#isValid(int)} when validating on borrow */
+    private static final int VALIDATION_TIMEOUT_SECONDS = 2;
+
+    /** Interval between housekeeping runs (eviction, top-up and leak detection) */
+    private static final long HOUSEKEEPING_INTERVAL_MS = 10000L;
+
+    private final String url;
+    private final String user;
+    private final String password;
+    private final int minSize;
+    private final int maxSize;
+    private final long borrowTimeoutMillis;
+    private final long idleTimeoutMillis;
+    private final long leakThresholdMillis;
+    private final boolean leakDiagnostics;
+    private final int statementCacheSize;
+
+    /** Idle connections; the most recently returned connection is at the head */
+    private final LinkedBlockingDeque<PooledConnection> idle = new LinkedBlockingDeque<>();
+
+    /** Connections currently lent out */
+    private final Set<PooledConnection> borrowed = ConcurrentHashMap.newKeySet();
+
+    /** One permit per connection that may be lent out at the same time */
+    private final Semaphore permits;
+
+    /** Number of physical connections currently open (idle + borrowed) */
+    private final AtomicInteger totalConnections = new AtomicInteger();
+
+    private final AtomicLong borrowCount = new AtomicLong();
+    private final AtomicLong borrowWaitNanos = new AtomicLong();
+    private final AtomicLong timeoutCount = new AtomicLong();
+    private final AtomicLong createdCount = new AtomicLong();
+    private final AtomicLong destroyedCount = new AtomicLong();
+    private final AtomicLong validationFailureCount = new AtomicLong();
+    private final AtomicLong leakCount = new AtomicLong();
+    private final LongAdder statementCacheHits = new LongAdder();
+    private final LongAdder statementCacheMisses = new LongAdder();
+    private final LongAdder statementCacheEvictions = new LongAdder();
+
+    private final ScheduledExecutorService housekeeper;
+    private volatile boolean shutdown = false;
+
+    /** Wraps every borrowed connection, for example to trace its statements; null for none */
+    private volatile UnaryOperator<Connection> connectionDecorator = null;
+
     /**
-     * Creates a new pilgrim record in the database.
-     * 
-     * @param pilgrimName The full name of the pilgrim
-     * @param pilgrimID The unique ID of the pilgrim
-     * @param phone The contact phone number of the pilgrim
-     * @param nationality The nationality of the pilgrim
-     * @param specialNeed Any special needs or requirements of the pilgrim
-     * @param allergies Any allergies the pilgrim may have
-     * @param pilgrimAge The age of the pilgrim
-     * @return true if the operation was successful, false otherwise
-     * @throws SQLException if a database access error occurs
+     * Creates a new pool and opens the minimum number of connections.
+     *
+     * @param url The JDBC URL of the database
+     * @param user The database username
+     * @param password The database password
+     * @param minSize The number of connections kept open even when idle
+     * @param maxSize The maximum number of connections open at the same time
+     * @param borrowTimeoutMillis How long {@link #borrow()} waits for a free connection
+     * @param idleTimeoutMillis How long a connection may sit idle before it is evicted
+     * @param leakThresholdMillis How long a connection may be held before it is reported as leaked,
+     *                            or 0 to disable leak detection
+     * @param leakDiagnostics Whether to record where each connection is borrowed, so that a
+     *                        leak report can show it
+     * @param statementCacheSize The number of prepared statements cached per connection,
+     *                           or 0 to disable statement caching
      */
-    public static boolean createPilgrim(String pilgrimName, int pilgrimID, String phone, 
-            String nationality, String specialNeed, String allergies, int pilgrimAge) {
-        String sql = "INSERT INTO Pilgrim (PilgrimName, PilgrimID, Phone, Nationality, specialNeed, allergies, pilgrimAge) "
-                   + "VALUES (?, ?, ?, ?, ?, ?, ?)";
-        
-        Connection conn = null;
-        PreparedStatement stmt = null;
-        
-        try {
-            conn = DBConnection.getConnection();
-            stmt = conn.prepareStatement(sql);
-            
-            stmt.setString(1, pilgrimName);
-            stmt.setInt(2, pilgrimID);
-            stmt.setString(3, phone);
-            stmt.setString(4, nationality);
-            stmt.setString(5, specialNeed);
-            stmt.setString(6, allergies);
-            stmt.setInt(7, pilgrimAge);
-            
-            int rowsAffected = stmt.executeUpdate();
-            conn.commit();
-            return rowsAffected > 0;
-            
-        } catch (SQLException e) {
-            try {
-                if (conn != null) conn.rollback();
-            } catch (SQLException ex) {
-                ex.printStackTrace();
-            }
-            e.printStackTrace();
-            JOptionPane.showMessageDialog(null, "Error creating pilgrim: " + e.getMessage(), 
-                "Error", JOptionPane.ERROR_MESSAGE);
-            return false;
-        } finally {
+    public ConnectionPool(String url, String user, String password, int minSize, int maxSize,
+            long borrowTimeoutMillis, long idleTimeoutMillis, long leakThresholdMillis,
+            boolean leakDiagnostics, int statementCacheSize) {
+        if (maxSize < 1 || minSize < 0 || minSize > maxSize) {
+            throw new IllegalArgumentException("Invalid pool size: min=" + minSize + ", max=" + maxSize);
+        }
+        this.url = url;
+        this.user = user;
+        this.password = password;
+        this.minSize = minSize;
+        this.maxSize = maxSize;
+        this.borrowTimeoutMillis = borrowTimeoutMillis;
+        this.idleTimeoutMillis = idleTimeoutMillis;
+        this.leakThresholdMillis = leakThresholdMillis;
+        this.leakDiagnostics = leakDiagnostics;
+        this.statementCacheSize = statementCacheSize;
+        this.permits = new Semaphore(maxSize, true);
+
+        this.housekeeper = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "hajjguide-pool-housekeeper");
+            t.setDaemon(true);
+            return t;
+        });
+        housekeeper.scheduleWithFixedDelay(() -> {
             try {
-                if (stmt != null) stmt.close();
-            } catch (SQLException e) {
-                e.printStackTrace();
+                housekeep();
+            } catch (RuntimeException e) {
+                ErrorLog.report("ConnectionPool", "Housekeeping failed", e);
             }
-        }
+        }, 0, HOUSEKEEPING_INTERVAL_MS, TimeUnit.MILLISECONDS);
     }
-    
+
     /**
-     * Retrieves all pilgrims from the database.
-     * 
-     * @return A List of String arrays where each array represents a pilgrim record.
-     *         Each array contains: [PilgrimID, PilgrimName, Phone, Nationality, specialNeed, allergies, pilgrimAge]
-     * @throws SQLException if a database access error occurs
+     * Sets a wrapper applied to every connection this pool lends out from now on.
+     *
+     * @param decorator Wraps each borrowed connection, or null for none
      */
-    public static List<String[]> getAllPilgrims() {
-        List<String[]> pilgrims = new ArrayList<>();
-        String sql = "SELECT PilgrimID, PilgrimName, Phone, Nationality, specialNeed, allergies, pilgrimAge FROM Pilgrim";
-        
-        try (Connection conn = DBConnection.getConnection();
-             Statement stmt = conn.createStatement();
-             ResultSet rs = stmt.executeQuery(sql)) {
-            
-            while (rs.next()) {
-                String[] pilgrim = new String[7];
-                pilgrim[0] = String.valueOf(rs.getInt("PilgrimID"));
-                pilgrim[1] = rs.getString("PilgrimName");
-                pilgrim[2] = rs.getString("Phone");
-                pilgrim[3] = rs.getString("Nationality");
-                pilgrim[4] = rs.getString("specialNeed");
-                pilgrim[5] = rs.getString("allergies");
-                pilgrim[6] = String.valueOf(rs.getInt("pilgrimAge"));
-                pilgrims.add(pilgrim);
+    void setConnectionDecorator(UnaryOperator<Connection> decorator) {
+        this.connectionDecorator = decorator;
+    }
+
+    /**
+     * Borrows a connection, waiting up to the borrow timeout for one to become free.
+     * Idle connections are validated before being handed out; broken ones are discarded.
+     *
+     * @return A Connection that returns itself to the pool when closed
+     * @throws SQLException if the pool is shut down, the timeout expires or a new
+     *                      connection cannot be opened
+     */
+    public Connection borrow() throws SQLException {
+        if (shutdown) {
+            throw new SQLException("Connection pool has been shut down");
+        }
+        long start = System.nanoTime();
+        try {
+            if (!permits.tryAcquire(borrowTimeoutMillis, TimeUnit.MILLISECONDS)) {
+                timeoutCount.incrementAndGet();
+                throw new SQLException("Timed out after " + borrowTimeoutMillis
+                        + " ms waiting for a database connection (" + getActiveCount() + " in use)");
             }
-            
-        } catch (SQLException e) {
-            e.printStackTrace();
-            JOptionPane.showMessageDialog(null, "Error retrieving pilgrims: " + e.getMessage(), 
-                "Error", JOptionPane.ERROR_MESSAGE);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while waiting for a database connection", e);
+        }
+
+        try {
+            PooledConnection pc = takeIdleOrCreate();
+            pc.borrowedAt = System.currentTimeMillis();
+            pc.borrowSite = leakDiagnostics && leakThresholdMillis > 0 ? new Throwable("Connection borrowed here") : null;
+            pc.leakReported = false;
+            borrowed.add(pc);
+            borrowCount.incrementAndGet();
+            borrowWaitNanos.addAndGet(System.nanoTime() - start);
+            UnaryOperator<Connection> decorator = connectionDecorator;
+            return decorator != null ? decorator.apply(pc.lease()) : pc.lease();
+        } catch (SQLException | RuntimeException e) {
+            permits.release();
+            throw e;
         }
-        
-        return pilgrims;
     }
-    
+
     /**
-     * Updates an existing pilgrim record in the database.
-     * 
-     * @param pilgrimID The ID of the pilgrim to update
-     * @param pilgrimName The updated name of the pilgrim
-     * @param phone The updated phone number of the pilgrim
-     * @param nationality The updated nationality of the pilgrim
-     * @param specialNeed The updated special needs of the pilgrim
-     * @param allergies The updated allergies of the pilgrim
-     * @param pilgrimAge The updated age of the pilgrim
-     * @return true if the update was successful, false otherwise
-     * @throws SQLException if a database access error occurs
+     * Takes the most recently used idle connection that passes validation,
+     * or opens a new physical connection if none is available.
      */
-    public static boolean updatePilgrim(int pilgrimID, String pilgrimName, String phone, 
-            String nationality, String specialNeed, String allergies, int pilgrimAge) {
-        String sql = "UPDATE Pilgrim SET PilgrimName = ?, Phone = ?, Nationality = ?, specialNeed = ?, allergies = ?, pilgrimAge = ? "
-                   + "WHERE PilgrimID = ?";
-        
-        Connection conn = null;
-        PreparedStatement stmt = null;
-        
-        try {
-            conn = DBConnection.getConnection();
-            stmt = conn.prepareStatement(sql);
-            
-            stmt.setString(1, pilgrimName);
-            stmt.setString(2, phone);
-            stmt.setString(3, nationality);
-            stmt.setString(4, specialNeed);
-            stmt.setString(5, allergies);
-            stmt.setInt(6, pilgrimAge);
-            stmt.setInt(7, pilgrimID);
-            
-            int rowsAffected = stmt.executeUpdate();
-            conn.commit();
-            return rowsAffected > 0;
-            
-        } catch (SQLException e) {
-            try {
-                if (conn != null) conn.rollback();
-            } catch (SQLException ex) {
-                ex.printStackTrace();
+    private PooledConnection takeIdleOrCreate() throws SQLException {
+        while (true) {
+            PooledConnection pc = idle.pollFirst();
+            if (pc != null) {
+                if (isUsable(pc)) {
+                    return pc;
+                }
+                validationFailureCount.incrementAndGet();
+                destroy(pc);
+                continue;
             }
-            e.printStackTrace();
-            JOptionPane.showMessageDialog(null, "Error updating pilgrim: " + e.getMessage(), 
-                "Error", JOptionPane.ERROR_MESSAGE);
-            return false;
-        } finally {
-            try {
-                if (stmt != null) stmt.close();
-            } catch (SQLException e) {
-                e.printStackTrace();
+
+            int current = totalConnections.get();
+            if (current < maxSize) {
+                if (totalConnections.compareAndSet(current, current + 1)) {
+                    try {
+                        return open();
+                    } catch (SQLException e) {
+                        totalConnections.decrementAndGet();
+                        throw e;
+                    }
+                }
+            } else {
+                // Every slot is held by a connection that is on its way back to the idle list
+                try {
+                    pc = idle.pollFirst(50, TimeUnit.MILLISECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new SQLException("Interrupted while waiting for a database connection", e);
+                }
+                if (pc != null) {
+                    if (isUsable(pc)) {
+                        return pc;
+                    }
+                    validationFailureCount.incrementAndGet();
+                    destroy(pc);
+                }
             }
         }
     }
-    
+
     /**
-     * Deletes a pilgrim record from the database.
-     * 
-     * @param pilgrimID The ID of the pilgrim to delete
-     * @return true if the deletion was successful, false otherwise
-     * @throws SQLException if a database access error occurs
+     * Opens a new physical connection. The DAO classes commit explicitly,
+     * so pooled connections run with auto-commit disabled.
      */
-    public static boolean deletePilgrim(int pilgrimID) {
-        String sql = "DELETE FROM Pilgrim WHERE PilgrimID = ?";
-        
-        Connection conn = null;
-        PreparedStatement stmt = null;
-        
+    private PooledConnection open() throws SQLException {
+        Connection physical = DriverManager.getConnection(url, user, password);
+        physical.setAutoCommit(false);
+        createdCount.incrementAndGet();
+        return new PooledConnection(physical);
+    }
+
+    /**
+     * Checks whether an idle connection can still be used.
+     */
+    private boolean isUsable(PooledConnection pc) {
         try {
-            conn = DBConnection.getConnection();
-            stmt = conn.prepareStatement(sql);
-            
-            stmt.setInt(1, pilgrimID);
-            
-            int rowsAffected = stmt.executeUpdate();
-            conn.commit();
-            return rowsAffected > 0;
-            
+            return !pc.physical.isClosed() && pc.physical.isValid(VALIDATION_TIMEOUT_SECONDS);
         } catch (SQLException e) {
-            try {
-                if (conn != null) conn.rollback();
-            } catch (SQLException ex) {
-                ex.printStackTrace();
-            }
-            e.printStackTrace();
-            JOptionPane.showMessageDialog(null, "Error deleting pilgrim: " + e.getMessage(), 
-                "Error", JOptionPane.ERROR_MESSAGE);
             return false;
-        } finally {
-            try {
-                if (stmt != null) stmt.close();
-            } catch (SQLException e) {
-                e.printStackTrace();
-            }
         }
     }
-    
+
     /**
-     * Retrieves a specific pilgrim by their ID.
-     * 
-     * @param pilgrimID The ID of the pilgrim to retrieve
-     * @return A String array containing the pilgrim's information:
-     *         [PilgrimID, PilgrimName, Phone, Nationality, specialNeed, allergies, pilgrimAge]
-     *         Returns an array with null elements if pilgrim not found
-     * @throws SQLException if a database access error occurs
+     * Returns a borrowed connection to the pool. Any uncommitted work is rolled back
+     * so the next borrower starts from a clean transaction.
      */
-    public static String[] getPilgrimById(int pilgrimID) {
-        String sql = "SELECT PilgrimID, PilgrimName, Phone, Nationality, specialNeed, allergies, pilgrimAge FROM Pilgrim WHERE PilgrimID = ?";
-        String[] pilgrim = new String[7];
-        
-        try (Connection conn = DBConnection.getConnection();
-             PreparedStatement stmt = conn.prepareStatement(sql)) {
-            
-            stmt.setInt(1, pilgrimID);
-            ResultSet rs = stmt.executeQuery();
-            
-            if (rs.next()) {
-                pilgrim[0] = String.valueOf(rs.getInt("PilgrimID"));
-                pilgrim[1] = rs.getString("PilgrimName");
-                pilgrim[2] = rs.getString("Phone");
-                pilgrim[3] = rs.getString("Nationality");
-                pilgrim[4] = rs.getString("specialNeed");
-                pilgrim[5] = rs.getString("allergies");
-                pilgrim[6] = String.valueOf(rs.getInt("pilgrimAge"));
+    private void release(PooledConnection pc) {
+        if (!borrowed.remove(pc)) {
+            return;
+        }
+        pc.borrowSite = null;
+        try {
+            if (shutdown || pc.physical.isClosed()) {
+                destroy(pc);
+            } else {
+                if (pc.statements != null) {
+                    pc.statements.reset();
+                }
+                if (!pc.physical.getAutoCommit()) {
+                    pc.physical.rollback();
+                }
+                pc.physical.clearWarnings();
+                pc.lastUsed = System.currentTimeMillis();
+                idle.offerFirst(pc);
             }
-            
-            rs.close();
-            
         } catch (SQLException e) {
-            e.printStackTrace();
-            JOptionPane.showMessageDialog(null, "Error retrieving pilgrim: " + e.getMessage(), 
-                "Error", JOptionPane.ERROR_MESSAGE);
+            destroy(pc);
+        } finally {
+            permits.release();
         }
-        
-        return pilgrim;
     }
-}
 
-/**
- * The MedicalProfileDAO class provides data access operations for medical profile records.
- * It handles CRUD operations for medical profiles associated with pilgrims in the database.
- * This class follows the Data Access Object (DAO) pattern to separate database operations
- * from business logic.
- */
-class MedicalProfileDAO {
-    
     /**
-     * Creates a new medical profile record in the database.
-     * 
-     * @param profileID The unique identifier for the medical profile
-     * @param bloodType The blood type of the pilgrim (e.g., "A+", "O-")
-     * @param medications Current medications the pilgrim is taking
-     * @param medicalHistory Relevant medical history of the pilgrim
-     * @param pilgrimID The ID of the pilgrim this profile belongs to
-     * @param adminID The ID of the administrator creating this profile
-     * @return true if the profile was created successfully, false otherwise
-     * @throws SQLException if a database access error occurs
+     * Closes a physical connection and removes it from the pool's count.
      */
-    public static boolean createMedicalProfile(int profileID, String bloodType, String medications, 
-            String medicalHistory, int pilgrimID, int adminID) {
-        String sql = "INSERT INTO MedicalProfile (ProfileID, bloodType, medications, Medical_History, PilgrimID, AdminID) "
-                   + "VALUES (?, ?, ?, ?, ?, ?)";
-        
-        Connection conn = null;
-        PreparedStatement stmt = null;
-        
+    private void destroy(PooledConnection pc) {
+        totalConnections.decrementAndGet();
+        destroyedCount.incrementAndGet();
         try {
-            conn = DBConnection.getConnection();
-            stmt = conn.prepareStatement(sql);
-            
-            stmt.setInt(1, profileID);
-            stmt.setString(2, bloodType);
-            stmt.setString(3, medications);
-            stmt.setString(4, medicalHistory);
-            stmt.setInt(5, pilgrimID);
-            stmt.setInt(6, adminID);
-            
-            int rowsAffected = stmt.executeUpdate();
-            conn.commit();
-            return rowsAffected > 0;
-            
+            pc.physical.close();
         } catch (SQLException e) {
-            try {
-                if (conn != null) conn.rollback();
-            } catch (SQLException ex) {
-                ex.printStackTrace();
+            // Connection is being discarded anyway
+        }
+    }
+
+    /**
+     * Periodic maintenance: evicts connections idle for longer than the idle timeout,
+     * tops the pool back up to its minimum size and reports leaked connections. Runs on
+     * the housekeeping thread every {@link #HOUSEKEEPING_INTERVAL_MS}.
+     */
+    void housekeep() {
+        if (shutdown) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+
+        Iterator<PooledConnection> it = idle.descendingIterator();
+        while (it.hasNext() && totalConnections.get() > minSize) {
+            PooledConnection pc = it.next();
+            if (now - pc.lastUsed > idleTimeoutMillis && idle.remove(pc)) {
+                destroy(pc);
+            }
+        }
+
+        while (!shutdown) {
+            int current = totalConnections.get();
+            if (current >= minSize) {
+                break;
+            }
+            if (!totalConnections.compareAndSet(current, current + 1)) {
+                continue;
             }
-            e.printStackTrace();
-            JOptionPane.showMessageDialog(null, "Error creating medical profile: " + e.getMessage(), 
-                "Error", JOptionPane.ERROR_MESSAGE);
-            return false;
-        } finally {
             try {
-                if (stmt != null) stmt.close();
+                PooledConnection pc = open();
+                pc.lastUsed = now;
+                idle.offerLast(pc);
             } catch (SQLException e) {
-                e.printStackTrace();
+                totalConnections.decrementAndGet();
+                ErrorLog.report("ConnectionPool", "Could not open a connection: " + e.getMessage());
+                break;
+            }
+        }
+
+        if (leakThresholdMillis > 0) {
+            for (PooledConnection pc : borrowed) {
+                long heldFor = now - pc.borrowedAt;
+                if (!pc.leakReported && heldFor > leakThresholdMillis) {
+                    pc.leakReported = true;
+                    leakCount.incrementAndGet();
+                    ErrorLog.report("ConnectionPool", "Possible connection leak: connection held for " + heldFor + " ms"
+                            + (leakDiagnostics ? "" : "; set hajjguide.pool.leakDiagnostics=true to see where it was borrowed"),
+                            pc.borrowSite);
+                }
             }
         }
     }
-    
+
     /**
-     * Retrieves a medical profile for a specific pilgrim.
-     * 
-     * @param pilgrimID The ID of the pilgrim whose medical profile to retrieve
-     * @return A String array containing the medical profile information:
-     *         [ProfileID, bloodType, medications, Medical_History, PilgrimID, AdminID]
-     *         Returns an array with null elements if no profile is found
-     * @throws SQLException if a database access error occurs
+     * Closes all idle connections and stops the housekeeping thread.
+     * Connections still borrowed are closed when they are returned.
      */
-    public static String[] getMedicalProfileByPilgrimId(int pilgrimID) {
-        String sql = "SELECT ProfileID, bloodType, medications, Medical_History, PilgrimID, AdminID FROM MedicalProfile WHERE PilgrimID = ?";
-        String[] profile = new String[6];
-        
-        try (Connection conn = DBConnection.getConnection();
-             PreparedStatement stmt = conn.prepareStatement(sql)) {
-            
-            stmt.setInt(1, pilgrimID);
-            ResultSet rs = stmt.executeQuery();
-            
-            if (rs.next()) {
-                profile[0] = String.valueOf(rs.getInt("ProfileID"));
-                profile[1] = rs.getString("bloodType");
-                profile[2] = rs.getString("medications");
-                profile[3] = rs.getString("Medical_History");
-                profile[4] = String.valueOf(rs.getInt("PilgrimID"));
-                profile[5] = String.valueOf(rs.getInt("AdminID"));
-            }
-            
-            rs.close();
-            
-        } catch (SQLException e) {
-            e.printStackTrace();
-            JOptionPane.showMessageDialog(null, "Error retrieving medical profile: " + e.getMessage(), 
-                "Error", JOptionPane.ERROR_MESSAGE);
+    public void shutdown() {
+        shutdown = true;
+        housekeeper.shutdownNow();
+        PooledConnection pc;
+        while ((pc = idle.pollFirst()) != null) {
+            destroy(pc);
         }
-        
-        return profile;
     }
-    
+
+    /** @return The number of connections currently lent out */
+    public int getActiveCount() {
+        return borrowed.size();
+    }
+
+    /** @return The number of open connections waiting in the pool */
+    public int getIdleCount() {
+        return idle.size();
+    }
+
+    /** @return The number of physical connections currently open */
+    public int getTotalCount() {
+        return totalConnections.get();
+    }
+
+    /** @return The number of threads currently waiting to borrow a connection */
+    public int getWaitingCount() {
+        return permits.getQueueLength();
+    }
+
+    /** @return The maximum number of connections this pool will open */
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    /** @return The total number of successful borrows */
+    public long getBorrowCount() {
+        return borrowCount.get();
+    }
+
+    /** @return The number of borrows that gave up after the borrow timeout */
+    public long getTimeoutCount() {
+        return timeoutCount.get();
+    }
+
+    /** @return The number of connections reported as possibly leaked */
+    public long getLeakCount() {
+        return leakCount.get();
+    }
+
+    /** @return The number of prepared statements served from a connection's statement cache */
+    public long getStatementCacheHits() {
+        return statementCacheHits.sum();
+    }
+
+    /** @return The number of prepared statements that had to be prepared on the server */
+    public long getStatementCacheMisses() {
+        return statementCacheMisses.sum();
+    }
+
     /**
-     * Updates an existing medical profile in the database.
-     * 
-     * @param profileID The ID of the medical profile to update
-     * @param bloodType The updated blood type information
-     * @param medications The updated medications information
-     * @param medicalHistory The updated medical history
-     * @param adminID The ID of the administrator making the update
-     * @return true if the update was successful, false otherwise
-     * @throws SQLException if a database access error occurs
+     * Builds a one-line summary of the pool's current state and counters.
+     *
+     * @return A human-readable statistics string
      */
-    public static boolean updateMedicalProfile(int profileID, String bloodType, String medications, 
-            String medicalHistory, int adminID) {
-        String sql = "UPDATE MedicalProfile SET bloodType = ?, medications = ?, Medical_History = ?, AdminID = ? "
-                   + "WHERE ProfileID = ?";
-        
-        Connection conn = null;
-        PreparedStatement stmt = null;
-        
-        try {
-            conn = DBConnection.getConnection();
-            stmt = conn.prepareStatement(sql);
-            
-            stmt.setString(1, bloodType);
-            stmt.setString(2, medications);
-            stmt.setString(3, medicalHistory);
-            stmt.setInt(4, adminID);
-            stmt.setInt(5, profileID);
-            
-            int rowsAffected = stmt.executeUpdate();
-            conn.commit();
-            return rowsAffected > 0;
-            
-        } catch (SQLException e) {
-            try {
-                if (conn != null) conn.rollback();
-            } catch (SQLException ex) {
-                ex.printStackTrace();
-            }
-            e.printStackTrace();
-            JOptionPane.showMessageDialog(null, "Error updating medical profile: " + e.getMessage(), 
-                "Error", JOptionPane.ERROR_MESSAGE);
-            return false;
-        } finally {
-            try {
-                if (stmt != null) stmt.close();
-            } catch (SQLException e) {
-                e.printStackTrace();
-            }
+    public String getStats() {
+        long borrows = borrowCount.get();
+        double avgWaitMs = borrows == 0 ? 0 : borrowWaitNanos.get() / 1e6 / borrows;
+        return String.format("active=%d idle=%d total=%d/%d waiting=%d borrows=%d avgWait=%.3fms "
+                + "timeouts=%d created=%d destroyed=%d validationFailures=%d leaks=%d "
+                + "stmtCacheHits=%d stmtCacheMisses=%d stmtCacheEvictions=%d",
+                getActiveCount(), getIdleCount(), getTotalCount(), maxSize, getWaitingCount(),
+                borrows, avgWaitMs, timeoutCount.get(), createdCount.get(), destroyedCount.get(),
+                validationFailureCount.get(), leakCount.get(), statementCacheHits.sum(),
+                statementCacheMisses.sum(), statementCacheEvictions.sum());
+    }
+
+    /**
+     * A physical connection owned by the pool, along with its bookkeeping.
+     */
+    private final class PooledConnection {
+        final Connection physical;
+        final StatementCache statements;
+        volatile long lastUsed = System.currentTimeMillis();
+        volatile long borrowedAt;
+        volatile Throwable borrowSite;
+        volatile boolean leakReported;
+
+        PooledConnection(Connection physical) {
+            this.physical = physical;
+            this.statements = statementCacheSize > 0
+                    ? new StatementCache(physical, statementCacheSize, statementCacheHits,
+                            statementCacheMisses, statementCacheEvictions)
+                    : null;
+        }
+
+        /**
+         * Creates a fresh proxy for one borrow. Each borrow gets its own proxy so that
+         * closing a stale reference twice cannot return the connection twice.
+         */
+        Connection lease() {
+            return (Connection) Proxy.newProxyInstance(ConnectionPool.class.getClassLoader(),
+                    new Class<?>[] { Connection.class }, new Lease(this));
         }
     }
-}
 
+    /**
+     * Invocation handler for a borrowed connection. {@code close()} returns the
+     * connection to the pool and {@code prepareStatement(String)} goes through the
+     * connection's statement cache; every other call is forwarded to the physical connection.
+     */
+    private final class Lease implements InvocationHandler {
+        private final PooledConnection pc;
+        private final AtomicBoolean closed = new AtomicBoolean();
 
+        Lease(PooledConnection pc) {
+            this.pc = pc;
+        }
 
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "close":
+                    if (closed.compareAndSet(false, true)) {
+                        release(pc);
+                    }
+                    return null;
+                case "isClosed":
+                    return closed.get() || pc.physical.isClosed();
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "toString":
+                    return "PooledConnection[" + pc.physical + "]";
+                default:
+                    if (closed.get()) {
+                        throw new SQLException("Connection has already been returned to the pool");
+                    }
+                    if (pc.statements != null && method.getName().equals("prepareStatement")
+                            && args.length == 1) {
+                        return pc.statements.prepare((String) args[0], (Connection) proxy);
+                    }
+                    try {
+                        return method.invoke(pc.physical, args);
+                    } catch (InvocationTargetException e) {
+                        throw e.getCause();
+                    }
+            }
+        }
+    }
+}
 
 /**
- * The TransportScheduleDAO class provides data access operations for transport schedules.
- * It handles the creation, retrieval, and assignment of transport schedules for pilgrims.
- * This class implements the Data Access Object (DAO) pattern to separate database operations
- * from business logic.
+ * The SqlTracer class wraps pooled connections so that every statement the DAO classes run
+ * is traced: its SQL text, bound parameters, row count and elapsed time. For a query, the
+ * elapsed time runs from execution until its ResultSet is closed, so it includes fetching
+ * the rows.
+ *
+ * Totals are kept per SQL text for the System Metrics report. A statement slower than
+ * {@code hajjguide.trace.slowMs} (default 200) is written to the slow-query log,
+ * {@code hajjguide.trace.slowLogFile} (default .hajjguide/logs/slow-queries.log in the user's
+ * home directory, created when the first entry is written). A background
+ * thread writes that log from a bounded queue of {@code hajjguide.trace.queueSize} entries
+ * (default 1000). Entries that arrive while the queue is full are counted and dropped, so
+ * the DAO threads never wait on the disk. If the log cannot be written, the writer reports it
+ * and tries again every {@code hajjguide.trace.slowLogRetryMs} (default 5000) ms; the System
+ * Metrics screen shows the dropped entries and the failed attempts.
+ *
+ * Parameters bound to medical columns and passwords are masked before they are logged.
+ * Tracing adds a proxy and a map lookup to every statement, so it is off by default and is
+ * turned on with {@code -Dhajjguide.trace.enabled=true}.
  */
-class TransportScheduleDAO {
-    
+class SqlTracer {
+    private static final boolean ENABLED = Boolean.parseBoolean(System.getProperty("hajjguide.trace.enabled", "false"));
+    private static final long SLOW_NANOS = TimeUnit.MILLISECONDS.toNanos(Long.getLong("hajjguide.trace.slowMs", 200L));
+
+    /** Columns whose bound values are never logged, in lower case */
+    private static final Set<String> MASKED_COLUMNS = Set.of("bloodtype", "medications", "medical_history",
+            "allergies", "specialneed", "password");
+
+    private static final Pattern INSERT_PATTERN = Pattern.compile(
+            "INSERT\\s+INTO\\s+\\w+\\s*\\(([^)]*)\\)\\s*VALUES\\s*\\(([^)]*)\\)", Pattern.CASE_INSENSITIVE);
+    private static final Pattern COMPARED_COLUMN = Pattern.compile(
+            "(\\w+)\\s*(?:=|<>|!=|<=|>=|<|>|LIKE)\\s*$", Pattern.CASE_INSENSITIVE);
+
+    private static final Map<String, boolean[]> maskCache = new ConcurrentHashMap<>();
+    private static final Map<String, SqlStats> statsBySql = new ConcurrentHashMap<>();
+    private static final LongAdder tracedCount = new LongAdder();
+    private static final LongAdder slowCount = new LongAdder();
+    private static final SlowQueryLog slowLog = new SlowQueryLog(slowLogFile(),
+            Integer.getInteger("hajjguide.trace.queueSize", 1000));
+
+    private SqlTracer() {
+    }
+
     /**
-     * Creates a new transport schedule in the database.
-     * 
-     * @param scheduleID The unique identifier for the transport schedule
-     * @param departureTime The scheduled departure time (format: "HH:MM" or "YYYY-MM-DD HH:MM:SS")
-     * @param arrivalTime The scheduled arrival time (format: "HH:MM" or "YYYY-MM-DD HH:MM:SS")
-     * @param route The route description (e.g., "Mina to Arafat")
-     * @param transportType The type of transport (e.g., "Bus", "Train")
-     * @param adminID The ID of the administrator creating this schedule
-     * @return true if the schedule was created successfully, false otherwise
-     * @throws SQLException if a database access error occurs
+     * @return The slow-query log file: {@code hajjguide.trace.slowLogFile} if set, or else
+     *         .hajjguide/logs/slow-queries.log in the user's home directory
      */
-    public static boolean createTransportSchedule(int scheduleID, String departureTime, 
-            String arrivalTime, String route, String transportType, int adminID) {
-        String sql = "INSERT INTO TransportSchedule (ScheduleID, departureTime, arrivalTime, route, TransportType, AdminID) "
-                   + "VALUES (?, ?, ?, ?, ?, ?)";
-        
-        Connection conn = null;
-        PreparedStatement stmt = null;
-        
-        try {
-            conn = DBConnection.getConnection();
-            stmt = conn.prepareStatement(sql);
-            
-            stmt.setInt(1, scheduleID);
-            stmt.setString(2, departureTime);
-            stmt.setString(3, arrivalTime);
-            stmt.setString(4, route);
-            stmt.setString(5, transportType);
-            stmt.setInt(6, adminID);
-            
-            int rowsAffected = stmt.executeUpdate();
-            conn.commit();
-            return rowsAffected > 0;
-            
-        } catch (SQLException e) {
-            try {
-                if (conn != null) conn.rollback();
-            } catch (SQLException ex) {
-                ex.printStackTrace();
-            }
-            e.printStackTrace();
-            JOptionPane.showMessageDialog(null, "Error creating transport schedule: " + e.getMessage(), 
-                "Error", JOptionPane.ERROR_MESSAGE);
-            return false;
-        } finally {
-            try {
-                if (stmt != null) stmt.close();
-            } catch (SQLException e) {
-                e.printStackTrace();
-            }
+    static Path slowLogFile() {
+        String file = System.getProperty("hajjguide.trace.slowLogFile");
+        return file != null ? Paths.get(file)
+                : Paths.get(System.getProperty("user.home"), ".hajjguide", "logs", "slow-queries.log");
+    }
+
+    /** @return true if statements are traced */
+    static boolean isEnabled() {
+        return ENABLED;
+    }
+
+    /**
+     * Wraps a connection so that the statements it creates are traced.
+     *
+     * @param conn The connection to wrap
+     * @return The tracing connection
+     */
+    static Connection wrap(Connection conn) {
+        return (Connection) Proxy.newProxyInstance(SqlTracer.class.getClassLoader(),
+                new Class<?>[] { Connection.class }, new TracingConnection(conn));
+    }
+
+    /**
+     * Describes the tracer in one line.
+     *
+     * @return The number of traced and slow statements, of dropped log entries and of
+     *         failures to write the log
+     */
+    static String getStats() {
+        return String.format("statements=%d slow=%d slowLogged=%d slowDropped=%d slowLogFailures=%d thresholdMs=%d",
+                tracedCount.sum(), slowCount.sum(), slowLog.written.sum(), slowLog.dropped.sum(),
+                slowLog.failures.sum(), TimeUnit.NANOSECONDS.toMillis(SLOW_NANOS));
+    }
+
+    /**
+     * Lists the statements that have taken the most time in total.
+     *
+     * @param limit The maximum number of statements to list
+     * @return One line per statement, slowest total first
+     */
+    static String topStatements(int limit) {
+        List<Map.Entry<String, SqlStats>> entries = new ArrayList<>(statsBySql.entrySet());
+        entries.sort((a, b) -> Long.compare(b.getValue().totalNanos.sum(), a.getValue().totalNanos.sum()));
+        StringBuilder sb = new StringBuilder();
+        sb.append(String.format("%10s %12s %12s %12s  %s%n", "Count", "Avg ms", "Max ms", "Rows", "SQL"));
+        for (Map.Entry<String, SqlStats> entry : entries.subList(0, Math.min(limit, entries.size()))) {
+            SqlStats stats = entry.getValue();
+            long count = stats.count.sum();
+            sb.append(String.format("%10d %12.3f %12.3f %12d  %s%n", count,
+                    count == 0 ? 0 : stats.totalNanos.sum() / 1e6 / count, stats.maxNanos.get() / 1e6,
+                    stats.rows.sum(), entry.getKey()));
         }
+        return sb.toString();
     }
-    
+
     /**
-     * Retrieves all transport schedules from the database.
-     * 
-     * @return A List of String arrays where each array represents a transport schedule:
-     *         [ScheduleID, departureTime, arrivalTime, route, TransportType, AdminID]
-     *         Returns an empty list if no schedules exist
-     * @throws SQLException if a database access error occurs
+     * Records one finished statement.
+     *
+     * @param sql The SQL text
+     * @param params The bound parameters, indexed from 1, or null
+     * @param rows The rows returned or affected, or -1 if unknown
+     * @param elapsedNanos How long the statement took
+     * @param error The failure, or null if the statement succeeded
      */
-    public static List<String[]> getAllTransportSchedules() {
-        List<String[]> schedules = new ArrayList<>();
-        String sql = "SELECT ScheduleID, departureTime, arrivalTime, route, TransportType, AdminID FROM TransportSchedule";
-        
-        try (Connection conn = DBConnection.getConnection();
-             Statement stmt = conn.createStatement();
-             ResultSet rs = stmt.executeQuery(sql)) {
-            
-            while (rs.next()) {
-                String[] schedule = new String[6];
-                schedule[0] = String.valueOf(rs.getInt("ScheduleID"));
-                schedule[1] = rs.getString("departureTime");
-                schedule[2] = rs.getString("arrivalTime");
-                schedule[3] = rs.getString("route");
-                schedule[4] = rs.getString("TransportType");
-                schedule[5] = String.valueOf(rs.getInt("AdminID"));
-                schedules.add(schedule);
-            }
-            
-        } catch (SQLException e) {
-            e.printStackTrace();
-            JOptionPane.showMessageDialog(null, "Error retrieving transport schedules: " + e.getMessage(), 
-                "Error", JOptionPane.ERROR_MESSAGE);
+    private static void finish(String sql, Object[] params, long rows, long elapsedNanos, Throwable error) {
+        tracedCount.increment();
+        SqlStats stats = statsBySql.computeIfAbsent(sql, k -> new SqlStats());
+        stats.count.increment();
+        stats.totalNanos.add(elapsedNanos);
+        if (rows > 0) {
+            stats.rows.add(rows);
+        }
+        long max = stats.maxNanos.get();
+        while (elapsedNanos > max && !stats.maxNanos.compareAndSet(max, elapsedNanos)) {
+            max = stats.maxNanos.get();
+        }
+
+        if (elapsedNanos >= SLOW_NANOS) {
+            slowCount.increment();
+            slowLog.offer(String.format("%s %.1fms rows=%d sql=%s params=%s%s",
+                    LocalDateTime.now().truncatedTo(ChronoUnit.MILLIS), elapsedNanos / 1e6, rows, sql,
+                    formatParams(sql, params),
+                    error != null ? " error=" + error.getMessage() : ""));
         }
-        
-        return schedules;
     }
-    
+
     /**
-     * Assigns a pilgrim to a specific transport schedule.
-     * 
-     * @param pilgrimID The ID of the pilgrim to assign
-     * @param scheduleID The ID of the transport schedule
-     * @return true if the assignment was successful, false otherwise
-     * @throws SQLException if a database access error occurs or if the assignment violates constraints
+     * Formats the bound parameters, masking those bound to sensitive columns.
      */
-    public static boolean assignPilgrimToTransport(int pilgrimID, int scheduleID) {
-        String sql = "INSERT INTO PilgrimTransport (PilgrimID, ScheduleID) VALUES (?, ?)";
-        
-        Connection conn = null;
-        PreparedStatement stmt = null;
-        
-        try {
-            conn = DBConnection.getConnection();
-            stmt = conn.prepareStatement(sql);
-            
-            stmt.setInt(1, pilgrimID);
-            stmt.setInt(2, scheduleID);
-            
-            int rowsAffected = stmt.executeUpdate();
-            conn.commit();
-            return rowsAffected > 0;
-            
-        } catch (SQLException e) {
-            try {
-                if (conn != null) conn.rollback();
-            } catch (SQLException ex) {
-                ex.printStackTrace();
+    static String formatParams(String sql, Object[] params) {
+        if (params == null) {
+            return "[]";
+        }
+        boolean[] masked = maskCache.computeIfAbsent(sql, SqlTracer::maskedParameters);
+        StringBuilder sb = new StringBuilder("[");
+        for (int i = 1; i < params.length; i++) {
+            if (i > 1) {
+                sb.append(", ");
             }
-            e.printStackTrace();
-            JOptionPane.showMessageDialog(null, "Error assigning pilgrim to transport: " + e.getMessage(), 
-                "Error", JOptionPane.ERROR_MESSAGE);
-            return false;
-        } finally {
-            try {
-                if (stmt != null) stmt.close();
-            } catch (SQLException e) {
-                e.printStackTrace();
+            Object value = params[i];
+            if (i - 1 < masked.length && masked[i - 1]) {
+                sb.append("***");
+            } else if (value == null) {
+                sb.append("NULL");
+            } else if (value instanceof String) {
+                String text = (String) value;
+                sb.append('\'').append(text.length() > 64 ? text.substring(0, 64) + "..." : text).append('\'');
+            } else {
+                sb.append(value);
             }
         }
+        return sb.append(']').toString();
     }
-}
-
 
-/**
- * The AccommodationDAO class provides data access operations for pilgrim accommodation records.
- * It handles the creation, retrieval, and assignment of accommodations for pilgrims during Hajj.
- * This class implements the Data Access Object (DAO) pattern to separate database operations
- * from business logic.
- */
-class AccommodationDAO {
-    
     /**
-     * Creates a new accommodation record in the database.
-     * 
-     * @param accommodationID The unique identifier for the accommodation
-     * @param hotelName The name of the hotel or accommodation facility
-     * @param roomType The type of room (e.g., "Single", "Double", "Suite")
-     * @param capacity The maximum number of pilgrims the accommodation can hold
-     * @param address The physical address of the accommodation
-     * @param adminID The ID of the administrator creating this record
-     * @return true if the accommodation was created successfully, false otherwise
-     * @throws SQLException if a database access error occurs
+     * Works out which parameters of a statement are bound to a sensitive column, from the
+     * column list of an INSERT or the column a parameter is compared with or assigned to.
+     *
+     * @return One flag per parameter, in order
      */
-    public static boolean createAccommodation(int accommodationID, String hotelName, 
-            String roomType, int capacity, String address, int adminID) {
-        String sql = "INSERT INTO Accommodation (AccommodationID, HotelName, roomType, capacity, address, AdminID) "
-                   + "VALUES (?, ?, ?, ?, ?, ?)";
-        
-        Connection conn = null;
-        PreparedStatement stmt = null;
-        
-        try {
-            conn = DBConnection.getConnection();
-            stmt = conn.prepareStatement(sql);
-            
-            stmt.setInt(1, accommodationID);
-            stmt.setString(2, hotelName);
-            stmt.setString(3, roomType);
-            stmt.setInt(4, capacity);
-            stmt.setString(5, address);
-            stmt.setInt(6, adminID);
-            
-            int rowsAffected = stmt.executeUpdate();
-            conn.commit();
-            return rowsAffected > 0;
-            
-        } catch (SQLException e) {
-            try {
-                if (conn != null) conn.rollback();
-            } catch (SQLException ex) {
-                ex.printStackTrace();
-            }
-            e.printStackTrace();
-            JOptionPane.showMessageDialog(null, "Error creating accommodation: " + e.getMessage(), 
-                "Error", JOptionPane.ERROR_MESSAGE);
-            return false;
-        } finally {
-            try {
-                if (stmt != null) stmt.close();
-            } catch (SQLException e) {
-                e.printStackTrace();
+    static boolean[] maskedParameters(String sql) {
+        List<Boolean> flags = new ArrayList<>();
+        Matcher insert = INSERT_PATTERN.matcher(sql);
+        boolean isInsert = insert.find();
+        String[] insertColumns = isInsert ? insert.group(1).split(",") : new String[0];
+
+        for (int pos = sql.indexOf('?'); pos >= 0; pos = sql.indexOf('?', pos + 1)) {
+            String column = null;
+            if (isInsert && pos >= insert.start(2) && pos < insert.end(2)) {
+                int item = 0;
+                for (int i = insert.start(2); i < pos; i++) {
+                    if (sql.charAt(i) == ',') {
+                        item++;
+                    }
+                }
+                if (item < insertColumns.length) {
+                    column = insertColumns[item].trim();
+                }
+            } else {
+                Matcher compared = COMPARED_COLUMN.matcher(sql.substring(0, pos));
+                if (compared.find()) {
+                    column = compared.group(1);
+                }
             }
+            flags.add(column != null && MASKED_COLUMNS.contains(column.toLowerCase()));
+        }
+
+        boolean[] masked = new boolean[flags.size()];
+        for (int i = 0; i < masked.length; i++) {
+            masked[i] = flags.get(i);
         }
+        return masked;
     }
-    
+
     /**
-     * Retrieves all accommodation records from the database.
-     * 
-     * @return A List of String arrays where each array represents an accommodation:
-     *         [AccommodationID, HotelName, roomType, capacity, address, AdminID]
-     *         Returns an empty list if no accommodations exist
-     * @throws SQLException if a database access error occurs
+     * Running totals for one SQL text.
      */
-    public static List<String[]> getAllAccommodations() {
-        List<String[]> accommodations = new ArrayList<>();
-        String sql = "SELECT AccommodationID, HotelName, roomType, capacity, address, AdminID FROM Accommodation";
-        
-        try (Connection conn = DBConnection.getConnection();
-             Statement stmt = conn.createStatement();
-             ResultSet rs = stmt.executeQuery(sql)) {
-            
-            while (rs.next()) {
-                String[] accommodation = new String[6];
-                accommodation[0] = String.valueOf(rs.getInt("AccommodationID"));
-                accommodation[1] = rs.getString("HotelName");
-                accommodation[2] = rs.getString("roomType");
-                accommodation[3] = String.valueOf(rs.getInt("capacity"));
-                accommodation[4] = rs.getString("address");
-                accommodation[5] = String.valueOf(rs.getInt("AdminID"));
-                accommodations.add(accommodation);
+    private static final class SqlStats {
+        final LongAdder count = new LongAdder();
+        final LongAdder totalNanos = new LongAdder();
+        final LongAdder rows = new LongAdder();
+        final AtomicLong maxNanos = new AtomicLong();
+    }
+
+    /**
+     * Invocation handler for a traced connection. Statements it creates are wrapped;
+     * everything else is passed straight to the underlying connection.
+     */
+    private static final class TracingConnection implements InvocationHandler {
+        private final Connection target;
+
+        TracingConnection(Connection target) {
+            this.target = target;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "toString":
+                    return "Traced" + target;
+                default:
+                    Object result;
+                    try {
+                        result = method.invoke(target, args);
+                    } catch (InvocationTargetException e) {
+                        throw e.getCause();
+                    }
+                    if (result instanceof PreparedStatement && method.getName().startsWith("prepare")) {
+                        Class<?> type = result instanceof CallableStatement ? CallableStatement.class : PreparedStatement.class;
+                        return Proxy.newProxyInstance(SqlTracer.class.getClassLoader(), new Class<?>[] { type },
+                                new TracingStatement((Statement) result, (String) args[0]));
+                    }
+                    if (result instanceof Statement && method.getName().equals("createStatement")) {
+                        return Proxy.newProxyInstance(SqlTracer.class.getClassLoader(), new Class<?>[] { Statement.class },
+                                new TracingStatement((Statement) result, null));
+                    }
+                    return result;
             }
-            
-        } catch (SQLException e) {
-            e.printStackTrace();
-            JOptionPane.showMessageDialog(null, "Error retrieving accommodations: " + e.getMessage(), 
-                "Error", JOptionPane.ERROR_MESSAGE);
         }
-        
-        return accommodations;
     }
-    
+
     /**
-     * Assigns a pilgrim to a specific accommodation.
-     * 
-     * @param pilgrimID The ID of the pilgrim to assign
-     * @param accommodationID The ID of the accommodation
-     * @return true if the assignment was successful, false otherwise
-     * @throws SQLException if a database access error occurs or if the assignment violates constraints
+     * Invocation handler for a traced statement. It remembers the bound parameters and
+     * times every execution. A query is finished when its ResultSet is closed, when the
+     * statement runs again or when the statement is closed, whichever comes first.
      */
-    public static boolean assignPilgrimToAccommodation(int pilgrimID, int accommodationID) {
-        String sql = "INSERT INTO PilgrimAccommodation (PilgrimID, AccommodationID) VALUES (?, ?)";
-        
-        Connection conn = null;
-        PreparedStatement stmt = null;
-        
-        try {
-            conn = DBConnection.getConnection();
-            stmt = conn.prepareStatement(sql);
-            
-            stmt.setInt(1, pilgrimID);
-            stmt.setInt(2, accommodationID);
-            
-            int rowsAffected = stmt.executeUpdate();
-            conn.commit();
-            return rowsAffected > 0;
-            
-        } catch (SQLException e) {
-            try {
-                if (conn != null) conn.rollback();
-            } catch (SQLException ex) {
-                ex.printStackTrace();
+    private static final class TracingStatement implements InvocationHandler {
+        private final Statement target;
+        private final String preparedSql;
+        private Object[] params;
+        private int highestIndex = 0;
+        private int batchSize = 0;
+        private OpenQuery openQuery;
+
+        TracingStatement(Statement target, String preparedSql) {
+            this.target = target;
+            this.preparedSql = preparedSql;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            String name = method.getName();
+            if (name.equals("equals")) {
+                return proxy == args[0];
             }
-            e.printStackTrace();
-            JOptionPane.showMessageDialog(null, "Error assigning pilgrim to accommodation: " + e.getMessage(), 
-                "Error", JOptionPane.ERROR_MESSAGE);
-            return false;
-        } finally {
+            if (name.equals("hashCode")) {
+                return System.identityHashCode(proxy);
+            }
+            if (name.startsWith("set") && args != null && args.length >= 2 && args[0] instanceof Integer
+                    && preparedSql != null) {
+                bind((Integer) args[0], name.equals("setNull") ? null : args[1]);
+            } else if (name.equals("clearParameters")) {
+                params = null;
+                highestIndex = 0;
+            } else if (name.equals("addBatch") && (args == null || args.length == 0)) {
+                batchSize++;
+            } else if (name.equals("close")) {
+                finishOpenQuery();
+            } else if (name.startsWith("execute")) {
+                return execute(method, args);
+            }
+            try {
+                return method.invoke(target, args);
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            }
+        }
+
+        private void bind(int index, Object value) {
+            if (params == null || index >= params.length) {
+                params = Arrays.copyOf(params == null ? new Object[8] : params, Math.max(index + 1, 8));
+            }
+            params[index] = value;
+            highestIndex = Math.max(highestIndex, index);
+        }
+
+        private Object execute(Method method, Object[] args) throws Throwable {
+            finishOpenQuery();
+            String sql = args != null && args.length > 0 && args[0] instanceof String ? (String) args[0] : preparedSql;
+            Object[] bound = sql == preparedSql && params != null ? Arrays.copyOf(params, highestIndex + 1) : null;
+            long start = System.nanoTime();
+            Object result;
+            try {
+                result = method.invoke(target, args);
+            } catch (InvocationTargetException e) {
+                finish(sql, bound, -1, System.nanoTime() - start, e.getCause());
+                batchSize = 0;
+                throw e.getCause();
+            }
+
+            if (result instanceof ResultSet) {
+                OpenQuery query = new OpenQuery(sql, bound, start);
+                openQuery = query;
+                return Proxy.newProxyInstance(SqlTracer.class.getClassLoader(), new Class<?>[] { ResultSet.class },
+                        new TracingResultSet((ResultSet) result, query));
+            }
+            long rows = -1;
+            if (result instanceof Integer || result instanceof Long) {
+                rows = ((Number) result).longValue();
+            } else if (result instanceof int[]) {
+                rows = 0;
+                for (int count : (int[]) result) {
+                    rows += count == Statement.SUCCESS_NO_INFO ? 1 : Math.max(count, 0);
+                }
+                sql = sql + " /* batch of " + batchSize + " */";
+                batchSize = 0;
+            }
+            finish(sql, bound, rows, System.nanoTime() - start, null);
+            return result;
+        }
+
+        private void finishOpenQuery() {
+            if (openQuery != null) {
+                openQuery.finish();
+                openQuery = null;
+            }
+        }
+    }
+
+    /**
+     * A query whose rows are still being read.
+     */
+    private static final class OpenQuery {
+        final String sql;
+        final Object[] params;
+        final long start;
+        long rows = 0;
+        boolean finished = false;
+
+        OpenQuery(String sql, Object[] params, long start) {
+            this.sql = sql;
+            this.params = params;
+            this.start = start;
+        }
+
+        void finish() {
+            if (!finished) {
+                finished = true;
+                SqlTracer.finish(sql, params, rows, System.nanoTime() - start, null);
+            }
+        }
+    }
+
+    /**
+     * Invocation handler for a traced ResultSet, which counts the rows read.
+     */
+    private static final class TracingResultSet implements InvocationHandler {
+        private final ResultSet target;
+        private final OpenQuery query;
+
+        TracingResultSet(ResultSet target, OpenQuery query) {
+            this.target = target;
+            this.query = query;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "close":
+                    query.finish();
+                    break;
+                default:
+                    break;
+            }
+            Object result;
+            try {
+                result = method.invoke(target, args);
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            }
+            if (method.getName().equals("next") && Boolean.TRUE.equals(result)) {
+                query.rows++;
+            }
+            return result;
+        }
+    }
+
+    /**
+     * The slow-query log file, written by a background thread from a bounded queue. If the
+     * file cannot be opened or written, the failure is reported through {@link ErrorLog} and
+     * the thread tries again after a pause; entries that arrive meanwhile wait in the queue,
+     * and those that do not fit are counted as dropped.
+     */
+    private static final class SlowQueryLog implements Runnable {
+        private static final long RETRY_MS = Long.getLong("hajjguide.trace.slowLogRetryMs", 5000L);
+
+        private final Path file;
+        private final ArrayBlockingQueue<String> queue;
+        private final LongAdder written = new LongAdder();
+        private final LongAdder dropped = new LongAdder();
+        private final LongAdder failures = new LongAdder();
+        private boolean started = false;
+
+        SlowQueryLog(Path file, int capacity) {
+            this.file = file;
+            this.queue = new ArrayBlockingQueue<>(capacity);
+        }
+
+        /**
+         * Queues a line for the log, dropping it if the queue is full.
+         */
+        void offer(String line) {
+            synchronized (this) {
+                if (!started) {
+                    started = true;
+                    Thread writer = new Thread(this, "hajjguide-slow-query-log");
+                    writer.setDaemon(true);
+                    writer.start();
+                }
+            }
+            if (!queue.offer(line)) {
+                dropped.increment();
+            }
+        }
+
+        @Override
+        public void run() {
+            try {
+                while (true) {
+                    try {
+                        writeUntilFailure();
+                    } catch (IOException e) {
+                        failures.increment();
+                        ErrorLog.report("SqlTracer", "Could not write the slow-query log " + file
+                                + ", retrying in " + RETRY_MS + " ms: " + e.getMessage());
+                    }
+                    Thread.sleep(RETRY_MS);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        /**
+         * Opens the file and writes queued lines to it until a write fails. Lines lost with
+         * the failed write are counted as dropped.
+         */
+        private void writeUntilFailure() throws IOException, InterruptedException {
+            if (file.getParent() != null) {
+                Files.createDirectories(file.getParent());
+            }
+            try (BufferedWriter out = Files.newBufferedWriter(file, StandardCharsets.UTF_8,
+                    StandardOpenOption.CREATE, StandardOpenOption.APPEND)) {
+                while (true) {
+                    String line = queue.take();
+                    int batch = 0;
+                    try {
+                        do {
+                            batch++;
+                            out.write(line);
+                            out.newLine();
+                            line = queue.poll();
+                        } while (line != null);
+                        out.flush();
+                    } catch (IOException e) {
+                        dropped.add(batch);
+                        throw e;
+                    }
+                    written.add(batch);
+                }
+            }
+        }
+    }
+}
+
+/**
+ * The StatementCache class keeps the prepared statements of one pooled connection,
+ * keyed by their SQL text, so that the constant SQL used by the DAO classes is only
+ * prepared once per physical connection.
+ *
+ * Statements handed out by the cache are wrapped in a proxy whose {@code close()}
+ * clears the parameters and puts the statement back in the cache. When the cache is
+ * full the least recently used statement is closed. A connection is only used by one
+ * borrower at a time, so the cache itself needs no locking.
+ */
+class StatementCache {
+    private final Connection physical;
+    private final int maxSize;
+    private final LongAdder hits;
+    private final LongAdder misses;
+    private final LongAdder evictions;
+    private final LinkedHashMap<String, CachedStatement> statements;
+
+    /**
+     * Creates a cache for the given physical connection.
+     *
+     * @param physical The physical connection that prepares the statements
+     * @param maxSize The maximum number of statements to keep open
+     * @param hits Counter incremented when a cached statement is reused
+     * @param misses Counter incremented when a statement has to be prepared
+     * @param evictions Counter incremented when a statement is dropped from the cache
+     */
+    StatementCache(Connection physical, int maxSize, LongAdder hits, LongAdder misses, LongAdder evictions) {
+        this.physical = physical;
+        this.maxSize = maxSize;
+        this.hits = hits;
+        this.misses = misses;
+        this.evictions = evictions;
+        this.statements = new LinkedHashMap<String, CachedStatement>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, CachedStatement> eldest) {
+                if (size() <= StatementCache.this.maxSize) {
+                    return false;
+                }
+                StatementCache.this.evictions.increment();
+                eldest.getValue().evict();
+                return true;
+            }
+        };
+    }
+
+    /**
+     * Returns a prepared statement for the given SQL, reusing a cached one when possible.
+     * If the cached statement for this SQL is already in use, a separate uncached
+     * statement is prepared instead.
+     *
+     * @param sql The SQL text to prepare
+     * @param owner The logical connection that {@code getConnection()} should report
+     * @return A PreparedStatement whose close() returns it to the cache
+     * @throws SQLException if the statement cannot be prepared
+     */
+    PreparedStatement prepare(String sql, Connection owner) throws SQLException {
+        CachedStatement cs = statements.get(sql);
+        if (cs != null && !cs.inUse) {
+            hits.increment();
+            return cs.checkout(owner);
+        }
+        misses.increment();
+        PreparedStatement ps = physical.prepareStatement(sql);
+        if (cs != null) {
+            return ps;
+        }
+        cs = new CachedStatement(ps);
+        statements.put(sql, cs);
+        return cs.checkout(owner);
+    }
+
+    /**
+     * Puts back every statement the last borrower forgot to close.
+     * Called when the connection is returned to the pool.
+     */
+    void reset() {
+        for (CachedStatement cs : statements.values()) {
+            if (cs.inUse) {
+                cs.checkin();
+            }
+        }
+    }
+
+    /** @return The number of statements currently cached */
+    int size() {
+        return statements.size();
+    }
+
+    /**
+     * A physical prepared statement held by the cache.
+     */
+    private static final class CachedStatement {
+        final PreparedStatement physical;
+        boolean inUse = false;
+        boolean evicted = false;
+        int generation = 0;
+        ResultSet lastResultSet;
+
+        CachedStatement(PreparedStatement physical) {
+            this.physical = physical;
+        }
+
+        PreparedStatement checkout(Connection owner) {
+            inUse = true;
+            return (PreparedStatement) Proxy.newProxyInstance(StatementCache.class.getClassLoader(),
+                    new Class<?>[] { PreparedStatement.class }, new StatementLease(this, owner, generation));
+        }
+
+        void checkin() {
+            inUse = false;
+            generation++;
+            try {
+                if (lastResultSet != null) {
+                    lastResultSet.close();
+                    lastResultSet = null;
+                }
+                if (evicted) {
+                    physical.close();
+                } else {
+                    physical.clearParameters();
+                    physical.clearBatch();
+                }
+            } catch (SQLException e) {
+                evicted = true;
+                closeQuietly();
+            }
+        }
+
+        void evict() {
+            evicted = true;
+            if (!inUse) {
+                closeQuietly();
+            }
+        }
+
+        private void closeQuietly() {
             try {
-                if (stmt != null) stmt.close();
+                physical.close();
             } catch (SQLException e) {
-                e.printStackTrace();
+                // Statement is being discarded anyway
+            }
+        }
+    }
+
+    /**
+     * Invocation handler for one checkout of a cached statement.
+     */
+    private static final class StatementLease implements InvocationHandler {
+        private final CachedStatement cs;
+        private final Connection owner;
+        private final int generation;
+
+        StatementLease(CachedStatement cs, Connection owner, int generation) {
+            this.cs = cs;
+            this.owner = owner;
+            this.generation = generation;
+        }
+
+        private boolean isClosed() {
+            return cs.generation != generation;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "close":
+                    if (!isClosed()) {
+                        cs.checkin();
+                    }
+                    return null;
+                case "isClosed":
+                    return isClosed();
+                case "getConnection":
+                    return owner;
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "toString":
+                    return "CachedStatement[" + cs.physical + "]";
+                default:
+                    if (isClosed()) {
+                        throw new SQLException("Statement has already been closed");
+                    }
+                    try {
+                        Object result = method.invoke(cs.physical, args);
+                        if (result instanceof ResultSet) {
+                            cs.lastResultSet = (ResultSet) result;
+                        }
+                        return result;
+                    } catch (InvocationTargetException e) {
+                        throw e.getCause();
+                    }
             }
         }
     }
 }
 
+/**
+ * Maps the current row of a ResultSet to an object.
+ *
+ * @param <T> The type of object produced for each row
+ */
+@FunctionalInterface
+interface RowMapper<T> {
+    /**
+     * Maps the row the ResultSet is currently positioned on.
+     *
+     * @param rs The ResultSet, positioned on a valid row
+     * @return The mapped row
+     * @throws SQLException if a column cannot be read
+     */
+    T map(ResultSet rs) throws SQLException;
+}
 
 /**
- * The PermitDAO class provides data access operations for Hajj permit records.
- * It handles the creation, retrieval, and assignment of permits to pilgrims.
- * This class implements the Data Access Object (DAO) pattern to separate database operations
- * from business logic.
+ * Unchecked wrapper for a SQLException raised where a checked exception cannot be thrown,
+ * such as while a {@link java.util.stream.Stream} of rows is being consumed. The public DAO
+ * methods also throw it when a statement fails, and leave it to the caller to report the
+ * error: screens show it in a dialog on the Event Dispatch Thread, and the HTTP API in an
+ * error response.
  */
-class PermitDAO {
-    
+class DataAccessException extends RuntimeException {
+    private static final long serialVersionUID = 1L;
+
+    DataAccessException(String message, SQLException cause) {
+        super(message, cause);
+    }
+
     /**
-     * Creates a new permit record in the database.
-     * 
-     * @param permitID The unique identifier for the permit
-     * @param name The name/description of the permit (e.g., "Arafat Access Permit")
-     * @param location The location this permit grants access to
-     * @param serviceType The type of service the permit provides (e.g., "Transport", "Food")
-     * @return true if the permit was created successfully, false otherwise
-     * @throws SQLException if a database access error occurs
+     * Creates the exception the in-memory backends throw for a key that is already taken,
+     * with the same cause MySQL's duplicate-key error (1062) is reported with.
+     *
+     * @param table The table inserted into
+     * @param key The duplicate key
      */
-    public static boolean createPermit(int permitID, String name, String location, String serviceType) {
-        String sql = "INSERT INTO Permit (PermitID, Name, location, serviceType) VALUES (?, ?, ?, ?)";
-        
-        Connection conn = null;
+    static DataAccessException duplicateKey(String table, Object key) {
+        return new DataAccessException("Could not insert into " + table, new SQLIntegrityConstraintViolationException(
+                "Duplicate entry '" + key + "' in " + table, "23000", 1062));
+    }
+
+    /**
+     * @return true if the statement broke a key or constraint rather than failing to run
+     */
+    boolean isConstraintViolation() {
+        return getCause() instanceof SQLIntegrityConstraintViolationException;
+    }
+}
+
+/**
+ * The ErrorLog class reports failures that have no caller to throw to: the connection
+ * pool's housekeeping, background loaders and writers, and the requests the API server
+ * answers with an error. Each report is one line on standard error, followed by the stack
+ * trace of its cause if one is given.
+ *
+ * Reports are rate-limited per source. At most {@code hajjguide.errors.perSecond} (default 5)
+ * reports a second are written for one source; the rest are counted, and the next report
+ * written says how many were left out. The counts are shown on the System Metrics screen.
+ */
+class ErrorLog {
+    private static final int PER_SECOND = Integer.getInteger("hajjguide.errors.perSecond", 5);
+
+    private static final Map<String, Source> sources = new ConcurrentHashMap<>();
+
+    private ErrorLog() {
+    }
+
+    /**
+     * Reports a failure without a stack trace.
+     *
+     * @param source The component that failed, such as "ConnectionPool"
+     * @param message What went wrong
+     */
+    static void report(String source, String message) {
+        report(source, message, null);
+    }
+
+    /**
+     * Reports a failure.
+     *
+     * @param source The component that failed, such as "ConnectionPool"
+     * @param message What went wrong
+     * @param cause The exception whose stack trace is written after the message, or null
+     */
+    static void report(String source, String message, Throwable cause) {
+        Source counts = sources.computeIfAbsent(source, s -> new Source());
+        counts.reported.increment();
+        int leftOut;
+        synchronized (counts) {
+            long second = System.currentTimeMillis() / 1000;
+            if (second != counts.second) {
+                counts.second = second;
+                counts.written = 0;
+            }
+            if (counts.written >= PER_SECOND) {
+                counts.leftOut++;
+                counts.suppressed.increment();
+                return;
+            }
+            counts.written++;
+            leftOut = counts.leftOut;
+            counts.leftOut = 0;
+        }
+        String line = LocalDateTime.now().truncatedTo(ChronoUnit.MILLIS) + " " + source + ": " + message
+                + (leftOut > 0 ? " (" + leftOut + " earlier reports left out)" : "");
+        synchronized (System.err) {
+            System.err.println(line);
+            if (cause != null) {
+                cause.printStackTrace();
+            }
+        }
+    }
+
+    /**
+     * Describes the reports made so far.
+     *
+     * @return The number of reports and of reports left out for each source
+     */
+    static String getStats() {
+        StringBuilder sb = new StringBuilder();
+        for (Map.Entry<String, Source> e : new TreeMap<>(sources).entrySet()) {
+            sb.append(sb.length() == 0 ? "" : " ").append(e.getKey()).append('=').append(e.getValue().reported.sum())
+                    .append(" (").append(e.getValue().suppressed.sum()).append(" left out)");
+        }
+        return sb.length() == 0 ? "none" : sb.toString();
+    }
+
+    /**
+     * The counters of one source.
+     */
+    private static final class Source {
+        final LongAdder reported = new LongAdder();
+        final LongAdder suppressed = new LongAdder();
+        long second;
+        int written;
+        int leftOut;
+    }
+}
+
+/**
+ * The StreamingQuery class runs a query on a forward-only, read-only cursor and exposes
+ * the rows as a lazily populated {@link Stream}. Rows are fetched from the server in
+ * chunks of the given fetch size, so full-table reads run in constant memory and the
+ * first row is available as soon as the first chunk arrives.
+ *
+ * The returned stream holds a pooled connection until it is closed, so it must be used
+ * in a try-with-resources block. The connection is also released as soon as the last
+ * row has been read.
+ */
+class StreamingQuery {
+    /** The default number of rows fetched per round trip */
+    static final int DEFAULT_FETCH_SIZE = Integer.getInteger("hajjguide.stream.fetchSize", 1000);
+
+    private StreamingQuery() {
+    }
+
+    /**
+     * Opens a cursor over the given query and returns its rows as a stream.
+     *
+     * @param sql The SELECT statement to run
+     * @param fetchSize The number of rows fetched per round trip
+     * @param mapper Maps each row to an object
+     * @param <T> The type of object produced for each row
+     * @return A sequential Stream that must be closed by the caller
+     * @throws SQLException if no connection is available or the query fails
+     */
+    static <T> Stream<T> open(String sql, int fetchSize, RowMapper<T> mapper) throws SQLException {
+        if (fetchSize < 1) {
+            throw new IllegalArgumentException("Fetch size must be positive: " + fetchSize);
+        }
+        Connection conn = DBConnection.getPool().borrow();
         PreparedStatement stmt = null;
-        
+        ResultSet rs;
         try {
-            conn = DBConnection.getConnection();
-            stmt = conn.prepareStatement(sql);
-            
-            stmt.setInt(1, permitID);
-            stmt.setString(2, name);
-            stmt.setString(3, location);
-            stmt.setString(4, serviceType);
-            
-            int rowsAffected = stmt.executeUpdate();
-            conn.commit();
-            return rowsAffected > 0;
-            
+            stmt = conn.prepareStatement(sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+            stmt.setFetchSize(fetchSize);
+            rs = stmt.executeQuery();
         } catch (SQLException e) {
+            closeQuietly(stmt, conn);
+            throw e;
+        }
+
+        Cursor<T> cursor = new Cursor<>(conn, stmt, rs, mapper);
+        return StreamSupport.stream(cursor, false).onClose(cursor::close);
+    }
+
+    private static void closeQuietly(AutoCloseable... resources) {
+        for (AutoCloseable resource : resources) {
+            try {
+                if (resource != null) resource.close();
+            } catch (Exception e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    /**
+     * Spliterator that advances the underlying ResultSet one row at a time.
+     */
+    private static final class Cursor<T> extends Spliterators.AbstractSpliterator<T> {
+        private final Connection conn;
+        private final Statement stmt;
+        private final ResultSet rs;
+        private final RowMapper<T> mapper;
+        private boolean closed = false;
+
+        Cursor(Connection conn, Statement stmt, ResultSet rs, RowMapper<T> mapper) {
+            super(Long.MAX_VALUE, Spliterator.ORDERED | Spliterator.NONNULL);
+            this.conn = conn;
+            this.stmt = stmt;
+            this.rs = rs;
+            this.mapper = mapper;
+        }
+
+        @Override
+        public boolean tryAdvance(Consumer<? super T> action) {
+            if (closed) {
+                return false;
+            }
             try {
-                if (conn != null) conn.rollback();
-            } catch (SQLException ex) {
-                ex.printStackTrace();
+                if (!rs.next()) {
+                    close();
+                    return false;
+                }
+                action.accept(mapper.map(rs));
+                return true;
+            } catch (SQLException e) {
+                close();
+                throw new DataAccessException("Error reading row: " + e.getMessage(), e);
+            }
+        }
+
+        void close() {
+            if (!closed) {
+                closed = true;
+                closeQuietly(rs, stmt, conn);
+            }
+        }
+    }
+}
+
+/**
+ * The PageFilter class holds optional conditions for the paged DAO listings. Each condition
+ * becomes an {@code AND} clause with a bound parameter. Column names are checked by the DAO
+ * against the columns of its table before any SQL is built.
+ *
+ * The in-memory backend evaluates the same conditions directly against its rows with
+ * {@link #matches(Function)}, following MySQL's case-insensitive string comparison.
+ */
+class PageFilter {
+    private final List<String> columns = new ArrayList<>();
+    private final List<String> clauses = new ArrayList<>();
+    private final List<Object> params = new ArrayList<>();
+    private final List<Predicate<Object>> tests = new ArrayList<>();
+
+    /**
+     * Keeps only rows whose column equals the given value.
+     *
+     * @param column The column to compare
+     * @param value The value to match (String or Integer)
+     * @return This filter, for chaining
+     */
+    public PageFilter equalTo(String column, Object value) {
+        return add(column, column + " = ?", value, v -> sameValue(v, value));
+    }
+
+    /**
+     * Keeps only rows whose column starts with the given prefix.
+     *
+     * @param column The column to compare
+     * @param prefix The prefix to match; LIKE wildcards in it are matched literally
+     * @return This filter, for chaining
+     */
+    public PageFilter startsWith(String column, String prefix) {
+        String escaped = prefix.replace("\\", "\\\\").replace("%", "\\%").replace("_", "\\_");
+        return add(column, column + " LIKE ?", escaped + "%",
+                v -> v != null && String.valueOf(v).regionMatches(true, 0, prefix, 0, prefix.length()));
+    }
+
+    /**
+     * Keeps only rows whose numeric column lies between the bounds, inclusive.
+     *
+     * @param column The column to compare
+     * @param low The lower bound
+     * @param high The upper bound
+     * @return This filter, for chaining
+     */
+    public PageFilter between(String column, int low, int high) {
+        add(column, column + " >= ?", low, v -> {
+            Long n = toLong(v);
+            return n != null && n >= low;
+        });
+        return add(column, column + " <= ?", high, v -> {
+            Long n = toLong(v);
+            return n != null && n <= high;
+        });
+    }
+
+    /**
+     * Keeps only rows where the column is not NULL.
+     *
+     * @param column The column to check
+     * @return This filter, for chaining
+     */
+    public PageFilter isNotNull(String column) {
+        columns.add(column);
+        clauses.add(column + " IS NOT NULL");
+        tests.add(v -> v != null);
+        return this;
+    }
+
+    private PageFilter add(String column, String clause, Object param, Predicate<Object> test) {
+        columns.add(column);
+        clauses.add(clause);
+        params.add(param);
+        tests.add(test);
+        return this;
+    }
+
+    /**
+     * Appends the filter's clauses to a WHERE clause.
+     *
+     * @param sql The SQL being built, which must already contain a WHERE clause
+     * @param allowedColumns The columns that may be filtered on
+     * @throws IllegalArgumentException if a condition uses a column that is not allowed
+     */
+    void appendTo(StringBuilder sql, Set<String> allowedColumns) {
+        checkColumns(allowedColumns);
+        for (String clause : clauses) {
+            sql.append(" AND ").append(clause);
+        }
+    }
+
+    /**
+     * Checks that every condition uses a column that may be filtered on.
+     *
+     * @param allowedColumns The columns that may be filtered on
+     * @throws IllegalArgumentException if a condition uses a column that is not allowed
+     */
+    void checkColumns(Set<String> allowedColumns) {
+        for (String column : columns) {
+            if (!allowedColumns.contains(column)) {
+                throw new IllegalArgumentException("Cannot filter on column: " + column);
+            }
+        }
+    }
+
+    /**
+     * Evaluates the filter against a row held in memory.
+     *
+     * @param columnValue Returns the value of the named column of the row
+     * @return true if the row satisfies every condition
+     */
+    boolean matches(Function<String, Object> columnValue) {
+        for (int i = 0; i < tests.size(); i++) {
+            if (!tests.get(i).test(columnValue.apply(columns.get(i)))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean sameValue(Object a, Object b) {
+        if (a == null || b == null) {
+            return false;
+        }
+        Long x = toLong(a);
+        Long y = toLong(b);
+        if (x != null && y != null) {
+            return x.longValue() == y.longValue();
+        }
+        return String.valueOf(a).equalsIgnoreCase(String.valueOf(b));
+    }
+
+    private static Long toLong(Object value) {
+        if (value instanceof Number) {
+            return ((Number) value).longValue();
+        }
+        if (value instanceof String) {
+            try {
+                return Long.parseLong(((String) value).trim());
+            } catch (NumberFormatException e) {
+                return null;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Binds the filter's parameters, starting at the given index.
+     *
+     * @return The next free parameter index
+     */
+    int bind(PreparedStatement stmt, int index) throws SQLException {
+        for (Object param : params) {
+            stmt.setObject(index++, param);
+        }
+        return index;
+    }
+}
+
+/**
+ * The Page class holds one page of a keyset-paginated listing, together with
+ * the key to pass as {@code afterID} to fetch the next page.
+ *
+ * @param <T> The type of row on the page
+ */
+class Page<T> {
+    private final List<T> rows;
+    private final int lastID;
+    private final boolean hasMore;
+
+    Page(List<T> rows, int lastID, boolean hasMore) {
+        this.rows = rows;
+        this.lastID = lastID;
+        this.hasMore = hasMore;
+    }
+
+    /** @return The rows on this page, in ascending key order */
+    public List<T> getRows() {
+        return rows;
+    }
+
+    /** @return The key of the last row on this page, to pass as afterID for the next page */
+    public int getLastID() {
+        return lastID;
+    }
+
+    /** @return true if there are more rows after this page */
+    public boolean hasMore() {
+        return hasMore;
+    }
+
+    /**
+     * Converts the rows of this page, keeping its position in the listing.
+     * The Swing tables use this with the records' {@code toRow()} adapters.
+     *
+     * @param converter Converts each row
+     * @param <R> The type of the converted rows
+     * @return A page with the converted rows
+     */
+    public <R> Page<R> map(Function<? super T, ? extends R> converter) {
+        List<R> converted = new ArrayList<>(rows.size());
+        for (T row : rows) {
+            converted.add(converter.apply(row));
+        }
+        return new Page<>(converted, lastID, hasMore);
+    }
+
+    /**
+     * Runs a keyset query: rows whose key is greater than {@code afterID}, in key order,
+     * limited to one page. One extra row is fetched to find out whether another page exists.
+     * Because the query seeks on the primary key index instead of using OFFSET, the cost of
+     * a page does not depend on how deep into the table it is.
+     *
+     * @param select The SELECT ... FROM part of the query
+     * @param keyColumn The primary key column to seek and order on
+     * @param afterID Only rows with a key greater than this are returned; use 0 for the first page
+     * @param limit The maximum number of rows on the page
+     * @param filter Optional extra conditions, or null
+     * @param allowedColumns The columns the filter may use
+     * @param mapper Maps each row
+     * @param <T> The type of row on the page
+     * @return The requested page
+     * @throws SQLException if the query fails
+     */
+    static <T> Page<T> fetch(String select, String keyColumn, int afterID, int limit, PageFilter filter,
+            Set<String> allowedColumns, RowMapper<T> mapper) throws SQLException {
+        if (limit < 1) {
+            throw new IllegalArgumentException("Page size must be positive: " + limit);
+        }
+        StringBuilder sql = new StringBuilder(select).append(" WHERE ").append(keyColumn).append(" > ?");
+        if (filter != null) {
+            filter.appendTo(sql, allowedColumns);
+        }
+        sql.append(" ORDER BY ").append(keyColumn).append(" LIMIT ?");
+
+        List<T> rows = new ArrayList<>(limit);
+        int lastID = afterID;
+        boolean hasMore = false;
+
+        try (Connection conn = DBConnection.getPool().borrow();
+             PreparedStatement stmt = conn.prepareStatement(sql.toString())) {
+
+            int index = 1;
+            stmt.setInt(index++, afterID);
+            if (filter != null) {
+                index = filter.bind(stmt, index);
+            }
+            stmt.setInt(index, limit + 1);
+
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    if (rows.size() == limit) {
+                        hasMore = true;
+                        break;
+                    }
+                    lastID = rs.getInt(keyColumn);
+                    rows.add(mapper.map(rs));
+                }
+            }
+        }
+
+        return new Page<>(rows, lastID, hasMore);
+    }
+}
+
+/**
+ * The IntLruCache class is a bounded, thread-safe cache keyed by primitive int IDs.
+ * Entries are evicted in least-recently-used order once the cache is full and expire
+ * after a fixed time to live.
+ *
+ * The cache is split into segments, each with its own lock, hash table and LRU list, so
+ * lookups for different IDs rarely contend. Keys are stored as plain ints, so a lookup
+ * does not allocate.
+ *
+ * @param <V> The type of cached value
+ */
+class IntLruCache<V> {
+    private static final int SEGMENT_BITS = 4;
+    private static final int SEGMENT_COUNT = 1 << SEGMENT_BITS;
+
+    private final Segment<V>[] segments;
+    private final long ttlNanos;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    /**
+     * Creates a cache.
+     *
+     * @param maxSize The maximum number of entries held
+     * @param ttlMillis How long an entry stays valid after it is loaded
+     */
+    IntLruCache(int maxSize, long ttlMillis) {
+        if (maxSize < 1) {
+            throw new IllegalArgumentException("Cache size must be positive: " + maxSize);
+        }
+        this.ttlNanos = TimeUnit.MILLISECONDS.toNanos(ttlMillis);
+        this.segments = newSegments(SEGMENT_COUNT);
+        int perSegment = Math.max(1, (maxSize + SEGMENT_COUNT - 1) / SEGMENT_COUNT);
+        for (int i = 0; i < SEGMENT_COUNT; i++) {
+            segments[i] = new Segment<>(perSegment);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <V> Segment<V>[] newSegments(int count) {
+        return (Segment<V>[]) new Segment<?>[count];
+    }
+
+    private Segment<V> segmentFor(int key) {
+        // Fibonacci hashing: the top bits spread sequential IDs evenly over the segments
+        return segments[(key * 0x9E3779B9) >>> (32 - SEGMENT_BITS)];
+    }
+
+    /**
+     * Returns the cached value for the key, or loads and caches it on a miss.
+     * A null result from the loader is returned but not cached. If the key is
+     * invalidated while the loader runs, the loaded value is returned but not cached,
+     * so a concurrent update can never be overwritten by stale data.
+     *
+     * @param key The ID to look up
+     * @param loader Loads the value on a miss
+     * @return The cached or loaded value, or null
+     */
+    V getOrLoad(int key, IntFunction<V> loader) {
+        Segment<V> segment = segmentFor(key);
+        long now = System.nanoTime();
+        long stamp;
+        synchronized (segment) {
+            V value = segment.get(key, now, evictions);
+            if (value != null) {
+                hits.increment();
+                return value;
+            }
+            stamp = segment.invalidations;
+        }
+        misses.increment();
+        V loaded = loader.apply(key);
+        if (loaded != null) {
+            synchronized (segment) {
+                if (segment.invalidations == stamp) {
+                    segment.put(key, loaded, System.nanoTime() + ttlNanos, evictions);
+                }
+            }
+        }
+        return loaded;
+    }
+
+    /**
+     * Removes the entry for the key, if present.
+     *
+     * @param key The ID to invalidate
+     */
+    void invalidate(int key) {
+        Segment<V> segment = segmentFor(key);
+        synchronized (segment) {
+            segment.invalidations++;
+            segment.remove(key);
+        }
+    }
+
+    /**
+     * Removes every entry.
+     */
+    void clear() {
+        for (Segment<V> segment : segments) {
+            synchronized (segment) {
+                segment.invalidations++;
+                segment.clear();
+            }
+        }
+    }
+
+    /** @return The number of entries currently cached */
+    int size() {
+        int size = 0;
+        for (Segment<V> segment : segments) {
+            synchronized (segment) {
+                size += segment.size;
+            }
+        }
+        return size;
+    }
+
+    /** @return The number of lookups served from the cache */
+    long getHitCount() {
+        return hits.sum();
+    }
+
+    /** @return The number of lookups that had to call the loader */
+    long getMissCount() {
+        return misses.sum();
+    }
+
+    /** @return The number of entries dropped because the cache was full or they expired */
+    long getEvictionCount() {
+        return evictions.sum();
+    }
+
+    /**
+     * Builds a one-line summary of the cache's size and counters.
+     *
+     * @return A human-readable statistics string
+     */
+    String getStats() {
+        long h = hits.sum();
+        long m = misses.sum();
+        double hitRate = h + m == 0 ? 0 : 100.0 * h / (h + m);
+        return String.format("size=%d hits=%d misses=%d hitRate=%.1f%% evictions=%d",
+                size(), h, m, hitRate, evictions.sum());
+    }
+
+    /**
+     * One cache segment: a chained hash table of int keys plus an LRU list.
+     * All access is synchronized on the segment.
+     */
+    private static final class Segment<V> {
+        private final int capacity;
+        private Node<V>[] table;
+        private int size = 0;
+        private long invalidations = 0;
+        /** Most recently used entry */
+        private Node<V> head;
+        /** Least recently used entry */
+        private Node<V> tail;
+
+        Segment(int capacity) {
+            this.capacity = capacity;
+            int buckets = Integer.highestOneBit(Math.max(2, capacity * 4 / 3) - 1) << 1;
+            this.table = newTable(buckets);
+        }
+
+        @SuppressWarnings("unchecked")
+        private static <V> Node<V>[] newTable(int buckets) {
+            return (Node<V>[]) new Node<?>[buckets];
+        }
+
+        private int index(int key) {
+            int h = key ^ (key >>> 16);
+            return h & (table.length - 1);
+        }
+
+        private Node<V> find(int key) {
+            Node<V> n = table[index(key)];
+            while (n != null && n.key != key) {
+                n = n.chain;
+            }
+            return n;
+        }
+
+        V get(int key, long now, LongAdder evictions) {
+            Node<V> n = find(key);
+            if (n == null) {
+                return null;
+            }
+            if (now - n.expiresAt > 0) {
+                unlink(n);
+                evictions.increment();
+                return null;
+            }
+            moveToHead(n);
+            return n.value;
+        }
+
+        void put(int key, V value, long expiresAt, LongAdder evictions) {
+            Node<V> n = find(key);
+            if (n != null) {
+                n.value = value;
+                n.expiresAt = expiresAt;
+                moveToHead(n);
+                return;
+            }
+            if (size >= capacity) {
+                unlink(tail);
+                evictions.increment();
+            }
+            n = new Node<>(key, value, expiresAt);
+            int i = index(key);
+            n.chain = table[i];
+            table[i] = n;
+            n.next = head;
+            if (head != null) {
+                head.prev = n;
+            }
+            head = n;
+            if (tail == null) {
+                tail = n;
+            }
+            size++;
+        }
+
+        void remove(int key) {
+            Node<V> n = find(key);
+            if (n != null) {
+                unlink(n);
+            }
+        }
+
+        void clear() {
+            Arrays.fill(table, null);
+            head = null;
+            tail = null;
+            size = 0;
+        }
+
+        private void moveToHead(Node<V> n) {
+            if (n == head) {
+                return;
+            }
+            n.prev.next = n.next;
+            if (n.next != null) {
+                n.next.prev = n.prev;
+            } else {
+                tail = n.prev;
+            }
+            n.prev = null;
+            n.next = head;
+            head.prev = n;
+            head = n;
+        }
+
+        private void unlink(Node<V> n) {
+            int i = index(n.key);
+            if (table[i] == n) {
+                table[i] = n.chain;
+            } else {
+                Node<V> p = table[i];
+                while (p.chain != n) {
+                    p = p.chain;
+                }
+                p.chain = n.chain;
+            }
+            if (n.prev != null) {
+                n.prev.next = n.next;
+            } else {
+                head = n.next;
+            }
+            if (n.next != null) {
+                n.next.prev = n.prev;
+            } else {
+                tail = n.prev;
+            }
+            n.prev = null;
+            n.next = null;
+            n.chain = null;
+            size--;
+        }
+    }
+
+    private static final class Node<V> {
+        final int key;
+        V value;
+        long expiresAt;
+        Node<V> chain;
+        Node<V> prev;
+        Node<V> next;
+
+        Node(int key, V value, long expiresAt) {
+            this.key = key;
+            this.value = value;
+            this.expiresAt = expiresAt;
+        }
+    }
+}
+
+/**
+ * The IntTable class is a thread-safe map from primitive int keys to values, kept in key
+ * order. It backs the in-memory repositories.
+ *
+ * Keys and values are held in two parallel sorted arrays, so a lookup is a binary search
+ * that does not box the key, and a keyset page is a binary search followed by a sequential
+ * scan. Reads share a read lock and writes take the write lock. Keys inserted in ascending
+ * order, as ID sequences are, are appended without moving any existing entries.
+ *
+ * @param <V> The type of value
+ */
+class IntTable<V> {
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private int[] keys = new int[16];
+    private Object[] values = new Object[16];
+    private int size = 0;
+
+    /**
+     * Gets the value stored for a key.
+     *
+     * @param key The key to look up
+     * @return The value, or null if the key is not present
+     */
+    @SuppressWarnings("unchecked")
+    V get(int key) {
+        lock.readLock().lock();
+        try {
+            int i = Arrays.binarySearch(keys, 0, size, key);
+            return i >= 0 ? (V) values[i] : null;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Stores a value for a key that is not present yet.
+     *
+     * @param key The key to store
+     * @param value The value to store
+     * @return true if the value was stored, false if the key was already present
+     */
+    boolean putIfAbsent(int key, V value) {
+        lock.writeLock().lock();
+        try {
+            int i = size > 0 && keys[size - 1] < key ? -(size + 1) : Arrays.binarySearch(keys, 0, size, key);
+            if (i >= 0) {
+                return false;
+            }
+            int at = -(i + 1);
+            if (size == keys.length) {
+                keys = Arrays.copyOf(keys, size * 2);
+                values = Arrays.copyOf(values, size * 2);
+            }
+            System.arraycopy(keys, at, keys, at + 1, size - at);
+            System.arraycopy(values, at, values, at + 1, size - at);
+            keys[at] = key;
+            values[at] = value;
+            size++;
+            return true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Replaces the value stored for a key that is already present.
+     *
+     * @param key The key to update
+     * @param value The new value
+     * @return true if the value was replaced, false if the key is not present
+     */
+    boolean replace(int key, V value) {
+        lock.writeLock().lock();
+        try {
+            int i = Arrays.binarySearch(keys, 0, size, key);
+            if (i < 0) {
+                return false;
+            }
+            values[i] = value;
+            return true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Removes a key and its value.
+     *
+     * @param key The key to remove
+     * @return The removed value, or null if the key was not present
+     */
+    @SuppressWarnings("unchecked")
+    V remove(int key) {
+        lock.writeLock().lock();
+        try {
+            int i = Arrays.binarySearch(keys, 0, size, key);
+            if (i < 0) {
+                return null;
+            }
+            V old = (V) values[i];
+            System.arraycopy(keys, i + 1, keys, i, size - i - 1);
+            System.arraycopy(values, i + 1, values, i, size - i - 1);
+            values[--size] = null;
+            return old;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * @return The number of keys in the table
+     */
+    int size() {
+        lock.readLock().lock();
+        try {
+            return size;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Copies all values, in key order.
+     *
+     * @return A new list with every value in the table
+     */
+    @SuppressWarnings("unchecked")
+    List<V> values() {
+        lock.readLock().lock();
+        try {
+            List<V> copy = new ArrayList<>(size);
+            for (int i = 0; i < size; i++) {
+                copy.add((V) values[i]);
+            }
+            return copy;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Reads one keyset page: the values whose key is greater than {@code afterKey}, in key
+     * order, skipping values that fail the filter.
+     *
+     * @param afterKey Only keys greater than this are returned; use 0 for the first page
+     * @param limit The maximum number of values on the page
+     * @param filter Keeps only matching values, or null to keep all
+     * @return The requested page
+     */
+    @SuppressWarnings("unchecked")
+    Page<V> page(int afterKey, int limit, Predicate<? super V> filter) {
+        if (limit < 1) {
+            throw new IllegalArgumentException("Page size must be positive: " + limit);
+        }
+        List<V> rows = new ArrayList<>(Math.min(limit, 1024));
+        int lastID = afterKey;
+        lock.readLock().lock();
+        try {
+            int i = Arrays.binarySearch(keys, 0, size, afterKey);
+            i = i >= 0 ? i + 1 : -(i + 1);
+            for (; i < size; i++) {
+                V value = (V) values[i];
+                if (filter != null && !filter.test(value)) {
+                    continue;
+                }
+                if (rows.size() == limit) {
+                    return new Page<>(rows, lastID, true);
+                }
+                rows.add(value);
+                lastID = keys[i];
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        return new Page<>(rows, lastID, false);
+    }
+}
+
+/**
+ * The PilgrimNameIndex class answers type-ahead searches over pilgrim names from memory,
+ * in place of {@code LIKE 'prefix%'} scans on the Pilgrim table. A search returns the
+ * pilgrims whose name starts with the typed text, in name order.
+ *
+ * Names are compared in a normalized form so that admins can type them the way they
+ * would say them: case, Latin accents, Arabic diacritics and tatweel are ignored, the
+ * alef, yeh and teh marbuta variants are folded together, Arabic-Indic digits count as
+ * their ASCII digits and punctuation counts as a space.
+ *
+ * The bulk of the index is a sorted array of names that is searched by binary search.
+ * Creates, updates and deletes go to a small sorted overlay that takes precedence over
+ * the array for the IDs it holds; once the overlay grows past a fraction of the array,
+ * the two are merged into a new array. Each name's normalized form is kept alongside it,
+ * so a search compares keys without normalizing names again.
+ */
+class PilgrimNameIndex {
+    /** The fewest pending changes that trigger a merge into the sorted array */
+    private static final int MIN_COMPACT_THRESHOLD = 4096;
+
+    /** Orders entries by normalized name, then by PilgrimID */
+    private static final Comparator<Entry> ORDER =
+            Comparator.comparing(Entry::key).thenComparingInt(Entry::pilgrimID);
+
+    /** Marks a PilgrimID whose pilgrim has been deleted */
+    private static final Entry REMOVED = new Entry("", 0, null);
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    /** Normalized names in index order, with the name and PilgrimID of each at the same position */
+    private String[] keys = new String[0];
+    private String[] names = new String[0];
+    private int[] ids = new int[0];
+
+    /** The current entry for every PilgrimID changed since the array was built, or REMOVED */
+    private final Map<Integer, Entry> changes = new HashMap<>();
+
+    /** The live entries of {@link #changes}, in index order */
+    private final TreeSet<Entry> overlay = new TreeSet<>(ORDER);
+
+    private volatile boolean loaded = false;
+    private long compactions = 0;
+
+    /**
+     * A pilgrim whose name matched a search.
+     */
+    record Match(int pilgrimID, String pilgrimName) {
+    }
+
+    /**
+     * A name together with its normalized form.
+     */
+    private record Entry(String key, int pilgrimID, String pilgrimName) {
+    }
+
+    /**
+     * Replaces the contents of the index with the given pilgrims. Changes made with
+     * {@link #put(int, String)} and {@link #remove(int)} while the pilgrims were being
+     * read still take precedence, so a load can run alongside normal use.
+     *
+     * @param pilgrims Every pilgrim's ID and name
+     */
+    void load(Collection<Match> pilgrims) {
+        Entry[] entries = new Entry[pilgrims.size()];
+        int n = 0;
+        for (Match m : pilgrims) {
+            if (m.pilgrimName() != null) {
+                entries[n++] = new Entry(normalize(m.pilgrimName()), m.pilgrimID(), m.pilgrimName());
+            }
+        }
+        Arrays.parallelSort(entries, 0, n, ORDER);
+        String[] newKeys = new String[n];
+        String[] newNames = new String[n];
+        int[] newIds = new int[n];
+        for (int i = 0; i < n; i++) {
+            newKeys[i] = entries[i].key();
+            newNames[i] = entries[i].pilgrimName();
+            newIds[i] = entries[i].pilgrimID();
+        }
+
+        lock.writeLock().lock();
+        try {
+            keys = newKeys;
+            names = newNames;
+            ids = newIds;
+            loaded = true;
+            compactIfNeeded();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * @return true once {@link #load(Collection)} has completed
+     */
+    boolean isLoaded() {
+        return loaded;
+    }
+
+    /**
+     * Adds a pilgrim to the index, or replaces the name of one already in it.
+     *
+     * @param pilgrimID The ID of the pilgrim
+     * @param pilgrimName The pilgrim's name; a null name removes the pilgrim
+     */
+    void put(int pilgrimID, String pilgrimName) {
+        if (pilgrimName == null) {
+            remove(pilgrimID);
+            return;
+        }
+        Entry entry = new Entry(normalize(pilgrimName), pilgrimID, pilgrimName);
+        lock.writeLock().lock();
+        try {
+            Entry old = changes.put(pilgrimID, entry);
+            if (old != null && old != REMOVED) {
+                overlay.remove(old);
+            }
+            overlay.add(entry);
+            compactIfNeeded();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Removes a pilgrim from the index. Removing a pilgrim that is not in the index has no effect.
+     *
+     * @param pilgrimID The ID of the pilgrim
+     */
+    void remove(int pilgrimID) {
+        lock.writeLock().lock();
+        try {
+            Entry old = changes.put(pilgrimID, REMOVED);
+            if (old != null && old != REMOVED) {
+                overlay.remove(old);
+            }
+            compactIfNeeded();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Finds the pilgrims whose normalized name starts with the normalized prefix.
+     *
+     * @param prefix The text typed so far
+     * @param limit The maximum number of matches to return
+     * @return Up to limit matches in name order; empty if the prefix has no letters or digits
+     */
+    List<Match> search(String prefix, int limit) {
+        String p = normalize(prefix);
+        if (p.isEmpty() || limit < 1) {
+            return Collections.emptyList();
+        }
+        List<Match> matches = new ArrayList<>(Math.min(limit, 64));
+
+        lock.readLock().lock();
+        try {
+            int i = lowerBound(p);
+            Iterator<Entry> pending = overlay.tailSet(new Entry(p, Integer.MIN_VALUE, null), true).iterator();
+            Entry next = nextMatching(pending, p);
+            String baseKey = null;
+
+            while (matches.size() < limit) {
+                // Skip array entries that the overlay has replaced or removed
+                while (baseKey == null && i < ids.length) {
+                    String key = keys[i];
+                    if (!key.startsWith(p)) {
+                        i = ids.length;
+                    } else if (changes.containsKey(ids[i])) {
+                        i++;
+                    } else {
+                        baseKey = key;
+                    }
+                }
+                if (baseKey == null && next == null) {
+                    break;
+                }
+                if (next == null || (baseKey != null && compare(baseKey, ids[i], next) <= 0)) {
+                    matches.add(new Match(ids[i], names[i]));
+                    baseKey = null;
+                    i++;
+                } else {
+                    matches.add(new Match(next.pilgrimID(), next.pilgrimName()));
+                    next = nextMatching(pending, p);
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        return matches;
+    }
+
+    /**
+     * @return The next overlay entry if it still starts with the prefix, otherwise null
+     */
+    private static Entry nextMatching(Iterator<Entry> pending, String prefix) {
+        if (pending.hasNext()) {
+            Entry e = pending.next();
+            if (e.key().startsWith(prefix)) {
+                return e;
+            }
+        }
+        return null;
+    }
+
+    private static int compare(String key, int pilgrimID, Entry e) {
+        int c = key.compareTo(e.key());
+        return c != 0 ? c : Integer.compare(pilgrimID, e.pilgrimID());
+    }
+
+    /**
+     * @return The position of the first array entry whose normalized name is not less than key
+     */
+    private int lowerBound(String key) {
+        int lo = 0;
+        int hi = ids.length;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (keys[mid].compareTo(key) < 0) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    /**
+     * @return The position of the first array entry that sorts after the given entry
+     */
+    private int insertionPoint(Entry e) {
+        int lo = 0;
+        int hi = ids.length;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (compare(keys[mid], ids[mid], e) <= 0) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    /**
+     * Merges the overlay into the sorted array once it has grown large enough that
+     * searches would spend noticeable time skipping over it. Must hold the write lock.
+     */
+    private void compactIfNeeded() {
+        if (changes.size() < Math.max(MIN_COMPACT_THRESHOLD, ids.length / 16)) {
+            return;
+        }
+        int capacity = ids.length + overlay.size();
+        String[] newKeys = new String[capacity];
+        String[] newNames = new String[capacity];
+        int[] newIds = new int[capacity];
+        int n = 0;
+
+        // Each overlay entry goes in front of the first array entry that sorts after it
+        int i = 0;
+        for (Entry e : overlay) {
+            int end = insertionPoint(e);
+            for (; i < end; i++) {
+                if (!changes.containsKey(ids[i])) {
+                    newKeys[n] = keys[i];
+                    newNames[n] = names[i];
+                    newIds[n++] = ids[i];
+                }
+            }
+            newKeys[n] = e.key();
+            newNames[n] = e.pilgrimName();
+            newIds[n++] = e.pilgrimID();
+        }
+        for (; i < ids.length; i++) {
+            if (!changes.containsKey(ids[i])) {
+                newKeys[n] = keys[i];
+                newNames[n] = names[i];
+                newIds[n++] = ids[i];
+            }
+        }
+
+        keys = n == capacity ? newKeys : Arrays.copyOf(newKeys, n);
+        names = n == capacity ? newNames : Arrays.copyOf(newNames, n);
+        ids = n == capacity ? newIds : Arrays.copyOf(newIds, n);
+        changes.clear();
+        overlay.clear();
+        compactions++;
+    }
+
+    /**
+     * Builds a one-line summary of the index.
+     *
+     * @return A human-readable statistics string
+     */
+    String getStats() {
+        lock.readLock().lock();
+        try {
+            return String.format("loaded=%s names=%d pendingChanges=%d compactions=%d",
+                    loaded, ids.length, changes.size(), compactions);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Puts a name into the form used for searching. Letters are lowercased and stripped of
+     * accents and Arabic diacritics, Arabic letter variants are folded to one form, digits
+     * become ASCII digits and any run of other characters becomes a single space.
+     *
+     * @param name The name or typed prefix
+     * @return The normalized text, with no leading or trailing space
+     */
+    static String normalize(String name) {
+        if (name == null) {
+            return "";
+        }
+        // ASCII and the basic Arabic block are handled below; only other text needs decomposing
+        boolean decompose = false;
+        for (int i = 0; i < name.length() && !decompose; i++) {
+            char c = name.charAt(i);
+            decompose = c >= 0x80 && (c < 0x0600 || c > 0x06FF);
+        }
+        String text = decompose ? Normalizer.normalize(name, Normalizer.Form.NFKD) : name;
+
+        StringBuilder sb = new StringBuilder(text.length());
+        boolean pendingSpace = false;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            int type = Character.getType(c);
+            if (type == Character.NON_SPACING_MARK || type == Character.ENCLOSING_MARK
+                    || type == Character.COMBINING_SPACING_MARK || c == '\u0640') {
+                continue; // accents, harakat and tatweel
+            }
+            char folded = foldArabic(c);
+            if (Character.isDigit(folded)) {
+                folded = (char) ('0' + Character.digit(folded, 10));
+            } else if (Character.isLetter(folded)) {
+                folded = Character.toLowerCase(folded);
+            } else {
+                pendingSpace = sb.length() > 0;
+                continue;
+            }
+            if (pendingSpace) {
+                sb.append(' ');
+                pendingSpace = false;
+            }
+            sb.append(folded);
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Folds Arabic letters that are commonly written interchangeably in names,
+     * dropping the hamza or madda that a letter carries.
+     */
+    private static char foldArabic(char c) {
+        switch (c) {
+            case '\u0622': // alef with madda
+            case '\u0623': // alef with hamza above
+            case '\u0625': // alef with hamza below
+            case '\u0671': // alef wasla
+                return '\u0627'; // alef
+            case '\u0624': // waw with hamza
+                return '\u0648'; // waw
+            case '\u0629': // teh marbuta
+                return '\u0647'; // heh
+            case '\u0626': // yeh with hamza
+            case '\u0649': // alef maksura
+            case '\u06CC': // farsi yeh
+                return '\u064A'; // yeh
+            case '\u06A9': // keheh
+                return '\u0643'; // kaf
+            default:
+                return c;
+        }
+    }
+}
+
+/**
+ * The SpatialIndex class answers "what is near this point" for hotels, clinics and other
+ * service points from memory. Points are kept in a grid of square cells a fixed number of
+ * degrees wide. A nearest-N search visits the cells in rings around the query point and
+ * stops once no unvisited cell can hold anything nearer than the N found so far; a radius
+ * search visits only the cells that overlap the circle. Points are added one at a time, so
+ * the index is kept current by the DAOs' writes instead of being rebuilt.
+ *
+ * Distances are great-circle distances in metres. The grid does not wrap around the
+ * antimeridian, which no Hajj site is near.
+ *
+ * @param <T> The type of item located
+ */
+class SpatialIndex<T> {
+    /** The default cell size, set with {@code hajjguide.geo.cellDegrees}; 0.01 degrees is about 1.1 km */
+    static final double DEFAULT_CELL_DEGREES = Double.parseDouble(System.getProperty("hajjguide.geo.cellDegrees", "0.01"));
+
+    private static final double EARTH_RADIUS_METERS = 6371008.8;
+    private static final double METERS_PER_DEGREE = EARTH_RADIUS_METERS * Math.PI / 180;
+
+    /**
+     * An item found by a search.
+     *
+     * @param item The item
+     * @param distanceMeters Its distance from the query point
+     * @param <T> The type of item
+     */
+    record Hit<T>(T item, double distanceMeters) {
+    }
+
+    /**
+     * An indexed item with its position.
+     */
+    private record Point<T>(T item, double latitude, double longitude, long cell) {
+    }
+
+    private final ToIntFunction<T> idOf;
+    private final ToDoubleFunction<T> latitudeOf;
+    private final ToDoubleFunction<T> longitudeOf;
+    private final double cellDegrees;
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    /** Every indexed item by ID, and the items of each occupied cell */
+    private final Map<Integer, Point<T>> points = new HashMap<>();
+    private final Map<Long, List<Point<T>>> cells = new HashMap<>();
+
+    /** The rows and columns of every cell that has been occupied; they only grow */
+    private int minRow = Integer.MAX_VALUE;
+    private int maxRow = Integer.MIN_VALUE;
+    private int minCol = Integer.MAX_VALUE;
+    private int maxCol = Integer.MIN_VALUE;
+
+    private volatile boolean loaded = false;
+    private final LongAdder searches = new LongAdder();
+    private final LongAdder cellsVisited = new LongAdder();
+
+    /**
+     * Creates an empty index.
+     *
+     * @param idOf Gives an item's unique ID
+     * @param latitudeOf Gives an item's latitude, or NaN if its location is unknown
+     * @param longitudeOf Gives an item's longitude, or NaN if its location is unknown
+     * @param cellDegrees The width and height of a grid cell in degrees
+     */
+    SpatialIndex(ToIntFunction<T> idOf, ToDoubleFunction<T> latitudeOf, ToDoubleFunction<T> longitudeOf,
+            double cellDegrees) {
+        if (!(cellDegrees > 0 && cellDegrees <= 10)) {
+            throw new IllegalArgumentException("Cell size must be between 0 and 10 degrees: " + cellDegrees);
+        }
+        this.idOf = idOf;
+        this.latitudeOf = latitudeOf;
+        this.longitudeOf = longitudeOf;
+        this.cellDegrees = cellDegrees;
+    }
+
+    /**
+     * Adds the given items to the index. Items added with {@link #put(Object)} while they
+     * were being read are newer and keep their place, so a load can run alongside normal use.
+     *
+     * @param items The items to index; those without a location are skipped
+     */
+    void load(Collection<T> items) {
+        lock.writeLock().lock();
+        try {
+            for (T item : items) {
+                if (!points.containsKey(idOf.applyAsInt(item))) {
+                    add(item);
+                }
+            }
+            loaded = true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * @return true once {@link #load(Collection)} has completed
+     */
+    boolean isLoaded() {
+        return loaded;
+    }
+
+    /**
+     * Adds an item to the index, or moves one already in it.
+     *
+     * @param item The item
+     * @return true if the item was indexed, false if it has no location and was removed instead
+     * @throws IllegalArgumentException if the item's coordinates are out of range
+     */
+    boolean put(T item) {
+        lock.writeLock().lock();
+        try {
+            remove(idOf.applyAsInt(item));
+            return add(item);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Removes an item from the index. Removing an item that is not in the index has no effect.
+     *
+     * @param id The ID of the item
+     */
+    void remove(int id) {
+        lock.writeLock().lock();
+        try {
+            Point<T> old = points.remove(id);
+            if (old != null) {
+                List<Point<T>> cell = cells.get(old.cell());
+                cell.remove(old);
+                if (cell.isEmpty()) {
+                    cells.remove(old.cell());
+                }
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Indexes an item that is not in the index yet. Must hold the write lock.
+     */
+    private boolean add(T item) {
+        double latitude = latitudeOf.applyAsDouble(item);
+        double longitude = longitudeOf.applyAsDouble(item);
+        if (Double.isNaN(latitude) || Double.isNaN(longitude)) {
+            return false;
+        }
+        checkCoordinates(latitude, longitude);
+        int row = row(latitude);
+        int col = col(longitude);
+        Point<T> point = new Point<>(item, latitude, longitude, cellKey(row, col));
+        points.put(idOf.applyAsInt(item), point);
+        cells.computeIfAbsent(point.cell(), c -> new ArrayList<>(4)).add(point);
+        minRow = Math.min(minRow, row);
+        maxRow = Math.max(maxRow, row);
+        minCol = Math.min(minCol, col);
+        maxCol = Math.max(maxCol, col);
+        return true;
+    }
+
+    /**
+     * Finds the items nearest to a point.
+     *
+     * @param latitude The latitude of the point
+     * @param longitude The longitude of the point
+     * @param limit The maximum number of items to return
+     * @param filter Selects the items to consider, or null for all of them
+     * @return Up to limit items, nearest first
+     */
+    List<Hit<T>> nearest(double latitude, double longitude, int limit, Predicate<? super T> filter) {
+        checkCoordinates(latitude, longitude);
+        if (limit < 1) {
+            return Collections.emptyList();
+        }
+        searches.increment();
+        // The limit nearest so far, farthest on top
+        PriorityQueue<Hit<T>> best = new PriorityQueue<>(Math.min(limit, 64),
+                Comparator.comparingDouble((Hit<T> h) -> h.distanceMeters()).reversed());
+
+        lock.readLock().lock();
+        try {
+            if (points.isEmpty()) {
+                return Collections.emptyList();
+            }
+            int row = row(latitude);
+            int col = col(longitude);
+            int firstRing = Math.max(Math.max(minRow - row, row - maxRow), Math.max(minCol - col, col - maxCol));
+            int lastRing = Math.max(Math.max(row - minRow, maxRow - row), Math.max(col - minCol, maxCol - col));
+            double ringMeters = minCellMeters();
+            long visited = 0;
+
+            for (int ring = Math.max(0, firstRing); ring <= lastRing; ring++) {
+                // Everything in this ring or beyond is at least ring - 1 whole cells away
+                if (best.size() == limit && best.peek().distanceMeters() < (ring - 1) * ringMeters) {
+                    break;
+                }
+                if (visited > points.size()) {
+                    // Sparse points far apart: checking every point is cheaper than walking empty cells
+                    best.clear();
+                    for (Point<T> p : points.values()) {
+                        offer(best, limit, p, latitude, longitude, filter);
+                    }
+                    break;
+                }
+                for (int r = Math.max(row - ring, minRow); r <= Math.min(row + ring, maxRow); r++) {
+                    boolean edgeRow = Math.abs(r - row) == ring;
+                    int step = edgeRow ? 1 : 2 * ring;
+                    for (int c = col - ring; c <= col + ring; c += step) {
+                        if (c < minCol || c > maxCol) {
+                            continue;
+                        }
+                        visited++;
+                        List<Point<T>> cell = cells.get(cellKey(r, c));
+                        if (cell != null) {
+                            for (Point<T> p : cell) {
+                                offer(best, limit, p, latitude, longitude, filter);
+                            }
+                        }
+                    }
+                }
+            }
+            cellsVisited.add(visited);
+        } finally {
+            lock.readLock().unlock();
+        }
+
+        List<Hit<T>> hits = new ArrayList<>(best);
+        hits.sort(Comparator.comparingDouble(Hit::distanceMeters));
+        return hits;
+    }
+
+    /**
+     * Finds every item within a distance of a point.
+     *
+     * @param latitude The latitude of the point
+     * @param longitude The longitude of the point
+     * @param radiusMeters The distance
+     * @param filter Selects the items to consider, or null for all of them
+     * @return The items, nearest first
+     */
+    List<Hit<T>> within(double latitude, double longitude, double radiusMeters, Predicate<? super T> filter) {
+        checkCoordinates(latitude, longitude);
+        if (!(radiusMeters >= 0)) {
+            throw new IllegalArgumentException("Radius must not be negative: " + radiusMeters);
+        }
+        searches.increment();
+        List<Hit<T>> hits = new ArrayList<>();
+
+        lock.readLock().lock();
+        try {
+            double latitudeSpan = radiusMeters / METERS_PER_DEGREE;
+            double widest = Math.min(89.9, Math.abs(latitude) + latitudeSpan);
+            double longitudeSpan = latitudeSpan / Math.cos(Math.toRadians(widest));
+            int fromRow = Math.max(minRow, row(Math.max(-90, latitude - latitudeSpan)));
+            int toRow = Math.min(maxRow, row(Math.min(90, latitude + latitudeSpan)));
+            int fromCol = Math.max(minCol, col(Math.max(-180, longitude - longitudeSpan)));
+            int toCol = Math.min(maxCol, col(Math.min(180, longitude + longitudeSpan)));
+
+            if (fromRow > toRow || fromCol > toCol) {
+                return hits;
+            }
+            if ((long) (toRow - fromRow + 1) * (toCol - fromCol + 1) > points.size()) {
+                // The circle covers more cells than there are points
+                for (Point<T> p : points.values()) {
+                    addIfWithin(hits, p, latitude, longitude, radiusMeters, filter);
+                }
+            } else {
+                for (int r = fromRow; r <= toRow; r++) {
+                    for (int c = fromCol; c <= toCol; c++) {
+                        List<Point<T>> cell = cells.get(cellKey(r, c));
+                        if (cell != null) {
+                            for (Point<T> p : cell) {
+                                addIfWithin(hits, p, latitude, longitude, radiusMeters, filter);
+                            }
+                        }
+                    }
+                }
+                cellsVisited.add((long) (toRow - fromRow + 1) * (toCol - fromCol + 1));
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+
+        hits.sort(Comparator.comparingDouble(Hit::distanceMeters));
+        return hits;
+    }
+
+    private static <T> void offer(PriorityQueue<Hit<T>> best, int limit, Point<T> p, double latitude,
+            double longitude, Predicate<? super T> filter) {
+        if (filter != null && !filter.test(p.item())) {
+            return;
+        }
+        double distance = distanceMeters(latitude, longitude, p.latitude(), p.longitude());
+        if (best.size() < limit) {
+            best.add(new Hit<>(p.item(), distance));
+        } else if (distance < best.peek().distanceMeters()) {
+            best.poll();
+            best.add(new Hit<>(p.item(), distance));
+        }
+    }
+
+    private static <T> void addIfWithin(List<Hit<T>> hits, Point<T> p, double latitude, double longitude,
+            double radiusMeters, Predicate<? super T> filter) {
+        if (filter == null || filter.test(p.item())) {
+            double distance = distanceMeters(latitude, longitude, p.latitude(), p.longitude());
+            if (distance <= radiusMeters) {
+                hits.add(new Hit<>(p.item(), distance));
+            }
+        }
+    }
+
+    /**
+     * @return The least width or height of an occupied cell, in metres. It is understated
+     *         by a few percent so that measuring along parallels never cuts a search short.
+     */
+    private double minCellMeters() {
+        double farthestFromEquator = Math.min(89.9, Math.max(Math.abs(minRow * cellDegrees),
+                Math.abs((maxRow + 1) * cellDegrees)));
+        return 0.95 * cellDegrees * METERS_PER_DEGREE * Math.cos(Math.toRadians(farthestFromEquator));
+    }
+
+    private int row(double latitude) {
+        return (int) Math.floor(latitude / cellDegrees);
+    }
+
+    private int col(double longitude) {
+        return (int) Math.floor(longitude / cellDegrees);
+    }
+
+    private static long cellKey(int row, int col) {
+        return ((long) row << 32) | (col & 0xFFFFFFFFL);
+    }
+
+    private static void checkCoordinates(double latitude, double longitude) {
+        if (!(latitude >= -90 && latitude <= 90 && longitude >= -180 && longitude <= 180)) {
+            throw new IllegalArgumentException("Invalid coordinates: " + latitude + ", " + longitude);
+        }
+    }
+
+    /**
+     * Works out the great-circle distance between two points with the haversine formula.
+     *
+     * @return The distance in metres
+     */
+    static double distanceMeters(double latitude1, double longitude1, double latitude2, double longitude2) {
+        double dLat = Math.toRadians(latitude2 - latitude1);
+        double dLon = Math.toRadians(longitude2 - longitude1);
+        double a = Math.sin(dLat / 2) * Math.sin(dLat / 2) + Math.cos(Math.toRadians(latitude1))
+                * Math.cos(Math.toRadians(latitude2)) * Math.sin(dLon / 2) * Math.sin(dLon / 2);
+        return 2 * EARTH_RADIUS_METERS * Math.asin(Math.min(1, Math.sqrt(a)));
+    }
+
+    /**
+     * Binds a coordinate to a statement parameter, as NULL if it is unknown.
+     */
+    static void setCoordinate(PreparedStatement stmt, int index, double value) throws SQLException {
+        if (Double.isNaN(value)) {
+            stmt.setNull(index, Types.DOUBLE);
+        } else {
+            stmt.setDouble(index, value);
+        }
+    }
+
+    /**
+     * Reads a coordinate column, giving NaN for NULL.
+     */
+    static double getCoordinate(ResultSet rs, String column) throws SQLException {
+        double value = rs.getDouble(column);
+        return rs.wasNull() ? Double.NaN : value;
+    }
+
+    /**
+     * @return The number of items in the index
+     */
+    int size() {
+        lock.readLock().lock();
+        try {
+            return points.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Builds a one-line summary of the index.
+     *
+     * @return A human-readable statistics string
+     */
+    String getStats() {
+        lock.readLock().lock();
+        try {
+            long n = searches.sum();
+            return String.format("loaded=%s points=%d cells=%d searches=%d cellsPerSearch=%.1f cellDegrees=%s",
+                    loaded, points.size(), cells.size(), n, n == 0 ? 0.0 : (double) cellsVisited.sum() / n, cellDegrees);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+}
+
+/**
+ * The LatencyHistogram class records call latencies into log-linear buckets, in the style of
+ * HdrHistogram: every power of two is split into 32 equal sub-buckets, so any recorded value
+ * is known to within about 3%, from one nanosecond up to the largest long.
+ *
+ * Recording is lock-free and does not allocate: it increments one slot of an atomic array
+ * and raises the maximum with a compare-and-set. Percentiles are computed from a copy of
+ * the buckets when a snapshot is taken.
+ */
+class LatencyHistogram {
+    private static final int SUB_BUCKET_BITS = 5;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int BUCKET_COUNT = (64 - SUB_BUCKET_BITS) * SUB_BUCKETS;
+
+    private final String name;
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKET_COUNT);
+    private final AtomicLong errors = new AtomicLong();
+    private final AtomicLong max = new AtomicLong();
+
+    LatencyHistogram(String name) {
+        this.name = name;
+    }
+
+    /** @return The name of the timed method */
+    String getName() {
+        return name;
+    }
+
+    /**
+     * Records one call.
+     *
+     * @param nanos The call's duration in nanoseconds
+     */
+    void record(long nanos) {
+        long value = Math.max(nanos, 0);
+        counts.incrementAndGet(indexOf(value));
+        long current = max.get();
+        while (value > current && !max.compareAndSet(current, value)) {
+            current = max.get();
+        }
+    }
+
+    /**
+     * Records that a call failed. The call's duration is still recorded with {@link #record(long)}.
+     */
+    void recordError() {
+        errors.incrementAndGet();
+    }
+
+    /**
+     * Finds the bucket for a value: values below 32 have a bucket each, and every higher
+     * power of two is split into 32 sub-buckets.
+     */
+    static int indexOf(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        int subBucket = (int) ((value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1));
+        return ((exponent - SUB_BUCKET_BITS + 1) << SUB_BUCKET_BITS) + subBucket;
+    }
+
+    /**
+     * @return The largest value that falls into the given bucket
+     */
+    static long highestValueIn(int index) {
+        if (index < SUB_BUCKETS) {
+            return index;
+        }
+        int exponent = (index >>> SUB_BUCKET_BITS) + SUB_BUCKET_BITS - 1;
+        long subBucket = index & (SUB_BUCKETS - 1);
+        return ((SUB_BUCKETS + subBucket + 1) << (exponent - SUB_BUCKET_BITS)) - 1;
+    }
+
+    /**
+     * Takes a consistent-enough copy of the histogram for display. Calls recorded while the
+     * copy is made may or may not be included.
+     *
+     * @return The current counts and percentiles
+     */
+    Snapshot snapshot() {
+        long[] copy = new long[BUCKET_COUNT];
+        long total = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            copy[i] = counts.get(i);
+            total += copy[i];
+        }
+        long maxValue = max.get();
+        return new Snapshot(name, total, errors.get(), percentile(copy, total, 0.50, maxValue),
+                percentile(copy, total, 0.95, maxValue), percentile(copy, total, 0.99, maxValue), maxValue);
+    }
+
+    private static long percentile(long[] copy, long total, double fraction, long maxValue) {
+        if (total == 0) {
+            return 0;
+        }
+        long rank = (long) Math.ceil(total * fraction);
+        long seen = 0;
+        for (int i = 0; i < copy.length; i++) {
+            seen += copy[i];
+            if (seen >= rank) {
+                return Math.min(highestValueIn(i), maxValue);
+            }
+        }
+        return maxValue;
+    }
+
+    /**
+     * A point-in-time view of one histogram. Latencies are in nanoseconds.
+     *
+     * @param name The name of the timed method
+     * @param count The number of calls
+     * @param errors The number of calls that failed
+     * @param p50 The median latency
+     * @param p95 The 95th percentile latency
+     * @param p99 The 99th percentile latency
+     * @param max The slowest call
+     */
+    record Snapshot(String name, long count, long errors, long p50, long p95, long p99, long max) {
+        /** @return The fraction of calls that failed, from 0 to 1 */
+        double errorRate() {
+            return count == 0 ? 0 : (double) errors / count;
+        }
+    }
+}
+
+/**
+ * The DaoMetrics class keeps the latency histogram of every public DAO method and builds
+ * the report shown on the System Metrics screen, together with the connection pool and
+ * cache statistics. Each DAO method times itself inline with {@link System#nanoTime()} and
+ * records into its histogram, so timing a call allocates nothing. Overloads that only fill
+ * in a default or an assigned ID are counted under the method they call.
+ */
+class DaoMetrics {
+    private static final List<LatencyHistogram> histograms = new ArrayList<>();
+    private static final Map<String, LongAdder> conflicts = new LinkedHashMap<>();
+
+    private DaoMetrics() {
+    }
+
+    /**
+     * Creates and registers the histogram for a method. Each DAO class calls this once per
+     * public method when the class is loaded.
+     *
+     * @param name The method name, as Class.method
+     * @return The new histogram
+     */
+    static synchronized LatencyHistogram histogram(String name) {
+        LatencyHistogram histogram = new LatencyHistogram(name);
+        histograms.add(histogram);
+        return histogram;
+    }
+
+    /**
+     * Creates and registers the counter of version conflicts for an update method.
+     *
+     * @param name The method name, as Class.method
+     * @return The new counter
+     */
+    static synchronized LongAdder conflictCounter(String name) {
+        return conflicts.computeIfAbsent(name, n -> new LongAdder());
+    }
+
+    /**
+     * @return The number of version conflicts of each update method, in registration order
+     */
+    static synchronized String conflictStats() {
+        StringBuilder sb = new StringBuilder();
+        for (Map.Entry<String, LongAdder> e : conflicts.entrySet()) {
+            sb.append(sb.length() == 0 ? "" : " ").append(e.getKey()).append('=').append(e.getValue().sum());
+        }
+        return sb.toString();
+    }
+
+    /**
+     * @return A snapshot of every registered histogram, in registration order
+     */
+    static List<LatencyHistogram.Snapshot> snapshots() {
+        List<LatencyHistogram> registered;
+        synchronized (DaoMetrics.class) {
+            registered = new ArrayList<>(histograms);
+        }
+        List<LatencyHistogram.Snapshot> snapshots = new ArrayList<>(registered.size());
+        for (LatencyHistogram histogram : registered) {
+            snapshots.add(histogram.snapshot());
+        }
+        return snapshots;
+    }
+
+    /**
+     * Describes the connection pool and caches, one line each.
+     *
+     * @return The resource statistics
+     */
+    static String resourceStats() {
+        StringBuilder sb = new StringBuilder();
+        sb.append("Backend: ").append(Repositories.getBackend()).append('\n');
+        sb.append("Connection pool: ").append(DBConnection.getPoolStats()).append('\n');
+        sb.append("Pilgrim cache: ").append(PilgrimDAO.getPilgrimCache().getStats()).append('\n');
+        sb.append("Pilgrim name index: ").append(PilgrimDAO.getNameIndex().getStats()).append('\n');
+        sb.append("Accommodation locations: ").append(AccommodationDAO.getLocationIndex().getStats()).append('\n');
+        sb.append("Permit locations: ").append(PermitDAO.getLocationIndex().getStats()).append('\n');
+        sb.append(ReferenceDataCache.getStats()).append('\n');
+        sb.append(IdAllocator.getAllStats());
+        sb.append("Seat inventory: ").append(TransportScheduleDAO.getSeatInventory().getStats()).append('\n');
+        sb.append("Transport waitlist: ").append(TransportScheduleDAO.getWaitlistPromoter().getStats()).append('\n');
+        sb.append("Journey planner: ").append(TransportScheduleDAO.getJourneyPlanner().getStats()).append('\n');
+        sb.append("Update conflicts: ").append(conflictStats()).append('\n');
+        sb.append("SQL trace: ").append(SqlTracer.getStats()).append('\n');
+        sb.append("Background calls in flight: ").append(AsyncRepositories.getInFlightCount()).append('\n');
+        sb.append("Errors reported: ").append(ErrorLog.getStats()).append('\n');
+        return sb.toString();
+    }
+
+    /**
+     * Builds a plain-text report of every histogram and the resource statistics.
+     *
+     * @return The report
+     */
+    static String report() {
+        StringBuilder sb = new StringBuilder();
+        sb.append("Hajj Guide system metrics, ").append(LocalDateTime.now().withNano(0)).append("\n\n");
+        sb.append(String.format("%-45s %10s %8s %8s %10s %10s %10s %10s%n",
+                "Method", "Calls", "Errors", "Error %", "p50 ms", "p95 ms", "p99 ms", "Max ms"));
+        for (LatencyHistogram.Snapshot s : snapshots()) {
+            sb.append(String.format("%-45s %10d %8d %8.2f %10.3f %10.3f %10.3f %10.3f%n", s.name(), s.count(),
+                    s.errors(), s.errorRate() * 100, s.p50() / 1e6, s.p95() / 1e6, s.p99() / 1e6, s.max() / 1e6));
+        }
+        sb.append('\n').append(resourceStats());
+        sb.append("\nStatements by total time:\n").append(SqlTracer.topStatements(20));
+        return sb.toString();
+    }
+
+    /**
+     * Writes the report to a file, replacing the file if it exists.
+     *
+     * @param file The file to write
+     * @throws IOException if the file cannot be written
+     */
+    static void dumpTo(Path file) throws IOException {
+        Files.write(file, report().getBytes(StandardCharsets.UTF_8));
+    }
+}
+
+/**
+ * A pilgrim registered in the system, as stored in the Pilgrim table.
+ *
+ * @param pilgrimID The unique ID of the pilgrim
+ * @param pilgrimName The full name of the pilgrim
+ * @param phone The contact phone number of the pilgrim
+ * @param nationality The nationality of the pilgrim
+ * @param specialNeed Any special needs or requirements of the pilgrim
+ * @param allergies Any allergies the pilgrim may have
+ * @param pilgrimAge The age of the pilgrim
+ */
+record Pilgrim(int pilgrimID, String pilgrimName, String phone, String nationality,
+        String specialNeed, String allergies, int pilgrimAge) {
+
+    /**
+     * Converts this pilgrim to a table row for the Swing screens.
+     *
+     * @return [PilgrimID, PilgrimName, Phone, Nationality, specialNeed, allergies, pilgrimAge]
+     */
+    String[] toRow() {
+        return new String[] { String.valueOf(pilgrimID), pilgrimName, phone, nationality,
+                specialNeed, allergies, String.valueOf(pilgrimAge) };
+    }
+
+    /**
+     * Parses a pilgrim from a row in the {@link #toRow()} layout, such as a line of an
+     * imported manifest.
+     *
+     * @param row [PilgrimID, PilgrimName, Phone, Nationality, specialNeed, allergies, pilgrimAge]
+     * @return The parsed Pilgrim
+     * @throws IllegalArgumentException if the row is malformed or a numeric field cannot be parsed
+     */
+    static Pilgrim fromRow(String[] row) {
+        if (row == null || row.length < 7) {
+            throw new IllegalArgumentException("Expected 7 fields per pilgrim row");
+        }
+        try {
+            return new Pilgrim(Integer.parseInt(row[0].trim()), row[1], row[2], row[3], row[4], row[5],
+                    Integer.parseInt(row[6].trim()));
+        } catch (NumberFormatException | NullPointerException e) {
+            throw new IllegalArgumentException("Invalid PilgrimID or pilgrimAge");
+        }
+    }
+}
+
+/**
+ * A pilgrim's medical profile, as stored in the MedicalProfile table.
+ *
+ * @param profileID The unique identifier for the medical profile
+ * @param bloodType The blood type of the pilgrim (e.g., "A+", "O-")
+ * @param medications Current medications the pilgrim is taking
+ * @param medicalHistory Relevant medical history of the pilgrim
+ * @param pilgrimID The ID of the pilgrim this profile belongs to
+ * @param adminID The ID of the administrator who created this profile
+ */
+record MedicalProfile(int profileID, String bloodType, String medications, String medicalHistory,
+        int pilgrimID, int adminID) {
+
+    /**
+     * Converts this profile to a table row for the Swing screens.
+     *
+     * @return [ProfileID, bloodType, medications, Medical_History, PilgrimID, AdminID]
+     */
+    String[] toRow() {
+        return new String[] { String.valueOf(profileID), bloodType, medications, medicalHistory,
+                String.valueOf(pilgrimID), String.valueOf(adminID) };
+    }
+}
+
+/**
+ * A scheduled transport trip, as stored in the TransportSchedule table.
+ *
+ * @param scheduleID The unique identifier for the transport schedule
+ * @param departureTime The scheduled departure time
+ * @param arrivalTime The scheduled arrival time
+ * @param route The route description (e.g., "Mina - Arafat")
+ * @param transportType The type of transport (e.g., "Bus", "Train")
+ * @param adminID The ID of the administrator who created this schedule
+ */
+record TransportSchedule(int scheduleID, String departureTime, String arrivalTime, String route,
+        String transportType, int adminID) {
+
+    /**
+     * Converts this schedule to a table row for the Swing screens.
+     *
+     * @return [ScheduleID, departureTime, arrivalTime, route, TransportType, AdminID]
+     */
+    String[] toRow() {
+        return new String[] { String.valueOf(scheduleID), departureTime, arrivalTime, route,
+                transportType, String.valueOf(adminID) };
+    }
+}
+
+/**
+ * A hotel or other accommodation, as stored in the Accommodation table.
+ *
+ * @param accommodationID The unique identifier for the accommodation
+ * @param hotelName The name of the hotel or accommodation facility
+ * @param roomType The type of room (e.g., "Single", "Double", "Suite")
+ * @param capacity The maximum number of pilgrims the accommodation can hold
+ * @param address The physical address of the accommodation
+ * @param adminID The ID of the administrator who created this record
+ * @param latitude The latitude of the accommodation, or NaN if it is not known
+ * @param longitude The longitude of the accommodation, or NaN if it is not known
+ */
+record Accommodation(int accommodationID, String hotelName, String roomType, int capacity,
+        String address, int adminID, double latitude, double longitude) {
+
+    /**
+     * Creates an accommodation whose location is not known.
+     */
+    Accommodation(int accommodationID, String hotelName, String roomType, int capacity, String address, int adminID) {
+        this(accommodationID, hotelName, roomType, capacity, address, adminID, Double.NaN, Double.NaN);
+    }
+
+    /**
+     * @return true if the accommodation's coordinates are known
+     */
+    boolean hasLocation() {
+        return !Double.isNaN(latitude) && !Double.isNaN(longitude);
+    }
+
+    /**
+     * Converts this accommodation to a table row for the Swing screens.
+     *
+     * @return [AccommodationID, HotelName, roomType, capacity, address, AdminID]
+     */
+    String[] toRow() {
+        return new String[] { String.valueOf(accommodationID), hotelName, roomType,
+                String.valueOf(capacity), address, String.valueOf(adminID) };
+    }
+}
+
+/**
+ * A Hajj permit, as stored in the Permit table.
+ *
+ * @param permitID The unique identifier for the permit
+ * @param name The name/description of the permit
+ * @param location The location this permit grants access to
+ * @param serviceType The type of service the permit provides
+ * @param latitude The latitude of the location, or NaN if it is not known
+ * @param longitude The longitude of the location, or NaN if it is not known
+ */
+record Permit(int permitID, String name, String location, String serviceType, double latitude, double longitude) {
+
+    /**
+     * Creates a permit whose location has no known coordinates.
+     */
+    Permit(int permitID, String name, String location, String serviceType) {
+        this(permitID, name, location, serviceType, Double.NaN, Double.NaN);
+    }
+
+    /**
+     * @return true if the coordinates of the permit's location are known
+     */
+    boolean hasLocation() {
+        return !Double.isNaN(latitude) && !Double.isNaN(longitude);
+    }
+
+    /**
+     * Converts this permit to a table row for the Swing screens.
+     *
+     * @return [PermitID, Name, location, serviceType]
+     */
+    String[] toRow() {
+        return new String[] { String.valueOf(permitID), name, location, serviceType };
+    }
+}
+
+/**
+ * An administrator account, as stored in the Admin table (without the password).
+ *
+ * @param adminID The unique identifier of the administrator
+ * @param adminName The name of the administrator
+ * @param phone The administrator's phone number
+ * @param email The administrator's email address
+ */
+record Admin(int adminID, String adminName, String phone, String email) {
+
+    /**
+     * Converts this administrator to a table row for the Swing screens.
+     *
+     * @return [AdminID, AdminName, phone, Email]
+     */
+    String[] toRow() {
+        return new String[] { String.valueOf(adminID), adminName, phone, email };
+    }
+}
+
+/**
+ * A transport ticket, as stored in the Ticket table. Cancelled tickets are kept with
+ * their status changed, so a ticket number is never reused.
+ *
+ * @param ticketNumber The unique ticket number
+ * @param pilgrimID The ID of the pilgrim travelling
+ * @param scheduleID The ID of the transport schedule
+ * @param status {@link #BOOKED} or {@link #CANCELLED}
+ * @param bookedAt When the ticket was booked (format: "YYYY-MM-DD HH:MM:SS")
+ */
+record Ticket(int ticketNumber, int pilgrimID, int scheduleID, String status, String bookedAt) {
+    static final String BOOKED = "BOOKED";
+    static final String CANCELLED = "CANCELLED";
+
+    /** The format of {@link #bookedAt()} */
+    static final DateTimeFormatter TIME_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+
+    /**
+     * @return true if the ticket has not been cancelled
+     */
+    boolean isBooked() {
+        return BOOKED.equals(status);
+    }
+}
+
+/**
+ * A record together with the version it had when it was read. Updates that pass the
+ * version back only succeed if the record has not changed since.
+ *
+ * @param value The record
+ * @param version The record's version number, increased by every update
+ * @param <T> The type of record
+ */
+record Versioned<T>(T value, int version) {
+}
+
+/**
+ * The outcome of a compare-and-set update.
+ *
+ * @param status What happened
+ * @param current The record as now stored: the new value and version after {@link Status#UPDATED},
+ *                or the other writer's value after {@link Status#CONFLICT}; null otherwise
+ * @param <T> The type of record
+ */
+record UpdateResult<T>(Status status, Versioned<T> current) {
+
+    /**
+     * The possible outcomes of an update.
+     */
+    enum Status {
+        /** The update was saved */
+        UPDATED,
+        /** Someone else changed the record first; nothing was saved */
+        CONFLICT,
+        /** The record no longer exists */
+        NOT_FOUND
+    }
+
+    static <T> UpdateResult<T> updated(Versioned<T> current) {
+        return new UpdateResult<>(Status.UPDATED, current);
+    }
+
+    static <T> UpdateResult<T> conflict(Versioned<T> current) {
+        return new UpdateResult<>(Status.CONFLICT, current);
+    }
+
+    static <T> UpdateResult<T> notFound() {
+        return new UpdateResult<>(Status.NOT_FOUND, null);
+    }
+
+    /**
+     * Merges an edit with a conflicting update, field by field. A field that only one side
+     * changed takes that side's value. A field that both sides changed to different values
+     * keeps the edited value and is reported as a conflict.
+     *
+     * @param base The fields as they were when the edit started
+     * @param mine The edited fields
+     * @param theirs The fields as the other writer saved them
+     * @param conflicts Receives the index of every field both sides changed differently
+     * @return The merged fields
+     */
+    static String[] merge(String[] base, String[] mine, String[] theirs, List<Integer> conflicts) {
+        String[] merged = new String[mine.length];
+        for (int i = 0; i < mine.length; i++) {
+            if (Objects.equals(mine[i], base[i])) {
+                merged[i] = theirs[i];
+            } else {
+                merged[i] = mine[i];
+                if (!Objects.equals(theirs[i], base[i]) && !Objects.equals(theirs[i], mine[i])) {
+                    conflicts.add(i);
+                }
+            }
+        }
+        return merged;
+    }
+}
+
+/**
+ * The PilgrimDAO class provides data access operations for Pilgrim entities.
+ * It handles CRUD (Create, Read, Update, Delete) operations for pilgrims in the database.
+ * This class follows the Data Access Object (DAO) pattern to separate database operations
+ * from business logic.
+ */
+class PilgrimDAO {
+    
+    /** Latency of each public method, shown on the System Metrics screen */
+    private static final LatencyHistogram CREATE_PILGRIM_LATENCY = DaoMetrics.histogram("PilgrimDAO.createPilgrim");
+    private static final LatencyHistogram CREATE_PILGRIMS_LATENCY = DaoMetrics.histogram("PilgrimDAO.createPilgrims");
+    private static final LatencyHistogram GET_ALL_PILGRIMS_LATENCY = DaoMetrics.histogram("PilgrimDAO.getAllPilgrims");
+    private static final LatencyHistogram STREAM_ALL_PILGRIMS_LATENCY = DaoMetrics.histogram("PilgrimDAO.streamAllPilgrims");
+    private static final LatencyHistogram GET_PILGRIMS_PAGE_LATENCY = DaoMetrics.histogram("PilgrimDAO.getPilgrimsPage");
+    private static final LatencyHistogram UPDATE_PILGRIM_LATENCY = DaoMetrics.histogram("PilgrimDAO.updatePilgrim");
+    private static final LatencyHistogram GET_VERSIONED_PILGRIM_LATENCY = DaoMetrics.histogram("PilgrimDAO.getVersionedPilgrim");
+    private static final LatencyHistogram DELETE_PILGRIM_LATENCY = DaoMetrics.histogram("PilgrimDAO.deletePilgrim");
+    private static final LatencyHistogram GET_PILGRIM_BY_ID_LATENCY = DaoMetrics.histogram("PilgrimDAO.getPilgrimById");
+    private static final LatencyHistogram SEARCH_PILGRIM_NAMES_LATENCY = DaoMetrics.histogram("PilgrimDAO.searchPilgrimNames");
+    
+    /** Versioned updates that lost to a concurrent change */
+    private static final LongAdder UPDATE_PILGRIM_CONFLICTS = DaoMetrics.conflictCounter("PilgrimDAO.updatePilgrim");
+    
+    /** Allocates PilgrimIDs for the create overloads that assign the ID */
+    private static final IdAllocator PILGRIM_IDS = new IdAllocator("Pilgrim",
+            "SELECT IFNULL(MAX(PilgrimID), 0) + 1 FROM Pilgrim", IdAllocator.DEFAULT_BLOCK_SIZE);
+    
+    /** The columns that the paged listing may be filtered on */
+    static final Set<String> PAGE_FILTER_COLUMNS = Set.of("PilgrimName", "Phone", "Nationality", "specialNeed", "allergies", "pilgrimAge");
+    
+    /** The default number of rows per batch for bulk inserts */
+    static final int DEFAULT_BATCH_SIZE = Integer.getInteger("hajjguide.batch.size", 1000);
+    
+    /** Read-through cache for {@link #getPilgrimById(int)}, invalidated by updates and deletes */
+    private static final IntLruCache<Pilgrim> PILGRIM_CACHE = new IntLruCache<>(
+            Integer.getInteger("hajjguide.cache.pilgrim.maxSize", 100000),
+            Long.getLong("hajjguide.cache.pilgrim.ttlMs", 300000L));
+    
+    /** Name search index for {@link #searchPilgrimNames(String, int)}, kept current by every write */
+    private static final PilgrimNameIndex NAME_INDEX = new PilgrimNameIndex();
+    
+    /**
+     * Creates a new pilgrim record in the database, together with the pilgrim's
+     * automatic feedback entry.
+     * 
+     * @param pilgrimName The full name of the pilgrim
+     * @param pilgrimID The unique ID of the pilgrim
+     * @param phone The contact phone number of the pilgrim
+     * @param nationality The nationality of the pilgrim
+     * @param specialNeed Any special needs or requirements of the pilgrim
+     * @param allergies Any allergies the pilgrim may have
+     * @param pilgrimAge The age of the pilgrim
+     * @return true if the operation was successful, false otherwise
+     * @throws DataAccessException if a database access error occurs
+     */
+    public static boolean createPilgrim(String pilgrimName, int pilgrimID, String phone, 
+            String nationality, String specialNeed, String allergies, int pilgrimAge) {
+        long t0 = System.nanoTime();
+        try {
+            String sql = "INSERT INTO Pilgrim (PilgrimName, PilgrimID, Phone, Nationality, specialNeed, allergies, pilgrimAge) "
+                       + "VALUES (?, ?, ?, ?, ?, ?, ?)";
+        
+            Connection conn = null;
+            PreparedStatement stmt = null;
+        
+            try {
+                int feedbackID = FeedbackDAO.reserveIds(1)[0];
+                conn = DBConnection.getConnection();
+                stmt = conn.prepareStatement(sql);
+            
+                stmt.setString(1, pilgrimName);
+                stmt.setInt(2, pilgrimID);
+                stmt.setString(3, phone);
+                stmt.setString(4, nationality);
+                stmt.setString(5, specialNeed);
+                stmt.setString(6, allergies);
+                stmt.setInt(7, pilgrimAge);
+            
+                int rowsAffected = stmt.executeUpdate();
+                FeedbackDAO.insertAutoFeedback(conn, new int[] { feedbackID }, new int[] { pilgrimID });
+                conn.commit();
+                NAME_INDEX.put(pilgrimID, pilgrimName);
+                return rowsAffected > 0;
+            
+            } catch (SQLException e) {
+                try {
+                    if (conn != null) conn.rollback();
+                } catch (SQLException ex) {
+                    ex.printStackTrace();
+                }
+                throw new DataAccessException("Error creating pilgrim: " + e.getMessage(), e);
+            } finally {
+                try {
+                    if (stmt != null) stmt.close();
+                } catch (SQLException e) {
+                    e.printStackTrace();
+                }
+                try {
+                    if (conn != null) conn.close();
+                } catch (SQLException e) {
+                    e.printStackTrace();
+                }
+            }
+        } catch (RuntimeException e) {
+            CREATE_PILGRIM_LATENCY.recordError();
+            throw e;
+        } finally {
+            CREATE_PILGRIM_LATENCY.record(System.nanoTime() - t0);
+        }
+    }
+    
+    /**
+     * Creates a new pilgrim record with a server-assigned PilgrimID. IDs come from a block
+     * reserved in advance by an {@link IdAllocator}, so creating a pilgrim does not
+     * need an extra database round trip for its ID. The PilgrimID and the FeedbackID are
+     * both taken before the insert borrows its connection.
+     * 
+     * @param pilgrimName The full name of the pilgrim
+     * @param phone The contact phone number of the pilgrim
+     * @param nationality The nationality of the pilgrim
+     * @param specialNeed Any special needs or requirements of the pilgrim
+     * @param allergies Any allergies the pilgrim may have
+     * @param pilgrimAge The age of the pilgrim
+     * @return The assigned PilgrimID, or -1 if the pilgrim could not be created
+     */
+    public static int createPilgrim(String pilgrimName, String phone, String nationality,
+            String specialNeed, String allergies, int pilgrimAge) {
+        int id;
+        try {
+            id = PILGRIM_IDS.nextId();
+        } catch (SQLException e) {
+            throw new DataAccessException("Error assigning pilgrim ID: " + e.getMessage(), e);
+        }
+        return createPilgrim(pilgrimName, id, phone, nationality, specialNeed, allergies, pilgrimAge) ? id : -1;
+    }
+    
+    /**
+     * Creates many pilgrim records at once using JDBC batching, committing once per batch.
+     * Uses the default batch size from the {@code hajjguide.batch.size} system property.
+     * 
+     * @param pilgrims The pilgrims to insert
+     * @return A BatchInsertResult with the number of inserted rows and the errors for rejected rows
+     * @see #createPilgrims(Collection, int)
+     */
+    public static BatchInsertResult createPilgrims(Collection<Pilgrim> pilgrims) {
+        return createPilgrims(pilgrims, DEFAULT_BATCH_SIZE);
+    }
+    
+    /**
+     * Creates many pilgrim records at once using JDBC batching, committing once per batch.
+     * Rows that cannot be inserted are reported in the result instead of aborting the import,
+     * and no exception is thrown. If a batch fails, it is replayed row by row in the same
+     * transaction so that only the offending rows are rejected. If the IDs cannot be reserved
+     * or no connection can be borrowed, every row is reported as not attempted.
+     * 
+     * With {@code rewriteBatchedStatements} enabled on the connection URL, the MySQL driver
+     * sends each batch as a single multi-row INSERT.
+     * 
+     * @param pilgrims The pilgrims to insert; manifest rows can be converted with {@link Pilgrim#fromRow}
+     * @param batchSize The number of rows sent and committed together
+     * @return A BatchInsertResult with the number of inserted rows and the errors for rejected rows
+     */
+    public static BatchInsertResult createPilgrims(Collection<Pilgrim> pilgrims, int batchSize) {
+        long t0 = System.nanoTime();
+        try {
+            if (batchSize < 1) {
+                throw new IllegalArgumentException("Batch size must be positive: " + batchSize);
+            }
+            String sql = "INSERT INTO Pilgrim (PilgrimName, PilgrimID, Phone, Nationality, specialNeed, allergies, pilgrimAge) "
+                       + "VALUES (?, ?, ?, ?, ?, ?, ?)";
+            BatchInsertResult result = new BatchInsertResult();
+            List<Pilgrim> batchRows = new ArrayList<>(Math.min(batchSize, pilgrims.size()));
+            List<Integer> batchIndexes = new ArrayList<>(Math.min(batchSize, pilgrims.size()));
+        
+            Connection conn = null;
+            PreparedStatement stmt = null;
+            int index = 0;
+        
+            try {
+                int[] feedbackIDs = FeedbackDAO.reserveIds(pilgrims.size());
+                conn = DBConnection.getConnection();
+                stmt = conn.prepareStatement(sql);
+            
+                for (Pilgrim pilgrim : pilgrims) {
+                    bindPilgrim(stmt, pilgrim);
+                    stmt.addBatch();
+                    batchRows.add(pilgrim);
+                    batchIndexes.add(index);
+                    index++;
+                
+                    if (batchRows.size() >= batchSize) {
+                        flushPilgrimBatch(conn, stmt, batchRows, batchIndexes, feedbackIDs, result);
+                    }
+                }
+                flushPilgrimBatch(conn, stmt, batchRows, batchIndexes, feedbackIDs, result);
+            
+            } catch (SQLException | DataAccessException e) {
+                // Rows of the failed batch and every row after it are reported; earlier batches stay committed
+                for (int i = 0; i < batchRows.size(); i++) {
+                    result.addError(batchIndexes.get(i), batchRows.get(i).pilgrimID(), e.getMessage());
+                }
+                int position = 0;
+                for (Pilgrim pilgrim : pilgrims) {
+                    if (position >= index) {
+                        result.addError(position, pilgrim.pilgrimID(), "Not attempted: " + e.getMessage());
+                    }
+                    position++;
+                }
+            } finally {
+                try {
+                    if (stmt != null) stmt.close();
+                } catch (SQLException e) {
+                    e.printStackTrace();
+                }
+                try {
+                    if (conn != null) conn.close();
+                } catch (SQLException e) {
+                    e.printStackTrace();
+                }
+            }
+        
+            return result;
+        } catch (RuntimeException e) {
+            CREATE_PILGRIMS_LATENCY.recordError();
+            throw e;
+        } finally {
+            CREATE_PILGRIMS_LATENCY.record(System.nanoTime() - t0);
+        }
+    }
+    
+    /**
+     * Binds one pilgrim to the insert statement used by {@link #createPilgrims(Collection, int)}.
+     */
+    private static void bindPilgrim(PreparedStatement stmt, Pilgrim pilgrim) throws SQLException {
+        stmt.setString(1, pilgrim.pilgrimName());
+        stmt.setInt(2, pilgrim.pilgrimID());
+        stmt.setString(3, pilgrim.phone());
+        stmt.setString(4, pilgrim.nationality());
+        stmt.setString(5, pilgrim.specialNeed());
+        stmt.setString(6, pilgrim.allergies());
+        stmt.setInt(7, pilgrim.pilgrimAge());
+    }
+    
+    /**
+     * Executes and commits the pending batch, with the automatic feedback entry of each pilgrim.
+     * If the batch is rejected, it is rolled back and replayed one row at a time in a single
+     * transaction, recording an error for each failing row.
+     */
+    private static void flushPilgrimBatch(Connection conn, PreparedStatement stmt, List<Pilgrim> rows,
+            List<Integer> indexes, int[] feedbackIDs, BatchInsertResult result) throws SQLException {
+        if (rows.isEmpty()) {
+            return;
+        }
+        try {
+            stmt.executeBatch();
+            int[] pilgrimIDs = new int[rows.size()];
+            int[] rowFeedbackIDs = new int[rows.size()];
+            for (int i = 0; i < pilgrimIDs.length; i++) {
+                pilgrimIDs[i] = rows.get(i).pilgrimID();
+                rowFeedbackIDs[i] = feedbackIDs[indexes.get(i)];
+            }
+            FeedbackDAO.insertAutoFeedback(conn, rowFeedbackIDs, pilgrimIDs);
+            conn.commit();
+            result.addInserted(rows.size());
+            for (Pilgrim pilgrim : rows) {
+                NAME_INDEX.put(pilgrim.pilgrimID(), pilgrim.pilgrimName());
+            }
+        } catch (BatchUpdateException e) {
+            conn.rollback();
+            stmt.clearBatch();
+            List<Pilgrim> inserted = new ArrayList<>(rows.size());
+            for (int i = 0; i < rows.size(); i++) {
+                Savepoint savepoint = conn.setSavepoint();
+                try {
+                    bindPilgrim(stmt, rows.get(i));
+                    stmt.executeUpdate();
+                    FeedbackDAO.insertAutoFeedback(conn, new int[] { feedbackIDs[indexes.get(i)] },
+                            new int[] { rows.get(i).pilgrimID() });
+                    inserted.add(rows.get(i));
+                } catch (SQLException ex) {
+                    conn.rollback(savepoint);
+                    result.addError(indexes.get(i), rows.get(i).pilgrimID(), ex.getMessage());
+                }
+            }
+            conn.commit();
+            result.addInserted(inserted.size());
+            for (Pilgrim pilgrim : inserted) {
+                NAME_INDEX.put(pilgrim.pilgrimID(), pilgrim.pilgrimName());
+            }
+        }
+        result.addBatch();
+        rows.clear();
+        indexes.clear();
+    }
+    
+    /**
+     * Retrieves all pilgrims from the database.
+     * 
+     * @return A List of all pilgrims
+     * @throws DataAccessException if a database access error occurs
+     */
+    public static List<Pilgrim> getAllPilgrims() {
+        long t0 = System.nanoTime();
+        try {
+            List<Pilgrim> pilgrims = new ArrayList<>();
+            String sql = "SELECT PilgrimID, PilgrimName, Phone, Nationality, specialNeed, allergies, pilgrimAge FROM Pilgrim";
+        
+            try (Connection conn = DBConnection.getConnection();
+                 Statement stmt = conn.createStatement();
+                 ResultSet rs = stmt.executeQuery(sql)) {
+            
+                while (rs.next()) {
+                    pilgrims.add(mapPilgrim(rs));
+                }
+            
+            } catch (SQLException e) {
+                throw new DataAccessException("Error retrieving pilgrims: " + e.getMessage(), e);
+            }
+        
+            return pilgrims;
+        } catch (RuntimeException e) {
+            GET_ALL_PILGRIMS_LATENCY.recordError();
+            throw e;
+        } finally {
+            GET_ALL_PILGRIMS_LATENCY.record(System.nanoTime() - t0);
+        }
+    }
+    
+    /**
+     * Streams all pilgrims from the database over a forward-only cursor, using the
+     * default fetch size. The stream must be closed, preferably with try-with-resources.
+     * 
+     * @return A Stream of all pilgrims
+     * @see #streamAllPilgrims(int)
+     */
+    public static Stream<Pilgrim> streamAllPilgrims() {
+        return streamAllPilgrims(StreamingQuery.DEFAULT_FETCH_SIZE);
+    }
+    
+    /**
+     * Streams all pilgrims from the database over a forward-only, read-only cursor.
+     * Only one chunk of rows is held in memory at a time, so this is suitable for exports
+     * and reports over the whole table. The stream must be closed, preferably with
+     * try-with-resources; it holds a pooled connection until then.
+     * 
+     * @param fetchSize The number of rows fetched from the server per round trip
+     * @return A Stream of all pilgrims
+     */
+    public static Stream<Pilgrim> streamAllPilgrims(int fetchSize) {
+        long t0 = System.nanoTime();
+        try {
+            String sql = "SELECT PilgrimID, PilgrimName, Phone, Nationality, specialNeed, allergies, pilgrimAge FROM Pilgrim";
+        
+            try {
+                return StreamingQuery.open(sql, fetchSize, PilgrimDAO::mapPilgrim);
+            } catch (SQLException e) {
+                throw new DataAccessException("Error retrieving pilgrims: " + e.getMessage(), e);
+            }
+        } catch (RuntimeException e) {
+            STREAM_ALL_PILGRIMS_LATENCY.recordError();
+            throw e;
+        } finally {
+            STREAM_ALL_PILGRIMS_LATENCY.record(System.nanoTime() - t0);
+        }
+    }
+    
+    /**
+     * Retrieves one page of pilgrims ordered by PilgrimID, using keyset pagination.
+     * 
+     * @param afterPilgrimID Only pilgrims with a greater PilgrimID are returned; use 0 for the first page
+     * @param limit The maximum number of pilgrims on the page
+     * @return A Page of pilgrims
+     * @see #getPilgrimsPage(int, int, PageFilter)
+     */
+    public static Page<Pilgrim> getPilgrimsPage(int afterPilgrimID, int limit) {
+        return getPilgrimsPage(afterPilgrimID, limit, null);
+    }
+    
+    /**
+     * Retrieves one page of pilgrims ordered by PilgrimID, using keyset pagination.
+     * The query seeks past {@code afterPilgrimID} on the primary key instead of using OFFSET,
+     * so every page costs the same no matter how deep into the table it is.
+     * 
+     * @param afterPilgrimID Only pilgrims with a greater PilgrimID are returned; use 0 for the first page
+     * @param limit The maximum number of pilgrims on the page
+     * @param filter Optional conditions on the columns PilgrimName, Phone, Nationality, specialNeed, allergies, pilgrimAge, or null
+     * @return A Page of pilgrims
+     * @throws IllegalArgumentException if the filter uses a column that cannot be filtered on
+     */
+    public static Page<Pilgrim> getPilgrimsPage(int afterPilgrimID, int limit, PageFilter filter) {
+        long t0 = System.nanoTime();
+        try {
+            String sql = "SELECT PilgrimID, PilgrimName, Phone, Nationality, specialNeed, allergies, pilgrimAge FROM Pilgrim";
+        
+            try {
+                return Page.fetch(sql, "PilgrimID", afterPilgrimID, limit, filter, PAGE_FILTER_COLUMNS, PilgrimDAO::mapPilgrim);
+            } catch (SQLException e) {
+                throw new DataAccessException("Error retrieving pilgrims: " + e.getMessage(), e);
+            }
+        } catch (RuntimeException e) {
+            GET_PILGRIMS_PAGE_LATENCY.recordError();
+            throw e;
+        } finally {
+            GET_PILGRIMS_PAGE_LATENCY.record(System.nanoTime() - t0);
+        }
+    }
+    
+    /**
+     * Maps the current row of a Pilgrim query to a Pilgrim.
+     */
+    static Pilgrim mapPilgrim(ResultSet rs) throws SQLException {
+        return new Pilgrim(rs.getInt("PilgrimID"), rs.getString("PilgrimName"), rs.getString("Phone"),
+                rs.getString("Nationality"), rs.getString("specialNeed"), rs.getString("allergies"),
+                rs.getInt("pilgrimAge"));
+    }
+    
+    /**
+     * Updates an existing pilgrim record in the database, whatever its version. Screens
+     * that let an admin edit a pilgrim use {@link #updatePilgrim(Pilgrim, int)} instead.
+     * 
+     * @param pilgrimID The ID of the pilgrim to update
+     * @param pilgrimName The updated name of the pilgrim
+     * @param phone The updated phone number of the pilgrim
+     * @param nationality The updated nationality of the pilgrim
+     * @param specialNeed The updated special needs of the pilgrim
+     * @param allergies The updated allergies of the pilgrim
+     * @param pilgrimAge The updated age of the pilgrim
+     * @return true if the update was successful, false otherwise
+     * @throws DataAccessException if a database access error occurs
+     */
+    public static boolean updatePilgrim(int pilgrimID, String pilgrimName, String phone, 
+            String nationality, String specialNeed, String allergies, int pilgrimAge) {
+        long t0 = System.nanoTime();
+        try {
+            String sql = "UPDATE Pilgrim SET PilgrimName = ?, Phone = ?, Nationality = ?, specialNeed = ?, allergies = ?, pilgrimAge = ?, "
+                       + "PilgrimVersion = PilgrimVersion + 1 WHERE PilgrimID = ?";
+        
+            Connection conn = null;
+            PreparedStatement stmt = null;
+        
+            try {
+                conn = DBConnection.getConnection();
+                stmt = conn.prepareStatement(sql);
+            
+                stmt.setString(1, pilgrimName);
+                stmt.setString(2, phone);
+                stmt.setString(3, nationality);
+                stmt.setString(4, specialNeed);
+                stmt.setString(5, allergies);
+                stmt.setInt(6, pilgrimAge);
+                stmt.setInt(7, pilgrimID);
+            
+                int rowsAffected = stmt.executeUpdate();
+                conn.commit();
+                PILGRIM_CACHE.invalidate(pilgrimID);
+                if (rowsAffected > 0) {
+                    NAME_INDEX.put(pilgrimID, pilgrimName);
+                }
+                return rowsAffected > 0;
+            
+            } catch (SQLException e) {
+                try {
+                    if (conn != null) conn.rollback();
+                } catch (SQLException ex) {
+                    ex.printStackTrace();
+                }
+                throw new DataAccessException("Error updating pilgrim: " + e.getMessage(), e);
+            } finally {
+                try {
+                    if (stmt != null) stmt.close();
+                } catch (SQLException e) {
+                    e.printStackTrace();
+                }
+                try {
+                    if (conn != null) conn.close();
+                } catch (SQLException e) {
+                    e.printStackTrace();
+                }
+            }
+        } catch (RuntimeException e) {
+            UPDATE_PILGRIM_LATENCY.recordError();
+            throw e;
+        } finally {
+            UPDATE_PILGRIM_LATENCY.record(System.nanoTime() - t0);
+        }
+    }
+    
+    /**
+     * Updates a pilgrim only if nobody has changed it since it was read. The version check
+     * and the write are a single UPDATE, so no lock is held while an admin edits the
+     * pilgrim; a concurrent change is reported as a {@link UpdateResult.Status#CONFLICT}
+     * carrying the other writer's values, for the screen to merge.
+     * 
+     * @param pilgrim The updated pilgrim
+     * @param expectedVersion The version the pilgrim had when it was read
+     * @return The outcome of the update
+     */
+    public static UpdateResult<Pilgrim> updatePilgrim(Pilgrim pilgrim, int expectedVersion) {
+        long t0 = System.nanoTime();
+        try {
+            String sql = "UPDATE Pilgrim SET PilgrimName = ?, Phone = ?, Nationality = ?, specialNeed = ?, allergies = ?, pilgrimAge = ?, "
+                       + "PilgrimVersion = PilgrimVersion + 1 WHERE PilgrimID = ? AND PilgrimVersion = ?";
+        
+            Connection conn = null;
+            PreparedStatement stmt = null;
+        
+            try {
+                conn = DBConnection.getConnection();
+                stmt = conn.prepareStatement(sql);
+            
+                stmt.setString(1, pilgrim.pilgrimName());
+                stmt.setString(2, pilgrim.phone());
+                stmt.setString(3, pilgrim.nationality());
+                stmt.setString(4, pilgrim.specialNeed());
+                stmt.setString(5, pilgrim.allergies());
+                stmt.setInt(6, pilgrim.pilgrimAge());
+                stmt.setInt(7, pilgrim.pilgrimID());
+                stmt.setInt(8, expectedVersion);
+            
+                int rowsAffected = stmt.executeUpdate();
+                conn.commit();
+                if (rowsAffected > 0) {
+                    PILGRIM_CACHE.invalidate(pilgrim.pilgrimID());
+                    NAME_INDEX.put(pilgrim.pilgrimID(), pilgrim.pilgrimName());
+                    return UpdateResult.updated(new Versioned<>(pilgrim, expectedVersion + 1));
+                }
+            
+                Versioned<Pilgrim> current = queryVersionedPilgrim(conn, pilgrim.pilgrimID());
+                conn.commit();
+                if (current == null) {
+                    return UpdateResult.notFound();
+                }
+                UPDATE_PILGRIM_CONFLICTS.increment();
+                return UpdateResult.conflict(current);
+            
+            } catch (SQLException e) {
+                try {
+                    if (conn != null) conn.rollback();
+                } catch (SQLException ex) {
+                    ex.printStackTrace();
+                }
+                throw new DataAccessException("Error updating pilgrim: " + e.getMessage(), e);
+            } finally {
+                try {
+                    if (stmt != null) stmt.close();
+                } catch (SQLException e) {
+                    e.printStackTrace();
+                }
+                try {
+                    if (conn != null) conn.close();
+                } catch (SQLException e) {
+                    e.printStackTrace();
+                }
+            }
+        } catch (RuntimeException e) {
+            UPDATE_PILGRIM_LATENCY.recordError();
+            throw e;
+        } finally {
+            UPDATE_PILGRIM_LATENCY.record(System.nanoTime() - t0);
+        }
+    }
+    
+    /**
+     * Retrieves a pilgrim together with its current version, for editing with
+     * {@link #updatePilgrim(Pilgrim, int)}. The pilgrim cache is bypassed.
+     * 
+     * @param pilgrimID The ID of the pilgrim
+     * @return The versioned pilgrim, or null if it is not found
+     */
+    public static Versioned<Pilgrim> getVersionedPilgrim(int pilgrimID) {
+        long t0 = System.nanoTime();
+        try {
+            try (Connection conn = DBConnection.getPool().borrow()) {
+                return queryVersionedPilgrim(conn, pilgrimID);
+            } catch (SQLException e) {
+                throw new DataAccessException("Error retrieving pilgrim: " + e.getMessage(), e);
+            }
+        } catch (RuntimeException e) {
+            GET_VERSIONED_PILGRIM_LATENCY.recordError();
+            throw e;
+        } finally {
+            GET_VERSIONED_PILGRIM_LATENCY.record(System.nanoTime() - t0);
+        }
+    }
+    
+    private static Versioned<Pilgrim> queryVersionedPilgrim(Connection conn, int pilgrimID) throws SQLException {
+        String sql = "SELECT PilgrimID, PilgrimName, Phone, Nationality, specialNeed, allergies, pilgrimAge, PilgrimVersion "
+                   + "FROM Pilgrim WHERE PilgrimID = ?";
+        try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+            stmt.setInt(1, pilgrimID);
+            try (ResultSet rs = stmt.executeQuery()) {
+                return rs.next() ? new Versioned<>(mapPilgrim(rs), rs.getInt("PilgrimVersion")) : null;
+            }
+        }
+    }
+    
+    /**
+     * Deletes a pilgrim record from the database.
+     * 
+     * @param pilgrimID The ID of the pilgrim to delete
+     * @return true if the deletion was successful, false otherwise
+     * @throws DataAccessException if a database access error occurs
+     */
+    public static boolean deletePilgrim(int pilgrimID) {
+        long t0 = System.nanoTime();
+        try {
+            String sql = "DELETE FROM Pilgrim WHERE PilgrimID = ?";
+        
+            Connection conn = null;
+            PreparedStatement stmt = null;
+        
+            try {
+                conn = DBConnection.getConnection();
+                stmt = conn.prepareStatement(sql);
+            
+                stmt.setInt(1, pilgrimID);
+            
+                int rowsAffected = stmt.executeUpdate();
+                conn.commit();
+                PILGRIM_CACHE.invalidate(pilgrimID);
+                NAME_INDEX.remove(pilgrimID);
+                return rowsAffected > 0;
+            
+            } catch (SQLException e) {
+                try {
+                    if (conn != null) conn.rollback();
+                } catch (SQLException ex) {
+                    ex.printStackTrace();
+                }
+                throw new DataAccessException("Error deleting pilgrim: " + e.getMessage(), e);
+            } finally {
+                try {
+                    if (stmt != null) stmt.close();
+                } catch (SQLException e) {
+                    e.printStackTrace();
+                }
+                try {
+                    if (conn != null) conn.close();
+                } catch (SQLException e) {
+                    e.printStackTrace();
+                }
+            }
+        } catch (RuntimeException e) {
+            DELETE_PILGRIM_LATENCY.recordError();
+            throw e;
+        } finally {
+            DELETE_PILGRIM_LATENCY.record(System.nanoTime() - t0);
+        }
+    }
+    
+    /**
+     * Retrieves a specific pilgrim by their ID.
+     * 
+     * Lookups go through a bounded read-through cache, so repeated lookups of the same
+     * pilgrim (for example at login and on the personal information screen) are served
+     * from memory until the entry expires or the pilgrim is updated or deleted.
+     * 
+     * @param pilgrimID The ID of the pilgrim to retrieve
+     * @return The Pilgrim, or null if the pilgrim is not found
+     * @throws DataAccessException if a database access error occurs
+     */
+    public static Pilgrim getPilgrimById(int pilgrimID) {
+        long t0 = System.nanoTime();
+        try {
+            return PILGRIM_CACHE.getOrLoad(pilgrimID, PilgrimDAO::loadPilgrimById);
+        } catch (RuntimeException e) {
+            GET_PILGRIM_BY_ID_LATENCY.recordError();
+            throw e;
+        } finally {
+            GET_PILGRIM_BY_ID_LATENCY.record(System.nanoTime() - t0);
+        }
+    }
+    
+    /**
+     * Gets the cache behind {@link #getPilgrimById(int)}, for statistics.
+     * 
+     * @return The pilgrim cache
+     */
+    static IntLruCache<Pilgrim> getPilgrimCache() {
+        return PILGRIM_CACHE;
+    }
+    
+    /**
+     * Finds pilgrims whose name starts with the given text, for type-ahead search.
+     * 
+     * Once {@link #loadNameIndex()} has run, searches are answered from the in-memory
+     * {@link PilgrimNameIndex}, which ignores case, accents and Arabic diacritics. Until
+     * then they fall back to a {@code LIKE 'prefix%'} query on the Pilgrim table.
+     * 
+     * @param prefix The start of the name
+     * @param limit The maximum number of matches to return
+     * @return The matching pilgrims in name order
+     */
+    public static List<PilgrimNameIndex.Match> searchPilgrimNames(String prefix, int limit) {
+        long t0 = System.nanoTime();
+        try {
+            if (NAME_INDEX.isLoaded()) {
+                return NAME_INDEX.search(prefix, limit);
+            }
+            List<PilgrimNameIndex.Match> matches = new ArrayList<>();
+            String text = prefix == null ? "" : prefix.trim();
+            if (text.isEmpty() || limit < 1) {
+                return matches;
+            }
+            String sql = "SELECT PilgrimID, PilgrimName FROM Pilgrim WHERE PilgrimName LIKE ? "
+                       + "ORDER BY PilgrimName, PilgrimID LIMIT ?";
+            
+            try (Connection conn = DBConnection.getConnection();
+                 PreparedStatement stmt = conn.prepareStatement(sql)) {
+            
+                stmt.setString(1, text.replace("\\", "\\\\").replace("%", "\\%").replace("_", "\\_") + "%");
+                stmt.setInt(2, limit);
+                try (ResultSet rs = stmt.executeQuery()) {
+                    while (rs.next()) {
+                        matches.add(new PilgrimNameIndex.Match(rs.getInt("PilgrimID"), rs.getString("PilgrimName")));
+                    }
+                }
+            
+            } catch (SQLException e) {
+                throw new DataAccessException("Error searching pilgrims: " + e.getMessage(), e);
+            }
+        
+            return matches;
+        } catch (RuntimeException e) {
+            SEARCH_PILGRIM_NAMES_LATENCY.recordError();
+            throw e;
+        } finally {
+            SEARCH_PILGRIM_NAMES_LATENCY.record(System.nanoTime() - t0);
+        }
+    }
+    
+    /**
+     * Builds the name search index from every pilgrim in the database. Pilgrims created,
+     * updated or deleted while it runs are still indexed correctly. Failures are logged
+     * and leave searches on the SQL fallback; this runs in the background, so no dialog is shown.
+     */
+    static void loadNameIndex() {
+        String sql = "SELECT PilgrimID, PilgrimName FROM Pilgrim";
+        try (Stream<PilgrimNameIndex.Match> rows = StreamingQuery.open(sql, StreamingQuery.DEFAULT_FETCH_SIZE,
+                rs -> new PilgrimNameIndex.Match(rs.getInt("PilgrimID"), rs.getString("PilgrimName")))) {
+            List<PilgrimNameIndex.Match> all = new ArrayList<>();
+            rows.forEach(all::add);
+            NAME_INDEX.load(all);
+        } catch (SQLException | RuntimeException e) {
+            ErrorLog.report("PilgrimDAO", "Could not build the pilgrim name index: " + e.getMessage());
+        }
+    }
+    
+    /**
+     * Gets the name search index, for statistics.
+     * 
+     * @return The pilgrim name index
+     */
+    static PilgrimNameIndex getNameIndex() {
+        return NAME_INDEX;
+    }
+    
+    /**
+     * Loads a pilgrim from the database, bypassing the cache.
+     */
+    private static Pilgrim loadPilgrimById(int pilgrimID) {
+        String sql = "SELECT PilgrimID, PilgrimName, Phone, Nationality, specialNeed, allergies, pilgrimAge FROM Pilgrim WHERE PilgrimID = ?";
+        Pilgrim pilgrim = null;
+        
+        try (Connection conn = DBConnection.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(sql)) {
+            
+            stmt.setInt(1, pilgrimID);
+            ResultSet rs = stmt.executeQuery();
+            
+            if (rs.next()) {
+                pilgrim = mapPilgrim(rs);
+            }
+            
+            rs.close();
+            
+        } catch (SQLException e) {
+            throw new DataAccessException("Error retrieving pilgrim: " + e.getMessage(), e);
+        }
+        
+        return pilgrim;
+    }
+}
+
+/**
+ * The BatchInsertResult class collects the outcome of a bulk insert such as
+ * {@link PilgrimDAO#createPilgrims(Collection, int)}: how many rows were inserted,
+ * how many batches were committed and which rows were rejected and why.
+ */
+class BatchInsertResult {
+    private int insertedCount = 0;
+    private int batchCount = 0;
+    private final List<RowError> errors = new ArrayList<>();
+
+    /**
+     * Describes one row that could not be inserted.
+     */
+    static final class RowError {
+        /** The position of the row in the input collection */
+        final int rowIndex;
+        /** The primary key of the rejected row */
+        final int id;
+        /** Why the row was rejected */
+        final String message;
+
+        RowError(int rowIndex, int id, String message) {
+            this.rowIndex = rowIndex;
+            this.id = id;
+            this.message = message;
+        }
+
+        @Override
+        public String toString() {
+            return "row " + rowIndex + " (ID " + id + "): " + message;
+        }
+    }
+
+    void addInserted(int count) {
+        insertedCount += count;
+    }
+
+    void addBatch() {
+        batchCount++;
+    }
+
+    void addError(int rowIndex, int id, String message) {
+        errors.add(new RowError(rowIndex, id, message));
+    }
+
+    /** @return The number of rows inserted and committed */
+    public int getInsertedCount() {
+        return insertedCount;
+    }
+
+    /** @return The number of batches committed */
+    public int getBatchCount() {
+        return batchCount;
+    }
+
+    /** @return The rows that were rejected, in input order within each batch */
+    public List<RowError> getErrors() {
+        return errors;
+    }
+
+    /** @return true if every row was inserted */
+    public boolean isSuccessful() {
+        return errors.isEmpty();
+    }
+
+    @Override
+    public String toString() {
+        return insertedCount + " inserted in " + batchCount + " batches, " + errors.size() + " rejected";
+    }
+}
+
+/**
+ * The MedicalProfileDAO class provides data access operations for medical profile records.
+ * It handles CRUD operations for medical profiles associated with pilgrims in the database.
+ * This class follows the Data Access Object (DAO) pattern to separate database operations
+ * from business logic.
+ */
+class MedicalProfileDAO {
+    
+    /** Latency of each public method, shown on the System Metrics screen */
+    private static final LatencyHistogram CREATE_MEDICAL_PROFILE_LATENCY = DaoMetrics.histogram("MedicalProfileDAO.createMedicalProfile");
+    private static final LatencyHistogram GET_MEDICAL_PROFILE_BY_PILGRIM_ID_LATENCY = DaoMetrics.histogram("MedicalProfileDAO.getMedicalProfileByPilgrimId");
+    private static final LatencyHistogram UPDATE_MEDICAL_PROFILE_LATENCY = DaoMetrics.histogram("MedicalProfileDAO.updateMedicalProfile");
+    private static final LatencyHistogram GET_VERSIONED_MEDICAL_PROFILE_BY_PILGRIM_ID_LATENCY = DaoMetrics.histogram("MedicalProfileDAO.getVersionedMedicalProfileByPilgrimId");
+    
+    /** Versioned updates that lost to a concurrent change */
+    private static final LongAdder UPDATE_MEDICAL_PROFILE_CONFLICTS = DaoMetrics.conflictCounter("MedicalProfileDAO.updateMedicalProfile");
+    
+    /**
+     * Creates a new medical profile record in the database.
+     * 
+     * @param profileID The unique identifier for the medical profile
+     * @param bloodType The blood type of the pilgrim (e.g., "A+", "O-")
+     * @param medications Current medications the pilgrim is taking
+     * @param medicalHistory Relevant medical history of the pilgrim
+     * @param pilgrimID The ID of the pilgrim this profile belongs to
+     * @param adminID The ID of the administrator creating this profile
+     * @return true if the profile was created successfully, false otherwise
+     * @throws DataAccessException if a database access error occurs
+     */
+    public static boolean createMedicalProfile(int profileID, String bloodType, String medications, 
+            String medicalHistory, int pilgrimID, int adminID) {
+        long t0 = System.nanoTime();
+        try {
+            String sql = "INSERT INTO MedicalProfile (ProfileID, bloodType, medications, Medical_History, PilgrimID, AdminID) "
+                       + "VALUES (?, ?, ?, ?, ?, ?)";
+        
+            Connection conn = null;
+            PreparedStatement stmt = null;
+        
+            try {
+                conn = DBConnection.getConnection();
+                stmt = conn.prepareStatement(sql);
+            
+                stmt.setInt(1, profileID);
+                stmt.setString(2, bloodType);
+                stmt.setString(3, medications);
+                stmt.setString(4, medicalHistory);
+                stmt.setInt(5, pilgrimID);
+                stmt.setInt(6, adminID);
+            
+                int rowsAffected = stmt.executeUpdate();
+                conn.commit();
+                return rowsAffected > 0;
+            
+            } catch (SQLException e) {
+                try {
+                    if (conn != null) conn.rollback();
+                } catch (SQLException ex) {
+                    ex.printStackTrace();
+                }
+                throw new DataAccessException("Error creating medical profile: " + e.getMessage(), e);
+            } finally {
+                try {
+                    if (stmt != null) stmt.close();
+                } catch (SQLException e) {
+                    e.printStackTrace();
+                }
+                try {
+                    if (conn != null) conn.close();
+                } catch (SQLException e) {
+                    e.printStackTrace();
+                }
+            }
+        } catch (RuntimeException e) {
+            CREATE_MEDICAL_PROFILE_LATENCY.recordError();
+            throw e;
+        } finally {
+            CREATE_MEDICAL_PROFILE_LATENCY.record(System.nanoTime() - t0);
+        }
+    }
+    
+    /**
+     * Retrieves a medical profile for a specific pilgrim.
+     * 
+     * @param pilgrimID The ID of the pilgrim whose medical profile to retrieve
+     * @return The MedicalProfile, or null if no profile is found
+     * @throws DataAccessException if a database access error occurs
+     */
+    public static MedicalProfile getMedicalProfileByPilgrimId(int pilgrimID) {
+        long t0 = System.nanoTime();
+        try {
+            String sql = "SELECT ProfileID, bloodType, medications, Medical_History, PilgrimID, AdminID FROM MedicalProfile WHERE PilgrimID = ?";
+            MedicalProfile profile = null;
+        
+            try (Connection conn = DBConnection.getConnection();
+                 PreparedStatement stmt = conn.prepareStatement(sql)) {
+            
+                stmt.setInt(1, pilgrimID);
+                ResultSet rs = stmt.executeQuery();
+            
+                if (rs.next()) {
+                    profile = new MedicalProfile(rs.getInt("ProfileID"), rs.getString("bloodType"),
+                            rs.getString("medications"), rs.getString("Medical_History"),
+                            rs.getInt("PilgrimID"), rs.getInt("AdminID"));
+                }
+            
+                rs.close();
+            
+            } catch (SQLException e) {
+                throw new DataAccessException("Error retrieving medical profile: " + e.getMessage(), e);
+            }
+        
+            return profile;
+        } catch (RuntimeException e) {
+            GET_MEDICAL_PROFILE_BY_PILGRIM_ID_LATENCY.recordError();
+            throw e;
+        } finally {
+            GET_MEDICAL_PROFILE_BY_PILGRIM_ID_LATENCY.record(System.nanoTime() - t0);
+        }
+    }
+    
+    /**
+     * Updates an existing medical profile in the database, whatever its version. Screens
+     * that let an admin edit a profile use {@link #updateMedicalProfile(MedicalProfile, int)} instead.
+     * 
+     * @param profileID The ID of the medical profile to update
+     * @param bloodType The updated blood type information
+     * @param medications The updated medications information
+     * @param medicalHistory The updated medical history
+     * @param adminID The ID of the administrator making the update
+     * @return true if the update was successful, false otherwise
+     * @throws DataAccessException if a database access error occurs
+     */
+    public static boolean updateMedicalProfile(int profileID, String bloodType, String medications, 
+            String medicalHistory, int adminID) {
+        long t0 = System.nanoTime();
+        try {
+            String sql = "UPDATE MedicalProfile SET bloodType = ?, medications = ?, Medical_History = ?, AdminID = ?, "
+                       + "ProfileVersion = ProfileVersion + 1 WHERE ProfileID = ?";
+        
+            Connection conn = null;
+            PreparedStatement stmt = null;
+        
+            try {
+                conn = DBConnection.getConnection();
+                stmt = conn.prepareStatement(sql);
+            
+                stmt.setString(1, bloodType);
+                stmt.setString(2, medications);
+                stmt.setString(3, medicalHistory);
+                stmt.setInt(4, adminID);
+                stmt.setInt(5, profileID);
+            
+                int rowsAffected = stmt.executeUpdate();
+                conn.commit();
+                return rowsAffected > 0;
+            
+            } catch (SQLException e) {
+                try {
+                    if (conn != null) conn.rollback();
+                } catch (SQLException ex) {
+                    ex.printStackTrace();
+                }
+                throw new DataAccessException("Error updating medical profile: " + e.getMessage(), e);
+            } finally {
+                try {
+                    if (stmt != null) stmt.close();
+                } catch (SQLException e) {
+                    e.printStackTrace();
+                }
+                try {
+                    if (conn != null) conn.close();
+                } catch (SQLException e) {
+                    e.printStackTrace();
+                }
+            }
+        } catch (RuntimeException e) {
+            UPDATE_MEDICAL_PROFILE_LATENCY.recordError();
+            throw e;
+        } finally {
+            UPDATE_MEDICAL_PROFILE_LATENCY.record(System.nanoTime() - t0);
+        }
+    }
+    
+    /**
+     * Updates a medical profile only if nobody has changed it since it was read. The version
+     * check and the write are a single UPDATE, so no lock is held while an admin edits the
+     * profile; a concurrent change is reported as a {@link UpdateResult.Status#CONFLICT}
+     * carrying the other writer's values, for the screen to merge.
+     * 
+     * @param profile The updated medical profile; its PilgrimID is not changed
+     * @param expectedVersion The version the profile had when it was read
+     * @return The outcome of the update
+     */
+    public static UpdateResult<MedicalProfile> updateMedicalProfile(MedicalProfile profile, int expectedVersion) {
+        long t0 = System.nanoTime();
+        try {
+            String sql = "UPDATE MedicalProfile SET bloodType = ?, medications = ?, Medical_History = ?, AdminID = ?, "
+                       + "ProfileVersion = ProfileVersion + 1 WHERE ProfileID = ? AND ProfileVersion = ?";
+        
+            Connection conn = null;
+            PreparedStatement stmt = null;
+        
+            try {
+                conn = DBConnection.getConnection();
+                stmt = conn.prepareStatement(sql);
+            
+                stmt.setString(1, profile.bloodType());
+                stmt.setString(2, profile.medications());
+                stmt.setString(3, profile.medicalHistory());
+                stmt.setInt(4, profile.adminID());
+                stmt.setInt(5, profile.profileID());
+                stmt.setInt(6, expectedVersion);
+            
+                int rowsAffected = stmt.executeUpdate();
+                conn.commit();
+                if (rowsAffected > 0) {
+                    return UpdateResult.updated(new Versioned<>(profile, expectedVersion + 1));
+                }
+            
+                Versioned<MedicalProfile> current = queryVersionedMedicalProfile(conn, "ProfileID", profile.profileID());
+                conn.commit();
+                if (current == null) {
+                    return UpdateResult.notFound();
+                }
+                UPDATE_MEDICAL_PROFILE_CONFLICTS.increment();
+                return UpdateResult.conflict(current);
+            
+            } catch (SQLException e) {
+                try {
+                    if (conn != null) conn.rollback();
+                } catch (SQLException ex) {
+                    ex.printStackTrace();
+                }
+                throw new DataAccessException("Error updating medical profile: " + e.getMessage(), e);
+            } finally {
+                try {
+                    if (stmt != null) stmt.close();
+                } catch (SQLException e) {
+                    e.printStackTrace();
+                }
+                try {
+                    if (conn != null) conn.close();
+                } catch (SQLException e) {
+                    e.printStackTrace();
+                }
+            }
+        } catch (RuntimeException e) {
+            UPDATE_MEDICAL_PROFILE_LATENCY.recordError();
+            throw e;
+        } finally {
+            UPDATE_MEDICAL_PROFILE_LATENCY.record(System.nanoTime() - t0);
+        }
+    }
+    
+    /**
+     * Retrieves a pilgrim's medical profile together with its current version, for editing
+     * with {@link #updateMedicalProfile(MedicalProfile, int)}.
+     * 
+     * @param pilgrimID The ID of the pilgrim whose medical profile to retrieve
+     * @return The versioned profile, or null if none is found
+     */
+    public static Versioned<MedicalProfile> getVersionedMedicalProfileByPilgrimId(int pilgrimID) {
+        long t0 = System.nanoTime();
+        try {
+            try (Connection conn = DBConnection.getPool().borrow()) {
+                return queryVersionedMedicalProfile(conn, "PilgrimID", pilgrimID);
+            } catch (SQLException e) {
+                throw new DataAccessException("Error retrieving medical profile: " + e.getMessage(), e);
+            }
+        } catch (RuntimeException e) {
+            GET_VERSIONED_MEDICAL_PROFILE_BY_PILGRIM_ID_LATENCY.recordError();
+            throw e;
+        } finally {
+            GET_VERSIONED_MEDICAL_PROFILE_BY_PILGRIM_ID_LATENCY.record(System.nanoTime() - t0);
+        }
+    }
+    
+    /**
+     * @param keyColumn ProfileID or PilgrimID; never user input
+     */
+    private static Versioned<MedicalProfile> queryVersionedMedicalProfile(Connection conn, String keyColumn, int key) throws SQLException {
+        String sql = "SELECT ProfileID, bloodType, medications, Medical_History, PilgrimID, AdminID, ProfileVersion "
+                   + "FROM MedicalProfile WHERE " + keyColumn + " = ?";
+        try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+            stmt.setInt(1, key);
+            try (ResultSet rs = stmt.executeQuery()) {
+                if (!rs.next()) {
+                    return null;
+                }
+                return new Versioned<>(new MedicalProfile(rs.getInt("ProfileID"), rs.getString("bloodType"),
+                        rs.getString("medications"), rs.getString("Medical_History"),
+                        rs.getInt("PilgrimID"), rs.getInt("AdminID")), rs.getInt("ProfileVersion"));
+            }
+        }
+    }
+}
+
+
+
+
+/**
+ * The TransportScheduleDAO class provides data access operations for transport schedules.
+ * It handles the creation, retrieval, and assignment of transport schedules for pilgrims.
+ * This class implements the Data Access Object (DAO) pattern to separate database operations
+ * from business logic.
+ */
+class TransportScheduleDAO {
+    
+    /** Latency of each public method and of the waitlist promotion, shown on the System Metrics screen */
+    private static final LatencyHistogram CREATE_TRANSPORT_SCHEDULE_LATENCY = DaoMetrics.histogram("TransportScheduleDAO.createTransportSchedule");
+    private static final LatencyHistogram GET_ALL_TRANSPORT_SCHEDULES_LATENCY = DaoMetrics.histogram("TransportScheduleDAO.getAllTransportSchedules");
+    private static final LatencyHistogram STREAM_ALL_TRANSPORT_SCHEDULES_LATENCY = DaoMetrics.histogram("TransportScheduleDAO.streamAllTransportSchedules");
+    private static final LatencyHistogram GET_TRANSPORT_SCHEDULES_PAGE_LATENCY = DaoMetrics.histogram("TransportScheduleDAO.getTransportSchedulesPage");
+    private static final LatencyHistogram BOOK_TICKET_LATENCY = DaoMetrics.histogram("TransportScheduleDAO.bookTicket");
+    private static final LatencyHistogram GET_TICKET_LATENCY = DaoMetrics.histogram("TransportScheduleDAO.getTicket");
+    private static final LatencyHistogram CANCEL_TICKET_LATENCY = DaoMetrics.histogram("TransportScheduleDAO.cancelTicket");
+    private static final LatencyHistogram GET_TICKETS_BY_PILGRIM_LATENCY = DaoMetrics.histogram("TransportScheduleDAO.getTicketsByPilgrim");
+    private static final LatencyHistogram JOIN_WAITLIST_LATENCY = DaoMetrics.histogram("TransportScheduleDAO.joinWaitlist");
+    private static final LatencyHistogram RECONCILE_SEAT_INVENTORY_LATENCY = DaoMetrics.histogram("TransportScheduleDAO.reconcileSeatInventory");
+    private static final LatencyHistogram PLAN_JOURNEY_LATENCY = DaoMetrics.histogram("TransportScheduleDAO.planJourney");
+    private static final LatencyHistogram GET_JOURNEY_STOPS_LATENCY = DaoMetrics.histogram("TransportScheduleDAO.getJourneyStops");
+    private static final LatencyHistogram PROMOTE_WAITLISTED_LATENCY = DaoMetrics.histogram("TransportScheduleDAO.promoteWaitlisted");
+    
+    /** Allocates ScheduleIDs for the create overloads that assign the ID */
+    private static final IdAllocator SCHEDULE_IDS = new IdAllocator("TransportSchedule",
+            "SELECT IFNULL(MAX(ScheduleID), 0) + 1 FROM TransportSchedule", IdAllocator.DEFAULT_BLOCK_SIZE);
+    
+    /** Allocates ticket numbers, which start at 100001 */
+    private static final IdAllocator TICKET_IDS = new IdAllocator("Ticket",
+            "SELECT IFNULL(MAX(TicketNumber), 100000) + 1 FROM Ticket", IdAllocator.DEFAULT_BLOCK_SIZE);
+    
+    /** Seats on sale on each schedule, leased from the SeatInventory table */
+    private static final SeatInventory SEATS = new SeatInventory(TransportScheduleDAO::leaseSeats,
+            TransportScheduleDAO::returnSeats, SeatInventory.DEFAULT_LEASE_SIZE);
+    
+    /** Gives seats freed by cancellations to waitlisted pilgrims */
+    private static final WaitlistPromoter WAITLIST = new WaitlistPromoter(
+            TransportScheduleDAO::promoteWaitlisted, SEATS);
+    
+    /** Plans journeys over the cached schedules; its timetable is rebuilt after each reload of the cache */
+    private static final JourneyPlanner JOURNEYS = new JourneyPlanner();
+    
+    /** The columns that the paged listing may be filtered on */
+    static final Set<String> PAGE_FILTER_COLUMNS = Set.of("departureTime", "arrivalTime", "route", "TransportType", "AdminID");
+    
+    /**
+     * Creates a new transport schedule in the database.
+     * 
+     * @param scheduleID The unique identifier for the transport schedule
+     * @param departureTime The scheduled departure time (format: "HH:MM" or "YYYY-MM-DD HH:MM:SS")
+     * @param arrivalTime The scheduled arrival time (format: "HH:MM" or "YYYY-MM-DD HH:MM:SS")
+     * @param route The route description (e.g., "Mina to Arafat")
+     * @param transportType The type of transport (e.g., "Bus", "Train")
+     * @param adminID The ID of the administrator creating this schedule
+     * @return true if the schedule was created successfully, false otherwise
+     * @throws DataAccessException if a database access error occurs
+     */
+    public static boolean createTransportSchedule(int scheduleID, String departureTime, 
+            String arrivalTime, String route, String transportType, int adminID) {
+        long t0 = System.nanoTime();
+        try {
+            String sql = "INSERT INTO TransportSchedule (ScheduleID, departureTime, arrivalTime, route, TransportType, AdminID) "
+                       + "VALUES (?, ?, ?, ?, ?, ?)";
+        
+            Connection conn = null;
+            PreparedStatement stmt = null;
+        
+            try {
+                conn = DBConnection.getConnection();
+                stmt = conn.prepareStatement(sql);
+            
+                stmt.setInt(1, scheduleID);
+                stmt.setString(2, departureTime);
+                stmt.setString(3, arrivalTime);
+                stmt.setString(4, route);
+                stmt.setString(5, transportType);
+                stmt.setInt(6, adminID);
+            
+                int rowsAffected = stmt.executeUpdate();
+                conn.commit();
+                ReferenceDataCache.TRANSPORT_SCHEDULES.refreshAsync();
+                return rowsAffected > 0;
+            
+            } catch (SQLException e) {
+                try {
+                    if (conn != null) conn.rollback();
+                } catch (SQLException ex) {
+                    ex.printStackTrace();
+                }
+                throw new DataAccessException("Error creating transport schedule: " + e.getMessage(), e);
+            } finally {
+                try {
+                    if (stmt != null) stmt.close();
+                } catch (SQLException e) {
+                    e.printStackTrace();
+                }
+                try {
+                    if (conn != null) conn.close();
+                } catch (SQLException e) {
+                    e.printStackTrace();
+                }
+            }
+        } catch (RuntimeException e) {
+            CREATE_TRANSPORT_SCHEDULE_LATENCY.recordError();
+            throw e;
+        } finally {
+            CREATE_TRANSPORT_SCHEDULE_LATENCY.record(System.nanoTime() - t0);
+        }
+    }
+    
+    /**
+     * Creates a new transport schedule record with a server-assigned ScheduleID. IDs come from a block
+     * reserved in advance by an {@link IdAllocator}, so creating a transport schedule does not
+     * need an extra database round trip for its ID.
+     * 
+     * @param departureTime The scheduled departure time
+     * @param arrivalTime The scheduled arrival time
+     * @param route The route description (e.g., "Mina - Arafat")
+     * @param transportType The type of transport (e.g., "Bus", "Train")
+     * @param adminID The ID of the administrator creating this schedule
+     * @return The assigned ScheduleID, or -1 if the transport schedule could not be created
+     */
+    public static int createTransportSchedule(String departureTime, String arrivalTime, String route,
+            String transportType, int adminID) {
+        int id;
+        try {
+            id = SCHEDULE_IDS.nextId();
+        } catch (SQLException e) {
+            throw new DataAccessException("Error assigning schedule ID: " + e.getMessage(), e);
+        }
+        return createTransportSchedule(id, departureTime, arrivalTime, route, transportType, adminID) ? id : -1;
+    }
+    
+    /**
+     * Retrieves all transport schedules from the {@link ReferenceDataCache} snapshot, without going
+     * to the database. The snapshot is loaded when the cache starts; if that load failed,
+     * the list stays empty until the next successful reload.
+     * 
+     * @return An unmodifiable List of all transport schedules
+     */
+    public static List<TransportSchedule> getAllTransportSchedules() {
+        long t0 = System.nanoTime();
+        try {
+            return ReferenceDataCache.getTransportSchedules();
+        } catch (RuntimeException e) {
+            GET_ALL_TRANSPORT_SCHEDULES_LATENCY.recordError();
+            throw e;
+        } finally {
+            GET_ALL_TRANSPORT_SCHEDULES_LATENCY.record(System.nanoTime() - t0);
+        }
+    }
+    
+    /**
+     * Queries all transport schedules from the database, bypassing the reference-data cache.
+     * 
+     * @return A List of all transport schedules
+     * @throws SQLException if a database access error occurs
+     */
+    static List<TransportSchedule> queryAllTransportSchedules() throws SQLException {
+        List<TransportSchedule> schedules = new ArrayList<>();
+        String sql = "SELECT ScheduleID, departureTime, arrivalTime, route, TransportType, AdminID FROM TransportSchedule";
+        
+        try (Connection conn = DBConnection.getPool().borrow();
+             Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery(sql)) {
+            
+            while (rs.next()) {
+                schedules.add(mapTransportSchedule(rs));
+            }
+        }
+        
+        return schedules;
+    }
+    
+    /**
+     * Streams all transport schedules over a forward-only cursor, using the default fetch size.
+     * The stream must be closed, preferably with try-with-resources.
+     * 
+     * @return A Stream of all transport schedules
+     * @see #streamAllTransportSchedules(int)
+     */
+    public static Stream<TransportSchedule> streamAllTransportSchedules() {
+        return streamAllTransportSchedules(StreamingQuery.DEFAULT_FETCH_SIZE);
+    }
+    
+    /**
+     * Streams all transport schedules over a forward-only, read-only cursor.
+     * The stream must be closed, preferably with try-with-resources; it holds a
+     * pooled connection until then.
+     * 
+     * @param fetchSize The number of rows fetched from the server per round trip
+     * @return A Stream of all transport schedules
+     */
+    public static Stream<TransportSchedule> streamAllTransportSchedules(int fetchSize) {
+        long t0 = System.nanoTime();
+        try {
+            String sql = "SELECT ScheduleID, departureTime, arrivalTime, route, TransportType, AdminID FROM TransportSchedule";
+        
+            try {
+                return StreamingQuery.open(sql, fetchSize, TransportScheduleDAO::mapTransportSchedule);
+            } catch (SQLException e) {
+                throw new DataAccessException("Error retrieving transport schedules: " + e.getMessage(), e);
+            }
+        } catch (RuntimeException e) {
+            STREAM_ALL_TRANSPORT_SCHEDULES_LATENCY.recordError();
+            throw e;
+        } finally {
+            STREAM_ALL_TRANSPORT_SCHEDULES_LATENCY.record(System.nanoTime() - t0);
+        }
+    }
+    
+    /**
+     * Retrieves one page of transport schedules ordered by ScheduleID, using keyset pagination.
+     * 
+     * @param afterScheduleID Only transport schedules with a greater ScheduleID are returned; use 0 for the first page
+     * @param limit The maximum number of transport schedules on the page
+     * @return A Page of transport schedules
+     * @see #getTransportSchedulesPage(int, int, PageFilter)
+     */
+    public static Page<TransportSchedule> getTransportSchedulesPage(int afterScheduleID, int limit) {
+        return getTransportSchedulesPage(afterScheduleID, limit, null);
+    }
+    
+    /**
+     * Retrieves one page of transport schedules ordered by ScheduleID, using keyset pagination.
+     * The query seeks past {@code afterScheduleID} on the primary key instead of using OFFSET,
+     * so every page costs the same no matter how deep into the table it is.
+     * 
+     * @param afterScheduleID Only transport schedules with a greater ScheduleID are returned; use 0 for the first page
+     * @param limit The maximum number of transport schedules on the page
+     * @param filter Optional conditions on the columns departureTime, arrivalTime, route, TransportType, AdminID, or null
+     * @return A Page of transport schedules
+     * @throws IllegalArgumentException if the filter uses a column that cannot be filtered on
+     */
+    public static Page<TransportSchedule> getTransportSchedulesPage(int afterScheduleID, int limit, PageFilter filter) {
+        long t0 = System.nanoTime();
+        try {
+            String sql = "SELECT ScheduleID, departureTime, arrivalTime, route, TransportType, AdminID FROM TransportSchedule";
+        
+            try {
+                return Page.fetch(sql, "ScheduleID", afterScheduleID, limit, filter, PAGE_FILTER_COLUMNS, TransportScheduleDAO::mapTransportSchedule);
+            } catch (SQLException e) {
+                throw new DataAccessException("Error retrieving transport schedules: " + e.getMessage(), e);
+            }
+        } catch (RuntimeException e) {
+            GET_TRANSPORT_SCHEDULES_PAGE_LATENCY.recordError();
+            throw e;
+        } finally {
+            GET_TRANSPORT_SCHEDULES_PAGE_LATENCY.record(System.nanoTime() - t0);
+        }
+    }
+    
+    /**
+     * Maps the current row of a TransportSchedule query to a TransportSchedule.
+     */
+    private static TransportSchedule mapTransportSchedule(ResultSet rs) throws SQLException {
+        return new TransportSchedule(rs.getInt("ScheduleID"), rs.getString("departureTime"),
+                rs.getString("arrivalTime"), rs.getString("route"), rs.getString("TransportType"),
+                rs.getInt("AdminID"));
+    }
+    
+    /**
+     * Assigns a pilgrim to a specific transport schedule by booking a ticket for them.
+     * 
+     * @param pilgrimID The ID of the pilgrim to assign
+     * @param scheduleID The ID of the transport schedule
+     * @return true if the assignment was successful, false if the schedule is full or the booking failed
+     * @see #bookTicket(int, int)
+     */
+    public static boolean assignPilgrimToTransport(int pilgrimID, int scheduleID) {
+        return bookTicket(pilgrimID, scheduleID) != null;
+    }
+    
+    /**
+     * Books a seat on a transport schedule and issues a ticket for it. The seat comes from
+     * the {@link SeatInventory}, so concurrent bookings for the same departure do not wait on
+     * each other for the schedule's seat count; only the ticket and the pilgrim's place on
+     * the schedule are written, in one transaction.
+     * 
+     * @param pilgrimID The ID of the pilgrim travelling
+     * @param scheduleID The ID of the transport schedule
+     * @return The booked ticket, or null if the schedule is full or the booking failed
+     */
+    public static Ticket bookTicket(int pilgrimID, int scheduleID) {
+        long t0 = System.nanoTime();
+        try {
+            String ticketSql = "INSERT INTO Ticket (TicketNumber, PilgrimID, ScheduleID, Status, BookedAt) VALUES (?, ?, ?, ?, ?)";
+            String sql = "INSERT INTO PilgrimTransport (PilgrimID, ScheduleID) VALUES (?, ?)";
+        
+            Connection conn = null;
+            boolean seatHeld = false;
+        
+            try {
+                if (!SEATS.tryReserve(scheduleID)) {
+                    return null;
+                }
+                seatHeld = true;
+                int ticketNumber = TICKET_IDS.nextId();
+                LocalDateTime bookedAt = LocalDateTime.now().withNano(0);
+            
+                conn = DBConnection.getConnection();
+                try (PreparedStatement stmt = conn.prepareStatement(ticketSql)) {
+                    stmt.setInt(1, ticketNumber);
+                    stmt.setInt(2, pilgrimID);
+                    stmt.setInt(3, scheduleID);
+                    stmt.setString(4, Ticket.BOOKED);
+                    stmt.setTimestamp(5, Timestamp.valueOf(bookedAt));
+                    stmt.executeUpdate();
+                }
+                try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+                    stmt.setInt(1, pilgrimID);
+                    stmt.setInt(2, scheduleID);
+                    stmt.executeUpdate();
+                }
+                conn.commit();
+                seatHeld = false;
+                return new Ticket(ticketNumber, pilgrimID, scheduleID, Ticket.BOOKED, bookedAt.format(Ticket.TIME_FORMAT));
+            
+            } catch (SQLException e) {
+                try {
+                    if (conn != null) conn.rollback();
+                } catch (SQLException ex) {
+                    ex.printStackTrace();
+                }
+                throw new DataAccessException("Error booking ticket: " + e.getMessage(), e);
+            } finally {
+                if (seatHeld) {
+                    SEATS.release(scheduleID);
+                }
+                try {
+                    if (conn != null) conn.close();
+                } catch (SQLException e) {
+                    e.printStackTrace();
+                }
+            }
+        } catch (RuntimeException e) {
+            BOOK_TICKET_LATENCY.recordError();
+            throw e;
+        } finally {
+            BOOK_TICKET_LATENCY.record(System.nanoTime() - t0);
+        }
+    }
+    
+    /**
+     * Retrieves a ticket by its number, whether it is booked or cancelled.
+     * 
+     * @param ticketNumber The ticket number
+     * @return The ticket, or null if there is no such ticket
+     */
+    public static Ticket getTicket(int ticketNumber) {
+        long t0 = System.nanoTime();
+        try {
+            String sql = "SELECT TicketNumber, PilgrimID, ScheduleID, Status, BookedAt FROM Ticket WHERE TicketNumber = ?";
+        
+            try (Connection conn = DBConnection.getPool().borrow();
+                 PreparedStatement stmt = conn.prepareStatement(sql)) {
+                stmt.setInt(1, ticketNumber);
+                try (ResultSet rs = stmt.executeQuery()) {
+                    return rs.next() ? mapTicket(rs) : null;
+                }
+            } catch (SQLException e) {
+                throw new DataAccessException("Error retrieving ticket: " + e.getMessage(), e);
+            }
+        } catch (RuntimeException e) {
+            GET_TICKET_LATENCY.recordError();
+            throw e;
+        } finally {
+            GET_TICKET_LATENCY.record(System.nanoTime() - t0);
+        }
+    }
+    
+    /**
+     * Cancels a booked ticket. If other pilgrims are waiting for the schedule, the seat is
+     * given to the first of them at the next {@link WaitlistPromoter} tick; otherwise it goes
+     * back on sale. The ticket row is locked while it is cancelled, so a ticket cannot be
+     * cancelled twice.
+     * 
+     * @param ticketNumber The ticket number
+     * @param pilgrimID The ID of the pilgrim the ticket must belong to
+     * @return true if the ticket was cancelled, false if it does not exist, belongs to
+     *         another pilgrim, is already cancelled
+     */
+    public static boolean cancelTicket(int ticketNumber, int pilgrimID) {
+        long t0 = System.nanoTime();
+        try {
+            String lockSql = "SELECT ScheduleID FROM Ticket WHERE TicketNumber = ? AND PilgrimID = ? AND Status = ? FOR UPDATE";
+            String cancelSql = "UPDATE Ticket SET Status = ? WHERE TicketNumber = ?";
+            String sql = "DELETE FROM PilgrimTransport WHERE PilgrimID = ? AND ScheduleID = ?";
+            String waitingSql = "SELECT 1 FROM TransportWaitlist WHERE ScheduleID = ? LIMIT 1";
+        
+            Connection conn = null;
+        
+            try {
+                conn = DBConnection.getConnection();
+            
+                int scheduleID;
+                boolean waiting;
+                try (PreparedStatement lock = conn.prepareStatement(lockSql)) {
+                    lock.setInt(1, ticketNumber);
+                    lock.setInt(2, pilgrimID);
+                    lock.setString(3, Ticket.BOOKED);
+                    try (ResultSet rs = lock.executeQuery()) {
+                        if (!rs.next()) {
+                            conn.rollback();
+                            return false;
+                        }
+                        scheduleID = rs.getInt(1);
+                    }
+                }
+                try (PreparedStatement stmt = conn.prepareStatement(cancelSql)) {
+                    stmt.setString(1, Ticket.CANCELLED);
+                    stmt.setInt(2, ticketNumber);
+                    stmt.executeUpdate();
+                }
+                try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+                    stmt.setInt(1, pilgrimID);
+                    stmt.setInt(2, scheduleID);
+                    stmt.executeUpdate();
+                }
+                try (PreparedStatement stmt = conn.prepareStatement(waitingSql)) {
+                    stmt.setInt(1, scheduleID);
+                    try (ResultSet rs = stmt.executeQuery()) {
+                        waiting = rs.next();
+                    }
+                }
+                conn.commit();
+                if (waiting) {
+                    WAITLIST.seatFreed(scheduleID);
+                } else {
+                    SEATS.release(scheduleID);
+                }
+                return true;
+            
+            } catch (SQLException e) {
+                try {
+                    if (conn != null) conn.rollback();
+                } catch (SQLException ex) {
+                    ex.printStackTrace();
+                }
+                throw new DataAccessException("Error cancelling ticket: " + e.getMessage(), e);
+            } finally {
+                try {
+                    if (conn != null) conn.close();
+                } catch (SQLException e) {
+                    e.printStackTrace();
+                }
+            }
+        } catch (RuntimeException e) {
+            CANCEL_TICKET_LATENCY.recordError();
+            throw e;
+        } finally {
+            CANCEL_TICKET_LATENCY.record(System.nanoTime() - t0);
+        }
+    }
+    
+    /**
+     * Retrieves every ticket a pilgrim has booked, including cancelled ones, oldest first.
+     * 
+     * @param pilgrimID The ID of the pilgrim
+     * @return A List of the pilgrim's tickets
+     */
+    public static List<Ticket> getTicketsByPilgrim(int pilgrimID) {
+        long t0 = System.nanoTime();
+        try {
+            String sql = "SELECT TicketNumber, PilgrimID, ScheduleID, Status, BookedAt FROM Ticket WHERE PilgrimID = ? ORDER BY TicketNumber";
+            List<Ticket> tickets = new ArrayList<>();
+        
+            try (Connection conn = DBConnection.getPool().borrow();
+                 PreparedStatement stmt = conn.prepareStatement(sql)) {
+                stmt.setInt(1, pilgrimID);
+                try (ResultSet rs = stmt.executeQuery()) {
+                    while (rs.next()) {
+                        tickets.add(mapTicket(rs));
+                    }
+                }
+                return tickets;
+            } catch (SQLException e) {
+                throw new DataAccessException("Error retrieving tickets: " + e.getMessage(), e);
+            }
+        } catch (RuntimeException e) {
+            GET_TICKETS_BY_PILGRIM_LATENCY.recordError();
+            throw e;
+        } finally {
+            GET_TICKETS_BY_PILGRIM_LATENCY.record(System.nanoTime() - t0);
+        }
+    }
+    
+    /**
+     * Maps the current row of a Ticket query to a Ticket.
+     */
+    private static Ticket mapTicket(ResultSet rs) throws SQLException {
+        Timestamp bookedAt = rs.getTimestamp("BookedAt");
+        return new Ticket(rs.getInt("TicketNumber"), rs.getInt("PilgrimID"), rs.getInt("ScheduleID"),
+                rs.getString("Status"), bookedAt == null ? null : bookedAt.toLocalDateTime().format(Ticket.TIME_FORMAT));
+    }
+    
+    /**
+     * Puts a pilgrim on the waitlist of a transport schedule. When a ticket on the schedule
+     * is cancelled, its seat is given to the waiting pilgrim with the highest priority
+     * (see {@link WaitlistPromoter#priorityOf(Pilgrim)}). Joining a waitlist the pilgrim is
+     * already on has no effect.
+     * 
+     * @param pilgrimID The ID of the pilgrim
+     * @param scheduleID The ID of the transport schedule
+     * @return true if the pilgrim is on the waitlist, false if there is no such pilgrim
+     */
+    public static boolean joinWaitlist(int pilgrimID, int scheduleID) {
+        long t0 = System.nanoTime();
+        try {
+            String sql = "INSERT IGNORE INTO TransportWaitlist (ScheduleID, PilgrimID, Priority, JoinedAt) VALUES (?, ?, ?, ?)";
+        
+            Pilgrim pilgrim = PilgrimDAO.getPilgrimById(pilgrimID);
+            if (pilgrim == null) {
+                return false;
+            }
+        
+            Connection conn = null;
+            PreparedStatement stmt = null;
+        
+            try {
+                conn = DBConnection.getConnection();
+                stmt = conn.prepareStatement(sql);
+            
+                stmt.setInt(1, scheduleID);
+                stmt.setInt(2, pilgrimID);
+                stmt.setInt(3, WaitlistPromoter.priorityOf(pilgrim));
+                stmt.setTimestamp(4, Timestamp.valueOf(LocalDateTime.now()));
+            
+                stmt.executeUpdate();
+                conn.commit();
+                return true;
+            
+            } catch (SQLException e) {
+                try {
+                    if (conn != null) conn.rollback();
+                } catch (SQLException ex) {
+                    ex.printStackTrace();
+                }
+                throw new DataAccessException("Error joining the waitlist: " + e.getMessage(), e);
+            } finally {
+                try {
+                    if (stmt != null) stmt.close();
+                } catch (SQLException e) {
+                    e.printStackTrace();
+                }
+                try {
+                    if (conn != null) conn.close();
+                } catch (SQLException e) {
+                    e.printStackTrace();
+                }
+            }
+        } catch (RuntimeException e) {
+            JOIN_WAITLIST_LATENCY.recordError();
+            throw e;
+        } finally {
+            JOIN_WAITLIST_LATENCY.record(System.nanoTime() - t0);
+        }
+    }
+    
+    /**
+     * Issues tickets for seats freed by cancellations to the first pilgrims on each
+     * schedule's waitlist, in one transaction. Called by the {@link WaitlistPromoter} on its
+     * own thread, so errors are thrown rather than shown.
+     * 
+     * Waitlist rows are locked as they are read, so two instances promoting at once do not
+     * give the same pilgrim two seats. Pilgrims who booked the schedule themselves since
+     * joining its waitlist are skipped.
+     * 
+     * @param freed The number of freed seats per ScheduleID
+     * @return The number of tickets issued per ScheduleID
+     */
+    private static Map<Integer, Integer> promoteWaitlisted(Map<Integer, Integer> freed) throws SQLException {
+        long t0 = System.nanoTime();
+        try {
+            String nextSql = "SELECT w.PilgrimID FROM TransportWaitlist w WHERE w.ScheduleID = ? AND NOT EXISTS "
+                           + "(SELECT 1 FROM PilgrimTransport pt WHERE pt.PilgrimID = w.PilgrimID AND pt.ScheduleID = w.ScheduleID) "
+                           + "ORDER BY w.Priority DESC, w.JoinedAt, w.PilgrimID LIMIT ? FOR UPDATE";
+            String ticketSql = "INSERT INTO Ticket (TicketNumber, PilgrimID, ScheduleID, Status, BookedAt) VALUES (?, ?, ?, ?, ?)";
+            String sql = "INSERT INTO PilgrimTransport (PilgrimID, ScheduleID) VALUES (?, ?)";
+            String removeSql = "DELETE FROM TransportWaitlist WHERE ScheduleID = ? AND PilgrimID = ?";
+        
+            int seats = 0;
+            for (int count : freed.values()) {
+                seats += count;
+            }
+            // Reserved before borrowing; numbers left over when fewer pilgrims are waiting are skipped
+            int[] ticketNumbers = TICKET_IDS.nextIds(seats);
+            int issued = 0;
+        
+            Map<Integer, Integer> given = new HashMap<>();
+            try (Connection conn = DBConnection.getPool().borrow()) {
+                try (PreparedStatement next = conn.prepareStatement(nextSql);
+                     PreparedStatement tickets = conn.prepareStatement(ticketSql);
+                     PreparedStatement assign = conn.prepareStatement(sql);
+                     PreparedStatement remove = conn.prepareStatement(removeSql)) {
+                    Timestamp bookedAt = Timestamp.valueOf(LocalDateTime.now().withNano(0));
+                    for (Map.Entry<Integer, Integer> e : freed.entrySet()) {
+                        int scheduleID = e.getKey();
+                        next.setInt(1, scheduleID);
+                        next.setInt(2, e.getValue());
+                        int count = 0;
+                        try (ResultSet rs = next.executeQuery()) {
+                            while (rs.next()) {
+                                int pilgrimID = rs.getInt(1);
+                                tickets.setInt(1, ticketNumbers[issued++]);
+                                tickets.setInt(2, pilgrimID);
+                                tickets.setInt(3, scheduleID);
+                                tickets.setString(4, Ticket.BOOKED);
+                                tickets.setTimestamp(5, bookedAt);
+                                tickets.addBatch();
+                                assign.setInt(1, pilgrimID);
+                                assign.setInt(2, scheduleID);
+                                assign.addBatch();
+                                remove.setInt(1, scheduleID);
+                                remove.setInt(2, pilgrimID);
+                                remove.addBatch();
+                                count++;
+                            }
+                        }
+                        if (count > 0) {
+                            given.put(scheduleID, count);
+                        }
+                    }
+                    if (!given.isEmpty()) {
+                        tickets.executeBatch();
+                        assign.executeBatch();
+                        remove.executeBatch();
+                    }
+                    conn.commit();
+                    return given;
+                } catch (SQLException e) {
+                    conn.rollback();
+                    throw e;
+                }
+            }
+        } catch (SQLException | RuntimeException e) {
+            PROMOTE_WAITLISTED_LATENCY.recordError();
+            throw e;
+        } finally {
+            PROMOTE_WAITLISTED_LATENCY.record(System.nanoTime() - t0);
+        }
+    }
+    
+    /**
+     * Takes up to max seats on a schedule from its SeatInventory row and commits, in a
+     * transaction of its own. A schedule without a row is given one with the default
+     * capacity, counting the pilgrims already on it as taken.
+     * 
+     * @return The number of seats taken
+     */
+    private static int leaseSeats(int scheduleID, int max) throws SQLException {
+        String lockSql = "SELECT Capacity, Leased FROM SeatInventory WHERE ScheduleID = ? FOR UPDATE";
+        String seedSql = "INSERT IGNORE INTO SeatInventory (ScheduleID, Capacity, Leased) "
+                       + "SELECT ?, ?, COUNT(*) FROM PilgrimTransport WHERE ScheduleID = ?";
+        String sql = "UPDATE SeatInventory SET Leased = Leased + ? WHERE ScheduleID = ?";
+        
+        try (Connection conn = DBConnection.getPool().borrow()) {
+            try {
+                int[] row = lockSeatRow(conn, lockSql, scheduleID);
+                if (row == null) {
+                    try (PreparedStatement seed = conn.prepareStatement(seedSql)) {
+                        seed.setInt(1, scheduleID);
+                        seed.setInt(2, SeatInventory.DEFAULT_CAPACITY);
+                        seed.setInt(3, scheduleID);
+                        seed.executeUpdate();
+                    }
+                    row = lockSeatRow(conn, lockSql, scheduleID);
+                    if (row == null) {
+                        throw new SQLException("Transport schedule " + scheduleID + " does not exist");
+                    }
+                }
+                int granted = Math.max(0, Math.min(max, row[0] - row[1]));
+                if (granted > 0) {
+                    try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+                        stmt.setInt(1, granted);
+                        stmt.setInt(2, scheduleID);
+                        stmt.executeUpdate();
+                    }
+                }
+                conn.commit();
+                return granted;
+            } catch (SQLException e) {
+                conn.rollback();
+                throw e;
+            }
+        }
+    }
+    
+    /**
+     * @return The schedule's [Capacity, Leased], or null if it has no SeatInventory row
+     */
+    private static int[] lockSeatRow(Connection conn, String lockSql, int scheduleID) throws SQLException {
+        try (PreparedStatement lock = conn.prepareStatement(lockSql)) {
+            lock.setInt(1, scheduleID);
+            try (ResultSet rs = lock.executeQuery()) {
+                return rs.next() ? new int[] { rs.getInt("Capacity"), rs.getInt("Leased") } : null;
+            }
+        }
+    }
+    
+    /**
+     * Gives seats that were leased but not sold back to a schedule's SeatInventory row.
+     */
+    private static void returnSeats(int scheduleID, int count) throws SQLException {
+        String sql = "UPDATE SeatInventory SET Leased = GREATEST(Leased - ?, 0) WHERE ScheduleID = ?";
+        try (Connection conn = DBConnection.getPool().borrow();
+             PreparedStatement stmt = conn.prepareStatement(sql)) {
+            try {
+                stmt.setInt(1, count);
+                stmt.setInt(2, scheduleID);
+                stmt.executeUpdate();
+                conn.commit();
+            } catch (SQLException e) {
+                conn.rollback();
+                throw e;
+            }
+        }
+    }
+    
+    /**
+     * Resets every schedule's leased seat count to the number of pilgrims on it plus the seats
+     * this process still holds. Seats leased by a process that stopped without returning
+     * them are recovered this way. Other processes' unsold leases are lost too, so this is
+     * only run, at startup, when {@code hajjguide.seats.reconcileOnStart} is set and no other
+     * instance is booking.
+     * 
+     * @return The number of schedules whose count changed, or -1 if an error occurs
+     */
+    public static int reconcileSeatInventory() {
+        long t0 = System.nanoTime();
+        try {
+            String sql = "UPDATE SeatInventory s SET Leased = "
+                       + "(SELECT COUNT(*) FROM PilgrimTransport p WHERE p.ScheduleID = s.ScheduleID) + ? WHERE s.ScheduleID = ?";
+            String listSql = "SELECT ScheduleID FROM SeatInventory";
+        
+            try (Connection conn = DBConnection.getPool().borrow()) {
+                try {
+                    List<Integer> scheduleIDs = new ArrayList<>();
+                    try (Statement stmt = conn.createStatement();
+                         ResultSet rs = stmt.executeQuery(listSql)) {
+                        while (rs.next()) {
+                            scheduleIDs.add(rs.getInt(1));
+                        }
+                    }
+                    int changed = 0;
+                    try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+                        for (int scheduleID : scheduleIDs) {
+                            stmt.setInt(1, SEATS.getLocalFree(scheduleID));
+                            stmt.setInt(2, scheduleID);
+                            changed += stmt.executeUpdate();
+                        }
+                    }
+                    conn.commit();
+                    return changed;
+                } catch (SQLException e) {
+                    conn.rollback();
+                    throw e;
+                }
+            } catch (SQLException e) {
+                e.printStackTrace();
+                return -1;
+            }
+        } catch (RuntimeException e) {
+            RECONCILE_SEAT_INVENTORY_LATENCY.recordError();
+            throw e;
+        } finally {
+            RECONCILE_SEAT_INVENTORY_LATENCY.record(System.nanoTime() - t0);
+        }
+    }
+    
+    /**
+     * @return The seat inventory, for the System Metrics report and for returning unused seats at shutdown
+     */
+    static SeatInventory getSeatInventory() {
+        return SEATS;
+    }
+    
+    /**
+     * @return The waitlist promoter, for the System Metrics report and for handing out freed seats at shutdown
+     */
+    static WaitlistPromoter getWaitlistPromoter() {
+        return WAITLIST;
+    }
+    
+    /**
+     * Finds the journey that reaches a stop earliest, changing vehicles where that helps.
+     * The timetable is built from {@link #getAllTransportSchedules()}, which returns the same
+     * list until the reference-data cache sees the schedules change, so the timetable is
+     * rebuilt only then and a query does not touch the database.
+     * 
+     * @param from The stop to leave from, as named in the routes (case is ignored)
+     * @param to The stop to go to
+     * @param departAfter The earliest time to leave, in seconds from midnight
+     * @return The journey, or null if either stop is unknown or there is no journey by the end of the next day
+     */
+    public static JourneyPlanner.Journey planJourney(String from, String to, int departAfter) {
+        long t0 = System.nanoTime();
+        try {
+            return JOURNEYS.plan(ReferenceDataCache.getTransportSchedules(), from, to, departAfter);
+        } catch (RuntimeException e) {
+            PLAN_JOURNEY_LATENCY.recordError();
+            throw e;
+        } finally {
+            PLAN_JOURNEY_LATENCY.record(System.nanoTime() - t0);
+        }
+    }
+    
+    /**
+     * @return Every stop named by a schedule's route, for choosing the ends of a journey
+     */
+    public static List<String> getJourneyStops() {
+        long t0 = System.nanoTime();
+        try {
+            return JOURNEYS.timetable(ReferenceDataCache.getTransportSchedules()).stops();
+        } catch (RuntimeException e) {
+            GET_JOURNEY_STOPS_LATENCY.recordError();
+            throw e;
+        } finally {
+            GET_JOURNEY_STOPS_LATENCY.record(System.nanoTime() - t0);
+        }
+    }
+    
+    /**
+     * @return The journey planner, for the System Metrics report
+     */
+    static JourneyPlanner getJourneyPlanner() {
+        return JOURNEYS;
+    }
+}
+
+
+/**
+ * The AccommodationDAO class provides data access operations for pilgrim accommodation records.
+ * It handles the creation, retrieval, and assignment of accommodations for pilgrims during Hajj.
+ * This class implements the Data Access Object (DAO) pattern to separate database operations
+ * from business logic.
+ */
+class AccommodationDAO {
+    
+    /** Latency of each public method, shown on the System Metrics screen */
+    private static final LatencyHistogram CREATE_ACCOMMODATION_LATENCY = DaoMetrics.histogram("AccommodationDAO.createAccommodation");
+    private static final LatencyHistogram GET_ALL_ACCOMMODATIONS_LATENCY = DaoMetrics.histogram("AccommodationDAO.getAllAccommodations");
+    private static final LatencyHistogram STREAM_ALL_ACCOMMODATIONS_LATENCY = DaoMetrics.histogram("AccommodationDAO.streamAllAccommodations");
+    private static final LatencyHistogram GET_ACCOMMODATIONS_PAGE_LATENCY = DaoMetrics.histogram("AccommodationDAO.getAccommodationsPage");
+    private static final LatencyHistogram FIND_NEAREST_ACCOMMODATIONS_LATENCY = DaoMetrics.histogram("AccommodationDAO.findNearestAccommodations");
+    private static final LatencyHistogram FIND_ACCOMMODATIONS_WITHIN_LATENCY = DaoMetrics.histogram("AccommodationDAO.findAccommodationsWithin");
+    private static final LatencyHistogram ASSIGN_PILGRIM_TO_ACCOMMODATION_LATENCY = DaoMetrics.histogram("AccommodationDAO.assignPilgrimToAccommodation");
+    private static final LatencyHistogram GET_OCCUPANCY_LATENCY = DaoMetrics.histogram("AccommodationDAO.getOccupancy");
+    private static final LatencyHistogram STREAM_PILGRIMS_WITHOUT_ACCOMMODATION_LATENCY = DaoMetrics.histogram("AccommodationDAO.streamPilgrimsWithoutAccommodation");
+    private static final LatencyHistogram SAVE_ALLOCATIONS_LATENCY = DaoMetrics.histogram("AccommodationDAO.saveAllocations");
+    
+    /** Location index for the proximity searches, kept current by every create */
+    private static final SpatialIndex<Accommodation> LOCATION_INDEX = newLocationIndex();
+    
+    /** Allocates AccommodationIDs for the create overloads that assign the ID */
+    private static final IdAllocator ACCOMMODATION_IDS = new IdAllocator("Accommodation",
+            "SELECT IFNULL(MAX(AccommodationID), 0) + 1 FROM Accommodation", IdAllocator.DEFAULT_BLOCK_SIZE);
+    
+    /** The columns that the paged listing may be filtered on */
+    static final Set<String> PAGE_FILTER_COLUMNS = Set.of("HotelName", "roomType", "capacity", "address", "AdminID");
+    
+    /**
+     * Creates a new accommodation record in the database, without coordinates.
+     * 
+     * @param accommodationID The unique identifier for the accommodation
+     * @param hotelName The name of the hotel or accommodation facility
+     * @param roomType The type of room (e.g., "Single", "Double", "Suite")
+     * @param capacity The maximum number of pilgrims the accommodation can hold
+     * @param address The physical address of the accommodation
+     * @param adminID The ID of the administrator creating this record
+     * @return true if the accommodation was created successfully, false otherwise
+     */
+    public static boolean createAccommodation(int accommodationID, String hotelName, 
+            String roomType, int capacity, String address, int adminID) {
+        return createAccommodation(accommodationID, hotelName, roomType, capacity, address, adminID, Double.NaN, Double.NaN);
+    }
+    
+    /**
+     * Creates a new accommodation record in the database. An accommodation with coordinates
+     * is found by the proximity searches as soon as it is created.
+     * 
+     * @param accommodationID The unique identifier for the accommodation
+     * @param hotelName The name of the hotel or accommodation facility
+     * @param roomType The type of room (e.g., "Single", "Double", "Suite")
+     * @param capacity The maximum number of pilgrims the accommodation can hold
+     * @param address The physical address of the accommodation
+     * @param adminID The ID of the administrator creating this record
+     * @param latitude The latitude of the accommodation, or NaN if it is not known
+     * @param longitude The longitude of the accommodation, or NaN if it is not known
+     * @return true if the accommodation was created successfully, false otherwise
+     */
+    public static boolean createAccommodation(int accommodationID, String hotelName, 
+            String roomType, int capacity, String address, int adminID, double latitude, double longitude) {
+        long t0 = System.nanoTime();
+        try {
+            String sql = "INSERT INTO Accommodation (AccommodationID, HotelName, roomType, capacity, address, AdminID, Latitude, Longitude) "
+                       + "VALUES (?, ?, ?, ?, ?, ?, ?, ?)";
+        
+            Connection conn = null;
+            PreparedStatement stmt = null;
+        
+            try {
+                conn = DBConnection.getConnection();
+                stmt = conn.prepareStatement(sql);
+            
+                stmt.setInt(1, accommodationID);
+                stmt.setString(2, hotelName);
+                stmt.setString(3, roomType);
+                stmt.setInt(4, capacity);
+                stmt.setString(5, address);
+                stmt.setInt(6, adminID);
+                SpatialIndex.setCoordinate(stmt, 7, latitude);
+                SpatialIndex.setCoordinate(stmt, 8, longitude);
+            
+                int rowsAffected = stmt.executeUpdate();
+                conn.commit();
+                ReferenceDataCache.ACCOMMODATIONS.refreshAsync();
+                if (rowsAffected > 0) {
+                    LOCATION_INDEX.put(new Accommodation(accommodationID, hotelName, roomType, capacity,
+                            address, adminID, latitude, longitude));
+                }
+                return rowsAffected > 0;
+            
+            } catch (SQLException e) {
+                try {
+                    if (conn != null) conn.rollback();
+                } catch (SQLException ex) {
+                    ex.printStackTrace();
+                }
+                throw new DataAccessException("Error creating accommodation: " + e.getMessage(), e);
+            } finally {
+                try {
+                    if (stmt != null) stmt.close();
+                } catch (SQLException e) {
+                    e.printStackTrace();
+                }
+                try {
+                    if (conn != null) conn.close();
+                } catch (SQLException e) {
+                    e.printStackTrace();
+                }
+            }
+        } catch (RuntimeException e) {
+            CREATE_ACCOMMODATION_LATENCY.recordError();
+            throw e;
+        } finally {
+            CREATE_ACCOMMODATION_LATENCY.record(System.nanoTime() - t0);
+        }
+    }
+    
+    /**
+     * Creates a new accommodation record with a server-assigned AccommodationID. IDs come from a block
+     * reserved in advance by an {@link IdAllocator}, so creating a accommodation does not
+     * need an extra database round trip for its ID.
+     * 
+     * @param hotelName The name of the hotel or accommodation facility
+     * @param roomType The type of room (e.g., "Single", "Double", "Suite")
+     * @param capacity The maximum number of pilgrims the accommodation can hold
+     * @param address The physical address of the accommodation
+     * @param adminID The ID of the administrator creating this record
+     * @param latitude The latitude of the accommodation, or NaN if it is not known
+     * @param longitude The longitude of the accommodation, or NaN if it is not known
+     * @return The assigned AccommodationID, or -1 if the accommodation could not be created
+     */
+    public static int createAccommodation(String hotelName, String roomType, int capacity,
+            String address, int adminID, double latitude, double longitude) {
+        int id;
+        try {
+            id = ACCOMMODATION_IDS.nextId();
+        } catch (SQLException e) {
+            throw new DataAccessException("Error assigning accommodation ID: " + e.getMessage(), e);
+        }
+        return createAccommodation(id, hotelName, roomType, capacity, address, adminID, latitude, longitude) ? id : -1;
+    }
+    
+    /**
+     * Retrieves all accommodations from the {@link ReferenceDataCache} snapshot, without going
+     * to the database. The snapshot is loaded when the cache starts; if that load failed,
+     * the list stays empty until the next successful reload.
+     * 
+     * @return An unmodifiable List of all accommodations
+     */
+    public static List<Accommodation> getAllAccommodations() {
+        long t0 = System.nanoTime();
+        try {
+            return ReferenceDataCache.getAccommodations();
+        } catch (RuntimeException e) {
+            GET_ALL_ACCOMMODATIONS_LATENCY.recordError();
+            throw e;
+        } finally {
+            GET_ALL_ACCOMMODATIONS_LATENCY.record(System.nanoTime() - t0);
+        }
+    }
+    
+    /**
+     * Queries all accommodations from the database, bypassing the reference-data cache.
+     * 
+     * @return A List of all accommodations
+     * @throws SQLException if a database access error occurs
+     */
+    static List<Accommodation> queryAllAccommodations() throws SQLException {
+        List<Accommodation> accommodations = new ArrayList<>();
+        String sql = "SELECT AccommodationID, HotelName, roomType, capacity, address, AdminID, Latitude, Longitude FROM Accommodation";
+        
+        try (Connection conn = DBConnection.getPool().borrow();
+             Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery(sql)) {
+            
+            while (rs.next()) {
+                accommodations.add(mapAccommodation(rs));
+            }
+        }
+        
+        return accommodations;
+    }
+    
+    /**
+     * Streams all accommodations over a forward-only cursor, using the default fetch size.
+     * The stream must be closed, preferably with try-with-resources.
+     * 
+     * @return A Stream of all accommodations
+     * @see #streamAllAccommodations(int)
+     */
+    public static Stream<Accommodation> streamAllAccommodations() {
+        return streamAllAccommodations(StreamingQuery.DEFAULT_FETCH_SIZE);
+    }
+    
+    /**
+     * Streams all accommodations over a forward-only, read-only cursor.
+     * The stream must be closed, preferably with try-with-resources; it holds a
+     * pooled connection until then.
+     * 
+     * @param fetchSize The number of rows fetched from the server per round trip
+     * @return A Stream of all accommodations
+     */
+    public static Stream<Accommodation> streamAllAccommodations(int fetchSize) {
+        long t0 = System.nanoTime();
+        try {
+            String sql = "SELECT AccommodationID, HotelName, roomType, capacity, address, AdminID, Latitude, Longitude FROM Accommodation";
+        
+            try {
+                return StreamingQuery.open(sql, fetchSize, AccommodationDAO::mapAccommodation);
+            } catch (SQLException e) {
+                throw new DataAccessException("Error retrieving accommodations: " + e.getMessage(), e);
+            }
+        } catch (RuntimeException e) {
+            STREAM_ALL_ACCOMMODATIONS_LATENCY.recordError();
+            throw e;
+        } finally {
+            STREAM_ALL_ACCOMMODATIONS_LATENCY.record(System.nanoTime() - t0);
+        }
+    }
+    
+    /**
+     * Retrieves one page of accommodations ordered by AccommodationID, using keyset pagination.
+     * 
+     * @param afterAccommodationID Only accommodations with a greater AccommodationID are returned; use 0 for the first page
+     * @param limit The maximum number of accommodations on the page
+     * @return A Page of accommodations
+     * @see #getAccommodationsPage(int, int, PageFilter)
+     */
+    public static Page<Accommodation> getAccommodationsPage(int afterAccommodationID, int limit) {
+        return getAccommodationsPage(afterAccommodationID, limit, null);
+    }
+    
+    /**
+     * Retrieves one page of accommodations ordered by AccommodationID, using keyset pagination.
+     * The query seeks past {@code afterAccommodationID} on the primary key instead of using OFFSET,
+     * so every page costs the same no matter how deep into the table it is.
+     * 
+     * @param afterAccommodationID Only accommodations with a greater AccommodationID are returned; use 0 for the first page
+     * @param limit The maximum number of accommodations on the page
+     * @param filter Optional conditions on the columns HotelName, roomType, capacity, address, AdminID, or null
+     * @return A Page of accommodations
+     * @throws IllegalArgumentException if the filter uses a column that cannot be filtered on
+     */
+    public static Page<Accommodation> getAccommodationsPage(int afterAccommodationID, int limit, PageFilter filter) {
+        long t0 = System.nanoTime();
+        try {
+            String sql = "SELECT AccommodationID, HotelName, roomType, capacity, address, AdminID, Latitude, Longitude FROM Accommodation";
+        
+            try {
+                return Page.fetch(sql, "AccommodationID", afterAccommodationID, limit, filter, PAGE_FILTER_COLUMNS, AccommodationDAO::mapAccommodation);
+            } catch (SQLException e) {
+                throw new DataAccessException("Error retrieving accommodations: " + e.getMessage(), e);
+            }
+        } catch (RuntimeException e) {
+            GET_ACCOMMODATIONS_PAGE_LATENCY.recordError();
+            throw e;
+        } finally {
+            GET_ACCOMMODATIONS_PAGE_LATENCY.record(System.nanoTime() - t0);
+        }
+    }
+    
+    /**
+     * Maps the current row of an Accommodation query to an Accommodation.
+     */
+    private static Accommodation mapAccommodation(ResultSet rs) throws SQLException {
+        return new Accommodation(rs.getInt("AccommodationID"), rs.getString("HotelName"),
+                rs.getString("roomType"), rs.getInt("capacity"), rs.getString("address"),
+                rs.getInt("AdminID"), SpatialIndex.getCoordinate(rs, "Latitude"),
+                SpatialIndex.getCoordinate(rs, "Longitude"));
+    }
+    
+    /**
+     * Finds the accommodations nearest to a point, such as a pilgrim's reported position.
+     * The search is answered from the in-memory location index, built by
+     * {@link #loadLocationIndex()}. Accommodations without coordinates are never found.
+     * 
+     * @param latitude The latitude of the point
+     * @param longitude The longitude of the point
+     * @param limit The maximum number of accommodations to return
+     * @return Up to limit accommodations with their distance in metres, nearest first
+     * @throws IllegalArgumentException if the coordinates are out of range
+     */
+    public static List<SpatialIndex.Hit<Accommodation>> findNearestAccommodations(double latitude, double longitude, int limit) {
+        long t0 = System.nanoTime();
+        try {
+            return LOCATION_INDEX.nearest(latitude, longitude, limit, null);
+        } catch (RuntimeException e) {
+            FIND_NEAREST_ACCOMMODATIONS_LATENCY.recordError();
+            throw e;
+        } finally {
+            FIND_NEAREST_ACCOMMODATIONS_LATENCY.record(System.nanoTime() - t0);
+        }
+    }
+    
+    /**
+     * Finds every accommodation within a distance of a point.
+     * 
+     * @param latitude The latitude of the point
+     * @param longitude The longitude of the point
+     * @param radiusMeters The distance in metres
+     * @return The accommodations with their distance in metres, nearest first
+     * @throws IllegalArgumentException if the coordinates are out of range or the radius is negative
+     */
+    public static List<SpatialIndex.Hit<Accommodation>> findAccommodationsWithin(double latitude, double longitude, double radiusMeters) {
+        long t0 = System.nanoTime();
+        try {
+            return LOCATION_INDEX.within(latitude, longitude, radiusMeters, null);
+        } catch (RuntimeException e) {
+            FIND_ACCOMMODATIONS_WITHIN_LATENCY.recordError();
+            throw e;
+        } finally {
+            FIND_ACCOMMODATIONS_WITHIN_LATENCY.record(System.nanoTime() - t0);
+        }
+    }
+    
+    /**
+     * @return An empty index of accommodations by location
+     */
+    static SpatialIndex<Accommodation> newLocationIndex() {
+        return new SpatialIndex<>(Accommodation::accommodationID, Accommodation::latitude, Accommodation::longitude,
+                SpatialIndex.DEFAULT_CELL_DEGREES);
+    }
+    
+    /**
+     * Builds the location index from the {@link ReferenceDataCache} snapshot of every
+     * accommodation, once that snapshot has loaded. Accommodations created afterwards are
+     * added by {@link #createAccommodation}. Runs on the reference data loader thread.
+     */
+    static void loadLocationIndex() {
+        List<Accommodation> all = ReferenceDataCache.ACCOMMODATIONS.current();
+        if (all != null && !LOCATION_INDEX.isLoaded()) {
+            LOCATION_INDEX.load(all);
+        }
+    }
+    
+    /**
+     * Gets the location index, for statistics.
+     * 
+     * @return The accommodation location index
+     */
+    static SpatialIndex<Accommodation> getLocationIndex() {
+        return LOCATION_INDEX;
+    }
+    
+    /**
+     * Assigns a pilgrim to a specific accommodation, provided it still has room. The
+     * pilgrim gets the accommodation's room type. The accommodation row is locked while
+     * its occupancy is counted, so two admins cannot both take its last place.
+     * 
+     * @param pilgrimID The ID of the pilgrim to assign
+     * @param accommodationID The ID of the accommodation
+     * @return true if the assignment was successful, false if the accommodation is full
+     * @throws DataAccessException if a database access error occurs or if the assignment violates constraints
+     */
+    public static boolean assignPilgrimToAccommodation(int pilgrimID, int accommodationID) {
+        long t0 = System.nanoTime();
+        try {
+            String lockSql = "SELECT capacity, roomType FROM Accommodation WHERE AccommodationID = ? FOR UPDATE";
+            String countSql = "SELECT COUNT(*) FROM PilgrimAccommodation WHERE AccommodationID = ?";
+            String sql = "INSERT INTO PilgrimAccommodation (PilgrimID, AccommodationID, RoomType) VALUES (?, ?, ?)";
+        
+            Connection conn = null;
+            PreparedStatement stmt = null;
+        
+            try {
+                conn = DBConnection.getConnection();
+            
+                int capacity;
+                String roomType;
+                int occupied;
+                try (PreparedStatement lock = conn.prepareStatement(lockSql)) {
+                    lock.setInt(1, accommodationID);
+                    try (ResultSet rs = lock.executeQuery()) {
+                        if (!rs.next()) {
+                            throw new SQLException("Accommodation " + accommodationID + " does not exist");
+                        }
+                        capacity = rs.getInt(1);
+                        roomType = rs.getString(2);
+                    }
+                }
+                try (PreparedStatement count = conn.prepareStatement(countSql)) {
+                    count.setInt(1, accommodationID);
+                    try (ResultSet rs = count.executeQuery()) {
+                        rs.next();
+                        occupied = rs.getInt(1);
+                    }
+                }
+                if (occupied >= capacity) {
+                    conn.rollback();
+                    return false;
+                }
+            
+                stmt = conn.prepareStatement(sql);
+            
+                stmt.setInt(1, pilgrimID);
+                stmt.setInt(2, accommodationID);
+                stmt.setString(3, roomType);
+            
+                int rowsAffected = stmt.executeUpdate();
+                conn.commit();
+                return rowsAffected > 0;
+            
+            } catch (SQLException e) {
+                try {
+                    if (conn != null) conn.rollback();
+                } catch (SQLException ex) {
+                    ex.printStackTrace();
+                }
+                throw new DataAccessException("Error assigning pilgrim to accommodation: " + e.getMessage(), e);
+            } finally {
+                try {
+                    if (stmt != null) stmt.close();
+                } catch (SQLException e) {
+                    e.printStackTrace();
+                }
+                try {
+                    if (conn != null) conn.close();
+                } catch (SQLException e) {
+                    e.printStackTrace();
+                }
+            }
+        } catch (RuntimeException e) {
+            ASSIGN_PILGRIM_TO_ACCOMMODATION_LATENCY.recordError();
+            throw e;
+        } finally {
+            ASSIGN_PILGRIM_TO_ACCOMMODATION_LATENCY.record(System.nanoTime() - t0);
+        }
+    }
+    
+    /**
+     * Counts the pilgrims already assigned to each accommodation.
+     * 
+     * @return The number of pilgrims by AccommodationID; accommodations with none are left out
+     */
+    public static Map<Integer, Integer> getOccupancy() {
+        long t0 = System.nanoTime();
+        try {
+            Map<Integer, Integer> occupancy = new HashMap<>();
+            String sql = "SELECT AccommodationID, COUNT(*) AS occupied FROM PilgrimAccommodation GROUP BY AccommodationID";
+        
+            try (Connection conn = DBConnection.getConnection();
+                 Statement stmt = conn.createStatement();
+                 ResultSet rs = stmt.executeQuery(sql)) {
+            
+                while (rs.next()) {
+                    occupancy.put(rs.getInt("AccommodationID"), rs.getInt("occupied"));
+                }
+            
+            } catch (SQLException e) {
+                throw new DataAccessException("Error retrieving accommodation occupancy: " + e.getMessage(), e);
+            }
+        
+            return occupancy;
+        } catch (RuntimeException e) {
+            GET_OCCUPANCY_LATENCY.recordError();
+            throw e;
+        } finally {
+            GET_OCCUPANCY_LATENCY.record(System.nanoTime() - t0);
+        }
+    }
+    
+    /**
+     * Streams every pilgrim that has not been assigned an accommodation yet, over a
+     * forward-only cursor. The stream must be closed, preferably with try-with-resources.
+     * 
+     * @return A Stream of pilgrims without accommodation
+     */
+    public static Stream<Pilgrim> streamPilgrimsWithoutAccommodation() {
+        long t0 = System.nanoTime();
+        try {
+            String sql = "SELECT p.PilgrimID, p.PilgrimName, p.Phone, p.Nationality, p.specialNeed, p.allergies, p.pilgrimAge "
+                       + "FROM Pilgrim p WHERE NOT EXISTS "
+                       + "(SELECT 1 FROM PilgrimAccommodation pa WHERE pa.PilgrimID = p.PilgrimID)";
+            
+            try {
+                return StreamingQuery.open(sql, StreamingQuery.DEFAULT_FETCH_SIZE, PilgrimDAO::mapPilgrim);
+            } catch (SQLException e) {
+                throw new DataAccessException("Error retrieving pilgrims: " + e.getMessage(), e);
+            }
+        } catch (RuntimeException e) {
+            STREAM_PILGRIMS_WITHOUT_ACCOMMODATION_LATENCY.recordError();
+            throw e;
+        } finally {
+            STREAM_PILGRIMS_WITHOUT_ACCOMMODATION_LATENCY.record(System.nanoTime() - t0);
+        }
+    }
+    
+    /**
+     * Saves an allocation plan in a single transaction, so either every assignment is
+     * stored or none is. The accommodations are locked and their occupancy counted again
+     * first; if an accommodation has filled up since the plan was made, nothing is saved.
+     * 
+     * Rows are sent in JDBC batches of the {@code hajjguide.batch.size} system property.
+     * With {@code rewriteBatchedStatements} enabled on the connection URL, the MySQL driver
+     * sends each batch as a single multi-row INSERT.
+     * 
+     * @param assignments The assignments to store, typically from {@link AccommodationAllocator}
+     * @return The number of assignments saved, or -1 if nothing was saved
+     */
+    public static int saveAllocations(List<AccommodationAllocator.Assignment> assignments) {
+        long t0 = System.nanoTime();
+        try {
+            String lockSql = "SELECT AccommodationID, capacity FROM Accommodation FOR UPDATE";
+            String countSql = "SELECT AccommodationID, COUNT(*) AS occupied FROM PilgrimAccommodation GROUP BY AccommodationID";
+            String sql = "INSERT INTO PilgrimAccommodation (PilgrimID, AccommodationID, RoomType) VALUES (?, ?, ?)";
+        
+            Connection conn = null;
+            PreparedStatement stmt = null;
+        
+            try {
+                conn = DBConnection.getConnection();
+            
+                Map<Integer, Integer> free = new HashMap<>();
+                try (Statement lock = conn.createStatement();
+                     ResultSet rs = lock.executeQuery(lockSql)) {
+                    while (rs.next()) {
+                        free.put(rs.getInt("AccommodationID"), rs.getInt("capacity"));
+                    }
+                }
+                try (Statement count = conn.createStatement();
+                     ResultSet rs = count.executeQuery(countSql)) {
+                    while (rs.next()) {
+                        free.merge(rs.getInt("AccommodationID"), -rs.getInt("occupied"), Integer::sum);
+                    }
+                }
+                for (AccommodationAllocator.Assignment a : assignments) {
+                    Integer left = free.merge(a.accommodationID(), -1, Integer::sum);
+                    if (left < 0) {
+                        throw new SQLException("Accommodation " + a.accommodationID()
+                                + " no longer has room for this plan; please plan again");
+                    }
+                }
+            
+                stmt = conn.prepareStatement(sql);
+                int pending = 0;
+                for (AccommodationAllocator.Assignment a : assignments) {
+                    stmt.setInt(1, a.pilgrimID());
+                    stmt.setInt(2, a.accommodationID());
+                    stmt.setString(3, a.roomType());
+                    stmt.addBatch();
+                    if (++pending == PilgrimDAO.DEFAULT_BATCH_SIZE) {
+                        stmt.executeBatch();
+                        pending = 0;
+                    }
+                }
+                if (pending > 0) {
+                    stmt.executeBatch();
+                }
+                conn.commit();
+                return assignments.size();
+            
+            } catch (SQLException e) {
+                try {
+                    if (conn != null) conn.rollback();
+                } catch (SQLException ex) {
+                    ex.printStackTrace();
+                }
+                throw new DataAccessException("Error saving accommodation allocations: " + e.getMessage(), e);
+            } finally {
+                try {
+                    if (stmt != null) stmt.close();
+                } catch (SQLException e) {
+                    e.printStackTrace();
+                }
+                try {
+                    if (conn != null) conn.close();
+                } catch (SQLException e) {
+                    e.printStackTrace();
+                }
+            }
+        } catch (RuntimeException e) {
+            SAVE_ALLOCATIONS_LATENCY.recordError();
+            throw e;
+        } finally {
+            SAVE_ALLOCATIONS_LATENCY.record(System.nanoTime() - t0);
+        }
+    }
+}
+
+
+/**
+ * The PermitDAO class provides data access operations for Hajj permit records.
+ * It handles the creation, retrieval, and assignment of permits to pilgrims.
+ * This class implements the Data Access Object (DAO) pattern to separate database operations
+ * from business logic.
+ */
+class PermitDAO {
+    
+    /** Latency of each public method, shown on the System Metrics screen */
+    private static final LatencyHistogram CREATE_PERMIT_LATENCY = DaoMetrics.histogram("PermitDAO.createPermit");
+    private static final LatencyHistogram GET_ALL_PERMITS_LATENCY = DaoMetrics.histogram("PermitDAO.getAllPermits");
+    private static final LatencyHistogram STREAM_ALL_PERMITS_LATENCY = DaoMetrics.histogram("PermitDAO.streamAllPermits");
+    private static final LatencyHistogram GET_PERMITS_PAGE_LATENCY = DaoMetrics.histogram("PermitDAO.getPermitsPage");
+    private static final LatencyHistogram FIND_NEAREST_PERMITS_LATENCY = DaoMetrics.histogram("PermitDAO.findNearestPermits");
+    private static final LatencyHistogram FIND_PERMITS_WITHIN_LATENCY = DaoMetrics.histogram("PermitDAO.findPermitsWithin");
+    private static final LatencyHistogram ASSIGN_PERMIT_TO_PILGRIM_LATENCY = DaoMetrics.histogram("PermitDAO.assignPermitToPilgrim");
+    
+    /** Location index for the proximity searches, kept current by every create */
+    private static final SpatialIndex<Permit> LOCATION_INDEX = newLocationIndex();
+    
+    /** Allocates PermitIDs for the create overloads that assign the ID */
+    private static final IdAllocator PERMIT_IDS = new IdAllocator("Permit",
+            "SELECT IFNULL(MAX(PermitID), 0) + 1 FROM Permit", IdAllocator.DEFAULT_BLOCK_SIZE);
+    
+    /** The columns that the paged listing may be filtered on */
+    static final Set<String> PAGE_FILTER_COLUMNS = Set.of("Name", "location", "serviceType");
+    
+    /**
+     * Creates a new permit record in the database, without coordinates.
+     * 
+     * @param permitID The unique identifier for the permit
+     * @param name The name/description of the permit (e.g., "Arafat Access Permit")
+     * @param location The location this permit grants access to
+     * @param serviceType The type of service the permit provides (e.g., "Transport", "Food")
+     * @return true if the permit was created successfully, false otherwise
+     */
+    public static boolean createPermit(int permitID, String name, String location, String serviceType) {
+        return createPermit(permitID, name, location, serviceType, Double.NaN, Double.NaN);
+    }
+    
+    /**
+     * Creates a new permit record in the database. A permit with coordinates is found by
+     * the proximity searches as soon as it is created.
+     * 
+     * @param permitID The unique identifier for the permit
+     * @param name The name/description of the permit (e.g., "Arafat Access Permit")
+     * @param location The location this permit grants access to
+     * @param serviceType The type of service the permit provides (e.g., "Transport", "Food")
+     * @param latitude The latitude of the location, or NaN if it is not known
+     * @param longitude The longitude of the location, or NaN if it is not known
+     * @return true if the permit was created successfully, false otherwise
+     */
+    public static boolean createPermit(int permitID, String name, String location, String serviceType,
+            double latitude, double longitude) {
+        long t0 = System.nanoTime();
+        try {
+            String sql = "INSERT INTO Permit (PermitID, Name, location, serviceType, Latitude, Longitude) VALUES (?, ?, ?, ?, ?, ?)";
+        
+            Connection conn = null;
+            PreparedStatement stmt = null;
+        
+            try {
+                conn = DBConnection.getConnection();
+                stmt = conn.prepareStatement(sql);
+            
+                stmt.setInt(1, permitID);
+                stmt.setString(2, name);
+                stmt.setString(3, location);
+                stmt.setString(4, serviceType);
+                SpatialIndex.setCoordinate(stmt, 5, latitude);
+                SpatialIndex.setCoordinate(stmt, 6, longitude);
+            
+                int rowsAffected = stmt.executeUpdate();
+                conn.commit();
+                ReferenceDataCache.PERMITS.refreshAsync();
+                if (rowsAffected > 0) {
+                    LOCATION_INDEX.put(new Permit(permitID, name, location, serviceType, latitude, longitude));
+                }
+                return rowsAffected > 0;
+            
+            } catch (SQLException e) {
+                try {
+                    if (conn != null) conn.rollback();
+                } catch (SQLException ex) {
+                    ex.printStackTrace();
+                }
+                throw new DataAccessException("Error creating permit: " + e.getMessage(), e);
+            } finally {
+                try {
+                    if (stmt != null) stmt.close();
+                } catch (SQLException e) {
+                    e.printStackTrace();
+                }
+                try {
+                    if (conn != null) conn.close();
+                } catch (SQLException e) {
+                    e.printStackTrace();
+                }
+            }
+        } catch (RuntimeException e) {
+            CREATE_PERMIT_LATENCY.recordError();
+            throw e;
+        } finally {
+            CREATE_PERMIT_LATENCY.record(System.nanoTime() - t0);
+        }
+    }
+    
+    /**
+     * Creates a new permit record with a server-assigned PermitID. IDs come from a block
+     * reserved in advance by an {@link IdAllocator}, so creating a permit does not
+     * need an extra database round trip for its ID.
+     * 
+     * @param name The name/description of the permit
+     * @param location The location this permit grants access to
+     * @param serviceType The type of service the permit provides
+     * @param latitude The latitude of the location, or NaN if it is not known
+     * @param longitude The longitude of the location, or NaN if it is not known
+     * @return The assigned PermitID, or -1 if the permit could not be created
+     */
+    public static int createPermit(String name, String location, String serviceType, double latitude, double longitude) {
+        int id;
+        try {
+            id = PERMIT_IDS.nextId();
+        } catch (SQLException e) {
+            throw new DataAccessException("Error assigning permit ID: " + e.getMessage(), e);
+        }
+        return createPermit(id, name, location, serviceType, latitude, longitude) ? id : -1;
+    }
+    
+    /**
+     * Retrieves all permits from the {@link ReferenceDataCache} snapshot, without going
+     * to the database. The snapshot is loaded when the cache starts; if that load failed,
+     * the list stays empty until the next successful reload.
+     * 
+     * @return An unmodifiable List of all permits
+     */
+    public static List<Permit> getAllPermits() {
+        long t0 = System.nanoTime();
+        try {
+            return ReferenceDataCache.getPermits();
+        } catch (RuntimeException e) {
+            GET_ALL_PERMITS_LATENCY.recordError();
+            throw e;
+        } finally {
+            GET_ALL_PERMITS_LATENCY.record(System.nanoTime() - t0);
+        }
+    }
+    
+    /**
+     * Queries all permits from the database, bypassing the reference-data cache.
+     * 
+     * @return A List of all permits
+     * @throws SQLException if a database access error occurs
+     */
+    static List<Permit> queryAllPermits() throws SQLException {
+        List<Permit> permits = new ArrayList<>();
+        String sql = "SELECT PermitID, Name, location, serviceType, Latitude, Longitude FROM Permit";
+        
+        try (Connection conn = DBConnection.getPool().borrow();
+             Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery(sql)) {
+            
+            while (rs.next()) {
+                permits.add(mapPermit(rs));
+            }
+        }
+        
+        return permits;
+    }
+    
+    /**
+     * Streams all permits over a forward-only cursor, using the default fetch size.
+     * The stream must be closed, preferably with try-with-resources.
+     * 
+     * @return A Stream of all permits
+     * @see #streamAllPermits(int)
+     */
+    public static Stream<Permit> streamAllPermits() {
+        return streamAllPermits(StreamingQuery.DEFAULT_FETCH_SIZE);
+    }
+    
+    /**
+     * Streams all permits over a forward-only, read-only cursor.
+     * The stream must be closed, preferably with try-with-resources; it holds a
+     * pooled connection until then.
+     * 
+     * @param fetchSize The number of rows fetched from the server per round trip
+     * @return A Stream of all permits
+     */
+    public static Stream<Permit> streamAllPermits(int fetchSize) {
+        long t0 = System.nanoTime();
+        try {
+            String sql = "SELECT PermitID, Name, location, serviceType, Latitude, Longitude FROM Permit";
+        
+            try {
+                return StreamingQuery.open(sql, fetchSize, PermitDAO::mapPermit);
+            } catch (SQLException e) {
+                throw new DataAccessException("Error retrieving permits: " + e.getMessage(), e);
+            }
+        } catch (RuntimeException e) {
+            STREAM_ALL_PERMITS_LATENCY.recordError();
+            throw e;
+        } finally {
+            STREAM_ALL_PERMITS_LATENCY.record(System.nanoTime() - t0);
+        }
+    }
+    
+    /**
+     * Retrieves one page of permits ordered by PermitID, using keyset pagination.
+     * 
+     * @param afterPermitID Only permits with a greater PermitID are returned; use 0 for the first page
+     * @param limit The maximum number of permits on the page
+     * @return A Page of permits
+     * @see #getPermitsPage(int, int, PageFilter)
+     */
+    public static Page<Permit> getPermitsPage(int afterPermitID, int limit) {
+        return getPermitsPage(afterPermitID, limit, null);
+    }
+    
+    /**
+     * Retrieves one page of permits ordered by PermitID, using keyset pagination.
+     * The query seeks past {@code afterPermitID} on the primary key instead of using OFFSET,
+     * so every page costs the same no matter how deep into the table it is.
+     * 
+     * @param afterPermitID Only permits with a greater PermitID are returned; use 0 for the first page
+     * @param limit The maximum number of permits on the page
+     * @param filter Optional conditions on the columns Name, location, serviceType, or null
+     * @return A Page of permits
+     * @throws IllegalArgumentException if the filter uses a column that cannot be filtered on
+     */
+    public static Page<Permit> getPermitsPage(int afterPermitID, int limit, PageFilter filter) {
+        long t0 = System.nanoTime();
+        try {
+            String sql = "SELECT PermitID, Name, location, serviceType, Latitude, Longitude FROM Permit";
+        
+            try {
+                return Page.fetch(sql, "PermitID", afterPermitID, limit, filter, PAGE_FILTER_COLUMNS, PermitDAO::mapPermit);
+            } catch (SQLException e) {
+                throw new DataAccessException("Error retrieving permits: " + e.getMessage(), e);
+            }
+        } catch (RuntimeException e) {
+            GET_PERMITS_PAGE_LATENCY.recordError();
+            throw e;
+        } finally {
+            GET_PERMITS_PAGE_LATENCY.record(System.nanoTime() - t0);
+        }
+    }
+    
+    /**
+     * Maps the current row of a Permit query to a Permit.
+     */
+    private static Permit mapPermit(ResultSet rs) throws SQLException {
+        return new Permit(rs.getInt("PermitID"), rs.getString("Name"), rs.getString("location"),
+                rs.getString("serviceType"), SpatialIndex.getCoordinate(rs, "Latitude"),
+                SpatialIndex.getCoordinate(rs, "Longitude"));
+    }
+    
+    /**
+     * Finds the service points nearest to a point, for example the nearest clinics to a
+     * medical emergency. The search is answered from the in-memory location index, built by
+     * {@link #loadLocationIndex()}. Permits without coordinates are never found.
+     * 
+     * @param latitude The latitude of the point
+     * @param longitude The longitude of the point
+     * @param limit The maximum number of permits to return
+     * @param serviceType Only permits of this service type (e.g., "Health"), ignoring case; null for all
+     * @return Up to limit permits with their distance in metres, nearest first
+     * @throws IllegalArgumentException if the coordinates are out of range
+     */
+    public static List<SpatialIndex.Hit<Permit>> findNearestPermits(double latitude, double longitude, int limit, String serviceType) {
+        long t0 = System.nanoTime();
+        try {
+            return LOCATION_INDEX.nearest(latitude, longitude, limit, ofServiceType(serviceType));
+        } catch (RuntimeException e) {
+            FIND_NEAREST_PERMITS_LATENCY.recordError();
+            throw e;
+        } finally {
+            FIND_NEAREST_PERMITS_LATENCY.record(System.nanoTime() - t0);
+        }
+    }
+    
+    /**
+     * Finds every service point within a distance of a point.
+     * 
+     * @param latitude The latitude of the point
+     * @param longitude The longitude of the point
+     * @param radiusMeters The distance in metres
+     * @param serviceType Only permits of this service type, ignoring case; null for all
+     * @return The permits with their distance in metres, nearest first
+     * @throws IllegalArgumentException if the coordinates are out of range or the radius is negative
+     */
+    public static List<SpatialIndex.Hit<Permit>> findPermitsWithin(double latitude, double longitude, double radiusMeters, String serviceType) {
+        long t0 = System.nanoTime();
+        try {
+            return LOCATION_INDEX.within(latitude, longitude, radiusMeters, ofServiceType(serviceType));
+        } catch (RuntimeException e) {
+            FIND_PERMITS_WITHIN_LATENCY.recordError();
+            throw e;
+        } finally {
+            FIND_PERMITS_WITHIN_LATENCY.record(System.nanoTime() - t0);
+        }
+    }
+    
+    /**
+     * @return A filter for permits of the service type, or null to accept every permit
+     */
+    static Predicate<Permit> ofServiceType(String serviceType) {
+        if (serviceType == null || serviceType.trim().isEmpty()) {
+            return null;
+        }
+        String type = serviceType.trim();
+        return p -> type.equalsIgnoreCase(p.serviceType());
+    }
+    
+    /**
+     * @return An empty index of permits by location
+     */
+    static SpatialIndex<Permit> newLocationIndex() {
+        return new SpatialIndex<>(Permit::permitID, Permit::latitude, Permit::longitude, SpatialIndex.DEFAULT_CELL_DEGREES);
+    }
+    
+    /**
+     * Builds the location index from the {@link ReferenceDataCache} snapshot of every
+     * permit, once that snapshot has loaded. Permits created afterwards are added by
+     * {@link #createPermit}. Runs on the reference data loader thread.
+     */
+    static void loadLocationIndex() {
+        List<Permit> all = ReferenceDataCache.PERMITS.current();
+        if (all != null && !LOCATION_INDEX.isLoaded()) {
+            LOCATION_INDEX.load(all);
+        }
+    }
+    
+    /**
+     * Gets the location index, for statistics.
+     * 
+     * @return The permit location index
+     */
+    static SpatialIndex<Permit> getLocationIndex() {
+        return LOCATION_INDEX;
+    }
+    
+    /**
+     * Assigns a permit to a specific pilgrim.
+     * 
+     * @param pilgrimID The ID of the pilgrim to assign the permit to
+     * @param permitID The ID of the permit to assign
+     * @return true if the assignment was successful, false otherwise
+     * @throws DataAccessException if a database access error occurs or if the assignment violates constraints
+     */
+    public static boolean assignPermitToPilgrim(int pilgrimID, int permitID) {
+        long t0 = System.nanoTime();
+        try {
+            String sql = "INSERT INTO PilgrimPermit (PilgrimID, PermitID) VALUES (?, ?)";
+        
+            Connection conn = null;
+            PreparedStatement stmt = null;
+        
+            try {
+                conn = DBConnection.getConnection();
+                stmt = conn.prepareStatement(sql);
+            
+                stmt.setInt(1, pilgrimID);
+                stmt.setInt(2, permitID);
+            
+                int rowsAffected = stmt.executeUpdate();
+                conn.commit();
+                return rowsAffected > 0;
+            
+            } catch (SQLException e) {
+                try {
+                    if (conn != null) conn.rollback();
+                } catch (SQLException ex) {
+                    ex.printStackTrace();
+                }
+                throw new DataAccessException("Error assigning permit to pilgrim: " + e.getMessage(), e);
+            } finally {
+                try {
+                    if (stmt != null) stmt.close();
+                } catch (SQLException e) {
+                    e.printStackTrace();
+                }
+                try {
+                    if (conn != null) conn.close();
+                } catch (SQLException e) {
+                    e.printStackTrace();
+                }
+            }
+        } catch (RuntimeException e) {
+            ASSIGN_PERMIT_TO_PILGRIM_LATENCY.recordError();
+            throw e;
+        } finally {
+            ASSIGN_PERMIT_TO_PILGRIM_LATENCY.record(System.nanoTime() - t0);
+        }
+    }
+}
+
+
+/**
+ * The AdminDAO class provides data access operations for administrator accounts.
+ * It handles authentication and retrieval of administrator information.
+ * This class implements the Data Access Object (DAO) pattern to separate database operations
+ * from business logic.
+ */
+class AdminDAO {
+    
+    /** Latency of each public method, shown on the System Metrics screen */
+    private static final LatencyHistogram VALIDATE_ADMIN_LATENCY = DaoMetrics.histogram("AdminDAO.validateAdmin");
+    private static final LatencyHistogram GET_ADMIN_BY_ID_LATENCY = DaoMetrics.histogram("AdminDAO.getAdminById");
+    
+    /**
+     * Validates administrator credentials against the database.
+     * 
+     * @param adminID The unique identifier of the administrator
+     * @param password The password to validate (in plaintext)
+     * @return true if the credentials are valid, false otherwise
+     * @throws DataAccessException if a database access error occurs
+     * 
+     * @implNote This method performs a direct password comparison. In production environments,
+     *           consider using password hashing and salting for security.
+     */
+    public static boolean validateAdmin(int adminID, String password) {
+        long t0 = System.nanoTime();
+        try {
+            String sql = "SELECT * FROM Admin WHERE AdminID = ? AND Password = ?";
+        
+            try (Connection conn = DBConnection.getConnection();
+                 PreparedStatement stmt = conn.prepareStatement(sql)) {
+            
+                stmt.setInt(1, adminID);
+                stmt.setString(2, password);
+            
+                ResultSet rs = stmt.executeQuery();
+                boolean isValid = rs.next();
+                rs.close();
+                return isValid;
+            
+            } catch (SQLException e) {
+                throw new DataAccessException("Error validating admin: " + e.getMessage(), e);
+            }
+        } catch (RuntimeException e) {
+            VALIDATE_ADMIN_LATENCY.recordError();
+            throw e;
+        } finally {
+            VALIDATE_ADMIN_LATENCY.record(System.nanoTime() - t0);
+        }
+    }
+    
+    /**
+     * Retrieves administrator information by ID.
+     * 
+     * @param adminID The unique identifier of the administrator
+     * @return The Admin, or null if the admin is not found
+     * @throws DataAccessException if a database access error occurs
+     * 
+     * @see #validateAdmin For authentication before retrieving details
+     */
+    public static Admin getAdminById(int adminID) {
+        long t0 = System.nanoTime();
+        try {
+            String sql = "SELECT AdminID, AdminName, phone, Email FROM Admin WHERE AdminID = ?";
+            Admin admin = null;
+        
+            try (Connection conn = DBConnection.getConnection();
+                 PreparedStatement stmt = conn.prepareStatement(sql)) {
+            
+                stmt.setInt(1, adminID);
+                ResultSet rs = stmt.executeQuery();
+            
+                if (rs.next()) {
+                    admin = new Admin(rs.getInt("AdminID"), rs.getString("AdminName"),
+                            rs.getString("phone"), rs.getString("Email"));
+                }
+            
+                rs.close();
+            
+            } catch (SQLException e) {
+                throw new DataAccessException("Error retrieving admin: " + e.getMessage(), e);
+            }
+        
+            return admin;
+        } catch (RuntimeException e) {
+            GET_ADMIN_BY_ID_LATENCY.recordError();
+            throw e;
+        } finally {
+            GET_ADMIN_BY_ID_LATENCY.record(System.nanoTime() - t0);
+        }
+    }
+}
+
+
+
+/**
+ * The IdAllocator class hands out unique IDs for one sequence in the IdSequence table,
+ * using the hi/lo scheme. It reserves a block of IDs from the database in a single
+ * round trip, then hands them out from memory with an atomic increment. It only goes back
+ * to the database when the block runs out.
+ *
+ * Blocks are reserved in their own short transaction, so concurrent registrations on any
+ * number of application instances never wait on each other for an ID. IDs left in a block
+ * when the application stops are never used, which leaves gaps in the sequence.
+ */
+class IdAllocator {
+    /** The number of IDs reserved per round trip, set with {@code hajjguide.ids.blockSize} */
+    static final int DEFAULT_BLOCK_SIZE = Integer.getInteger("hajjguide.ids.blockSize", 100);
+
+    /** Every allocator created, for the System Metrics report */
+    private static final List<IdAllocator> allocators = new ArrayList<>();
+
+    private final String sequenceName;
+    private final String seedQuery;
+    private final int blockSize;
+    private volatile Block block = null;
+    private final AtomicLong blocksReserved = new AtomicLong();
+
+    /**
+     * Creates an allocator for a sequence.
+     *
+     * @param sequenceName The SequenceName of the sequence's row in IdSequence
+     * @param seedQuery A query returning the first ID to use if the sequence has no row yet,
+     *                  such as {@code SELECT IFNULL(MAX(FeedbackID), 0) + 1 FROM Feedback}
+     * @param blockSize The number of IDs reserved per round trip
+     */
+    IdAllocator(String sequenceName, String seedQuery, int blockSize) {
+        if (blockSize < 1) {
+            throw new IllegalArgumentException("Block size must be positive: " + blockSize);
+        }
+        this.sequenceName = sequenceName;
+        this.seedQuery = seedQuery;
+        this.blockSize = blockSize;
+        synchronized (allocators) {
+            allocators.add(this);
+        }
+    }
+
+    /**
+     * Returns the next unused ID, reserving a new block from the database if needed.
+     *
+     * Reserving a block borrows a pooled connection, so this must not be called while the
+     * thread holds one: with the pool exhausted, every such caller would wait for a
+     * connection only it can release. Take the IDs first, then borrow.
+     *
+     * @return A unique ID
+     * @throws SQLException if a new block cannot be reserved
+     */
+    int nextId() throws SQLException {
+        while (true) {
+            Block current = block;
+            if (current != null) {
+                long id = current.next.getAndIncrement();
+                if (id < current.end) {
+                    return Math.toIntExact(id);
+                }
+            }
+            refill(current);
+        }
+    }
+
+    /**
+     * Returns several unused IDs, for a caller that inserts many rows on one connection.
+     * As with {@link #nextId()}, call this before borrowing that connection.
+     *
+     * @param count The number of IDs needed
+     * @return The IDs, in the order they were handed out
+     * @throws SQLException if a new block cannot be reserved
+     */
+    int[] nextIds(int count) throws SQLException {
+        int[] ids = new int[count];
+        for (int i = 0; i < count; i++) {
+            ids[i] = nextId();
+        }
+        return ids;
+    }
+
+    /**
+     * Replaces an exhausted block. Threads that find the same block exhausted wait here for
+     * one of them to reserve the next one.
+     */
+    private synchronized void refill(Block exhausted) throws SQLException {
+        if (block != exhausted) {
+            return;
+        }
+        long end = reserveBlock();
+        block = new Block(end - blockSize, end);
+        blocksReserved.incrementAndGet();
+    }
+
+    /**
+     * Advances the sequence by one block and commits.
+     *
+     * @return The first ID after the reserved block
+     */
+    private long reserveBlock() throws SQLException {
+        try (Connection conn = DBConnection.getPool().borrow()) {
+            try {
+                long end = advance(conn);
+                if (end < 0) {
+                    try (PreparedStatement seed = conn.prepareStatement(
+                            "INSERT IGNORE INTO IdSequence (SequenceName, NextValue) SELECT ?, (" + seedQuery + ")")) {
+                        seed.setString(1, sequenceName);
+                        seed.executeUpdate();
+                    }
+                    end = advance(conn);
+                    if (end < 0) {
+                        throw new SQLException("ID sequence not found: " + sequenceName);
+                    }
+                }
+                conn.commit();
+                return end;
+            } catch (SQLException e) {
+                conn.rollback();
+                throw e;
+            }
+        }
+    }
+
+    /**
+     * Adds one block to the sequence's NextValue. MySQL reports the new value through
+     * LAST_INSERT_ID, which the driver returns as a generated key, so no second query is needed.
+     *
+     * @return The new NextValue, or -1 if the sequence has no row
+     */
+    private long advance(Connection conn) throws SQLException {
+        String sql = "UPDATE IdSequence SET NextValue = LAST_INSERT_ID(NextValue + ?) WHERE SequenceName = ?";
+        try (PreparedStatement stmt = conn.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS)) {
+            stmt.setInt(1, blockSize);
+            stmt.setString(2, sequenceName);
+            if (stmt.executeUpdate() == 0) {
+                return -1;
+            }
+            try (ResultSet keys = stmt.getGeneratedKeys()) {
+                if (keys.next()) {
+                    return keys.getLong(1);
+                }
+            }
+        }
+        try (PreparedStatement stmt = conn.prepareStatement("SELECT NextValue FROM IdSequence WHERE SequenceName = ?")) {
+            stmt.setString(1, sequenceName);
+            try (ResultSet rs = stmt.executeQuery()) {
+                rs.next();
+                return rs.getLong(1);
+            }
+        }
+    }
+
+    /**
+     * @return A one-line summary of this allocator
+     */
+    String getStats() {
+        Block current = block;
+        long remaining = current == null ? 0 : Math.max(0, current.end - current.next.get());
+        return String.format("%s: blockSize=%d blocksReserved=%d remainingInBlock=%d",
+                sequenceName, blockSize, blocksReserved.get(), remaining);
+    }
+
+    /**
+     * Describes every allocator created so far, one line each.
+     *
+     * @return The allocator statistics
+     */
+    static String getAllStats() {
+        StringBuilder sb = new StringBuilder();
+        synchronized (allocators) {
+            for (IdAllocator allocator : allocators) {
+                sb.append(allocator.getStats()).append('\n');
+            }
+        }
+        return sb.toString();
+    }
+
+    /**
+     * A reserved range of IDs, from next (inclusive) to end (exclusive).
+     */
+    private static final class Block {
+        final AtomicLong next;
+        final long end;
+
+        Block(long start, long end) {
+            this.next = new AtomicLong(start);
+            this.end = end;
+        }
+    }
+}
+
+/**
+ * The SeatInventory class hands out seats on transport schedules without a database round
+ * trip per booking. Like {@link IdAllocator}, it reserves seats from the persisted count in
+ * leases of several seats at a time; the seats of a lease are then taken by atomic counter,
+ * so concurrent bookings of the same departure neither oversell nor queue on the
+ * schedule's row lock. Only the booking that finds the local seats used up takes a new lease.
+ *
+ * A cancelled booking puts its seat back into the local pool. Seats left over in the pool
+ * are returned with {@link #returnUnused()}, normally at shutdown. While another
+ * instance still holds leased seats, a schedule can look full here even though it is not.
+ * This lasts until that instance sells or returns them, and is never more than one lease
+ * per instance.
+ */
+class SeatInventory {
+    /** The seats taken per lease, set with {@code hajjguide.seats.leaseSize} */
+    static final int DEFAULT_LEASE_SIZE = Integer.getInteger("hajjguide.seats.leaseSize", 20);
+
+    /** The seats on a schedule that has no recorded capacity, set with {@code hajjguide.seats.defaultCapacity} */
+    static final int DEFAULT_CAPACITY = Integer.getInteger("hajjguide.seats.defaultCapacity", 50);
+
+    /** How long a sold-out schedule is answered from memory before the persisted count is asked again */
+    private static final long SOLD_OUT_RECHECK_MS = Long.getLong("hajjguide.seats.soldOutRecheckMs", 1000L);
+
+    /**
+     * Takes seats from the persisted count.
+     */
+    @FunctionalInterface
+    interface Lease {
+        /**
+         * @return The number of seats granted, between 0 (sold out) and max
+         */
+        int take(int scheduleID, int max) throws SQLException;
+    }
+
+    /**
+     * Gives unused seats back to the persisted count.
+     */
+    @FunctionalInterface
+    interface GiveBack {
+        void give(int scheduleID, int count) throws SQLException;
+    }
+
+    private final Lease lease;
+    private final GiveBack giveBack;
+    private final int leaseSize;
+    private final ConcurrentHashMap<Integer, Seats> schedules = new ConcurrentHashMap<>();
+
+    private final LongAdder reserved = new LongAdder();
+    private final LongAdder released = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private final AtomicLong leases = new AtomicLong();
+
+    /**
+     * Creates an inventory over a persisted seat count.
+     *
+     * @param lease Takes seats from the persisted count
+     * @param giveBack Returns unused seats to the persisted count
+     * @param leaseSize The most seats taken per lease
+     */
+    SeatInventory(Lease lease, GiveBack giveBack, int leaseSize) {
+        if (leaseSize < 1) {
+            throw new IllegalArgumentException("Lease size must be positive: " + leaseSize);
+        }
+        this.lease = lease;
+        this.giveBack = giveBack;
+        this.leaseSize = leaseSize;
+    }
+
+    /**
+     * Reserves one seat on a schedule.
+     *
+     * @param scheduleID The schedule to reserve a seat on
+     * @return true if a seat was reserved, false if the schedule is full
+     * @throws SQLException if a new lease cannot be taken
+     */
+    boolean tryReserve(int scheduleID) throws SQLException {
+        Seats seats = schedules.computeIfAbsent(scheduleID, id -> new Seats());
+        while (true) {
+            int free = seats.free.get();
+            if (free > 0) {
+                if (seats.free.compareAndSet(free, free - 1)) {
+                    reserved.increment();
+                    return true;
+                }
+                continue;
+            }
+            if (System.currentTimeMillis() < seats.soldOutUntil) {
+                rejected.increment();
+                return false;
+            }
+            synchronized (seats) {
+                if (seats.free.get() > 0) {
+                    continue;
+                }
+                long now = System.currentTimeMillis();
+                if (now < seats.soldOutUntil) {
+                    rejected.increment();
+                    return false;
+                }
+                int granted = lease.take(scheduleID, leaseSize);
+                leases.incrementAndGet();
+                if (granted <= 0) {
+                    seats.soldOutUntil = now + SOLD_OUT_RECHECK_MS;
+                    rejected.increment();
+                    return false;
+                }
+                seats.free.addAndGet(granted - 1);
+                reserved.increment();
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Puts a seat back, after a cancellation or a booking that could not be saved.
+     *
+     * @param scheduleID The schedule the seat belongs to
+     */
+    void release(int scheduleID) {
+        Seats seats = schedules.computeIfAbsent(scheduleID, id -> new Seats());
+        seats.free.incrementAndGet();
+        seats.soldOutUntil = 0;
+        released.increment();
+    }
+
+    /**
+     * @return The seats held in the local pool for a schedule
+     */
+    int getLocalFree(int scheduleID) {
+        Seats seats = schedules.get(scheduleID);
+        return seats == null ? 0 : seats.free.get();
+    }
+
+    /**
+     * Gives every seat held in the local pool back to the persisted count. Failures are
+     * logged and the seats kept, since this normally runs at shutdown.
+     */
+    void returnUnused() {
+        for (Map.Entry<Integer, Seats> e : schedules.entrySet()) {
+            int count = e.getValue().free.getAndSet(0);
+            if (count > 0) {
+                try {
+                    giveBack.give(e.getKey(), count);
+                } catch (SQLException ex) {
+                    e.getValue().free.addAndGet(count);
+                    ErrorLog.report("SeatInventory", "Could not return " + count + " seats on schedule " + e.getKey()
+                            + ": " + ex.getMessage());
+                }
+            }
+        }
+    }
+
+    /**
+     * Builds a one-line summary of the inventory.
+     *
+     * @return A human-readable statistics string
+     */
+    String getStats() {
+        long free = 0;
+        for (Seats seats : schedules.values()) {
+            free += seats.free.get();
+        }
+        return String.format("schedules=%d reserved=%d released=%d soldOut=%d leases=%d heldLocally=%d leaseSize=%d",
+                schedules.size(), reserved.sum(), released.sum(), rejected.sum(), leases.get(), free, leaseSize);
+    }
+
+    /**
+     * The local seat pool of one schedule.
+     */
+    private static final class Seats {
+        final AtomicInteger free = new AtomicInteger();
+        volatile long soldOutUntil = 0;
+    }
+}
+
+/**
+ * The WaitlistPromoter class gives seats freed by cancellations to pilgrims waiting for
+ * the same departure. Freed seats are collected for a short interval
+ * ({@code hajjguide.waitlist.tickMs}) and then handed out together, so the promotions of
+ * one tick are saved in a single transaction however many cancellations arrive.
+ *
+ * Waiting pilgrims are served by priority and then in the order they joined. Pilgrims
+ * who are both elderly and have a special need come first, then those who are one or
+ * the other. A seat that no waiting pilgrim can take goes back on sale.
+ */
+class WaitlistPromoter {
+    /** How long freed seats are collected before they are handed out, set with {@code hajjguide.waitlist.tickMs} */
+    static final long TICK_MS = Long.getLong("hajjguide.waitlist.tickMs", 250L);
+
+    /** The age from which a pilgrim is served first, set with {@code hajjguide.waitlist.elderlyAge} */
+    static final int ELDERLY_AGE = Integer.getInteger("hajjguide.waitlist.elderlyAge", 65);
+
+    private static final ScheduledExecutorService ticker = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "hajjguide-waitlist");
+        t.setDaemon(true);
+        return t;
+    });
+
+    /**
+     * Gives freed seats to waiting pilgrims.
+     */
+    @FunctionalInterface
+    interface Promotion {
+        /**
+         * Issues tickets to the first waiting pilgrims of each schedule, all in one transaction.
+         *
+         * @param freed The number of freed seats per ScheduleID
+         * @return The number of seats given out per ScheduleID
+         */
+        Map<Integer, Integer> promote(Map<Integer, Integer> freed) throws SQLException;
+    }
+
+    private final Promotion promotion;
+    private final SeatInventory seats;
+    private final ConcurrentHashMap<Integer, AtomicInteger> freed = new ConcurrentHashMap<>();
+    private final AtomicBoolean scheduled = new AtomicBoolean();
+
+    private final LongAdder seatsFreed = new LongAdder();
+    private final AtomicLong ticks = new AtomicLong();
+    private final AtomicLong promoted = new AtomicLong();
+    private final AtomicLong returnedToSale = new AtomicLong();
+    private final AtomicLong failures = new AtomicLong();
+
+    /**
+     * Creates a promoter.
+     *
+     * @param promotion Issues the tickets for a tick's freed seats
+     * @param seats Where seats nobody on the waitlist takes are put back on sale
+     */
+    WaitlistPromoter(Promotion promotion, SeatInventory seats) {
+        this.promotion = promotion;
+        this.seats = seats;
+    }
+
+    /**
+     * Hands a cancelled seat to the waitlist at the next tick.
+     *
+     * @param scheduleID The schedule the seat belongs to
+     */
+    void seatFreed(int scheduleID) {
+        freed.computeIfAbsent(scheduleID, id -> new AtomicInteger()).incrementAndGet();
+        seatsFreed.increment();
+        if (scheduled.compareAndSet(false, true)) {
+            ticker.schedule(this::flush, TICK_MS, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Hands out every seat freed so far without waiting for the tick. If the promotion
+     * fails, the seats go back on sale and the waiting pilgrims stay on the waitlist.
+     */
+    synchronized void flush() {
+        scheduled.set(false);
+        Map<Integer, Integer> batch = new HashMap<>();
+        for (Map.Entry<Integer, AtomicInteger> e : freed.entrySet()) {
+            int count = e.getValue().getAndSet(0);
+            if (count > 0) {
+                batch.put(e.getKey(), count);
+            }
+        }
+        if (batch.isEmpty()) {
+            return;
+        }
+
+        Map<Integer, Integer> given;
+        try {
+            given = promotion.promote(batch);
+            ticks.incrementAndGet();
+        } catch (SQLException | RuntimeException e) {
+            failures.incrementAndGet();
+            ErrorLog.report("WaitlistPromoter", "Could not promote waitlisted pilgrims: " + e.getMessage());
+            given = Collections.emptyMap();
+        }
+        for (Map.Entry<Integer, Integer> e : batch.entrySet()) {
+            int taken = Math.min(given.getOrDefault(e.getKey(), 0), e.getValue());
+            promoted.addAndGet(taken);
+            for (int i = taken; i < e.getValue(); i++) {
+                seats.release(e.getKey());
+                returnedToSale.incrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * Works out a waiting pilgrim's priority; pilgrims with a higher priority are served first.
+     *
+     * @param pilgrim The waiting pilgrim
+     * @return 2 if the pilgrim is elderly and has a special need, 1 if either, otherwise 0
+     */
+    static int priorityOf(Pilgrim pilgrim) {
+        int priority = pilgrim.pilgrimAge() >= ELDERLY_AGE ? 1 : 0;
+        String need = pilgrim.specialNeed();
+        if (need != null && !need.isBlank() && !need.trim().equalsIgnoreCase("none")) {
+            priority++;
+        }
+        return priority;
+    }
+
+    /**
+     * Builds a one-line summary of the promoter.
+     *
+     * @return A human-readable statistics string
+     */
+    String getStats() {
+        return String.format("seatsFreed=%d promoted=%d returnedToSale=%d ticks=%d failedTicks=%d tickMs=%d",
+                seatsFreed.sum(), promoted.get(), returnedToSale.get(), ticks.get(), failures.get(), TICK_MS);
+    }
+}
+
+/**
+ * The JourneyPlanner class answers "when is the earliest I can reach B if I leave A after
+ * time T", changing vehicles where that helps. A schedule's route is read as its stops in
+ * order, such as {@code "Mina - Arafat"} or {@code "Makkah - Mina - Arafat"}. When a route
+ * has stops in between, the trip's running time is shared evenly between its hops, since
+ * only the first departure and the last arrival are recorded.
+ *
+ * Queries use the connection scan algorithm. Every hop of every trip is a connection, and
+ * the connections are kept in arrays sorted by departure time. A query finds its first
+ * connection by binary search and scans forward, keeping the earliest arrival at each
+ * stop, until the departures pass the best arrival at the destination. Trips run daily,
+ * so the arrays cover two days and a journey can run past midnight.
+ *
+ * The arrays are built once for each snapshot of the schedules, which for the database
+ * backend means once per reference-data reload, and are never changed afterwards. Any
+ * number of queries can share them.
+ */
+class JourneyPlanner {
+    /** The least time allowed to change vehicles, set in minutes with {@code hajjguide.journey.minTransferMinutes} */
+    static final int MIN_TRANSFER_SECONDS = 60 * Integer.getInteger("hajjguide.journey.minTransferMinutes", 10);
+
+    static final int SECONDS_PER_DAY = 24 * 60 * 60;
+
+    /** The separator between the stops of a route; a hyphen inside a name such as "Al-Aziziyah" has no spaces around it */
+    private static final Pattern STOP_SEPARATOR = Pattern.compile("\\s+[-\u2013\u2014\u2192]\\s+");
+    private static final Pattern TIME = Pattern.compile("(\\d{1,2}):(\\d{2})(?::(\\d{2}))?");
+    private static final Pattern WHITESPACE = Pattern.compile("\\s+");
+
+    /**
+     * One ride on one trip, from where it is boarded to where it is left.
+     *
+     * @param scheduleID The trip's schedule
+     * @param transportType The kind of vehicle
+     * @param from The stop where the trip is boarded
+     * @param to The stop where the trip is left
+     * @param departure Seconds from the start of the day of the query; past {@link #SECONDS_PER_DAY} for the next day
+     * @param arrival Seconds from the start of the day of the query
+     */
+    record Leg(int scheduleID, String transportType, String from, String to, int departure, int arrival) {
+    }
+
+    /**
+     * A way to get from one stop to another.
+     *
+     * @param legs The rides in order; empty if the journey starts where it ends
+     */
+    record Journey(List<Leg> legs) {
+
+        /**
+         * @return The number of changes of vehicle
+         */
+        int transfers() {
+            return Math.max(0, legs.size() - 1);
+        }
+
+        /**
+         * @return The arrival time at the destination, in seconds from the start of the day of the query
+         */
+        int arrival() {
+            return legs.isEmpty() ? 0 : legs.get(legs.size() - 1).arrival();
+        }
+
+        /**
+         * @return The journey as lines of text, one per leg
+         */
+        String describe() {
+            if (legs.isEmpty()) {
+                return "You are already there.";
+            }
+            StringBuilder sb = new StringBuilder();
+            for (Leg leg : legs) {
+                sb.append(formatTime(leg.departure())).append("  ").append(leg.from()).append(" \u2192 ")
+                        .append(leg.to()).append("  ").append(formatTime(leg.arrival())).append("  (")
+                        .append(leg.transportType()).append(", schedule ").append(leg.scheduleID()).append(")\n");
+            }
+            sb.append(transfers() == 0 ? "Direct" : transfers() + (transfers() == 1 ? " change" : " changes"));
+            return sb.toString();
+        }
+    }
+
+    private volatile Timetable timetable = null;
+    private final AtomicLong builds = new AtomicLong();
+    private final LongAdder queries = new LongAdder();
+    private volatile long lastBuildMicros = 0;
+
+    /**
+     * Gets the timetable for a list of schedules, building it if the list is not the one
+     * the current timetable was built from. Lists are compared by identity, so callers
+     * must hold on to one list and pass it until the schedules change, as the
+     * reference-data cache and the in-memory repository do; a fresh list per call
+     * rebuilds the timetable every time.
+     *
+     * @param schedules Every schedule
+     * @return The timetable
+     */
+    Timetable timetable(List<TransportSchedule> schedules) {
+        Timetable t = timetable;
+        if (t != null && t.source == schedules) {
+            return t;
+        }
+        synchronized (this) {
+            t = timetable;
+            if (t == null || t.source != schedules) {
+                long started = System.nanoTime();
+                t = new Timetable(schedules);
+                timetable = t;
+                builds.incrementAndGet();
+                lastBuildMicros = (System.nanoTime() - started) / 1000;
+            }
+            return t;
+        }
+    }
+
+    /**
+     * Finds the journey that arrives earliest.
+     *
+     * @param schedules Every schedule, passed on to {@link #timetable(List)}
+     * @param from The stop to leave from
+     * @param to The stop to go to
+     * @param departAfter The earliest time to leave, in seconds from midnight
+     * @return The journey, or null if either stop is unknown or the destination cannot be
+     *         reached by the end of the next day
+     */
+    Journey plan(List<TransportSchedule> schedules, String from, String to, int departAfter) {
+        queries.increment();
+        return timetable(schedules).earliestArrival(from, to, departAfter);
+    }
+
+    /**
+     * Builds a one-line summary of the planner.
+     *
+     * @return A human-readable statistics string
+     */
+    String getStats() {
+        Timetable t = timetable;
+        return String.format("stops=%d connections=%d skippedSchedules=%d builds=%d lastBuildMicros=%d queries=%d",
+                t == null ? 0 : t.stopNames.length, t == null ? 0 : t.depStop.length, t == null ? 0 : t.skipped,
+                builds.get(), lastBuildMicros, queries.sum());
+    }
+
+    /**
+     * Reads a time of day.
+     *
+     * @param text The time as H:mm or HH:mm:ss
+     * @return Seconds from midnight, or -1 if the text is not a valid time
+     */
+    static int parseTime(String text) {
+        Matcher m = text == null ? null : TIME.matcher(text.trim());
+        if (m == null || !m.matches()) {
+            return -1;
+        }
+        int hours = Integer.parseInt(m.group(1));
+        int minutes = Integer.parseInt(m.group(2));
+        int seconds = m.group(3) == null ? 0 : Integer.parseInt(m.group(3));
+        if (hours > 23 || minutes > 59 || seconds > 59) {
+            return -1;
+        }
+        return hours * 3600 + minutes * 60 + seconds;
+    }
+
+    /**
+     * Formats a time from {@link Leg} as HH:mm, marking times on a later day.
+     */
+    static String formatTime(int seconds) {
+        int day = seconds / SECONDS_PER_DAY;
+        int s = seconds % SECONDS_PER_DAY;
+        String time = String.format("%02d:%02d", s / 3600, s / 60 % 60);
+        return day == 0 ? time : time + " (+" + day + "d)";
+    }
+
+    /**
+     * @return The stop names of a route in order, which is fewer than two if the route names no stops
+     */
+    static List<String> parseStops(String route) {
+        List<String> stops = new ArrayList<>();
+        if (route != null) {
+            for (String stop : STOP_SEPARATOR.split(route.trim())) {
+                String name = WHITESPACE.matcher(stop.trim()).replaceAll(" ");
+                if (!name.isEmpty()) {
+                    stops.add(name);
+                }
+            }
+        }
+        return stops;
+    }
+
+    private static String stopKey(String name) {
+        return WHITESPACE.matcher(name.trim()).replaceAll(" ").toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * The connections of one snapshot of the schedules, sorted by departure.
+     */
+    static final class Timetable {
+        private final List<TransportSchedule> source;
+        private final Map<String, Integer> stopIndex = new HashMap<>();
+        private final String[] stopNames;
+
+        /** Per trip: the schedule it runs and its vehicle; the next day's run of trip t is trip t + tripCount */
+        private final int tripCount;
+        private final int[] tripSchedule;
+        private final String[] tripType;
+
+        /** Per connection, in order of departure */
+        private final int[] depStop;
+        private final int[] arrStop;
+        private final int[] dep;
+        private final int[] arr;
+        private final int[] trip;
+
+        private final int skipped;
+
+        /**
+         * Working arrays left by finished queries, so that a query allocates nothing in
+         * proportion to the trips. Queries may run on short-lived virtual threads, so the
+         * arrays are pooled per timetable rather than per thread; at most one set per
+         * processor is kept, and a query that finds none idle makes its own.
+         */
+        private final ArrayBlockingQueue<Scan> idleScans =
+                new ArrayBlockingQueue<>(Runtime.getRuntime().availableProcessors());
+
+        Timetable(List<TransportSchedule> schedules) {
+            this.source = schedules;
+            List<String> names = new ArrayList<>();
+            List<int[]> hops = new ArrayList<>();
+            List<TransportSchedule> trips = new ArrayList<>();
+            int skippedSchedules = 0;
+
+            // Many trips share a route or a time, so each is read once
+            Map<String, int[]> routeStops = new HashMap<>();
+            Map<String, Integer> times = new HashMap<>();
+            for (TransportSchedule s : schedules) {
+                int[] stops = routeStops.computeIfAbsent(s.route() == null ? "" : s.route(),
+                        route -> parseStops(route).stream().mapToInt(name -> stopId(name, names)).toArray());
+                int departure = s.departureTime() == null ? -1 : times.computeIfAbsent(s.departureTime(), JourneyPlanner::parseTime);
+                int arrival = s.arrivalTime() == null ? -1 : times.computeIfAbsent(s.arrivalTime(), JourneyPlanner::parseTime);
+                if (stops.length < 2 || departure < 0 || arrival < 0) {
+                    skippedSchedules++;
+                    continue;
+                }
+                if (arrival < departure) {
+                    arrival += SECONDS_PER_DAY; // arrives after midnight
+                }
+                int t = trips.size();
+                trips.add(s);
+                int hopCount = stops.length - 1;
+                for (int h = 0; h < hopCount; h++) {
+                    int from = stops[h];
+                    int to = stops[h + 1];
+                    int hopDeparture = departure + (arrival - departure) * h / hopCount;
+                    int hopArrival = departure + (arrival - departure) * (h + 1) / hopCount;
+                    hops.add(new int[] { from, to, hopDeparture, hopArrival, t });
+                }
+            }
+
+            // Each hop runs on two days. Sorting on departure, arrival and then position keeps
+            // the hops of a trip that leave at the same second in route order.
+            int n = hops.size();
+            long[] order = new long[2 * n];
+            for (int i = 0; i < 2 * n; i++) {
+                int[] h = hops.get(i % n);
+                int day = i < n ? 0 : SECONDS_PER_DAY;
+                order[i] = ((long) (h[2] + day) << 45) | ((long) (h[3] + day) << 27) | i;
+            }
+            Arrays.sort(order);
+
+            stopNames = names.toArray(new String[0]);
+            tripCount = trips.size();
+            tripSchedule = new int[tripCount];
+            tripType = new String[tripCount];
+            for (int t = 0; t < tripCount; t++) {
+                tripSchedule[t] = trips.get(t).scheduleID();
+                tripType[t] = trips.get(t).transportType();
+            }
+            depStop = new int[2 * n];
+            arrStop = new int[2 * n];
+            dep = new int[2 * n];
+            arr = new int[2 * n];
+            trip = new int[2 * n];
+            for (int i = 0; i < 2 * n; i++) {
+                int position = (int) (order[i] & ((1 << 27) - 1));
+                int[] h = hops.get(position % n);
+                int day = position < n ? 0 : 1;
+                depStop[i] = h[0];
+                arrStop[i] = h[1];
+                dep[i] = h[2] + day * SECONDS_PER_DAY;
+                arr[i] = h[3] + day * SECONDS_PER_DAY;
+                trip[i] = h[4] + day * tripCount;
+            }
+            skipped = skippedSchedules;
+        }
+
+        private int stopId(String name, List<String> names) {
+            return stopIndex.computeIfAbsent(stopKey(name), k -> {
+                names.add(name);
+                return names.size() - 1;
+            });
+        }
+
+        /**
+         * @return Every stop named by a route, in the order first seen
+         */
+        List<String> stops() {
+            return List.of(stopNames);
+        }
+
+        /**
+         * Runs the connection scan.
+         *
+         * @see JourneyPlanner#plan(List, String, String, int)
+         */
+        Journey earliestArrival(String from, String to, int departAfter) {
+            Integer origin = from == null ? null : stopIndex.get(stopKey(from));
+            Integer target = to == null ? null : stopIndex.get(stopKey(to));
+            if (origin == null || target == null) {
+                return null;
+            }
+            if (origin.intValue() == target.intValue()) {
+                return new Journey(Collections.emptyList());
+            }
+            int after = Math.floorMod(departAfter, SECONDS_PER_DAY);
+
+            Scan scan = idleScans.poll();
+            if (scan == null) {
+                scan = new Scan(stopNames.length, 2 * tripCount);
+            }
+            try {
+                int[] arrival = scan.arrival;
+                int[] ready = scan.ready;
+                int[] reachedBy = scan.reachedBy;
+                int[] boardedAt = scan.boardedAt;
+                int[] boardedIn = scan.boardedIn;
+                int run = ++scan.run;
+                Arrays.fill(arrival, Integer.MAX_VALUE);
+                Arrays.fill(ready, Integer.MAX_VALUE);
+                arrival[origin] = after;
+                ready[origin] = after;
+
+                for (int i = firstDepartingAt(after); i < dep.length && dep[i] < arrival[target]; i++) {
+                    int t = trip[i];
+                    if (boardedIn[t] != run) {
+                        if (ready[depStop[i]] > dep[i]) {
+                            continue;
+                        }
+                        boardedAt[t] = i;
+                        boardedIn[t] = run;
+                    }
+                    int stop = arrStop[i];
+                    if (arr[i] < arrival[stop]) {
+                        arrival[stop] = arr[i];
+                        ready[stop] = arr[i] + MIN_TRANSFER_SECONDS;
+                        reachedBy[stop] = i;
+                    }
+                }
+                if (arrival[target] == Integer.MAX_VALUE) {
+                    return null;
+                }
+
+                List<Leg> legs = new ArrayList<>();
+                for (int stop = target; stop != origin; ) {
+                    int last = reachedBy[stop];
+                    int first = boardedAt[trip[last]];
+                    int t = trip[last] % tripCount;
+                    legs.add(new Leg(tripSchedule[t], tripType[t], stopNames[depStop[first]], stopNames[stop],
+                            dep[first], arr[last]));
+                    stop = depStop[first];
+                }
+                Collections.reverse(legs);
+                return new Journey(legs);
+            } finally {
+                idleScans.offer(scan);
+            }
+        }
+
+        /**
+         * The working arrays of one query at a time. Per stop: the earliest arrival, the
+         * earliest time a vehicle can be boarded and the connection that arrived. Per trip:
+         * the connection where it was boarded, valid only if boardedIn holds the current run,
+         * so the trip arrays never need clearing.
+         */
+        private static final class Scan {
+            final int[] arrival;
+            final int[] ready;
+            final int[] reachedBy;
+            final int[] boardedAt;
+            final int[] boardedIn;
+            int run = 0;
+
+            Scan(int stops, int trips) {
+                arrival = new int[stops];
+                ready = new int[stops];
+                reachedBy = new int[stops];
+                boardedAt = new int[trips];
+                boardedIn = new int[trips];
+            }
+        }
+
+        /**
+         * @return The position of the first connection leaving at or after the time
+         */
+        private int firstDepartingAt(int time) {
+            int lo = 0;
+            int hi = dep.length;
+            while (lo < hi) {
+                int mid = (lo + hi) >>> 1;
+                if (dep[mid] < time) {
+                    lo = mid + 1;
+                } else {
+                    hi = mid;
+                }
+            }
+            return lo;
+        }
+    }
+}
+
+/**
+ * The FeedbackDAO class provides data access operations for pilgrim feedback.
+ * Every new pilgrim gets an automatic feedback entry, written in the same transaction as
+ * the pilgrim itself. The entry's FeedbackID comes from an {@link IdAllocator}.
+ */
+class FeedbackDAO {
+    
+    /** Allocates FeedbackIDs */
+    private static final IdAllocator FEEDBACK_IDS = new IdAllocator("Feedback",
+            "SELECT IFNULL(MAX(FeedbackID), 0) + 1 FROM Feedback", IdAllocator.DEFAULT_BLOCK_SIZE);
+    
+    /**
+     * Reserves FeedbackIDs for automatic feedback entries. Callers take them before
+     * borrowing the connection they insert on; see {@link IdAllocator#nextId()}.
+     * 
+     * @param count The number of entries that will be inserted
+     * @return The FeedbackIDs
+     * @throws SQLException if the IDs cannot be reserved
+     */
+    static int[] reserveIds(int count) throws SQLException {
+        return FEEDBACK_IDS.nextIds(count);
+    }
+    
+    /**
+     * Inserts the automatic feedback entry for newly created pilgrims. The caller owns the
+     * transaction and commits or rolls it back together with the pilgrims.
+     * 
+     * @param conn The connection the pilgrims were inserted on
+     * @param feedbackIDs The FeedbackIDs from {@link #reserveIds(int)}, one per pilgrim
+     * @param pilgrimIDs The IDs of the new pilgrims
+     * @throws SQLException if the insert fails
+     */
+    static void insertAutoFeedback(Connection conn, int[] feedbackIDs, int[] pilgrimIDs) throws SQLException {
+        String sql = "INSERT INTO Feedback (FeedbackID, PilgrimID, Content, Rating, Date) VALUES (?, ?, 'Auto feedback', 5, CURDATE())";
+        
+        try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+            for (int i = 0; i < pilgrimIDs.length; i++) {
+                stmt.setInt(1, feedbackIDs[i]);
+                stmt.setInt(2, pilgrimIDs[i]);
+                if (pilgrimIDs.length == 1) {
+                    stmt.executeUpdate();
+                } else {
+                    stmt.addBatch();
+                }
+            }
+            if (pilgrimIDs.length > 1) {
+                stmt.executeBatch();
+            }
+        }
+    }
+}
+
+/**
+ * Storage operations for pilgrims, implemented by each backend.
+ *
+ * Every method throws {@link DataAccessException} if the backend cannot carry it out. That
+ * includes creating a pilgrim under a PilgrimID that is already taken, which fails with a
+ * {@link SQLIntegrityConstraintViolationException} as the cause, just as the MySQL insert does.
+ * A false or null result only means that there is no such pilgrim; batch inserts report bad
+ * rows in their {@link BatchInsertResult} instead of throwing.
+ */
+interface PilgrimRepository {
+    boolean createPilgrim(Pilgrim pilgrim);
+
+    /**
+     * Creates a pilgrim under a newly assigned PilgrimID; the ID in the given record is ignored.
+     *
+     * @return The assigned PilgrimID, or -1 if the pilgrim could not be created
+     */
+    int createPilgrimWithAssignedId(Pilgrim pilgrim);
+
+    BatchInsertResult createPilgrims(Collection<Pilgrim> pilgrims);
+
+    List<Pilgrim> getAllPilgrims();
+
+    Stream<Pilgrim> streamAllPilgrims();
+
+    Page<Pilgrim> getPilgrimsPage(int afterPilgrimID, int limit, PageFilter filter);
+
+    boolean updatePilgrim(Pilgrim pilgrim);
+
+    /**
+     * Updates a pilgrim only if its version is still expectedVersion.
+     *
+     * @return UPDATED with the new version, or CONFLICT with the values someone else saved
+     */
+    UpdateResult<Pilgrim> updatePilgrim(Pilgrim pilgrim, int expectedVersion);
+
+    /**
+     * @return The pilgrim with its current version, or null if there is no such pilgrim
+     */
+    Versioned<Pilgrim> getVersionedPilgrim(int pilgrimID);
+
+    boolean deletePilgrim(int pilgrimID);
+
+    Pilgrim getPilgrimById(int pilgrimID);
+
+    /**
+     * Finds pilgrims whose name starts with the given text, ignoring case, accents and
+     * Arabic diacritics, in name order.
+     */
+    List<PilgrimNameIndex.Match> searchPilgrimNames(String prefix, int limit);
+}
+
+/**
+ * Storage operations for medical profiles, implemented by each backend. Failures throw
+ * {@link DataAccessException} as described for {@link PilgrimRepository}.
+ */
+interface MedicalProfileRepository {
+    boolean createMedicalProfile(MedicalProfile profile);
+
+    MedicalProfile getMedicalProfileByPilgrimId(int pilgrimID);
+
+    /**
+     * Updates the blood type, medications, medical history and admin of the profile with the
+     * same profile ID. The pilgrim a profile belongs to cannot be changed.
+     */
+    boolean updateMedicalProfile(MedicalProfile profile);
+
+    /**
+     * Updates a profile like {@link #updateMedicalProfile(MedicalProfile)}, but only if its
+     * version is still expectedVersion.
+     *
+     * @return UPDATED with the new version, or CONFLICT with the values someone else saved
+     */
+    UpdateResult<MedicalProfile> updateMedicalProfile(MedicalProfile profile, int expectedVersion);
+
+    /**
+     * @return The pilgrim's profile with its current version, or null if the pilgrim has none
+     */
+    Versioned<MedicalProfile> getVersionedMedicalProfileByPilgrimId(int pilgrimID);
+}
+
+/**
+ * Storage operations for transport schedules, implemented by each backend. Failures throw
+ * {@link DataAccessException} as described for {@link PilgrimRepository}.
+ */
+interface TransportScheduleRepository {
+    boolean createTransportSchedule(TransportSchedule schedule);
+
+    /**
+     * Creates a schedule under a newly assigned ScheduleID; the ID in the given record is ignored.
+     *
+     * @return The assigned ScheduleID, or -1 if the schedule could not be created
+     */
+    int createTransportScheduleWithAssignedId(TransportSchedule schedule);
+
+    List<TransportSchedule> getAllTransportSchedules();
+
+    Stream<TransportSchedule> streamAllTransportSchedules();
+
+    Page<TransportSchedule> getTransportSchedulesPage(int afterScheduleID, int limit, PageFilter filter);
+
+    boolean assignPilgrimToTransport(int pilgrimID, int scheduleID);
+
+    /**
+     * Books a seat on a schedule and issues a ticket for it.
+     *
+     * @return The ticket, or null if the schedule is full or the booking failed
+     */
+    Ticket bookTicket(int pilgrimID, int scheduleID);
+
+    /**
+     * @return The ticket with the given number, booked or cancelled, or null if there is none
+     */
+    Ticket getTicket(int ticketNumber);
+
+    /**
+     * Cancels one of a pilgrim's booked tickets and puts its seat back on sale.
+     *
+     * @return true if the ticket was cancelled
+     */
+    boolean cancelTicket(int ticketNumber, int pilgrimID);
+
+    /**
+     * @return The pilgrim's tickets, booked and cancelled, oldest first
+     */
+    List<Ticket> getTicketsByPilgrim(int pilgrimID);
+
+    /**
+     * Puts a pilgrim on a schedule's waitlist, to be given a ticket when one is cancelled.
+     *
+     * @return true if the pilgrim is on the waitlist
+     */
+    boolean joinWaitlist(int pilgrimID, int scheduleID);
+
+    /**
+     * Finds the journey that reaches a stop earliest after a time of day, with transfers.
+     *
+     * @return The journey, or null if either stop is unknown or the stop cannot be reached
+     */
+    JourneyPlanner.Journey planJourney(String from, String to, int departAfter);
+
+    /**
+     * @return Every stop named by a schedule's route
+     */
+    List<String> getJourneyStops();
+}
+
+/**
+ * Storage operations for accommodations, implemented by each backend. Failures throw
+ * {@link DataAccessException} as described for {@link PilgrimRepository}.
+ */
+interface AccommodationRepository {
+    boolean createAccommodation(Accommodation accommodation);
+
+    /**
+     * Creates an accommodation under a newly assigned AccommodationID; the ID in the given
+     * record is ignored.
+     *
+     * @return The assigned AccommodationID, or -1 if the accommodation could not be created
+     */
+    int createAccommodationWithAssignedId(Accommodation accommodation);
+
+    List<Accommodation> getAllAccommodations();
+
+    Stream<Accommodation> streamAllAccommodations();
+
+    Page<Accommodation> getAccommodationsPage(int afterAccommodationID, int limit, PageFilter filter);
+
+    /**
+     * Assigns a pilgrim to an accommodation, provided the accommodation still has room.
+     */
+    boolean assignPilgrimToAccommodation(int pilgrimID, int accommodationID);
+
+    /**
+     * @return The number of pilgrims assigned to each accommodation, by AccommodationID
+     */
+    Map<Integer, Integer> getOccupancy();
+
+    /**
+     * @return Every pilgrim without an accommodation; the stream must be closed
+     */
+    Stream<Pilgrim> streamPilgrimsWithoutAccommodation();
+
+    /**
+     * Stores every assignment of an allocation plan, or none of them if any accommodation
+     * no longer has room.
+     *
+     * @return The number of assignments saved, or -1 if nothing was saved
+     */
+    int saveAllocations(List<AccommodationAllocator.Assignment> assignments);
+
+    /**
+     * @return Up to limit accommodations with coordinates, nearest to the point first
+     */
+    List<SpatialIndex.Hit<Accommodation>> findNearestAccommodations(double latitude, double longitude, int limit);
+
+    /**
+     * @return Every accommodation within radiusMeters of the point, nearest first
+     */
+    List<SpatialIndex.Hit<Accommodation>> findAccommodationsWithin(double latitude, double longitude, double radiusMeters);
+}
+
+/**
+ * Storage operations for permits, implemented by each backend. Failures throw
+ * {@link DataAccessException} as described for {@link PilgrimRepository}.
+ */
+interface PermitRepository {
+    boolean createPermit(Permit permit);
+
+    /**
+     * Creates a permit under a newly assigned PermitID; the ID in the given record is ignored.
+     *
+     * @return The assigned PermitID, or -1 if the permit could not be created
+     */
+    int createPermitWithAssignedId(Permit permit);
+
+    List<Permit> getAllPermits();
+
+    Stream<Permit> streamAllPermits();
+
+    Page<Permit> getPermitsPage(int afterPermitID, int limit, PageFilter filter);
+
+    boolean assignPermitToPilgrim(int pilgrimID, int permitID);
+
+    /**
+     * @return Up to limit permits with coordinates and of the service type (any if null),
+     *         nearest to the point first
+     */
+    List<SpatialIndex.Hit<Permit>> findNearestPermits(double latitude, double longitude, int limit, String serviceType);
+
+    /**
+     * @return Every permit of the service type (any if null) within radiusMeters of the point, nearest first
+     */
+    List<SpatialIndex.Hit<Permit>> findPermitsWithin(double latitude, double longitude, double radiusMeters, String serviceType);
+}
+
+/**
+ * Storage operations for administrator accounts, implemented by each backend. Failures throw
+ * {@link DataAccessException} as described for {@link PilgrimRepository}.
+ */
+interface AdminRepository {
+    boolean validateAdmin(int adminID, String password);
+
+    Admin getAdminById(int adminID);
+}
+
+/**
+ * The MySQL backend for pilgrims, which delegates to {@link PilgrimDAO}.
+ */
+class JdbcPilgrimRepository implements PilgrimRepository {
+    public boolean createPilgrim(Pilgrim p) {
+        return PilgrimDAO.createPilgrim(p.pilgrimName(), p.pilgrimID(), p.phone(), p.nationality(),
+                p.specialNeed(), p.allergies(), p.pilgrimAge());
+    }
+
+    public int createPilgrimWithAssignedId(Pilgrim p) {
+        return PilgrimDAO.createPilgrim(p.pilgrimName(), p.phone(), p.nationality(), p.specialNeed(),
+                p.allergies(), p.pilgrimAge());
+    }
+
+    public BatchInsertResult createPilgrims(Collection<Pilgrim> pilgrims) {
+        return PilgrimDAO.createPilgrims(pilgrims);
+    }
+
+    public List<Pilgrim> getAllPilgrims() {
+        return PilgrimDAO.getAllPilgrims();
+    }
+
+    public Stream<Pilgrim> streamAllPilgrims() {
+        return PilgrimDAO.streamAllPilgrims();
+    }
+
+    public Page<Pilgrim> getPilgrimsPage(int afterPilgrimID, int limit, PageFilter filter) {
+        return PilgrimDAO.getPilgrimsPage(afterPilgrimID, limit, filter);
+    }
+
+    public boolean updatePilgrim(Pilgrim p) {
+        return PilgrimDAO.updatePilgrim(p.pilgrimID(), p.pilgrimName(), p.phone(), p.nationality(),
+                p.specialNeed(), p.allergies(), p.pilgrimAge());
+    }
+
+    public UpdateResult<Pilgrim> updatePilgrim(Pilgrim p, int expectedVersion) {
+        return PilgrimDAO.updatePilgrim(p, expectedVersion);
+    }
+
+    public Versioned<Pilgrim> getVersionedPilgrim(int pilgrimID) {
+        return PilgrimDAO.getVersionedPilgrim(pilgrimID);
+    }
+
+    public boolean deletePilgrim(int pilgrimID) {
+        return PilgrimDAO.deletePilgrim(pilgrimID);
+    }
+
+    public Pilgrim getPilgrimById(int pilgrimID) {
+        return PilgrimDAO.getPilgrimById(pilgrimID);
+    }
+
+    public List<PilgrimNameIndex.Match> searchPilgrimNames(String prefix, int limit) {
+        return PilgrimDAO.searchPilgrimNames(prefix, limit);
+    }
+}
+
+/**
+ * The MySQL backend for medical profiles, which delegates to {@link MedicalProfileDAO}.
+ */
+class JdbcMedicalProfileRepository implements MedicalProfileRepository {
+    public boolean createMedicalProfile(MedicalProfile p) {
+        return MedicalProfileDAO.createMedicalProfile(p.profileID(), p.bloodType(), p.medications(),
+                p.medicalHistory(), p.pilgrimID(), p.adminID());
+    }
+
+    public MedicalProfile getMedicalProfileByPilgrimId(int pilgrimID) {
+        return MedicalProfileDAO.getMedicalProfileByPilgrimId(pilgrimID);
+    }
+
+    public boolean updateMedicalProfile(MedicalProfile p) {
+        return MedicalProfileDAO.updateMedicalProfile(p.profileID(), p.bloodType(), p.medications(),
+                p.medicalHistory(), p.adminID());
+    }
+
+    public UpdateResult<MedicalProfile> updateMedicalProfile(MedicalProfile p, int expectedVersion) {
+        return MedicalProfileDAO.updateMedicalProfile(p, expectedVersion);
+    }
+
+    public Versioned<MedicalProfile> getVersionedMedicalProfileByPilgrimId(int pilgrimID) {
+        return MedicalProfileDAO.getVersionedMedicalProfileByPilgrimId(pilgrimID);
+    }
+}
+
+/**
+ * The MySQL backend for transport schedules, which delegates to {@link TransportScheduleDAO}.
+ */
+class JdbcTransportScheduleRepository implements TransportScheduleRepository {
+    public boolean createTransportSchedule(TransportSchedule s) {
+        return TransportScheduleDAO.createTransportSchedule(s.scheduleID(), s.departureTime(), s.arrivalTime(),
+                s.route(), s.transportType(), s.adminID());
+    }
+
+    public int createTransportScheduleWithAssignedId(TransportSchedule s) {
+        return TransportScheduleDAO.createTransportSchedule(s.departureTime(), s.arrivalTime(), s.route(),
+                s.transportType(), s.adminID());
+    }
+
+    public List<TransportSchedule> getAllTransportSchedules() {
+        return TransportScheduleDAO.getAllTransportSchedules();
+    }
+
+    public Stream<TransportSchedule> streamAllTransportSchedules() {
+        return TransportScheduleDAO.streamAllTransportSchedules();
+    }
+
+    public Page<TransportSchedule> getTransportSchedulesPage(int afterScheduleID, int limit, PageFilter filter) {
+        return TransportScheduleDAO.getTransportSchedulesPage(afterScheduleID, limit, filter);
+    }
+
+    public boolean assignPilgrimToTransport(int pilgrimID, int scheduleID) {
+        return TransportScheduleDAO.assignPilgrimToTransport(pilgrimID, scheduleID);
+    }
+
+    public Ticket bookTicket(int pilgrimID, int scheduleID) {
+        return TransportScheduleDAO.bookTicket(pilgrimID, scheduleID);
+    }
+
+    public Ticket getTicket(int ticketNumber) {
+        return TransportScheduleDAO.getTicket(ticketNumber);
+    }
+
+    public boolean cancelTicket(int ticketNumber, int pilgrimID) {
+        return TransportScheduleDAO.cancelTicket(ticketNumber, pilgrimID);
+    }
+
+    public List<Ticket> getTicketsByPilgrim(int pilgrimID) {
+        return TransportScheduleDAO.getTicketsByPilgrim(pilgrimID);
+    }
+
+    public boolean joinWaitlist(int pilgrimID, int scheduleID) {
+        return TransportScheduleDAO.joinWaitlist(pilgrimID, scheduleID);
+    }
+
+    public JourneyPlanner.Journey planJourney(String from, String to, int departAfter) {
+        return TransportScheduleDAO.planJourney(from, to, departAfter);
+    }
+
+    public List<String> getJourneyStops() {
+        return TransportScheduleDAO.getJourneyStops();
+    }
+}
+
+/**
+ * The MySQL backend for accommodations, which delegates to {@link AccommodationDAO}.
+ */
+class JdbcAccommodationRepository implements AccommodationRepository {
+    public boolean createAccommodation(Accommodation a) {
+        return AccommodationDAO.createAccommodation(a.accommodationID(), a.hotelName(), a.roomType(), a.capacity(),
+                a.address(), a.adminID(), a.latitude(), a.longitude());
+    }
+
+    public int createAccommodationWithAssignedId(Accommodation a) {
+        return AccommodationDAO.createAccommodation(a.hotelName(), a.roomType(), a.capacity(), a.address(),
+                a.adminID(), a.latitude(), a.longitude());
+    }
+
+    public List<Accommodation> getAllAccommodations() {
+        return AccommodationDAO.getAllAccommodations();
+    }
+
+    public Stream<Accommodation> streamAllAccommodations() {
+        return AccommodationDAO.streamAllAccommodations();
+    }
+
+    public Page<Accommodation> getAccommodationsPage(int afterAccommodationID, int limit, PageFilter filter) {
+        return AccommodationDAO.getAccommodationsPage(afterAccommodationID, limit, filter);
+    }
+
+    public boolean assignPilgrimToAccommodation(int pilgrimID, int accommodationID) {
+        return AccommodationDAO.assignPilgrimToAccommodation(pilgrimID, accommodationID);
+    }
+
+    public Map<Integer, Integer> getOccupancy() {
+        return AccommodationDAO.getOccupancy();
+    }
+
+    public Stream<Pilgrim> streamPilgrimsWithoutAccommodation() {
+        return AccommodationDAO.streamPilgrimsWithoutAccommodation();
+    }
+
+    public int saveAllocations(List<AccommodationAllocator.Assignment> assignments) {
+        return AccommodationDAO.saveAllocations(assignments);
+    }
+
+    public List<SpatialIndex.Hit<Accommodation>> findNearestAccommodations(double latitude, double longitude, int limit) {
+        return AccommodationDAO.findNearestAccommodations(latitude, longitude, limit);
+    }
+
+    public List<SpatialIndex.Hit<Accommodation>> findAccommodationsWithin(double latitude, double longitude, double radiusMeters) {
+        return AccommodationDAO.findAccommodationsWithin(latitude, longitude, radiusMeters);
+    }
+}
+
+/**
+ * The MySQL backend for permits, which delegates to {@link PermitDAO}.
+ */
+class JdbcPermitRepository implements PermitRepository {
+    public boolean createPermit(Permit p) {
+        return PermitDAO.createPermit(p.permitID(), p.name(), p.location(), p.serviceType(), p.latitude(),
+                p.longitude());
+    }
+
+    public int createPermitWithAssignedId(Permit p) {
+        return PermitDAO.createPermit(p.name(), p.location(), p.serviceType(), p.latitude(), p.longitude());
+    }
+
+    public List<Permit> getAllPermits() {
+        return PermitDAO.getAllPermits();
+    }
+
+    public Stream<Permit> streamAllPermits() {
+        return PermitDAO.streamAllPermits();
+    }
+
+    public Page<Permit> getPermitsPage(int afterPermitID, int limit, PageFilter filter) {
+        return PermitDAO.getPermitsPage(afterPermitID, limit, filter);
+    }
+
+    public boolean assignPermitToPilgrim(int pilgrimID, int permitID) {
+        return PermitDAO.assignPermitToPilgrim(pilgrimID, permitID);
+    }
+
+    public List<SpatialIndex.Hit<Permit>> findNearestPermits(double latitude, double longitude, int limit, String serviceType) {
+        return PermitDAO.findNearestPermits(latitude, longitude, limit, serviceType);
+    }
+
+    public List<SpatialIndex.Hit<Permit>> findPermitsWithin(double latitude, double longitude, double radiusMeters, String serviceType) {
+        return PermitDAO.findPermitsWithin(latitude, longitude, radiusMeters, serviceType);
+    }
+}
+
+/**
+ * The MySQL backend for administrators, which delegates to {@link AdminDAO}.
+ */
+class JdbcAdminRepository implements AdminRepository {
+    public boolean validateAdmin(int adminID, String password) {
+        return AdminDAO.validateAdmin(adminID, password);
+    }
+
+    public Admin getAdminById(int adminID) {
+        return AdminDAO.getAdminById(adminID);
+    }
+}
+
+/**
+ * The in-memory backend for pilgrims. Rows are kept in an {@link IntTable} keyed by PilgrimID.
+ * A duplicate ID on create throws {@link DataAccessException}, and a missing ID on update or
+ * delete returns false, just as the statements do in MySQL. Assigned IDs count up from 1,
+ * skipping IDs already taken.
+ */
+class InMemoryPilgrimRepository implements PilgrimRepository {
+    private final IntTable<Pilgrim> pilgrims = new IntTable<>();
+    private final PilgrimNameIndex names = new PilgrimNameIndex();
+    private final AtomicInteger nextID = new AtomicInteger(1);
+
+    /**
+     * The version of every pilgrim that has been updated or deleted; others are at version 0.
+     * A delete bumps the version and keeps it, so a pilgrim created again under the same ID
+     * carries on from there and a copy read before the delete cannot be saved over it.
+     * Guarded by this.
+     */
+    private final Map<Integer, Integer> versions = new HashMap<>();
+
+    public boolean createPilgrim(Pilgrim pilgrim) {
+        if (!insert(pilgrim)) {
+            throw DataAccessException.duplicateKey("Pilgrim", pilgrim.pilgrimID());
+        }
+        return true;
+    }
+
+    /**
+     * @return false if the PilgrimID is already taken
+     */
+    private boolean insert(Pilgrim pilgrim) {
+        if (!pilgrims.putIfAbsent(pilgrim.pilgrimID(), pilgrim)) {
+            return false;
+        }
+        names.put(pilgrim.pilgrimID(), pilgrim.pilgrimName());
+        return true;
+    }
+
+    public int createPilgrimWithAssignedId(Pilgrim p) {
+        while (true) {
+            int id = nextID.getAndIncrement();
+            if (insert(new Pilgrim(id, p.pilgrimName(), p.phone(), p.nationality(),
+                    p.specialNeed(), p.allergies(), p.pilgrimAge()))) {
+                return id;
+            }
+        }
+    }
+
+    public BatchInsertResult createPilgrims(Collection<Pilgrim> batch) {
+        BatchInsertResult result = new BatchInsertResult();
+        int rowIndex = 0;
+        for (Pilgrim pilgrim : batch) {
+            if (pilgrim == null) {
+                result.addError(rowIndex, 0, "Missing pilgrim");
+            } else if (insert(pilgrim)) {
+                result.addInserted(1);
+            } else {
+                result.addError(rowIndex, pilgrim.pilgrimID(), "Duplicate PilgrimID");
+            }
+            rowIndex++;
+        }
+        result.addBatch();
+        return result;
+    }
+
+    public List<Pilgrim> getAllPilgrims() {
+        return pilgrims.values();
+    }
+
+    public Stream<Pilgrim> streamAllPilgrims() {
+        return pilgrims.values().stream();
+    }
+
+    public Page<Pilgrim> getPilgrimsPage(int afterPilgrimID, int limit, PageFilter filter) {
+        if (filter == null) {
+            return pilgrims.page(afterPilgrimID, limit, null);
+        }
+        filter.checkColumns(PilgrimDAO.PAGE_FILTER_COLUMNS);
+        return pilgrims.page(afterPilgrimID, limit, p -> filter.matches(column -> column(p, column)));
+    }
+
+    public synchronized boolean updatePilgrim(Pilgrim pilgrim) {
+        if (!pilgrims.replace(pilgrim.pilgrimID(), pilgrim)) {
+            return false;
+        }
+        versions.merge(pilgrim.pilgrimID(), 1, Integer::sum);
+        names.put(pilgrim.pilgrimID(), pilgrim.pilgrimName());
+        return true;
+    }
+
+    public synchronized UpdateResult<Pilgrim> updatePilgrim(Pilgrim pilgrim, int expectedVersion) {
+        Versioned<Pilgrim> current = getVersionedPilgrim(pilgrim.pilgrimID());
+        if (current == null) {
+            return UpdateResult.notFound();
+        }
+        if (current.version() != expectedVersion) {
+            return UpdateResult.conflict(current);
+        }
+        updatePilgrim(pilgrim);
+        return UpdateResult.updated(new Versioned<>(pilgrim, expectedVersion + 1));
+    }
+
+    public synchronized Versioned<Pilgrim> getVersionedPilgrim(int pilgrimID) {
+        Pilgrim pilgrim = pilgrims.get(pilgrimID);
+        return pilgrim == null ? null : new Versioned<>(pilgrim, versions.getOrDefault(pilgrimID, 0));
+    }
+
+    public synchronized boolean deletePilgrim(int pilgrimID) {
+        if (pilgrims.remove(pilgrimID) == null) {
+            return false;
+        }
+        versions.merge(pilgrimID, 1, Integer::sum);
+        names.remove(pilgrimID);
+        return true;
+    }
+
+    public Pilgrim getPilgrimById(int pilgrimID) {
+        return pilgrims.get(pilgrimID);
+    }
+
+    public List<PilgrimNameIndex.Match> searchPilgrimNames(String prefix, int limit) {
+        return names.search(prefix, limit);
+    }
+
+    /**
+     * @return The number of stored pilgrims
+     */
+    int size() {
+        return pilgrims.size();
+    }
+
+    private static Object column(Pilgrim p, String column) {
+        switch (column) {
+            case "PilgrimName": return p.pilgrimName();
+            case "Phone": return p.phone();
+            case "Nationality": return p.nationality();
+            case "specialNeed": return p.specialNeed();
+            case "allergies": return p.allergies();
+            case "pilgrimAge": return p.pilgrimAge();
+            default: return null;
+        }
+    }
+}
+
+/**
+ * The in-memory backend for medical profiles, keyed by ProfileID with a second index by
+ * PilgrimID. Like the MySQL schema, each pilgrim has at most one profile.
+ */
+class InMemoryMedicalProfileRepository implements MedicalProfileRepository {
+    private final IntTable<MedicalProfile> byProfileID = new IntTable<>();
+    private final IntTable<MedicalProfile> byPilgrimID = new IntTable<>();
+
+    /** The version of every profile that has been updated, by ProfileID; others are at version 0. Guarded by this */
+    private final Map<Integer, Integer> versions = new HashMap<>();
+
+    public synchronized boolean createMedicalProfile(MedicalProfile profile) {
+        if (byPilgrimID.get(profile.pilgrimID()) != null) {
+            throw DataAccessException.duplicateKey("MedicalProfile", "PilgrimID " + profile.pilgrimID());
+        }
+        if (!byProfileID.putIfAbsent(profile.profileID(), profile)) {
+            throw DataAccessException.duplicateKey("MedicalProfile", profile.profileID());
+        }
+        byPilgrimID.putIfAbsent(profile.pilgrimID(), profile);
+        return true;
+    }
+
+    public MedicalProfile getMedicalProfileByPilgrimId(int pilgrimID) {
+        return byPilgrimID.get(pilgrimID);
+    }
+
+    public synchronized boolean updateMedicalProfile(MedicalProfile profile) {
+        MedicalProfile old = byProfileID.get(profile.profileID());
+        if (old == null) {
+            return false;
+        }
+        MedicalProfile updated = new MedicalProfile(old.profileID(), profile.bloodType(), profile.medications(),
+                profile.medicalHistory(), old.pilgrimID(), profile.adminID());
+        byProfileID.replace(old.profileID(), updated);
+        byPilgrimID.replace(old.pilgrimID(), updated);
+        versions.merge(old.profileID(), 1, Integer::sum);
+        return true;
+    }
+
+    public synchronized UpdateResult<MedicalProfile> updateMedicalProfile(MedicalProfile profile, int expectedVersion) {
+        MedicalProfile old = byProfileID.get(profile.profileID());
+        if (old == null) {
+            return UpdateResult.notFound();
+        }
+        int version = versions.getOrDefault(old.profileID(), 0);
+        if (version != expectedVersion) {
+            return UpdateResult.conflict(new Versioned<>(old, version));
+        }
+        updateMedicalProfile(profile);
+        return UpdateResult.updated(new Versioned<>(byProfileID.get(old.profileID()), version + 1));
+    }
+
+    public synchronized Versioned<MedicalProfile> getVersionedMedicalProfileByPilgrimId(int pilgrimID) {
+        MedicalProfile profile = byPilgrimID.get(pilgrimID);
+        return profile == null ? null : new Versioned<>(profile, versions.getOrDefault(profile.profileID(), 0));
+    }
+}
+
+/**
+ * The in-memory backend for transport schedules, keyed by ScheduleID.
+ */
+class InMemoryTransportScheduleRepository implements TransportScheduleRepository {
+    private final IntTable<TransportSchedule> schedules = new IntTable<>();
+    private final AtomicInteger nextID = new AtomicInteger(1);
+    private final Set<Long> assignments = ConcurrentHashMap.newKeySet();
+    private final PilgrimRepository pilgrims;
+
+    /** The seats of each schedule not yet leased to the inventory, as the SeatInventory table would hold them */
+    private final ConcurrentHashMap<Integer, AtomicInteger> unleased = new ConcurrentHashMap<>();
+    private final SeatInventory seats = new SeatInventory(this::leaseSeats, this::returnSeats, SeatInventory.DEFAULT_LEASE_SIZE);
+    private final ConcurrentHashMap<Integer, Ticket> tickets = new ConcurrentHashMap<>();
+    private final AtomicInteger nextTicketNumber = new AtomicInteger(100001);
+
+    /** Each schedule's waiting pilgrims in the order they are served; each queue guards itself */
+    private final ConcurrentHashMap<Integer, PriorityQueue<Waiting>> waitlists = new ConcurrentHashMap<>();
+    private final Set<Long> waitlisted = ConcurrentHashMap.newKeySet();
+    private final AtomicLong nextWaitingSeq = new AtomicLong();
+    private final WaitlistPromoter promoter = new WaitlistPromoter(this::promoteWaitlisted, seats);
+
+    /** The schedules the planner's timetable is built from; null once a schedule has been added. Guarded by this */
+    private final JourneyPlanner journeys = new JourneyPlanner();
+    private List<TransportSchedule> timetableSource = null;
+
+    /**
+     * A pilgrim on a waitlist; seq records the order in which pilgrims joined.
+     */
+    private record Waiting(int pilgrimID, int priority, long seq) {
+        static final Comparator<Waiting> ORDER =
+                Comparator.comparingInt(Waiting::priority).reversed().thenComparingLong(Waiting::seq);
+    }
+
+    InMemoryTransportScheduleRepository(PilgrimRepository pilgrims) {
+        this.pilgrims = pilgrims;
+    }
+
+    public boolean createTransportSchedule(TransportSchedule schedule) {
+        if (!insert(schedule)) {
+            throw DataAccessException.duplicateKey("TransportSchedule", schedule.scheduleID());
+        }
+        return true;
+    }
+
+    /**
+     * @return false if the ScheduleID is already taken
+     */
+    private synchronized boolean insert(TransportSchedule schedule) {
+        if (!schedules.putIfAbsent(schedule.scheduleID(), schedule)) {
+            return false;
+        }
+        timetableSource = null;
+        return true;
+    }
+
+    public int createTransportScheduleWithAssignedId(TransportSchedule s) {
+        while (true) {
+            int id = nextID.getAndIncrement();
+            if (insert(new TransportSchedule(id, s.departureTime(), s.arrivalTime(), s.route(),
+                    s.transportType(), s.adminID()))) {
+                return id;
+            }
+        }
+    }
+
+    public JourneyPlanner.Journey planJourney(String from, String to, int departAfter) {
+        return journeys.plan(timetableSource(), from, to, departAfter);
+    }
+
+    public List<String> getJourneyStops() {
+        return journeys.timetable(timetableSource()).stops();
+    }
+
+    /**
+     * @return The same list of schedules until a schedule is added, so the timetable is only rebuilt then
+     */
+    private synchronized List<TransportSchedule> timetableSource() {
+        if (timetableSource == null) {
+            timetableSource = schedules.values();
+        }
+        return timetableSource;
+    }
+
+    public List<TransportSchedule> getAllTransportSchedules() {
+        return schedules.values();
+    }
+
+    public Stream<TransportSchedule> streamAllTransportSchedules() {
+        return schedules.values().stream();
+    }
+
+    public Page<TransportSchedule> getTransportSchedulesPage(int afterScheduleID, int limit, PageFilter filter) {
+        if (filter == null) {
+            return schedules.page(afterScheduleID, limit, null);
+        }
+        filter.checkColumns(TransportScheduleDAO.PAGE_FILTER_COLUMNS);
+        return schedules.page(afterScheduleID, limit, s -> filter.matches(column -> column(s, column)));
+    }
+
+    public boolean assignPilgrimToTransport(int pilgrimID, int scheduleID) {
+        return bookTicket(pilgrimID, scheduleID) != null;
+    }
+
+    public Ticket bookTicket(int pilgrimID, int scheduleID) {
+        if (pilgrims.getPilgrimById(pilgrimID) == null || schedules.get(scheduleID) == null) {
+            return null;
+        }
+        try {
+            if (!seats.tryReserve(scheduleID)) {
+                return null;
+            }
+        } catch (SQLException e) {
+            throw new DataAccessException("Could not lease seats on schedule " + scheduleID, e);
+        }
+        if (!assignments.add(key(pilgrimID, scheduleID))) {
+            seats.release(scheduleID);
+            return null;
+        }
+        Ticket ticket = new Ticket(nextTicketNumber.getAndIncrement(), pilgrimID, scheduleID, Ticket.BOOKED,
+                LocalDateTime.now().withNano(0).format(Ticket.TIME_FORMAT));
+        tickets.put(ticket.ticketNumber(), ticket);
+        return ticket;
+    }
+
+    public Ticket getTicket(int ticketNumber) {
+        return tickets.get(ticketNumber);
+    }
+
+    public boolean cancelTicket(int ticketNumber, int pilgrimID) {
+        Ticket ticket = tickets.get(ticketNumber);
+        if (ticket == null || ticket.pilgrimID() != pilgrimID || !ticket.isBooked()
+                || !tickets.replace(ticketNumber, ticket, new Ticket(ticketNumber, pilgrimID, ticket.scheduleID(),
+                        Ticket.CANCELLED, ticket.bookedAt()))) {
+            return false;
+        }
+        assignments.remove(key(pilgrimID, ticket.scheduleID()));
+        // Decide under the queue's lock, so a pilgrim joining meanwhile either gets the seat or finds it on sale
+        PriorityQueue<Waiting> waiting = waitlist(ticket.scheduleID());
+        synchronized (waiting) {
+            if (waiting.isEmpty()) {
+                seats.release(ticket.scheduleID());
+            } else {
+                promoter.seatFreed(ticket.scheduleID());
+            }
+        }
+        return true;
+    }
+
+    public List<Ticket> getTicketsByPilgrim(int pilgrimID) {
+        List<Ticket> result = new ArrayList<>();
+        for (Ticket ticket : tickets.values()) {
+            if (ticket.pilgrimID() == pilgrimID) {
+                result.add(ticket);
+            }
+        }
+        result.sort(Comparator.comparingInt(Ticket::ticketNumber));
+        return result;
+    }
+
+    public boolean joinWaitlist(int pilgrimID, int scheduleID) {
+        Pilgrim pilgrim = pilgrims.getPilgrimById(pilgrimID);
+        if (pilgrim == null || schedules.get(scheduleID) == null) {
+            return false;
+        }
+        PriorityQueue<Waiting> waiting = waitlist(scheduleID);
+        synchronized (waiting) {
+            if (waitlisted.add(key(pilgrimID, scheduleID))) {
+                waiting.add(new Waiting(pilgrimID, WaitlistPromoter.priorityOf(pilgrim), nextWaitingSeq.getAndIncrement()));
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return The waitlist promoter, for tests and benchmarks
+     */
+    WaitlistPromoter getWaitlistPromoter() {
+        return promoter;
+    }
+
+    /**
+     * @return The schedule's waitlist, created empty if nobody has joined it yet
+     */
+    private PriorityQueue<Waiting> waitlist(int scheduleID) {
+        return waitlists.computeIfAbsent(scheduleID, id -> new PriorityQueue<>(Waiting.ORDER));
+    }
+
+    private Map<Integer, Integer> promoteWaitlisted(Map<Integer, Integer> freed) {
+        Map<Integer, Integer> given = new HashMap<>();
+        String bookedAt = LocalDateTime.now().withNano(0).format(Ticket.TIME_FORMAT);
+        for (Map.Entry<Integer, Integer> e : freed.entrySet()) {
+            int scheduleID = e.getKey();
+            PriorityQueue<Waiting> waiting = waitlists.get(scheduleID);
+            if (waiting == null) {
+                continue;
+            }
+            int count = 0;
+            synchronized (waiting) {
+                while (count < e.getValue() && !waiting.isEmpty()) {
+                    Waiting next = waiting.poll();
+                    waitlisted.remove(key(next.pilgrimID(), scheduleID));
+                    // Skip pilgrims who booked the schedule themselves while they waited
+                    if (assignments.add(key(next.pilgrimID(), scheduleID))) {
+                        Ticket ticket = new Ticket(nextTicketNumber.getAndIncrement(), next.pilgrimID(), scheduleID,
+                                Ticket.BOOKED, bookedAt);
+                        tickets.put(ticket.ticketNumber(), ticket);
+                        count++;
+                    }
+                }
+            }
+            if (count > 0) {
+                given.put(scheduleID, count);
+            }
+        }
+        return given;
+    }
+
+    /**
+     * @return The seat inventory, for tests and benchmarks
+     */
+    SeatInventory getSeatInventory() {
+        return seats;
+    }
+
+    private int leaseSeats(int scheduleID, int max) {
+        AtomicInteger left = unleased.computeIfAbsent(scheduleID, id -> new AtomicInteger(SeatInventory.DEFAULT_CAPACITY));
+        while (true) {
+            int available = left.get();
+            int granted = Math.min(max, available);
+            if (granted <= 0 || left.compareAndSet(available, available - granted)) {
+                return Math.max(granted, 0);
+            }
+        }
+    }
+
+    private void returnSeats(int scheduleID, int count) {
+        unleased.computeIfAbsent(scheduleID, id -> new AtomicInteger(SeatInventory.DEFAULT_CAPACITY)).addAndGet(count);
+    }
+
+    private static long key(int pilgrimID, int scheduleID) {
+        return ((long) pilgrimID << 32) | (scheduleID & 0xFFFFFFFFL);
+    }
+
+    private static Object column(TransportSchedule s, String column) {
+        switch (column) {
+            case "departureTime": return s.departureTime();
+            case "arrivalTime": return s.arrivalTime();
+            case "route": return s.route();
+            case "TransportType": return s.transportType();
+            case "AdminID": return s.adminID();
+            default: return null;
+        }
+    }
+}
+
+/**
+ * The in-memory backend for accommodations, keyed by AccommodationID.
+ */
+class InMemoryAccommodationRepository implements AccommodationRepository {
+    private final IntTable<Accommodation> accommodations = new IntTable<>();
+    private final AtomicInteger nextID = new AtomicInteger(1);
+    private final Set<Long> assignments = ConcurrentHashMap.newKeySet();
+    private final PilgrimRepository pilgrims;
+
+    /** Pilgrims per accommodation and the pilgrims with any accommodation; guarded by this */
+    private final Map<Integer, Integer> occupancy = new HashMap<>();
+    private final Set<Integer> housed = new HashSet<>();
+    private final SpatialIndex<Accommodation> locations = AccommodationDAO.newLocationIndex();
+
+    InMemoryAccommodationRepository(PilgrimRepository pilgrims) {
+        this.pilgrims = pilgrims;
+        locations.load(Collections.emptyList());
+    }
+
+    public boolean createAccommodation(Accommodation accommodation) {
+        if (!insert(accommodation)) {
+            throw DataAccessException.duplicateKey("Accommodation", accommodation.accommodationID());
+        }
+        return true;
+    }
+
+    /**
+     * @return false if the AccommodationID is already taken
+     */
+    private boolean insert(Accommodation accommodation) {
+        if (!accommodations.putIfAbsent(accommodation.accommodationID(), accommodation)) {
+            return false;
+        }
+        locations.put(accommodation);
+        return true;
+    }
+
+    public int createAccommodationWithAssignedId(Accommodation a) {
+        while (true) {
+            int id = nextID.getAndIncrement();
+            if (insert(new Accommodation(id, a.hotelName(), a.roomType(), a.capacity(),
+                    a.address(), a.adminID(), a.latitude(), a.longitude()))) {
+                return id;
+            }
+        }
+    }
+
+    public List<SpatialIndex.Hit<Accommodation>> findNearestAccommodations(double latitude, double longitude, int limit) {
+        return locations.nearest(latitude, longitude, limit, null);
+    }
+
+    public List<SpatialIndex.Hit<Accommodation>> findAccommodationsWithin(double latitude, double longitude, double radiusMeters) {
+        return locations.within(latitude, longitude, radiusMeters, null);
+    }
+
+    public List<Accommodation> getAllAccommodations() {
+        return accommodations.values();
+    }
+
+    public Stream<Accommodation> streamAllAccommodations() {
+        return accommodations.values().stream();
+    }
+
+    public Page<Accommodation> getAccommodationsPage(int afterAccommodationID, int limit, PageFilter filter) {
+        if (filter == null) {
+            return accommodations.page(afterAccommodationID, limit, null);
+        }
+        filter.checkColumns(AccommodationDAO.PAGE_FILTER_COLUMNS);
+        return accommodations.page(afterAccommodationID, limit, a -> filter.matches(column -> column(a, column)));
+    }
+
+    public synchronized boolean assignPilgrimToAccommodation(int pilgrimID, int accommodationID) {
+        Accommodation accommodation = accommodations.get(accommodationID);
+        if (pilgrims.getPilgrimById(pilgrimID) == null || accommodation == null
+                || occupancy.getOrDefault(accommodationID, 0) >= accommodation.capacity()
+                || !assignments.add(((long) pilgrimID << 32) | (accommodationID & 0xFFFFFFFFL))) {
+            return false;
+        }
+        occupancy.merge(accommodationID, 1, Integer::sum);
+        housed.add(pilgrimID);
+        return true;
+    }
+
+    public synchronized Map<Integer, Integer> getOccupancy() {
+        return new HashMap<>(occupancy);
+    }
+
+    public Stream<Pilgrim> streamPilgrimsWithoutAccommodation() {
+        Set<Integer> snapshot;
+        synchronized (this) {
+            snapshot = new HashSet<>(housed);
+        }
+        return pilgrims.streamAllPilgrims().filter(p -> !snapshot.contains(p.pilgrimID()));
+    }
+
+    public synchronized int saveAllocations(List<AccommodationAllocator.Assignment> batch) {
+        Map<Integer, Integer> planned = new HashMap<>();
+        for (AccommodationAllocator.Assignment a : batch) {
+            planned.merge(a.accommodationID(), 1, Integer::sum);
+        }
+        for (Map.Entry<Integer, Integer> e : planned.entrySet()) {
+            Accommodation accommodation = accommodations.get(e.getKey());
+            if (accommodation == null
+                    || occupancy.getOrDefault(e.getKey(), 0) + e.getValue() > accommodation.capacity()) {
+                return -1;
+            }
+        }
+        int saved = 0;
+        for (AccommodationAllocator.Assignment a : batch) {
+            if (assignments.add(((long) a.pilgrimID() << 32) | (a.accommodationID() & 0xFFFFFFFFL))) {
+                occupancy.merge(a.accommodationID(), 1, Integer::sum);
+                housed.add(a.pilgrimID());
+                saved++;
+            }
+        }
+        return saved;
+    }
+
+    private static Object column(Accommodation a, String column) {
+        switch (column) {
+            case "HotelName": return a.hotelName();
+            case "roomType": return a.roomType();
+            case "capacity": return a.capacity();
+            case "address": return a.address();
+            case "AdminID": return a.adminID();
+            default: return null;
+        }
+    }
+}
+
+/**
+ * The in-memory backend for permits, keyed by PermitID.
+ */
+class InMemoryPermitRepository implements PermitRepository {
+    private final IntTable<Permit> permits = new IntTable<>();
+    private final AtomicInteger nextID = new AtomicInteger(1);
+    private final Set<Long> assignments = ConcurrentHashMap.newKeySet();
+    private final PilgrimRepository pilgrims;
+    private final SpatialIndex<Permit> locations = PermitDAO.newLocationIndex();
+
+    InMemoryPermitRepository(PilgrimRepository pilgrims) {
+        this.pilgrims = pilgrims;
+        locations.load(Collections.emptyList());
+    }
+
+    public boolean createPermit(Permit permit) {
+        if (!insert(permit)) {
+            throw DataAccessException.duplicateKey("Permit", permit.permitID());
+        }
+        return true;
+    }
+
+    /**
+     * @return false if the PermitID is already taken
+     */
+    private boolean insert(Permit permit) {
+        if (!permits.putIfAbsent(permit.permitID(), permit)) {
+            return false;
+        }
+        locations.put(permit);
+        return true;
+    }
+
+    public int createPermitWithAssignedId(Permit p) {
+        while (true) {
+            int id = nextID.getAndIncrement();
+            if (insert(new Permit(id, p.name(), p.location(), p.serviceType(), p.latitude(), p.longitude()))) {
+                return id;
+            }
+        }
+    }
+
+    public List<SpatialIndex.Hit<Permit>> findNearestPermits(double latitude, double longitude, int limit, String serviceType) {
+        return locations.nearest(latitude, longitude, limit, PermitDAO.ofServiceType(serviceType));
+    }
+
+    public List<SpatialIndex.Hit<Permit>> findPermitsWithin(double latitude, double longitude, double radiusMeters, String serviceType) {
+        return locations.within(latitude, longitude, radiusMeters, PermitDAO.ofServiceType(serviceType));
+    }
+
+    public List<Permit> getAllPermits() {
+        return permits.values();
+    }
+
+    public Stream<Permit> streamAllPermits() {
+        return permits.values().stream();
+    }
+
+    public Page<Permit> getPermitsPage(int afterPermitID, int limit, PageFilter filter) {
+        if (filter == null) {
+            return permits.page(afterPermitID, limit, null);
+        }
+        filter.checkColumns(PermitDAO.PAGE_FILTER_COLUMNS);
+        return permits.page(afterPermitID, limit, p -> filter.matches(column -> column(p, column)));
+    }
+
+    public boolean assignPermitToPilgrim(int pilgrimID, int permitID) {
+        return pilgrims.getPilgrimById(pilgrimID) != null && permits.get(permitID) != null
+                && assignments.add(((long) pilgrimID << 32) | (permitID & 0xFFFFFFFFL));
+    }
+
+    private static Object column(Permit p, String column) {
+        switch (column) {
+            case "Name": return p.name();
+            case "location": return p.location();
+            case "serviceType": return p.serviceType();
+            default: return null;
+        }
+    }
+}
+
+/**
+ * The in-memory backend for administrators, keyed by AdminID.
+ */
+class InMemoryAdminRepository implements AdminRepository {
+    private final IntTable<Admin> admins = new IntTable<>();
+    private final IntTable<String> passwords = new IntTable<>();
+
+    /**
+     * Adds an administrator account.
+     *
+     * @param admin The administrator
+     * @param password The administrator's password
+     * @return true if the account was added, false if the AdminID is already taken
+     */
+    synchronized boolean addAdmin(Admin admin, String password) {
+        if (!admins.putIfAbsent(admin.adminID(), admin)) {
+            return false;
+        }
+        passwords.putIfAbsent(admin.adminID(), password);
+        return true;
+    }
+
+    public boolean validateAdmin(int adminID, String password) {
+        String stored = passwords.get(adminID);
+        return stored != null && stored.equals(password);
+    }
+
+    public Admin getAdminById(int adminID) {
+        return admins.get(adminID);
+    }
+}
+
+/**
+ * The Repositories class selects the storage backend when the application starts and hands
+ * out the repositories for it. The backend is chosen with the {@code hajjguide.backend}
+ * system property: {@code jdbc} (the default) uses MySQL through the DAO classes, and
+ * {@code memory} keeps everything in this process, so the application, soak tests and
+ * benchmarks can run without a database server.
+ *
+ * The in-memory backend starts empty apart from one administrator account, configured with
+ * {@code hajjguide.memory.adminID} (default 1) and {@code hajjguide.memory.adminPassword}
+ * (default "admin"), so that the admin screens can be reached.
+ */
+class Repositories {
+    /** The available storage backends */
+    enum Backend { JDBC, MEMORY }
+
+    private static final Backend BACKEND = Backend.valueOf(
+            System.getProperty("hajjguide.backend", "jdbc").trim().toUpperCase());
+
+    private static final PilgrimRepository PILGRIMS;
+    private static final MedicalProfileRepository MEDICAL_PROFILES;
+    private static final TransportScheduleRepository TRANSPORT_SCHEDULES;
+    private static final AccommodationRepository ACCOMMODATIONS;
+    private static final PermitRepository PERMITS;
+    private static final AdminRepository ADMINS;
+
+    static {
+        if (BACKEND == Backend.MEMORY) {
+            InMemoryPilgrimRepository pilgrims = new InMemoryPilgrimRepository();
+            InMemoryAdminRepository admins = new InMemoryAdminRepository();
+            admins.addAdmin(new Admin(Integer.getInteger("hajjguide.memory.adminID", 1), "Administrator", "", ""),
+                    System.getProperty("hajjguide.memory.adminPassword", "admin"));
+            PILGRIMS = pilgrims;
+            MEDICAL_PROFILES = new InMemoryMedicalProfileRepository();
+            TRANSPORT_SCHEDULES = new InMemoryTransportScheduleRepository(pilgrims);
+            ACCOMMODATIONS = new InMemoryAccommodationRepository(pilgrims);
+            PERMITS = new InMemoryPermitRepository(pilgrims);
+            ADMINS = admins;
+        } else {
+            PILGRIMS = new JdbcPilgrimRepository();
+            MEDICAL_PROFILES = new JdbcMedicalProfileRepository();
+            TRANSPORT_SCHEDULES = new JdbcTransportScheduleRepository();
+            ACCOMMODATIONS = new JdbcAccommodationRepository();
+            PERMITS = new JdbcPermitRepository();
+            ADMINS = new JdbcAdminRepository();
+        }
+    }
+
+    private Repositories() {
+    }
+
+    /** @return The backend selected at startup */
+    static Backend getBackend() {
+        return BACKEND;
+    }
+
+    static PilgrimRepository pilgrims() {
+        return PILGRIMS;
+    }
+
+    static MedicalProfileRepository medicalProfiles() {
+        return MEDICAL_PROFILES;
+    }
+
+    static TransportScheduleRepository transportSchedules() {
+        return TRANSPORT_SCHEDULES;
+    }
+
+    static AccommodationRepository accommodations() {
+        return ACCOMMODATIONS;
+    }
+
+    static PermitRepository permits() {
+        return PERMITS;
+    }
+
+    static AdminRepository admins() {
+        return ADMINS;
+    }
+}
+
+/**
+ * The BlockingExecutors class creates the executors that run blocking calls: background
+ * repository calls, simulated users and HTTP requests. Each task gets a virtual thread when
+ * the running JVM provides them (Java 21 and later); otherwise tasks run on daemon platform
+ * threads.
+ */
+class BlockingExecutors {
+    private BlockingExecutors() {
+    }
+
+    /**
+     * Creates an executor that runs each task on a virtual thread if the JVM supports them,
+     * or else on daemon platform threads.
+     *
+     * @param name The prefix of the platform threads' names
+     * @param maxThreads The number of platform threads in a fixed pool, or 0 for a thread
+     *                   per task with a small stack
+     * @return The executor
+     */
+    static ExecutorService create(String name, int maxThreads) {
+        try {
+            Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) factory.invoke(null);
+        } catch (ReflectiveOperationException e) {
+            AtomicInteger count = new AtomicInteger();
+            long stackSize = maxThreads > 0 ? 0 : 256 * 1024;
+            ThreadFactory threads = r -> {
+                Thread t = new Thread(null, r, name + "-" + count.incrementAndGet(), stackSize);
+                t.setDaemon(true);
+                return t;
+            };
+            return maxThreads > 0 ? Executors.newFixedThreadPool(maxThreads, threads) : Executors.newCachedThreadPool(threads);
+        }
+    }
+}
+
+/**
+ * The AsyncRepositories class runs repository calls off the Event Dispatch Thread, so a slow
+ * query no longer freezes the UI. Each call returns a CompletableFuture, and
+ * {@link #whenDone(CompletableFuture, Consumer, Consumer)} delivers the outcome back on the
+ * EDT where the screen can update its components.
+ *
+ * Calls run on virtual threads when the JVM supports them and otherwise on a pool of daemon
+ * threads. At most {@code hajjguide.async.maxInFlight} calls (default 64) may be running at once;
+ * further calls fail at once with a RejectedExecutionException instead of queuing
+ * behind a stalled database.
+ */
+class AsyncRepositories {
+    private static final int MAX_IN_FLIGHT = Integer.getInteger("hajjguide.async.maxInFlight", 64);
+    private static final Semaphore inFlight = new Semaphore(MAX_IN_FLIGHT);
+    private static final ExecutorService executor = BlockingExecutors.create("hajjguide-async", MAX_IN_FLIGHT);
+
+    private AsyncRepositories() {
+    }
+
+    /**
+     * Runs a call in the background.
+     *
+     * @param call The call to run
+     * @param <T> The type of result
+     * @return A future completed with the call's result, or exceptionally with a
+     *         RejectedExecutionException if too many calls are already running
+     */
+    static <T> CompletableFuture<T> supply(Supplier<T> call) {
+        if (!inFlight.tryAcquire()) {
+            return CompletableFuture.failedFuture(
+                    new RejectedExecutionException("The system is busy, please try again"));
+        }
+        try {
+            return CompletableFuture.supplyAsync(call, executor).whenComplete((result, error) -> inFlight.release());
+        } catch (RejectedExecutionException e) {
+            inFlight.release();
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    /**
+     * Handles the outcome of a background call on the Event Dispatch Thread.
+     *
+     * @param future The background call
+     * @param onSuccess Receives the result on the EDT
+     * @param onFailure Receives the cause of the failure on the EDT
+     * @param <T> The type of result
+     */
+    static <T> void whenDone(CompletableFuture<T> future, Consumer<? super T> onSuccess, Consumer<Throwable> onFailure) {
+        future.whenComplete((result, error) -> SwingUtilities.invokeLater(() -> {
+            if (error == null) {
+                onSuccess.accept(result);
+            } else {
+                onFailure.accept(error instanceof CompletionException && error.getCause() != null ? error.getCause() : error);
+            }
+        }));
+    }
+
+    /**
+     * Puts a screen into its loading state while a background call runs: the button is
+     * disabled and relabelled and the window shows the wait cursor. Must be called on the EDT.
+     *
+     * @param frame The screen's window
+     * @param button The button that started the call
+     * @param text The label to show on the button while loading
+     * @return Restores the screen; must also be called on the EDT
+     */
+    static Runnable showLoading(JFrame frame, JButton button, String text) {
+        String label = button.getText();
+        button.setEnabled(false);
+        button.setText(text);
+        frame.setCursor(Cursor.getPredefinedCursor(Cursor.WAIT_CURSOR));
+        return () -> {
+            button.setText(label);
+            button.setEnabled(true);
+            frame.setCursor(Cursor.getDefaultCursor());
+        };
+    }
+
+    /** @return The number of calls currently running */
+    static int getInFlightCount() {
+        return MAX_IN_FLIGHT - inFlight.availablePermits();
+    }
+
+    static CompletableFuture<Pilgrim> getPilgrimById(int pilgrimID) {
+        return supply(() -> Repositories.pilgrims().getPilgrimById(pilgrimID));
+    }
+
+    static CompletableFuture<Boolean> createPilgrim(Pilgrim pilgrim) {
+        return supply(() -> Repositories.pilgrims().createPilgrim(pilgrim));
+    }
+
+    static CompletableFuture<Integer> createPilgrimWithAssignedId(Pilgrim pilgrim) {
+        return supply(() -> Repositories.pilgrims().createPilgrimWithAssignedId(pilgrim));
+    }
+
+    static CompletableFuture<Boolean> updatePilgrim(Pilgrim pilgrim) {
+        return supply(() -> Repositories.pilgrims().updatePilgrim(pilgrim));
+    }
+
+    static CompletableFuture<UpdateResult<Pilgrim>> updatePilgrim(Pilgrim pilgrim, int expectedVersion) {
+        return supply(() -> Repositories.pilgrims().updatePilgrim(pilgrim, expectedVersion));
+    }
+
+    static CompletableFuture<Versioned<Pilgrim>> getVersionedPilgrim(int pilgrimID) {
+        return supply(() -> Repositories.pilgrims().getVersionedPilgrim(pilgrimID));
+    }
+
+    static CompletableFuture<Page<Pilgrim>> getPilgrimsPage(int afterPilgrimID, int limit, PageFilter filter) {
+        return supply(() -> Repositories.pilgrims().getPilgrimsPage(afterPilgrimID, limit, filter));
+    }
+
+    static CompletableFuture<List<PilgrimNameIndex.Match>> searchPilgrimNames(String prefix, int limit) {
+        return supply(() -> Repositories.pilgrims().searchPilgrimNames(prefix, limit));
+    }
+
+    static CompletableFuture<AccommodationAllocator.Plan> planAccommodations() {
+        return supply(() -> new AccommodationAllocator().planSeason(Repositories.accommodations()));
+    }
+
+    static CompletableFuture<Integer> saveAllocations(List<AccommodationAllocator.Assignment> assignments) {
+        return supply(() -> Repositories.accommodations().saveAllocations(assignments));
+    }
+
+    static CompletableFuture<List<SpatialIndex.Hit<Accommodation>>> findNearestAccommodations(double latitude, double longitude, int limit) {
+        return supply(() -> Repositories.accommodations().findNearestAccommodations(latitude, longitude, limit));
+    }
+
+    static CompletableFuture<List<SpatialIndex.Hit<Accommodation>>> findAccommodationsWithin(double latitude, double longitude, double radiusMeters) {
+        return supply(() -> Repositories.accommodations().findAccommodationsWithin(latitude, longitude, radiusMeters));
+    }
+
+    static CompletableFuture<List<SpatialIndex.Hit<Permit>>> findNearestPermits(double latitude, double longitude, int limit, String serviceType) {
+        return supply(() -> Repositories.permits().findNearestPermits(latitude, longitude, limit, serviceType));
+    }
+
+    static CompletableFuture<List<SpatialIndex.Hit<Permit>>> findPermitsWithin(double latitude, double longitude, double radiusMeters, String serviceType) {
+        return supply(() -> Repositories.permits().findPermitsWithin(latitude, longitude, radiusMeters, serviceType));
+    }
+
+    static CompletableFuture<List<TransportSchedule>> getAllTransportSchedules() {
+        return supply(() -> Repositories.transportSchedules().getAllTransportSchedules());
+    }
+
+    static CompletableFuture<Ticket> bookTicket(int pilgrimID, int scheduleID) {
+        return supply(() -> Repositories.transportSchedules().bookTicket(pilgrimID, scheduleID));
+    }
+
+    static CompletableFuture<Ticket> getTicket(int ticketNumber) {
+        return supply(() -> Repositories.transportSchedules().getTicket(ticketNumber));
+    }
+
+    static CompletableFuture<Boolean> cancelTicket(int ticketNumber, int pilgrimID) {
+        return supply(() -> Repositories.transportSchedules().cancelTicket(ticketNumber, pilgrimID));
+    }
+
+    static CompletableFuture<List<Ticket>> getTicketsByPilgrim(int pilgrimID) {
+        return supply(() -> Repositories.transportSchedules().getTicketsByPilgrim(pilgrimID));
+    }
+
+    static CompletableFuture<Boolean> joinWaitlist(int pilgrimID, int scheduleID) {
+        return supply(() -> Repositories.transportSchedules().joinWaitlist(pilgrimID, scheduleID));
+    }
+
+    static CompletableFuture<JourneyPlanner.Journey> planJourney(String from, String to, int departAfter) {
+        return supply(() -> Repositories.transportSchedules().planJourney(from, to, departAfter));
+    }
+
+    static CompletableFuture<List<String>> getJourneyStops() {
+        return supply(() -> Repositories.transportSchedules().getJourneyStops());
+    }
+
+    static CompletableFuture<MedicalProfile> getMedicalProfileByPilgrimId(int pilgrimID) {
+        return supply(() -> Repositories.medicalProfiles().getMedicalProfileByPilgrimId(pilgrimID));
+    }
+
+    static CompletableFuture<Versioned<MedicalProfile>> getVersionedMedicalProfileByPilgrimId(int pilgrimID) {
+        return supply(() -> Repositories.medicalProfiles().getVersionedMedicalProfileByPilgrimId(pilgrimID));
+    }
+
+    static CompletableFuture<UpdateResult<MedicalProfile>> updateMedicalProfile(MedicalProfile profile, int expectedVersion) {
+        return supply(() -> Repositories.medicalProfiles().updateMedicalProfile(profile, expectedVersion));
+    }
+
+    static CompletableFuture<Boolean> validateAdmin(int adminID, String password) {
+        return supply(() -> Repositories.admins().validateAdmin(adminID, password));
+    }
+
+    static CompletableFuture<Admin> getAdminById(int adminID) {
+        return supply(() -> Repositories.admins().getAdminById(adminID));
+    }
+}
+
+/**
+ * The AccommodationAllocator class places a whole season's pilgrims into accommodations in
+ * one run, instead of one {@code assignPilgrimToAccommodation} call per pilgrim.
+ *
+ * Pilgrims that share a group key (by default, pilgrims registered under the same contact
+ * phone) are treated as one party and kept in the same accommodation whenever any single
+ * accommodation has room for them. Parties are placed largest first, each into the
+ * accommodation whose remaining capacity fits it most tightly, so small parties fill the
+ * gaps that large ones leave. A party that needs a particular room type only goes into
+ * accommodations of that type, and a party with a mobility-related special need only goes
+ * into accessible accommodations. Accessible accommodations are used for other parties only
+ * once the rest are full.
+ *
+ * Pilgrim records carry no room type, so a party of two, three or four is first offered
+ * the room type that sleeps exactly that many (Double, Triple, Quad) and falls back to any
+ * room type if those are full. Single travellers and larger parties take any room type.
+ *
+ * Parties are placed in two passes. The first packs each room type's accommodations for
+ * the parties that want that type; the second packs every accommodation's remaining
+ * places for the parties still unplaced. Within a pass the accommodations are split into
+ * shares with similar free space, one per worker of the common {@link ForkJoinPool}, and
+ * each party is given to the share with the most space unclaimed. The shares are packed
+ * side by side, and what did not fit in its share is then packed across all of them.
+ * Nothing is written until the plan is saved with
+ * {@link AccommodationRepository#saveAllocations(List)}.
+ */
+class AccommodationAllocator {
+    /** Special needs that call for an accessible accommodation */
+    private static final Pattern ACCESSIBLE_NEED = Pattern.compile(
+            "wheel ?chair|mobility|disab|walker|crutch|كرسي|متحرك|اعاق|إعاق",
+            Pattern.CASE_INSENSITIVE | Pattern.UNICODE_CASE);
+
+    /** The fewest accommodations in each share of a pass; smaller passes run on one thread */
+    private static final int MIN_SLOTS_PER_SHARE = 16;
+
+    /** The order parties are placed in: accessible first, then largest first, then by first PilgrimID */
+    private static final Comparator<Party> PARTY_ORDER = Comparator.comparing((Party p) -> !p.needsAccessible)
+            .thenComparing(Comparator.comparingInt((Party p) -> p.pilgrimIDs.length).reversed())
+            .thenComparingInt(p -> p.pilgrimIDs[0]);
+
+    private final Predicate<Accommodation> accessible;
+
+    /**
+     * Creates an allocator that treats the accommodations listed in the
+     * {@code hajjguide.allocation.accessibleIds} system property (a comma-separated list of
+     * AccommodationIDs) as accessible, as well as any whose room type or address
+     * mentions "accessible".
+     */
+    AccommodationAllocator() {
+        this(defaultAccessible());
+    }
+
+    /**
+     * Creates an allocator with its own rule for which accommodations are accessible.
+     *
+     * @param accessible Returns true for accommodations suitable for wheelchair users
+     */
+    AccommodationAllocator(Predicate<Accommodation> accessible) {
+        this.accessible = accessible;
+    }
+
+    private static Predicate<Accommodation> defaultAccessible() {
+        Set<Integer> ids = new HashSet<>();
+        for (String id : System.getProperty("hajjguide.allocation.accessibleIds", "").split(",")) {
+            if (!id.isBlank()) {
+                ids.add(Integer.parseInt(id.trim()));
+            }
+        }
+        return a -> ids.contains(a.accommodationID()) || mentionsAccessible(a.roomType()) || mentionsAccessible(a.address());
+    }
+
+    private static boolean mentionsAccessible(String text) {
+        return text != null && text.toLowerCase(Locale.ROOT).contains("accessible");
+    }
+
+    /**
+     * One pilgrim to be placed.
+     *
+     * @param pilgrimID The ID of the pilgrim
+     * @param groupKey Pilgrims with the same key are kept together; null for a pilgrim travelling alone
+     * @param roomType The room type the pilgrim needs, or null for any
+     * @param needsAccessible true if the pilgrim needs an accessible accommodation
+     */
+    record Request(int pilgrimID, String groupKey, String roomType, boolean needsAccessible) {
+
+        /**
+         * Builds the request for a pilgrim, grouping by contact phone and reading accessibility
+         * needs from the special needs field. The pilgrim names no room type; the party's
+         * size decides which one it is offered first.
+         *
+         * @param pilgrim The pilgrim
+         * @return The pilgrim's request
+         */
+        static Request of(Pilgrim pilgrim) {
+            String phone = pilgrim.phone() == null ? "" : pilgrim.phone().replaceAll("[^0-9+]", "");
+            String need = pilgrim.specialNeed();
+            return new Request(pilgrim.pilgrimID(), phone.isEmpty() ? null : phone, null,
+                    need != null && ACCESSIBLE_NEED.matcher(need).find());
+        }
+    }
+
+    /**
+     * A pilgrim placed in an accommodation.
+     */
+    record Assignment(int pilgrimID, int accommodationID, String roomType) {
+    }
+
+    /**
+     * A pilgrim that could not be placed, and why.
+     */
+    record Unplaced(int pilgrimID, String reason) {
+    }
+
+    /**
+     * The outcome of an allocation run.
+     *
+     * @param assignments The pilgrims placed, grouped by party
+     * @param unplaced The pilgrims that could not be placed
+     * @param parties The number of parties
+     * @param splitParties The number of parties too large for any one accommodation, which were spread over several
+     * @param elapsedMillis How long planning took
+     */
+    record Plan(List<Assignment> assignments, List<Unplaced> unplaced, int parties, int splitParties,
+            long elapsedMillis) {
+
+        /**
+         * @return A short human-readable summary of the plan
+         */
+        String summary() {
+            Map<String, Integer> reasons = new TreeMap<>();
+            for (Unplaced u : unplaced) {
+                reasons.merge(u.reason(), 1, Integer::sum);
+            }
+            StringBuilder sb = new StringBuilder();
+            sb.append(String.format("Placed %d pilgrims in %d parties (%d parties split); %d not placed. Planned in %d ms.",
+                    assignments.size(), parties, splitParties, unplaced.size(), elapsedMillis));
+            for (Map.Entry<String, Integer> e : reasons.entrySet()) {
+                sb.append('\n').append(e.getValue()).append(" x ").append(e.getKey());
+            }
+            return sb.toString();
+        }
+    }
+
+    /**
+     * Plans the placement of every pilgrim that has no accommodation yet, using the
+     * accommodations and their current occupancy from the given repository.
+     *
+     * @param accommodations The repository to read from
+     * @return The plan, not yet saved
+     */
+    Plan planSeason(AccommodationRepository accommodations) {
+        List<Request> requests;
+        try (Stream<Pilgrim> pilgrims = accommodations.streamPilgrimsWithoutAccommodation()) {
+            requests = pilgrims.map(Request::of).collect(Collectors.toList());
+        }
+        return allocate(requests, accommodations.getAllAccommodations(), accommodations.getOccupancy());
+    }
+
+    /**
+     * Places the given pilgrims into the given accommodations.
+     *
+     * @param requests The pilgrims to place
+     * @param hotels The accommodations available
+     * @param occupancy The number of pilgrims already in each accommodation, by AccommodationID
+     * @return The plan
+     */
+    Plan allocate(List<Request> requests, List<Accommodation> hotels, Map<Integer, Integer> occupancy) {
+        long started = System.nanoTime();
+
+        List<Party> parties = groupIntoParties(requests);
+        Map<String, List<Slot>> slotsByType = new HashMap<>();
+        List<Slot> allSlots = new ArrayList<>(hotels.size());
+        for (Accommodation a : hotels) {
+            int remaining = a.capacity() - occupancy.getOrDefault(a.accommodationID(), 0);
+            Slot slot = new Slot(a, Math.max(0, remaining), accessible.test(a));
+            allSlots.add(slot);
+            slotsByType.computeIfAbsent(roomTypeKey(a.roomType()), k -> new ArrayList<>()).add(slot);
+        }
+
+        Map<String, List<Party>> typedParties = new HashMap<>();
+        List<Party> anyType = new ArrayList<>();
+        for (Party party : parties) {
+            String type = party.roomType != null ? party.roomType : party.preferredRoomType;
+            if (type == null) {
+                anyType.add(party);
+            } else {
+                typedParties.computeIfAbsent(type, k -> new ArrayList<>()).add(party);
+            }
+        }
+
+        // Each room type has its own accommodations, so the room types are packed side by side
+        List<ForkJoinTask<Outcome>> byType = new ArrayList<>(typedParties.size());
+        for (Map.Entry<String, List<Party>> e : typedParties.entrySet()) {
+            List<Slot> slots = slotsByType.getOrDefault(e.getKey(), Collections.emptyList());
+            byType.add(ForkJoinTask.adapt(() -> packInShares(e.getValue(), slots)));
+        }
+        List<Assignment> assignments = new ArrayList<>(requests.size());
+        List<Unplaced> unplaced = new ArrayList<>();
+        int split = 0;
+        for (ForkJoinTask<Outcome> task : ForkJoinTask.invokeAll(byType)) {
+            Outcome o = task.join();
+            assignments.addAll(o.assignments);
+            split += o.splitParties;
+            for (Party party : o.leftover) {
+                if (party.roomType == null) {
+                    anyType.add(party);
+                } else {
+                    unplace(party, "No " + party.roomType + " room left", unplaced);
+                }
+            }
+        }
+
+        // Parties that take any room type, or whose preferred one is full, share what is left
+        anyType.sort(PARTY_ORDER);
+        Outcome rest = packInShares(anyType, allSlots);
+        assignments.addAll(rest.assignments);
+        split += rest.splitParties;
+        for (Party party : rest.leftover) {
+            unplace(party, "No room left", unplaced);
+        }
+        return new Plan(assignments, unplaced, parties.size(), split, (System.nanoTime() - started) / 1000000);
+    }
+
+    private static void unplace(Party party, String fullReason, List<Unplaced> unplaced) {
+        String reason = party.needsAccessible ? "No accessible room left" : fullReason;
+        for (int id : party.pilgrimIDs) {
+            unplaced.add(new Unplaced(id, reason));
+        }
+    }
+
+    /**
+     * Collects the requests into parties, in {@link #PARTY_ORDER}. Parties of the same size
+     * are ordered by their first PilgrimID so that a run is repeatable.
+     */
+    private static List<Party> groupIntoParties(List<Request> requests) {
+        Map<String, List<Request>> byKey = requests.parallelStream()
+                .filter(r -> r.groupKey() != null)
+                .collect(Collectors.groupingByConcurrent(Request::groupKey));
+
+        List<Party> parties = new ArrayList<>(byKey.size() + requests.size() / 4);
+        for (List<Request> members : byKey.values()) {
+            parties.add(new Party(members));
+        }
+        for (Request r : requests) {
+            if (r.groupKey() == null) {
+                parties.add(new Party(List.of(r)));
+            }
+        }
+        parties.sort(PARTY_ORDER);
+        return parties;
+    }
+
+    private static String roomTypeKey(String roomType) {
+        return roomType == null || roomType.isBlank() ? null : roomType.trim().toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * Places parties into the given accommodations, which no other task is packing. The
+     * accommodations are dealt into shares with similar free space, each party is given to
+     * the share with the most space unclaimed, and the shares are packed in parallel. Parties
+     * that did not fit their share are then packed across all the accommodations.
+     *
+     * @param parties The parties to place, in {@link #PARTY_ORDER}
+     * @param slots The accommodations they may use
+     * @return The placements, with the parties that did not fit anywhere as leftovers
+     */
+    private static Outcome packInShares(List<Party> parties, List<Slot> slots) {
+        int shares = Math.min(ForkJoinPool.getCommonPoolParallelism(), slots.size() / MIN_SLOTS_PER_SHARE);
+        if (shares < 2 || parties.size() < shares) {
+            return pack(parties, slots);
+        }
+
+        List<Slot> bySpace = new ArrayList<>(slots);
+        bySpace.sort(Comparator.comparingInt((Slot slot) -> slot.remaining).reversed());
+        List<List<Slot>> shareSlots = new ArrayList<>(shares);
+        List<List<Party>> shareParties = new ArrayList<>(shares);
+        long[] unclaimed = new long[shares];
+        long[] unclaimedAccessible = new long[shares];
+        for (int k = 0; k < shares; k++) {
+            shareSlots.add(new ArrayList<>());
+            shareParties.add(new ArrayList<>());
+        }
+        for (int i = 0; i < bySpace.size(); i++) {
+            Slot slot = bySpace.get(i);
+            int k = i % shares;
+            shareSlots.get(k).add(slot);
+            unclaimed[k] += slot.remaining;
+            if (slot.accessible) {
+                unclaimedAccessible[k] += slot.remaining;
+            }
+        }
+        for (Party party : parties) {
+            long[] space = party.needsAccessible ? unclaimedAccessible : unclaimed;
+            int best = 0;
+            for (int k = 1; k < shares; k++) {
+                if (space[k] > space[best]) {
+                    best = k;
+                }
+            }
+            shareParties.get(best).add(party);
+            unclaimed[best] -= party.pilgrimIDs.length;
+            if (party.needsAccessible) {
+                unclaimedAccessible[best] -= party.pilgrimIDs.length;
+            }
+        }
+
+        List<ForkJoinTask<Outcome>> tasks = new ArrayList<>(shares);
+        for (int k = 0; k < shares; k++) {
+            List<Party> mine = shareParties.get(k);
+            List<Slot> theirSlots = shareSlots.get(k);
+            tasks.add(ForkJoinTask.adapt(() -> pack(mine, theirSlots)));
+        }
+        Outcome outcome = new Outcome();
+        List<Party> leftover = new ArrayList<>();
+        for (ForkJoinTask<Outcome> task : ForkJoinTask.invokeAll(tasks)) {
+            Outcome o = task.join();
+            outcome.assignments.addAll(o.assignments);
+            outcome.splitParties += o.splitParties;
+            leftover.addAll(o.leftover);
+        }
+
+        // Space left in one share can still take a party that did not fit in another
+        leftover.sort(PARTY_ORDER);
+        Outcome rest = pack(leftover, slots);
+        outcome.assignments.addAll(rest.assignments);
+        outcome.splitParties += rest.splitParties;
+        outcome.leftover.addAll(rest.leftover);
+        return outcome;
+    }
+
+    /**
+     * Places parties into the given accommodations on the calling thread. No other task may
+     * be packing these accommodations.
+     */
+    private static Outcome pack(List<Party> parties, List<Slot> slots) {
+        Outcome outcome = new Outcome();
+        FreeSpace accessibleSpace = new FreeSpace();
+        FreeSpace otherSpace = new FreeSpace();
+        for (Slot slot : slots) {
+            (slot.accessible ? accessibleSpace : otherSpace).add(slot);
+        }
+
+        for (Party party : parties) {
+            FreeSpace[] allowed = party.needsAccessible
+                    ? new FreeSpace[] { accessibleSpace }
+                    : new FreeSpace[] { otherSpace, accessibleSpace };
+
+            Slot whole = null;
+            for (FreeSpace space : allowed) {
+                whole = space.takeBestFit(party.pilgrimIDs.length);
+                if (whole != null) {
+                    outcome.place(party, 0, party.pilgrimIDs.length, whole);
+                    space.add(whole);
+                    break;
+                }
+            }
+            if (whole != null) {
+                continue;
+            }
+
+            // No single accommodation has room: spread the party over the emptiest ones
+            long free = 0;
+            for (FreeSpace space : allowed) {
+                free += space.total;
+            }
+            if (free < party.pilgrimIDs.length) {
+                outcome.leftover.add(party);
+                continue;
+            }
+            int from = 0;
+            for (FreeSpace space : allowed) {
+                while (from < party.pilgrimIDs.length) {
+                    Slot largest = space.takeLargest();
+                    if (largest == null) {
+                        break;
+                    }
+                    int count = Math.min(largest.remaining, party.pilgrimIDs.length - from);
+                    outcome.place(party, from, from + count, largest);
+                    space.add(largest);
+                    from += count;
+                }
+            }
+            outcome.splitParties++;
+        }
+        return outcome;
+    }
+
+    /**
+     * Pilgrims kept together, with the strictest needs of any member.
+     */
+    private static final class Party {
+        final int[] pilgrimIDs;
+        /** The room type a member needs, or null if any will do */
+        final String roomType;
+        /** The room type offered first when no member needs one, from the party's size */
+        final String preferredRoomType;
+        final boolean needsAccessible;
+
+        Party(List<Request> members) {
+            int[] ids = new int[members.size()];
+            String type = null;
+            boolean access = false;
+            for (int i = 0; i < ids.length; i++) {
+                Request r = members.get(i);
+                ids[i] = r.pilgrimID();
+                if (type == null) {
+                    type = roomTypeKey(r.roomType());
+                }
+                access |= r.needsAccessible();
+            }
+            Arrays.sort(ids);
+            this.pilgrimIDs = ids;
+            this.roomType = type;
+            this.preferredRoomType = roomTypeForSize(ids.length);
+            this.needsAccessible = access;
+        }
+
+        /**
+         * @return The key of the room type that sleeps exactly size pilgrims, or null if none does
+         */
+        private static String roomTypeForSize(int size) {
+            switch (size) {
+                case 2: return "double";
+                case 3: return "triple";
+                case 4: return "quad";
+                default: return null;
+            }
+        }
+    }
+
+    /**
+     * An accommodation and the places still free in it during a run.
+     */
+    private static final class Slot {
+        final Accommodation accommodation;
+        final boolean accessible;
+        int remaining;
+
+        Slot(Accommodation accommodation, int remaining, boolean accessible) {
+            this.accommodation = accommodation;
+            this.remaining = remaining;
+            this.accessible = accessible;
+        }
+    }
+
+    /**
+     * Accommodations with free places, indexed by how many places are free.
+     * A slot is taken out while a party is placed in it and added back afterwards.
+     */
+    private static final class FreeSpace {
+        private final TreeMap<Integer, ArrayDeque<Slot>> byRemaining = new TreeMap<>();
+        long total = 0;
+
+        void add(Slot slot) {
+            if (slot.remaining > 0) {
+                byRemaining.computeIfAbsent(slot.remaining, k -> new ArrayDeque<>()).addLast(slot);
+                total += slot.remaining;
+            }
+        }
+
+        /** @return The slot with the fewest free places that still fits size, or null */
+        Slot takeBestFit(int size) {
+            Map.Entry<Integer, ArrayDeque<Slot>> entry = byRemaining.ceilingEntry(size);
+            return entry == null ? null : take(entry);
+        }
+
+        /** @return The slot with the most free places, or null if there is none */
+        Slot takeLargest() {
+            Map.Entry<Integer, ArrayDeque<Slot>> entry = byRemaining.lastEntry();
+            return entry == null ? null : take(entry);
+        }
+
+        private Slot take(Map.Entry<Integer, ArrayDeque<Slot>> entry) {
+            Slot slot = entry.getValue().pollFirst();
+            if (entry.getValue().isEmpty()) {
+                byRemaining.remove(entry.getKey());
+            }
+            total -= slot.remaining;
+            return slot;
+        }
+    }
+
+    /**
+     * What one packing pass produced.
+     */
+    private static final class Outcome {
+        final List<Assignment> assignments = new ArrayList<>();
+        /** Parties for which there was not enough room, in the order they were tried */
+        final List<Party> leftover = new ArrayList<>();
+        int splitParties = 0;
+
+        void place(Party party, int from, int to, Slot slot) {
+            Accommodation a = slot.accommodation;
+            for (int i = from; i < to; i++) {
+                assignments.add(new Assignment(party.pilgrimIDs[i], a.accommodationID(), a.roomType()));
+            }
+            slot.remaining -= to - from;
+        }
+    }
+}
+
+/**
+ * The DaoBenchmark class measures the repository hot paths: getPilgrimById, getAllPilgrims,
+ * getPilgrimsPage, validateAdmin and the three assignment methods. It runs against freshly
+ * seeded in-memory repositories, so no database server is needed.
+ *
+ * Every operation is run for each table size and thread count. A timed warm-up comes
+ * first so the JIT has compiled the path. The harness then reports throughput, average
+ * time per operation and the bytes allocated per operation, measured per thread through
+ * the JVM's thread allocation counters.
+ *
+ * Operations that change data (the assignments and bookings) run in batches, each against
+ * freshly seeded copies of the repositories they change, and only the batches are timed.
+ * A batch is at most half the free places, so rooms and seats never fill up and every
+ * batch times the same path as the first, and the ticket store never grows past one batch.
+ *
+ * Run it with {@code java -Xmx4g -cp <classes> hajjguide.DaoBenchmark} and tune it with:
+ * {@code hajjguide.bench.sizes} (default 1000,100000,1000000,5000000),
+ * {@code hajjguide.bench.threads} (default 1,4),
+ * {@code hajjguide.bench.warmupMs} (default 2000) and
+ * {@code hajjguide.bench.measureMs} (default 5000).
+ */
+class DaoBenchmark {
+    /** The page size used by the admin listings */
+    private static final int PAGE_SIZE = 50;
+    private static final int SCHEDULE_COUNT = 100;
+    private static final int ACCOMMODATION_COUNT = 50;
+    private static final int PERMIT_COUNT = 20;
+    private static final int ADMIN_ID = 1;
+
+    /** The accommodations are spread around this point, the Masjid al-Haram */
+    private static final double MAKKAH_LATITUDE = 21.4225;
+    private static final double MAKKAH_LONGITUDE = 39.8262;
+    private static final String ADMIN_PASSWORD = "bench";
+    private static final String[] NAMES = { "Ahmed", "Fatima", "Mohammed", "Aisha", "Omar", "Khadija", "Yusuf", "Maryam" };
+    private static final String[] NATIONALITIES = { "SA", "EG", "PK", "ID", "TR", "NG", "MY", "IN" };
+
+    /** Results are folded into this field so the JIT cannot drop the measured calls */
+    static volatile int sink;
+
+    /** The places in each benchmark accommodation */
+    private static final int ROOM_CAPACITY = 200;
+
+    /** The operations run on one copy of the data by the changing benchmarks that have no capacity limit */
+    private static final int BATCH_OPS = 10000;
+
+    /**
+     * One benchmarked call. It is given a per-thread random source for picking IDs.
+     */
+    @FunctionalInterface
+    interface Operation {
+        Object run(ThreadLocalRandom random);
+    }
+
+    /**
+     * One benchmark.
+     *
+     * @param fixture Creates the operation, with fresh copies of any repository it changes
+     * @param batchOps The operations run on one fixture before it is replaced, or 0 if the
+     *        operation changes nothing and one fixture serves the whole run
+     */
+    record Benchmark(Supplier<Operation> fixture, int batchOps) {
+        static Benchmark readOnly(Operation operation) {
+            return new Benchmark(() -> operation, 0);
+        }
+    }
+
+    /**
+     * Runs every benchmark and prints one line per operation, table size and thread count.
+     *
+     * @param args Command line arguments (not used)
+     */
+    public static void main(String[] args) throws InterruptedException {
+        int[] sizes = parseList(System.getProperty("hajjguide.bench.sizes", "1000,100000,1000000,5000000"));
+        int[] threadCounts = parseList(System.getProperty("hajjguide.bench.threads", "1,4"));
+        long warmupMs = Long.getLong("hajjguide.bench.warmupMs", 2000L);
+        long measureMs = Long.getLong("hajjguide.bench.measureMs", 5000L);
+
+        System.out.println(String.format("%-30s %9s %7s %14s %14s %12s %10s",
+                "Benchmark", "Size", "Threads", "ops/s", "ns/op", "B/op", "MB/s"));
+        for (int size : sizes) {
+            InMemoryPilgrimRepository pilgrims = new InMemoryPilgrimRepository();
+            InMemoryAdminRepository admins = new InMemoryAdminRepository();
+            seed(size, pilgrims, admins);
+            InMemoryTransportScheduleRepository schedules = newSchedules(pilgrims);
+            InMemoryAccommodationRepository accommodations = newAccommodations(pilgrims);
+
+            Map<String, Benchmark> benchmarks = new LinkedHashMap<>();
+            benchmarks.put("getPilgrimById", Benchmark.readOnly(r -> pilgrims.getPilgrimById(1 + r.nextInt(size))));
+            benchmarks.put("getPilgrimsPage", Benchmark.readOnly(r -> pilgrims.getPilgrimsPage(r.nextInt(size), PAGE_SIZE, null)));
+            benchmarks.put("getAllPilgrims", Benchmark.readOnly(r -> pilgrims.getAllPilgrims()));
+            benchmarks.put("validateAdmin", Benchmark.readOnly(r -> admins.validateAdmin(ADMIN_ID, ADMIN_PASSWORD)));
+            benchmarks.put("assignPilgrimToTransport", new Benchmark(() -> {
+                InMemoryTransportScheduleRepository fresh = newSchedules(pilgrims);
+                return r -> fresh.assignPilgrimToTransport(1 + r.nextInt(size), 1 + r.nextInt(SCHEDULE_COUNT));
+            }, SCHEDULE_COUNT * SeatInventory.DEFAULT_CAPACITY / 2));
+            benchmarks.put("bookAndCancelTicket", new Benchmark(() -> {
+                InMemoryTransportScheduleRepository fresh = newSchedules(pilgrims);
+                return r -> {
+                    // Every thread books on the same departure, the worst case for seat contention
+                    Ticket ticket = fresh.bookTicket(1 + r.nextInt(size), 1);
+                    return ticket != null && fresh.cancelTicket(ticket.ticketNumber(), ticket.pilgrimID());
+                };
+            }, BATCH_OPS));
+            benchmarks.put("assignPilgrimToAccommodation", new Benchmark(() -> {
+                InMemoryAccommodationRepository fresh = newAccommodations(pilgrims);
+                return r -> fresh.assignPilgrimToAccommodation(1 + r.nextInt(size), 1 + r.nextInt(ACCOMMODATION_COUNT));
+            }, ACCOMMODATION_COUNT * ROOM_CAPACITY / 2));
+            benchmarks.put("assignPermitToPilgrim", new Benchmark(() -> {
+                InMemoryPermitRepository fresh = newPermits(pilgrims);
+                return r -> fresh.assignPermitToPilgrim(1 + r.nextInt(size), 1 + r.nextInt(PERMIT_COUNT));
+            }, BATCH_OPS));
+            benchmarks.put("planJourney", Benchmark.readOnly(
+                    r -> schedules.planJourney("Mina", "Arafat", r.nextInt(JourneyPlanner.SECONDS_PER_DAY))));
+            benchmarks.put("findNearestAccommodations", Benchmark.readOnly(r -> accommodations.findNearestAccommodations(
+                    MAKKAH_LATITUDE + (r.nextDouble() - 0.5) * 0.05, MAKKAH_LONGITUDE + (r.nextDouble() - 0.5) * 0.05, 5)));
+
+            for (Map.Entry<String, Benchmark> entry : benchmarks.entrySet()) {
+                for (int threads : threadCounts) {
+                    measure(entry.getValue(), threads, warmupMs);
+                    Result result = measure(entry.getValue(), threads, measureMs);
+                    System.out.println(String.format("%-30s %9d %7d %14.0f %14.1f %12.1f %10.1f",
+                            entry.getKey(), size, threads, result.opsPerSecond(), result.nanosPerOp(),
+                            result.bytesPerOp(), result.megabytesPerSecond()));
+                }
+            }
+        }
+    }
+
+    /**
+     * Fills the repositories with {@code size} pilgrims (IDs 1 to size) and one administrator.
+     */
+    private static void seed(int size, InMemoryPilgrimRepository pilgrims, InMemoryAdminRepository admins) {
+        List<Pilgrim> batch = new ArrayList<>(10000);
+        for (int id = 1; id <= size; id++) {
+            batch.add(new Pilgrim(id, NAMES[id % NAMES.length], "0500000000",
+                    NATIONALITIES[id % NATIONALITIES.length], "", "", 18 + id % 70));
+            if (batch.size() == 10000 || id == size) {
+                pilgrims.createPilgrims(batch);
+                batch.clear();
+            }
+        }
+        admins.addAdmin(new Admin(ADMIN_ID, "Benchmark", "", ""), ADMIN_PASSWORD);
+    }
+
+    /**
+     * @return A schedule repository with the fixed set of schedules and no bookings
+     */
+    private static InMemoryTransportScheduleRepository newSchedules(InMemoryPilgrimRepository pilgrims) {
+        InMemoryTransportScheduleRepository schedules = new InMemoryTransportScheduleRepository(pilgrims);
+        for (int id = 1; id <= SCHEDULE_COUNT; id++) {
+            schedules.createTransportSchedule(new TransportSchedule(id, "08:00", "09:00", "Mina - Arafat", "Bus", ADMIN_ID));
+        }
+        return schedules;
+    }
+
+    /**
+     * @return An accommodation repository with the fixed set of accommodations, all empty
+     */
+    private static InMemoryAccommodationRepository newAccommodations(InMemoryPilgrimRepository pilgrims) {
+        InMemoryAccommodationRepository accommodations = new InMemoryAccommodationRepository(pilgrims);
+        for (int id = 1; id <= ACCOMMODATION_COUNT; id++) {
+            accommodations.createAccommodation(new Accommodation(id, "Hotel " + id, "Double", ROOM_CAPACITY, "Makkah",
+                    ADMIN_ID, MAKKAH_LATITUDE + (id % 10 - 5) * 0.004, MAKKAH_LONGITUDE + (id / 10 - 2) * 0.004));
+        }
+        return accommodations;
+    }
+
+    /**
+     * @return A permit repository with the fixed set of permits and no assignments
+     */
+    private static InMemoryPermitRepository newPermits(InMemoryPilgrimRepository pilgrims) {
+        InMemoryPermitRepository permits = new InMemoryPermitRepository(pilgrims);
+        for (int id = 1; id <= PERMIT_COUNT; id++) {
+            permits.createPermit(new Permit(id, "Permit " + id, "Mina", "Camp"));
+        }
+        return permits;
+    }
+
+    /**
+     * Measures a benchmark for about a given time. A read-only benchmark runs once for the
+     * whole time; one that changes data runs batch after batch, each on a new fixture,
+     * until the batches add up to the time. Creating the fixtures is not timed.
+     *
+     * @param benchmark The benchmark to measure
+     * @param threads The number of threads calling it
+     * @param durationMs How long to run for
+     * @return The measured result, summed over the batches
+     */
+    static Result measure(Benchmark benchmark, int threads, long durationMs) throws InterruptedException {
+        if (benchmark.batchOps() == 0) {
+            return run(benchmark.fixture().get(), threads, durationMs, Long.MAX_VALUE);
+        }
+        long opsPerThread = Math.max(1, benchmark.batchOps() / threads);
+        long operations = 0;
+        long elapsed = 0;
+        long allocated = 0;
+        while (elapsed < durationMs * 1000000L) {
+            long remainingMs = Math.max(1, durationMs - elapsed / 1000000L);
+            Result batch = run(benchmark.fixture().get(), threads, remainingMs, opsPerThread);
+            operations += batch.operations();
+            elapsed += batch.elapsedNanos();
+            allocated = allocated < 0 || batch.allocatedBytes() < 0 ? -1 : allocated + batch.allocatedBytes();
+        }
+        return new Result(operations, threads, elapsed, allocated);
+    }
+
+    /**
+     * Runs an operation on several threads until each thread has made a given number of
+     * calls or a fixed time has passed, whichever comes first.
+     *
+     * @param operation The operation to run
+     * @param threads The number of threads calling it
+     * @param durationMs The longest to run for
+     * @param opsPerThread The calls each thread makes at most
+     * @return The measured result
+     */
+    static Result run(Operation operation, int threads, long durationMs, long opsPerThread) throws InterruptedException {
+        com.sun.management.ThreadMXBean mx = allocationCounter();
+        AtomicBoolean running = new AtomicBoolean(true);
+        LongAdder operations = new LongAdder();
+        LongAdder allocated = new LongAdder();
+        CountDownLatch ready = new CountDownLatch(threads);
+        CountDownLatch start = new CountDownLatch(1);
+        Thread[] workers = new Thread[threads];
+
+        for (int i = 0; i < threads; i++) {
+            workers[i] = new Thread(() -> {
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                ready.countDown();
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                long bytesBefore = mx != null ? mx.getCurrentThreadAllocatedBytes() : 0;
+                long count = 0;
+                int folded = 0;
+                while (count < opsPerThread && running.get()) {
+                    Object result = operation.run(random);
+                    folded += result != null ? 1 : 0;
+                    count++;
+                }
+                sink += folded;
+                operations.add(count);
+                if (mx != null) {
+                    allocated.add(mx.getCurrentThreadAllocatedBytes() - bytesBefore);
+                }
+            }, "hajjguide-bench-" + i);
+            workers[i].start();
+        }
+
+        ready.await();
+        long startedAt = System.nanoTime();
+        long deadline = startedAt + durationMs * 1000000L;
+        start.countDown();
+        for (Thread worker : workers) {
+            long leftMs = (deadline - System.nanoTime()) / 1000000L;
+            if (leftMs > 0) {
+                worker.join(leftMs);
+            }
+        }
+        running.set(false);
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        long elapsed = System.nanoTime() - startedAt;
+        return new Result(operations.sum(), threads, elapsed, mx != null ? allocated.sum() : -1);
+    }
+
+    /**
+     * @return The JVM's per-thread allocation counter, or null if this JVM does not provide one
+     */
+    private static com.sun.management.ThreadMXBean allocationCounter() {
+        java.lang.management.ThreadMXBean bean = java.lang.management.ManagementFactory.getThreadMXBean();
+        if (bean instanceof com.sun.management.ThreadMXBean) {
+            com.sun.management.ThreadMXBean mx = (com.sun.management.ThreadMXBean) bean;
+            if (mx.isThreadAllocatedMemorySupported()) {
+                mx.setThreadAllocatedMemoryEnabled(true);
+                return mx;
+            }
+        }
+        return null;
+    }
+
+    private static int[] parseList(String value) {
+        return Arrays.stream(value.split(",")).map(String::trim).filter(v -> !v.isEmpty())
+                .mapToInt(Integer::parseInt).toArray();
+    }
+
+    /**
+     * The outcome of one measured run.
+     *
+     * @param operations The number of completed operations across all threads
+     * @param threads The number of threads
+     * @param elapsedNanos The wall-clock length of the run
+     * @param allocatedBytes The bytes allocated by the worker threads, or -1 if unknown
+     */
+    record Result(long operations, int threads, long elapsedNanos, long allocatedBytes) {
+        double opsPerSecond() {
+            return operations * 1e9 / elapsedNanos;
+        }
+
+        double nanosPerOp() {
+            return operations == 0 ? 0 : (double) elapsedNanos * threads / operations;
+        }
+
+        double bytesPerOp() {
+            return operations == 0 || allocatedBytes < 0 ? -1 : (double) allocatedBytes / operations;
+        }
+
+        double megabytesPerSecond() {
+            return allocatedBytes < 0 ? -1 : allocatedBytes * 1e9 / elapsedNanos / (1024 * 1024);
+        }
+    }
+}
+
+/**
+ * The DatasetGenerator class fills the database, or a set of CSV files, with a large
+ * synthetic dataset, so performance tests run against realistic volumes instead of the
+ * ten seed rows of each table. It is run on its own, like {@link DaoBenchmark}, and is
+ * configured with {@code hajjguide.gen.*} system properties:
+ *
+ * <ul>
+ * <li>{@code seed} - the random seed (default 42); the same seed always gives the same data</li>
+ * <li>{@code pilgrims} - the number of pilgrims (default 1,000,000)</li>
+ * <li>{@code output} - {@code csv:<directory>} (default {@code csv:generated}) or {@code db}</li>
+ * <li>{@code threads} - the number of generating threads (default one per processor)</li>
+ * <li>{@code batchSize} - the rows per JDBC batch and commit (default {@code hajjguide.batch.size})</li>
+ * <li>{@code firstId} - the first ID given to each generated table (default 1)</li>
+ * <li>{@code schedules}, {@code accommodations}, {@code permits}, {@code admins} - the sizes
+ * of the reference tables (defaults 2000, 500, 100 and 10)</li>
+ * </ul>
+ *
+ * Every pilgrim draws all of its rows (profile, allergies, accommodation, transport and
+ * feedback) from random sources of its own, seeded from the run's seed and its ID. The data
+ * therefore does not depend on the number of threads or the order the work runs in. The
+ * pilgrims are generated in fixed chunks of IDs on a thread pool. Database chunks are
+ * inserted in parallel, each over its own connection. CSV chunks are appended to the files
+ * in ID order, so the files are byte-for-byte reproducible too.
+ *
+ * The distributions are skewed the way the real intake is: a few nationalities make up most
+ * pilgrims, ages lean towards the late fifties, special needs and medication become more
+ * common with age, and the hotels nearest the Haram and the busiest departures are chosen
+ * far more often than the rest. Administrators are not generated; the rows refer to
+ * AdminIDs 1 to {@code admins}, which must already exist.
+ *
+ * Accommodation and transport choices come from a separate random source, so before any
+ * row is written a first pass counts the pilgrims placed in each accommodation and on each
+ * schedule. Accommodation capacities and each schedule's SeatInventory row are sized from
+ * those counts with room to spare, so no accommodation or departure is overbooked and new
+ * bookings still find seats.
+ */
+class DatasetGenerator {
+    /** The pilgrims generated and written as one unit of work */
+    private static final int CHUNK_SIZE = 10000;
+
+    /** Feedback IDs are numbered in a block of this size per pilgrim, so they do not depend on other pilgrims */
+    private static final int MAX_FEEDBACK_PER_PILGRIM = 4;
+
+    /** The least spare room left in each accommodation and on each schedule */
+    private static final int MIN_SPARE = 10;
+
+    /** Written for NULL in CSV files, as MySQL's LOAD DATA reads it */
+    private static final String CSV_NULL = "\\N";
+
+    private static final double MAKKAH_LATITUDE = 21.4225;
+    private static final double MAKKAH_LONGITUDE = 39.8262;
+    private static final double GOLDEN_ANGLE = Math.PI * (3 - Math.sqrt(5));
+    private static final LocalDate FIRST_FEEDBACK_DATE = LocalDate.of(2026, 5, 20);
+
+    /**
+     * The generated tables, parents before children. The columns are those written by the DAOs.
+     */
+    enum Table {
+        PERMIT("Permit", "PermitID", "Name", "location", "serviceType", "Latitude", "Longitude"),
+        ACCOMMODATION("Accommodation", "AccommodationID", "HotelName", "roomType", "capacity", "address", "AdminID",
+                "Latitude", "Longitude"),
+        TRANSPORT_SCHEDULE("TransportSchedule", "ScheduleID", "departureTime", "arrivalTime", "route",
+                "TransportType", "AdminID"),
+        SEAT_INVENTORY("SeatInventory", "ScheduleID", "Capacity", "Leased"),
+        PILGRIM("Pilgrim", "PilgrimID", "PilgrimName", "Phone", "Nationality", "specialNeed", "allergies", "pilgrimAge"),
+        MEDICAL_PROFILE("MedicalProfile", "ProfileID", "bloodType", "medications", "Medical_History", "PilgrimID", "AdminID"),
+        PILGRIM_ALLERGY("PilgrimAllergy", "PilgrimID", "Allergy"),
+        PILGRIM_ACCOMMODATION("PilgrimAccommodation", "PilgrimID", "AccommodationID", "RoomType"),
+        PILGRIM_TRANSPORT("PilgrimTransport", "PilgrimID", "ScheduleID"),
+        FEEDBACK("Feedback", "FeedbackID", "PilgrimID", "Content", "Rating", "Date");
+
+        final String tableName;
+        final String[] columns;
+
+        Table(String tableName, String... columns) {
+            this.tableName = tableName;
+            this.columns = columns;
+        }
+
+        String insertSql() {
+            return "INSERT INTO " + tableName + " (" + String.join(", ", columns) + ") VALUES ("
+                    + String.join(", ", Collections.nCopies(columns.length, "?")) + ")";
+        }
+    }
+
+    /**
+     * Receives generated rows. Values are Integer, Double, String or null.
+     *
+     * @param <E> The exception thrown when a row cannot be taken
+     */
+    interface RowSink<E extends Exception> {
+        void row(Table table, Object... values) throws E;
+    }
+
+    /**
+     * A list of values picked at random with fixed relative weights.
+     */
+    private static final class Weighted {
+        private final String[] values;
+        private final double[] cumulative;
+
+        /**
+         * @param pairs Alternating values and weights, such as {@code "SA", 8, "EG", 5}
+         */
+        Weighted(Object... pairs) {
+            values = new String[pairs.length / 2];
+            cumulative = new double[values.length];
+            double total = 0;
+            for (int i = 0; i < values.length; i++) {
+                values[i] = (String) pairs[2 * i];
+                total += ((Number) pairs[2 * i + 1]).doubleValue();
+                cumulative[i] = total;
+            }
+            for (int i = 0; i < values.length; i++) {
+                cumulative[i] /= total;
+            }
+        }
+
+        String pick(SplittableRandom random) {
+            double u = random.nextDouble();
+            for (int i = 0; i < cumulative.length - 1; i++) {
+                if (u < cumulative[i]) {
+                    return values[i];
+                }
+            }
+            return values[values.length - 1];
+        }
+    }
+
+    private static final Weighted NATIONALITIES = new Weighted(
+            "ID", 13, "PK", 11, "IN", 10, "BD", 7, "SA", 8, "EG", 6, "NG", 5, "IR", 5, "TR", 5, "DZ", 3,
+            "MA", 2.5, "MY", 2.5, "SD", 2, "IQ", 2, "AF", 1.5, "GB", 1, "US", 1, "FR", 0.5);
+    private static final String[] MALE_NAMES = { "Mohammed", "Ahmed", "Ali", "Omar", "Yusuf", "Ibrahim", "Hassan",
+            "Abdullah", "Khalid", "Mustafa", "Bilal", "Hamza", "Salim", "Tariq", "Faisal", "Imran" };
+    private static final String[] FEMALE_NAMES = { "Fatima", "Aisha", "Maryam", "Khadija", "Zainab", "Amina", "Huda",
+            "Layla", "Noura", "Sara", "Rania", "Maha", "Safiya", "Hafsa", "Asma", "Salma" };
+    private static final String[] FAMILY_NAMES = { "Khan", "Hassan", "Rahman", "Hussain", "Saleh", "Abdullah",
+            "Siddiqui", "Yilmaz", "Nasution", "Okafor", "Haddad", "Farouk", "Chowdhury", "Hosseini", "Benali",
+            "Mansour", "Qureshi", "Sulaiman", "Talal", "Jaber" };
+    private static final Weighted SPECIAL_NEEDS = new Weighted(
+            "Wheelchair", 40, "Walker", 12, "Crutches", 8, "Vision impairment", 14, "Hearing aid", 12,
+            "Dialysis", 4, "Diabetic diet", 10);
+    private static final Weighted BLOOD_TYPES = new Weighted(
+            "O+", 38, "A+", 27, "B+", 22, "AB+", 5, "O-", 3, "A-", 3, "B-", 1.5, "AB-", 0.5);
+    private static final Weighted MEDICATIONS = new Weighted(
+            "Metformin", 20, "Insulin", 8, "Amlodipine", 15, "Aspirin", 12, "Atorvastatin", 12, "Panadol", 15,
+            "Salbutamol", 6, "Levothyroxine", 5, "Vitamin D", 7);
+    private static final Weighted HISTORIES = new Weighted(
+            "Diabetes", 25, "High BP", 25, "Heart Issue", 10, "Asthma", 10, "Kidney disease", 5, "Arthritis", 12,
+            "Migraines", 6, "Bronchitis", 7);
+    private static final Weighted ALLERGIES = new Weighted(
+            "Penicillin", 25, "Peanuts", 15, "Lactose", 15, "Dust", 12, "Pollen", 10, "Shellfish", 8, "Eggs", 6,
+            "Aspirin", 5, "Sulfa", 3, "Latex", 1);
+    private static final Weighted ROOM_TYPES = new Weighted(
+            "Quad", 35, "Triple", 25, "Double", 25, "Single", 5, "Suite", 3, "Accessible Double", 7);
+    private static final Weighted SERVICE_TYPES = new Weighted(
+            "Religious", 30, "Health", 25, "Transport", 20, "Food", 15, "Security", 10);
+    private static final Weighted TRANSPORT_TYPES = new Weighted("Bus", 75, "Train", 15, "Shuttle", 10);
+    private static final String[] FEEDBACK_TEXTS = { "Excellent organisation", "Very helpful staff",
+            "Bus was late", "Room was crowded", "Food could be better", "Smooth transport to Arafat",
+            "Clinic staff were kind", "Long queues at the camp" };
+
+    /** The holy sites with their coordinates, used for permits and routes */
+    private static final String[] SITES = { "Makkah", "Mina", "Arafat", "Muzdalifah", "Jeddah Airport", "Madinah" };
+    private static final double[][] SITE_COORDINATES = { { 21.4225, 39.8262 }, { 21.4133, 39.8933 },
+            { 21.3549, 39.9841 }, { 21.3950, 39.9380 }, { 21.6796, 39.1565 }, { 24.4672, 39.6111 } };
+    /** The trip time between each pair of sites, in minutes */
+    private static final int[][] TRIP_MINUTES = {
+            { 0, 20, 45, 30, 75, 330 }, { 20, 0, 30, 15, 90, 345 }, { 45, 30, 0, 20, 110, 360 },
+            { 30, 15, 20, 0, 100, 350 }, { 75, 90, 110, 100, 0, 270 }, { 330, 345, 360, 350, 270, 0 } };
+
+    private final long seed;
+    private final int pilgrims;
+    private final int firstId;
+    private final int scheduleCount;
+    private final int accommodationCount;
+    private final int permitCount;
+    private final int adminCount;
+    private final LongAdder[] written = new LongAdder[Table.values().length];
+    private Loads loads = null;
+
+    /**
+     * Where one pilgrim stays and travels, as indexes into the generated accommodations
+     * and schedules.
+     */
+    private record Placement(int accommodation, int[] schedules) {
+    }
+
+    /**
+     * The room type of every generated accommodation and the number of pilgrims placed in
+     * each accommodation and on each schedule.
+     */
+    private record Loads(String[] roomTypes, int[] accommodations, int[] schedules) {
+    }
+
+    DatasetGenerator(long seed, int pilgrims, int firstId, int scheduleCount, int accommodationCount,
+            int permitCount, int adminCount) {
+        if (pilgrims < 0 || firstId < 1 || scheduleCount < 3 || accommodationCount < 1 || permitCount < 1 || adminCount < 1) {
+            throw new IllegalArgumentException("Invalid dataset size");
+        }
+        this.seed = seed;
+        this.pilgrims = pilgrims;
+        this.firstId = firstId;
+        this.scheduleCount = scheduleCount;
+        this.accommodationCount = accommodationCount;
+        this.permitCount = permitCount;
+        this.adminCount = adminCount;
+        for (int i = 0; i < written.length; i++) {
+            written[i] = new LongAdder();
+        }
+    }
+
+    /**
+     * Generates the dataset described by the {@code hajjguide.gen.*} system properties.
+     *
+     * @param args Command line arguments (not used)
+     */
+    public static void main(String[] args) throws Exception {
+        DatasetGenerator generator = new DatasetGenerator(
+                Long.getLong("hajjguide.gen.seed", 42L),
+                Integer.getInteger("hajjguide.gen.pilgrims", 1000000),
+                Integer.getInteger("hajjguide.gen.firstId", 1),
+                Integer.getInteger("hajjguide.gen.schedules", 2000),
+                Integer.getInteger("hajjguide.gen.accommodations", 500),
+                Integer.getInteger("hajjguide.gen.permits", 100),
+                Integer.getInteger("hajjguide.gen.admins", 10));
+        String output = System.getProperty("hajjguide.gen.output", "csv:generated");
+        int threads = Integer.getInteger("hajjguide.gen.threads", Runtime.getRuntime().availableProcessors());
+        int batchSize = Integer.getInteger("hajjguide.gen.batchSize", PilgrimDAO.DEFAULT_BATCH_SIZE);
+
+        long started = System.nanoTime();
+        if (output.equals("db")) {
+            generator.writeToDatabase(threads, batchSize);
+        } else if (output.startsWith("csv:")) {
+            generator.writeCsv(Paths.get(output.substring(4)), threads);
+        } else {
+            throw new IllegalArgumentException("hajjguide.gen.output must be csv:<directory> or db: " + output);
+        }
+        double seconds = (System.nanoTime() - started) / 1e9;
+        System.out.println(generator.getStats());
+        System.out.println(String.format("Generated %d rows in %.1f s (%.0f rows/s)",
+                generator.totalRows(), seconds, generator.totalRows() / seconds));
+    }
+
+    /**
+     * Writes one CSV file per table, with a header line, into a directory. Existing files are
+     * replaced. The files can be loaded with {@code LOAD DATA INFILE ... IGNORE 1 LINES}.
+     *
+     * @param directory The directory to write to; it is created if needed
+     * @param threads The number of generating threads
+     */
+    void writeCsv(Path directory, int threads) throws IOException, InterruptedException {
+        Files.createDirectories(directory);
+        Table[] tables = Table.values();
+        BufferedWriter[] writers = new BufferedWriter[tables.length];
+        try {
+            for (Table table : tables) {
+                BufferedWriter writer = Files.newBufferedWriter(directory.resolve(table.tableName + ".csv"),
+                        StandardCharsets.UTF_8);
+                writers[table.ordinal()] = writer;
+                writer.write(String.join(",", table.columns));
+                writer.write('\n');
+            }
+            CsvChunk reference = new CsvChunk();
+            generateReferenceData(reference);
+            reference.writeTo(writers);
+
+            // Chunks finish in any order but are appended in ID order
+            Map<Integer, CsvChunk> finished = new HashMap<>();
+            int[] nextToWrite = { 0 };
+            runChunks(threads, (chunk, from, to) -> {
+                CsvChunk rows = new CsvChunk();
+                generatePilgrims(from, to, rows);
+                synchronized (finished) {
+                    finished.put(chunk, rows);
+                    CsvChunk next;
+                    while ((next = finished.remove(nextToWrite[0])) != null) {
+                        next.writeTo(writers);
+                        nextToWrite[0]++;
+                    }
+                }
+            });
+        } finally {
+            for (BufferedWriter writer : writers) {
+                if (writer != null) {
+                    writer.close();
+                }
+            }
+        }
+    }
+
+    /**
+     * Inserts the dataset with batched statements. The reference tables are written first;
+     * the pilgrims then follow in parallel, one connection per thread, committing every
+     * {@code batchSize} pilgrims. Finally the ID sequences are moved past the generated IDs.
+     *
+     * @param threads The number of inserting threads
+     * @param batchSize The number of pilgrims whose rows are sent and committed together
+     */
+    void writeToDatabase(int threads, int batchSize) throws SQLException, IOException, InterruptedException {
+        if (batchSize < 1) {
+            throw new IllegalArgumentException("Batch size must be positive: " + batchSize);
+        }
+        try (DbChunk reference = new DbChunk(batchSize)) {
+            generateReferenceData(reference);
+        }
+        runChunks(threads, (chunk, from, to) -> {
+            try (DbChunk rows = new DbChunk(batchSize)) {
+                for (int start = from; start < to; start += batchSize) {
+                    generatePilgrims(start, Math.min(to, start + batchSize), rows);
+                    rows.flush();
+                }
+            }
+        });
+        advanceSequences();
+    }
+
+    /**
+     * One chunk of pilgrims to generate and write.
+     */
+    @FunctionalInterface
+    private interface ChunkTask {
+        void run(int chunk, int fromId, int toId) throws IOException, SQLException;
+    }
+
+    /**
+     * Runs a task over every chunk of pilgrim IDs on a thread pool. At most two chunks per
+     * thread are queued or waiting to be written, which bounds the memory used.
+     * The first failure stops the run and is rethrown.
+     */
+    private void runChunks(int threads, ChunkTask task) throws IOException, InterruptedException {
+        int chunks = (int) ((pilgrims + (long) CHUNK_SIZE - 1) / CHUNK_SIZE);
+        ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, threads), r -> {
+            Thread t = new Thread(r, "hajjguide-generator");
+            t.setDaemon(true);
+            return t;
+        });
+        Semaphore inFlight = new Semaphore(2 * Math.max(1, threads));
+        List<Exception> failures = Collections.synchronizedList(new ArrayList<>());
+        CountDownLatch done = new CountDownLatch(chunks);
+        long started = System.nanoTime();
+        try {
+            for (int chunk = 0; chunk < chunks && failures.isEmpty(); chunk++) {
+                inFlight.acquire();
+                int c = chunk;
+                int from = firstId + chunk * CHUNK_SIZE;
+                int to = firstId + (int) Math.min(pilgrims, (long) (chunk + 1) * CHUNK_SIZE);
+                executor.execute(() -> {
+                    try {
+                        if (failures.isEmpty()) {
+                            task.run(c, from, to);
+                            if ((c + 1) % 50 == 0) {
+                                System.out.println(String.format("%,d of %,d pilgrims (%.0f rows/s)", to - firstId,
+                                        pilgrims, totalRows() * 1e9 / (System.nanoTime() - started)));
+                            }
+                        }
+                    } catch (Exception e) {
+                        failures.add(e);
+                    } finally {
+                        inFlight.release();
+                        done.countDown();
+                    }
+                });
+            }
+            if (failures.isEmpty()) {
+                done.await();
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        if (!failures.isEmpty()) {
+            Exception first = failures.get(0);
+            if (first instanceof IOException) {
+                throw (IOException) first;
+            }
+            throw new IOException("Dataset generation failed: " + first.getMessage(), first);
+        }
+    }
+
+    /**
+     * Generates the permits, accommodations and transport schedules, and the seat inventory
+     * of each schedule.
+     */
+    <E extends Exception> void generateReferenceData(RowSink<E> sink) throws E {
+        Loads loads = loads();
+        for (int i = 0; i < permitCount; i++) {
+            SplittableRandom random = randomFor(1, i);
+            int site = i % 4 == 3 ? random.nextInt(SITES.length) : i % 4;
+            sink.row(Table.PERMIT, firstId + i, "Permit " + (i + 1), SITES[site], SERVICE_TYPES.pick(random),
+                    SITE_COORDINATES[site][0] + (random.nextDouble() - 0.5) * 0.01,
+                    SITE_COORDINATES[site][1] + (random.nextDouble() - 0.5) * 0.01);
+        }
+        for (int i = 0; i < accommodationCount; i++) {
+            SplittableRandom random = randomFor(2, i);
+            // Spiral out from the Haram, so the lowest IDs are the nearest and most popular
+            double radius = 0.002 + 0.03 * Math.sqrt((double) i / accommodationCount);
+            double angle = i * GOLDEN_ANGLE;
+            int capacity = Math.max(50 + 10 * random.nextInt(76), withSpare(loads.accommodations()[i]));
+            sink.row(Table.ACCOMMODATION, firstId + i, "Hotel " + (i + 1), loads.roomTypes()[i],
+                    capacity, (1 + random.nextInt(300)) + " Ibrahim Al Khalil Street, Makkah",
+                    adminFor(random), MAKKAH_LATITUDE + radius * Math.sin(angle), MAKKAH_LONGITUDE + radius * Math.cos(angle));
+        }
+        for (int i = 0; i < scheduleCount; i++) {
+            SplittableRandom random = randomFor(3, i);
+            // Most trips run between the sites around Makkah; a few go to the airport or Madinah
+            int from = random.nextInt(10) < 9 ? random.nextInt(4) : 4 + random.nextInt(2);
+            int to = random.nextInt(10) < 9 ? random.nextInt(4) : 4 + random.nextInt(2);
+            if (to == from) {
+                to = (from + 1) % 4;
+            }
+            String type = TRANSPORT_TYPES.pick(random);
+            // Departures bunch in the early morning and after sunset
+            int hour = random.nextInt(3) == 0 ? random.nextInt(24) : (random.nextBoolean() ? 4 + random.nextInt(5) : 17 + random.nextInt(5));
+            int departure = hour * 3600 + 300 * random.nextInt(12);
+            int minutes = TRIP_MINUTES[from][to] * (type.equals("Train") ? 2 : 3) / 3 + random.nextInt(15);
+            int arrival = (departure + minutes * 60) % JourneyPlanner.SECONDS_PER_DAY;
+            sink.row(Table.TRANSPORT_SCHEDULE, firstId + i, JourneyPlanner.formatTime(departure),
+                    JourneyPlanner.formatTime(arrival), SITES[from] + " - " + SITES[to], type, adminFor(random));
+        }
+        // The seats of the generated pilgrims count as sold
+        for (int i = 0; i < scheduleCount; i++) {
+            int taken = loads.schedules()[i];
+            sink.row(Table.SEAT_INVENTORY, firstId + i, Math.max(SeatInventory.DEFAULT_CAPACITY, withSpare(taken)), taken);
+        }
+    }
+
+    /**
+     * Counts the pilgrims placed in each accommodation and on each schedule, once per generator.
+     */
+    private synchronized Loads loads() {
+        if (loads == null) {
+            String[] roomTypes = new String[accommodationCount];
+            for (int i = 0; i < accommodationCount; i++) {
+                roomTypes[i] = ROOM_TYPES.pick(randomFor(5, i));
+            }
+            int[] accommodations = new int[accommodationCount];
+            int[] schedules = new int[scheduleCount];
+            for (int index = 0; index < pilgrims; index++) {
+                Placement placement = placementFor(index);
+                accommodations[placement.accommodation()]++;
+                for (int schedule : placement.schedules()) {
+                    schedules[schedule]++;
+                }
+            }
+            loads = new Loads(roomTypes, accommodations, schedules);
+        }
+        return loads;
+    }
+
+    /**
+     * Picks a pilgrim's accommodation and one to three distinct schedules.
+     *
+     * @param index The pilgrim's position in the generated range, from 0
+     */
+    private Placement placementFor(int index) {
+        SplittableRandom random = randomFor(4, index);
+        int accommodation = skewedIndex(random, accommodationCount, 2.5);
+        int trips = 1 + (random.nextInt(4) == 0 ? 1 + random.nextInt(2) : 0);
+        int[] schedules = new int[trips];
+        for (int t = 0; t < trips; t++) {
+            int schedule;
+            do {
+                schedule = skewedIndex(random, scheduleCount, 1.5);
+            } while (contains(schedules, t, schedule));
+            schedules[t] = schedule;
+        }
+        return new Placement(accommodation, schedules);
+    }
+
+    /**
+     * @return The capacity for a given number of pilgrims, with a tenth more, and at least {@link #MIN_SPARE} more, to spare
+     */
+    private static int withSpare(int load) {
+        return load + Math.max(MIN_SPARE, load / 10);
+    }
+
+    /**
+     * Generates pilgrims with IDs from (inclusive) and to (exclusive), and all their rows.
+     */
+    <E extends Exception> void generatePilgrims(int fromId, int toId, RowSink<E> sink) throws E {
+        String[] roomTypes = loads().roomTypes();
+        for (int id = fromId; id < toId; id++) {
+            SplittableRandom random = randomFor(0, id - firstId);
+            boolean male = random.nextInt(100) < 55;
+            String[] given = male ? MALE_NAMES : FEMALE_NAMES;
+            String name = given[random.nextInt(given.length)] + " " + FAMILY_NAMES[random.nextInt(FAMILY_NAMES.length)];
+            String phone = String.format("05%08d", random.nextInt(100000000));
+            String nationality = NATIONALITIES.pick(random);
+
+            // Most pilgrims are middle-aged, with a long tail of elderly ones
+            int age = random.nextInt(10) == 0 ? 65 + random.nextInt(26)
+                    : (int) Math.round(Math.max(18, Math.min(90, 52 + 13 * random.nextGaussian())));
+            double ageFactor = Math.max(0, age - 50) / 40.0;
+            String specialNeed = random.nextDouble() < 0.03 + 0.30 * ageFactor ? SPECIAL_NEEDS.pick(random) : null;
+
+            List<String> allergies = new ArrayList<>(3);
+            double a = random.nextDouble();
+            int allergyCount = a < 0.80 ? 0 : a < 0.95 ? 1 : a < 0.99 ? 2 : 3;
+            while (allergies.size() < allergyCount) {
+                String allergy = ALLERGIES.pick(random);
+                if (!allergies.contains(allergy)) {
+                    allergies.add(allergy);
+                }
+            }
+
+            sink.row(Table.PILGRIM, id, name, phone, nationality, specialNeed,
+                    allergies.isEmpty() ? null : String.join(", ", allergies), age);
+            sink.row(Table.MEDICAL_PROFILE, id, BLOOD_TYPES.pick(random),
+                    random.nextDouble() < 0.15 + 0.6 * ageFactor ? MEDICATIONS.pick(random) : null,
+                    random.nextDouble() < 0.20 + 0.6 * ageFactor ? HISTORIES.pick(random) : null,
+                    id, adminFor(random));
+            for (String allergy : allergies) {
+                sink.row(Table.PILGRIM_ALLERGY, id, allergy);
+            }
+
+            Placement placement = placementFor(id - firstId);
+            sink.row(Table.PILGRIM_ACCOMMODATION, id, firstId + placement.accommodation(),
+                    roomTypes[placement.accommodation()]);
+            for (int schedule : placement.schedules()) {
+                sink.row(Table.PILGRIM_TRANSPORT, id, firstId + schedule);
+            }
+
+            double f = random.nextDouble();
+            int feedbackCount = f < 0.55 ? 0 : f < 0.85 ? 1 : f < 0.95 ? 2 : 3;
+            for (int k = 0; k < feedbackCount; k++) {
+                double r = random.nextDouble();
+                int rating = r < 0.40 ? 5 : r < 0.70 ? 4 : r < 0.85 ? 3 : r < 0.93 ? 2 : 1;
+                sink.row(Table.FEEDBACK, firstId + (id - firstId) * MAX_FEEDBACK_PER_PILGRIM + k, id,
+                        FEEDBACK_TEXTS[random.nextInt(FEEDBACK_TEXTS.length)], rating,
+                        FIRST_FEEDBACK_DATE.plusDays(random.nextInt(21)).toString());
+            }
+        }
+    }
+
+    /**
+     * @return A random source for one row of a table, the same for every run with this seed
+     */
+    private SplittableRandom randomFor(int table, long index) {
+        return new SplittableRandom(mix(seed * 31 + table + mix(index + 0x632BE59BD9B4E019L)));
+    }
+
+    /**
+     * Scrambles the bits of a value (the finaliser of SplitMix64), so that nearby seeds give unrelated streams.
+     */
+    private static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+
+    /**
+     * @return An index below n, with low indexes more likely the greater the skew
+     */
+    private static int skewedIndex(SplittableRandom random, int n, double skew) {
+        return Math.min(n - 1, (int) (n * Math.pow(random.nextDouble(), skew)));
+    }
+
+    private int adminFor(SplittableRandom random) {
+        return 1 + random.nextInt(adminCount);
+    }
+
+    private static boolean contains(int[] values, int count, int value) {
+        for (int i = 0; i < count; i++) {
+            if (values[i] == value) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Moves each ID sequence past the IDs generated for its table, so that the application
+     * does not hand out an ID that is already taken.
+     */
+    private void advanceSequences() throws SQLException {
+        String sql = "INSERT INTO IdSequence (SequenceName, NextValue) VALUES (?, ?) "
+                + "ON DUPLICATE KEY UPDATE NextValue = GREATEST(NextValue, VALUES(NextValue))";
+        try (Connection conn = DBConnection.getConnection(); PreparedStatement stmt = conn.prepareStatement(sql)) {
+            Object[][] sequences = { { "Pilgrim", pilgrims }, { "Feedback", pilgrims * MAX_FEEDBACK_PER_PILGRIM },
+                    { "TransportSchedule", scheduleCount }, { "Accommodation", accommodationCount },
+                    { "Permit", permitCount } };
+            for (Object[] sequence : sequences) {
+                stmt.setString(1, (String) sequence[0]);
+                stmt.setLong(2, firstId + ((Integer) sequence[1]).longValue());
+                stmt.addBatch();
+            }
+            stmt.executeBatch();
+            conn.commit();
+        }
+    }
+
+    /**
+     * @return The number of rows written so far across every table
+     */
+    long totalRows() {
+        long total = 0;
+        for (LongAdder count : written) {
+            total += count.sum();
+        }
+        return total;
+    }
+
+    /**
+     * Builds a one-line summary of the rows written per table.
+     *
+     * @return A human-readable statistics string
+     */
+    String getStats() {
+        StringBuilder stats = new StringBuilder("seed=" + seed);
+        for (Table table : Table.values()) {
+            stats.append(' ').append(table.tableName).append('=').append(written[table.ordinal()].sum());
+        }
+        return stats.toString();
+    }
+
+    /**
+     * Collects one chunk's rows as CSV text, one buffer per table.
+     */
+    private final class CsvChunk implements RowSink<RuntimeException> {
+        private final StringBuilder[] buffers = new StringBuilder[Table.values().length];
+
+        @Override
+        public void row(Table table, Object... values) {
+            StringBuilder buffer = buffers[table.ordinal()];
+            if (buffer == null) {
+                buffer = buffers[table.ordinal()] = new StringBuilder(1 << 16);
+            }
+            for (int i = 0; i < values.length; i++) {
+                if (i > 0) {
+                    buffer.append(',');
+                }
+                appendCsv(buffer, values[i]);
+            }
+            buffer.append('\n');
+            written[table.ordinal()].increment();
+        }
+
+        void writeTo(BufferedWriter[] writers) throws IOException {
+            for (int i = 0; i < buffers.length; i++) {
+                if (buffers[i] != null) {
+                    writers[i].append(buffers[i]);
+                }
+            }
+        }
+
+        private void appendCsv(StringBuilder buffer, Object value) {
+            if (value == null) {
+                buffer.append(CSV_NULL);
+            } else if (value instanceof String) {
+                String text = (String) value;
+                if (text.indexOf(',') < 0 && text.indexOf('"') < 0 && text.indexOf('\n') < 0) {
+                    buffer.append(text);
+                } else {
+                    buffer.append('"').append(text.replace("\"", "\"\"")).append('"');
+                }
+            } else {
+                buffer.append(value);
+            }
+        }
+    }
+
+    /**
+     * Adds rows to one JDBC batch per table over a single connection. {@link #flush()} sends
+     * the batches, parents first so foreign keys hold, and commits them.
+     */
+    private final class DbChunk implements RowSink<SQLException>, AutoCloseable {
+        private final Connection conn;
+        private final PreparedStatement[] statements = new PreparedStatement[Table.values().length];
+        private final int[] pending = new int[statements.length];
+        private final int batchSize;
+        private boolean failed = false;
+
+        DbChunk(int batchSize) throws SQLException {
+            this.batchSize = batchSize;
+            conn = DBConnection.getConnection();
+        }
+
+        @Override
+        public void row(Table table, Object... values) throws SQLException {
+            int t = table.ordinal();
+            if (statements[t] == null) {
+                statements[t] = conn.prepareStatement(table.insertSql());
+            }
+            PreparedStatement stmt = statements[t];
+            for (int i = 0; i < values.length; i++) {
+                if (values[i] == null) {
+                    stmt.setNull(i + 1, Types.VARCHAR);
+                } else {
+                    stmt.setObject(i + 1, values[i]);
+                }
+            }
+            stmt.addBatch();
+            // Reference tables have no parent rows in the batch, so they can be sent as they fill
+            if (++pending[t] >= batchSize && table.ordinal() < Table.PILGRIM.ordinal()) {
+                flush();
+            }
+        }
+
+        void flush() throws SQLException {
+            try {
+                for (int t = 0; t < statements.length; t++) {
+                    if (pending[t] > 0) {
+                        statements[t].executeBatch();
+                    }
+                }
+                conn.commit();
+            } catch (SQLException e) {
+                failed = true;
+                conn.rollback();
+                throw e;
+            }
+            for (int t = 0; t < statements.length; t++) {
+                written[t].add(pending[t]);
+                pending[t] = 0;
+            }
+        }
+
+        @Override
+        public void close() throws SQLException {
+            try {
+                if (!failed) {
+                    flush();
+                }
+            } finally {
+                for (PreparedStatement stmt : statements) {
+                    if (stmt != null) {
+                        stmt.close();
+                    }
+                }
+                conn.close();
+            }
+        }
+    }
+}
+
+/**
+ * The LoadGenerator class drives the repositories the way a crowd of users does, to size
+ * the database and the connection pool before the season. It is run on its own, like
+ * {@link DaoBenchmark}, against the backend chosen with {@code hajjguide.backend}.
+ *
+ * Users arrive at random (a Poisson process) at a rate that ramps up to
+ * {@code hajjguide.load.rate} per second over {@code hajjguide.load.rampSec} and then holds
+ * until {@code hajjguide.load.durationSec} has passed. This is an open model: new users keep
+ * arriving however slowly the earlier ones are served, as on the morning of 8 Dhul Hijjah,
+ * so a saturated database shows up as growing latencies and a growing number of active users.
+ * Each user runs on its own thread (a virtual thread where the JVM has them) and replays one
+ * of the application's flows, pausing for a random think time between screens:
+ *
+ * <ul>
+ * <li>a pilgrim logs in ({@code getPilgrimById}) and opens one to four dashboard screens:
+ * personal information, the medical file, transport and tickets, or nearby hotels</li>
+ * <li>an administrator ({@code hajjguide.load.adminShare} of arrivals, default 1%) logs in
+ * ({@code validateAdmin}) and pages through one to three of the View Dashboard listings</li>
+ * </ul>
+ *
+ * The latency of every call is recorded per step, and a throughput and percentile table is
+ * printed at the end, followed by the connection pool statistics. With the in-memory backend
+ * the repositories are first filled by {@link DatasetGenerator}, so the flows find their data.
+ */
+class LoadGenerator {
+    /** The page size used by the admin listings */
+    private static final int PAGE_SIZE = 50;
+
+    /** Below this the arrival rate is not ramped further down, so the first user arrives at once */
+    private static final double MIN_RATE = 1.0;
+
+    private static final double MAKKAH_LATITUDE = 21.4225;
+    private static final double MAKKAH_LONGITUDE = 39.8262;
+
+    private final double rate;
+    private final long rampNanos;
+    private final long durationNanos;
+    private final long thinkMs;
+    private final double adminShare;
+    private final int pilgrimCount;
+    private final int adminID;
+    private final String adminPassword;
+    private final int maxUsers;
+    private final long seed;
+
+    private final Map<String, LatencyHistogram> steps = new LinkedHashMap<>();
+    private final AtomicInteger active = new AtomicInteger();
+    private final AtomicInteger peakActive = new AtomicInteger();
+    private final LongAdder started = new LongAdder();
+    private final LongAdder finished = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+    private final LongAdder calls = new LongAdder();
+    private volatile long elapsedNanos = 0;
+
+    private final LatencyHistogram pilgrimLogin = step("Pilgrim login");
+    private final LatencyHistogram personalInfo = step("Personal information");
+    private final LatencyHistogram medicalFile = step("Medical file");
+    private final LatencyHistogram schedules = step("Transport schedules");
+    private final LatencyHistogram tickets = step("My tickets");
+    private final LatencyHistogram nearbyHotels = step("Nearby hotels");
+    private final LatencyHistogram adminLogin = step("Admin login");
+    private final LatencyHistogram pilgrimsPage = step("Pilgrims listing");
+    private final LatencyHistogram accommodationsPage = step("Accommodations listing");
+    private final LatencyHistogram schedulesPage = step("Schedules listing");
+    private final LatencyHistogram permitsPage = step("Permits listing");
+
+    LoadGenerator(double rate, long rampMs, long durationMs, long thinkMs, double adminShare, int pilgrimCount,
+            int adminID, String adminPassword, int maxUsers, long seed) {
+        if (!(rate > 0) || durationMs < 1 || rampMs < 0 || thinkMs < 0 || pilgrimCount < 1 || maxUsers < 1
+                || !(adminShare >= 0 && adminShare <= 1)) {
+            throw new IllegalArgumentException("Invalid load settings");
+        }
+        this.rate = rate;
+        this.rampNanos = TimeUnit.MILLISECONDS.toNanos(rampMs);
+        this.durationNanos = TimeUnit.MILLISECONDS.toNanos(durationMs);
+        this.thinkMs = thinkMs;
+        this.adminShare = adminShare;
+        this.pilgrimCount = pilgrimCount;
+        this.adminID = adminID;
+        this.adminPassword = adminPassword;
+        this.maxUsers = maxUsers;
+        this.seed = seed;
+    }
+
+    /**
+     * Runs the load described by the {@code hajjguide.load.*} system properties and prints
+     * the results.
+     *
+     * @param args Command line arguments (not used)
+     */
+    public static void main(String[] args) throws InterruptedException {
+        LoadGenerator load = new LoadGenerator(
+                Double.parseDouble(System.getProperty("hajjguide.load.rate", "200")),
+                Long.getLong("hajjguide.load.rampSec", 10L) * 1000,
+                Long.getLong("hajjguide.load.durationSec", 60L) * 1000,
+                Long.getLong("hajjguide.load.thinkMs", 3000L),
+                Double.parseDouble(System.getProperty("hajjguide.load.adminShare", "0.01")),
+                Integer.getInteger("hajjguide.load.pilgrims", 1000000),
+                Integer.getInteger("hajjguide.load.adminID", Integer.getInteger("hajjguide.memory.adminID", 1)),
+                System.getProperty("hajjguide.load.adminPassword", System.getProperty("hajjguide.memory.adminPassword", "admin")),
+                Integer.getInteger("hajjguide.load.maxUsers", 200000),
+                Long.getLong("hajjguide.load.seed", 42L));
+
+        if (Repositories.getBackend() == Repositories.Backend.MEMORY) {
+            System.out.println("Filling the in-memory repositories with " + load.pilgrimCount + " pilgrims...");
+            seedMemory(load.pilgrimCount, Long.getLong("hajjguide.gen.seed", 42L));
+        }
+        load.run(Long.getLong("hajjguide.load.reportSec", 10L) * 1000, Long.getLong("hajjguide.load.drainSec", 60L) * 1000);
+        System.out.println(load.getReport());
+        System.out.println(DaoMetrics.resourceStats());
+    }
+
+    /**
+     * Runs the arrivals for the configured duration, then waits for the users still active to
+     * finish their flows.
+     *
+     * @param reportMs How often to print progress
+     * @param drainMs The longest to wait for active users after the last arrival
+     */
+    void run(long reportMs, long drainMs) throws InterruptedException {
+        ExecutorService executor = BlockingExecutors.create("hajjguide-load", 0);
+        SplittableRandom arrivals = new SplittableRandom(seed);
+        long reportNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(1, reportMs));
+        long begin = System.nanoTime();
+        long nextReport = begin + reportNanos;
+        long reportedCalls = 0;
+        // Arrivals are scheduled from the intended times, not from when the loop woke up, so
+        // falling behind is caught up rather than silently lowering the rate
+        double arrivalAt = 0;
+        try {
+            while (true) {
+                double currentRate = Math.max(MIN_RATE, rampNanos == 0 ? rate
+                        : rate * Math.min(1.0, arrivalAt / rampNanos));
+                arrivalAt += -Math.log(1 - arrivals.nextDouble()) / currentRate * 1e9;
+                if (arrivalAt >= durationNanos) {
+                    break;
+                }
+                long due = begin + (long) arrivalAt;
+                long now;
+                while ((now = System.nanoTime()) < due) {
+                    if (now >= nextReport) {
+                        reportedCalls = printProgress(begin, now, reportNanos, reportedCalls);
+                        nextReport += reportNanos;
+                    }
+                    LockSupport.parkNanos(Math.min(due, nextReport) - now);
+                }
+                if (active.get() >= maxUsers) {
+                    dropped.increment();
+                    continue;
+                }
+                SplittableRandom random = arrivals.split();
+                boolean admin = random.nextDouble() < adminShare;
+                int users = active.incrementAndGet();
+                peakActive.accumulateAndGet(users, Math::max);
+                started.increment();
+                try {
+                    executor.execute(() -> {
+                        try {
+                            if (admin) {
+                                adminSession(random);
+                            } else {
+                                pilgrimSession(random);
+                            }
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                        } finally {
+                            active.decrementAndGet();
+                            finished.increment();
+                        }
+                    });
+                } catch (RejectedExecutionException e) {
+                    active.decrementAndGet();
+                    dropped.increment();
+                }
+            }
+
+            long drainUntil = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(drainMs);
+            long now;
+            while (active.get() > 0 && (now = System.nanoTime()) < drainUntil) {
+                if (now >= nextReport) {
+                    reportedCalls = printProgress(begin, now, reportNanos, reportedCalls);
+                    nextReport += reportNanos;
+                }
+                Thread.sleep(50);
+            }
+        } finally {
+            elapsedNanos = System.nanoTime() - begin;
+            executor.shutdownNow();
+        }
+    }
+
+    private long printProgress(long begin, long now, long reportNanos, long reportedCalls) {
+        long total = calls.sum();
+        long errors = 0;
+        for (LatencyHistogram histogram : steps.values()) {
+            errors += histogram.snapshot().errors();
+        }
+        System.out.println(String.format("%6.0f s  active=%d started=%d finished=%d dropped=%d calls/s=%.0f errors=%d",
+                (now - begin) / 1e9, active.get(), started.sum(), finished.sum(), dropped.sum(),
+                (total - reportedCalls) * 1e9 / reportNanos, errors));
+        return total;
+    }
+
+    /**
+     * A pilgrim logs in and opens a few dashboard screens.
+     */
+    private void pilgrimSession(SplittableRandom random) throws InterruptedException {
+        int pilgrimID = 1 + random.nextInt(pilgrimCount);
+        Pilgrim pilgrim = call(pilgrimLogin, () -> Repositories.pilgrims().getPilgrimById(pilgrimID), Objects::nonNull);
+        if (pilgrim == null) {
+            return;
+        }
+        int screens = 1 + random.nextInt(4);
+        for (int i = 0; i < screens; i++) {
+            think(random, thinkMs);
+            int screen = random.nextInt(100);
+            if (screen < 40) {
+                call(personalInfo, () -> Repositories.pilgrims().getPilgrimById(pilgrimID), Objects::nonNull);
+            } else if (screen < 65) {
+                call(medicalFile, () -> Repositories.medicalProfiles().getMedicalProfileByPilgrimId(pilgrimID), null);
+            } else if (screen < 90) {
+                call(schedules, () -> Repositories.transportSchedules().getAllTransportSchedules(), Objects::nonNull);
+                call(tickets, () -> Repositories.transportSchedules().getTicketsByPilgrim(pilgrimID), Objects::nonNull);
+            } else {
+                double latitude = MAKKAH_LATITUDE + (random.nextDouble() - 0.5) * 0.05;
+                double longitude = MAKKAH_LONGITUDE + (random.nextDouble() - 0.5) * 0.05;
+                call(nearbyHotels, () -> Repositories.accommodations().findNearestAccommodations(latitude, longitude, 5),
+                        Objects::nonNull);
+            }
+        }
+    }
+
+    /**
+     * An administrator logs in and pages through a few listings.
+     */
+    private void adminSession(SplittableRandom random) throws InterruptedException {
+        Boolean valid = call(adminLogin, () -> Repositories.admins().validateAdmin(adminID, adminPassword), Boolean.TRUE::equals);
+        if (!Boolean.TRUE.equals(valid)) {
+            return;
+        }
+        int listings = 1 + random.nextInt(3);
+        for (int i = 0; i < listings; i++) {
+            think(random, thinkMs);
+            int listing = random.nextInt(4);
+            int pages = 1 + random.nextInt(5);
+            int afterID = 0;
+            for (int p = 0; p < pages; p++) {
+                if (p > 0) {
+                    think(random, thinkMs / 3);
+                }
+                int after = afterID;
+                Page<?> page;
+                if (listing == 0) {
+                    page = call(pilgrimsPage, () -> Repositories.pilgrims().getPilgrimsPage(after, PAGE_SIZE, null), Objects::nonNull);
+                } else if (listing == 1) {
+                    page = call(accommodationsPage,
+                            () -> Repositories.accommodations().getAccommodationsPage(after, PAGE_SIZE, null), Objects::nonNull);
+                } else if (listing == 2) {
+                    page = call(schedulesPage,
+                            () -> Repositories.transportSchedules().getTransportSchedulesPage(after, PAGE_SIZE, null), Objects::nonNull);
+                } else {
+                    page = call(permitsPage, () -> Repositories.permits().getPermitsPage(after, PAGE_SIZE, null), Objects::nonNull);
+                }
+                if (page == null || !page.hasMore()) {
+                    break;
+                }
+                afterID = page.getLastID();
+            }
+        }
+    }
+
+    /**
+     * Times one call. A call that throws, or whose result fails the check, counts as an error.
+     *
+     * @param histogram The step to record the call under
+     * @param call The call
+     * @param ok Tells whether the result is a success, or null to accept any result
+     * @return The result, or null if the call threw
+     */
+    private <T> T call(LatencyHistogram histogram, Supplier<T> call, Predicate<T> ok) {
+        long begin = System.nanoTime();
+        try {
+            T result = call.get();
+            if (ok != null && !ok.test(result)) {
+                histogram.recordError();
+            }
+            return result;
+        } catch (RuntimeException e) {
+            histogram.recordError();
+            return null;
+        } finally {
+            histogram.record(System.nanoTime() - begin);
+            calls.increment();
+        }
+    }
+
+    /**
+     * Pauses for an exponentially distributed time with the given mean, capped at ten times the mean.
+     */
+    private static void think(SplittableRandom random, long meanMs) throws InterruptedException {
+        if (meanMs > 0) {
+            Thread.sleep((long) Math.min(10.0 * meanMs, -Math.log(1 - random.nextDouble()) * meanMs));
+        }
+    }
+
+    private LatencyHistogram step(String name) {
+        LatencyHistogram histogram = new LatencyHistogram(name);
+        steps.put(name, histogram);
+        return histogram;
+    }
+
+    /**
+     * Fills the in-memory repositories with a {@link DatasetGenerator} dataset: the reference
+     * tables, and pilgrims 1 to pilgrimCount with their medical profiles.
+     */
+    private static void seedMemory(int pilgrimCount, long seed) {
+        DatasetGenerator generator = new DatasetGenerator(seed, pilgrimCount, 1, 2000, 500, 100, 10);
+        List<Pilgrim> batch = new ArrayList<>(10000);
+        DatasetGenerator.RowSink<RuntimeException> sink = (table, v) -> {
+            switch (table) {
+                case PERMIT:
+                    Repositories.permits().createPermit(new Permit((Integer) v[0], (String) v[1], (String) v[2],
+                            (String) v[3], (Double) v[4], (Double) v[5]));
+                    break;
+                case ACCOMMODATION:
+                    Repositories.accommodations().createAccommodation(new Accommodation((Integer) v[0], (String) v[1],
+                            (String) v[2], (Integer) v[3], (String) v[4], (Integer) v[5], (Double) v[6], (Double) v[7]));
+                    break;
+                case TRANSPORT_SCHEDULE:
+                    Repositories.transportSchedules().createTransportSchedule(new TransportSchedule((Integer) v[0],
+                            (String) v[1], (String) v[2], (String) v[3], (String) v[4], (Integer) v[5]));
+                    break;
+                case PILGRIM:
+                    batch.add(new Pilgrim((Integer) v[0], (String) v[1], (String) v[2], (String) v[3], (String) v[4],
+                            (String) v[5], (Integer) v[6]));
+                    break;
+                case MEDICAL_PROFILE:
+                    Repositories.medicalProfiles().createMedicalProfile(new MedicalProfile((Integer) v[0], (String) v[1],
+                            (String) v[2], (String) v[3], (Integer) v[4], (Integer) v[5]));
+                    break;
+                default:
+                    // Assignments and feedback are not read by the simulated flows
+                    break;
+            }
+        };
+        generator.generateReferenceData(sink);
+        for (int from = 1; from <= pilgrimCount; from += 10000) {
+            int to = (int) Math.min(pilgrimCount + 1L, from + 10000L);
+            // Pilgrims are created before their medical profiles are stored
+            List<Object[]> profiles = new ArrayList<>(to - from);
+            generator.generatePilgrims(from, to, (table, v) -> {
+                if (table == DatasetGenerator.Table.MEDICAL_PROFILE) {
+                    profiles.add(v);
+                } else {
+                    sink.row(table, v);
+                }
+            });
+            Repositories.pilgrims().createPilgrims(batch);
+            batch.clear();
+            for (Object[] v : profiles) {
+                sink.row(DatasetGenerator.Table.MEDICAL_PROFILE, v);
+            }
+        }
+    }
+
+    /**
+     * Builds the results table: one line per step with its throughput and latency
+     * percentiles in milliseconds, and a summary of the users.
+     *
+     * @return A human-readable report
+     */
+    String getReport() {
+        StringBuilder report = new StringBuilder();
+        report.append(String.format("%-24s %10s %10s %10s %10s %10s %10s %8s%n",
+                "Step", "Calls", "Calls/s", "p50 ms", "p95 ms", "p99 ms", "max ms", "Errors"));
+        double seconds = Math.max(1, elapsedNanos) / 1e9;
+        for (LatencyHistogram histogram : steps.values()) {
+            LatencyHistogram.Snapshot s = histogram.snapshot();
+            if (s.count() > 0) {
+                report.append(String.format("%-24s %10d %10.1f %10.2f %10.2f %10.2f %10.2f %8d%n",
+                        s.name(), s.count(), s.count() / seconds, s.p50() / 1e6, s.p95() / 1e6, s.p99() / 1e6,
+                        s.max() / 1e6, s.errors()));
+            }
+        }
+        report.append(String.format("Users: started=%d finished=%d still active=%d dropped=%d peak active=%d",
+                started.sum(), finished.sum(), active.get(), dropped.sum(), peakActive.get()));
+        return report.toString();
+    }
+}
+
+/**
+ * The ApiServer class serves the repositories over HTTP with JSON bodies, so that mobile
+ * apps and kiosks share this process's connection pool and caches instead of each opening
+ * its own database connection. It is built on the JDK's HTTP server and runs each request
+ * on a virtual thread where the JVM has them (Java 21 and later), or else on a fixed pool of
+ * {@code hajjguide.api.threads} threads (default 200). It listens on
+ * {@code hajjguide.api.port} (default 8080).
+ *
+ * Listings of pilgrims, changes to pilgrim and medical records, assignments and the
+ * metrics require an administrator, identified by the {@code X-Admin-ID} and
+ * {@code X-Admin-Password} headers. Routes about one pilgrim (marked "pilgrim") also accept
+ * that pilgrim's token in the {@code X-Pilgrim-Token} header, and refuse with 403 a token
+ * issued to anyone else. Tokens are issued by an administrator and signed with
+ * {@code hajjguide.api.tokenSecret} (a random key per process if unset); they expire after
+ * {@code hajjguide.api.tokenTtlHours} (default 720).
+ *
+ * <pre>
+ * GET    /api/health
+ * GET    /api/pilgrims?after=&amp;limit=                     (admin)
+ * GET    /api/pilgrims/search?prefix=&amp;limit=              (admin)
+ * POST   /api/pilgrims                                     (admin) creates a pilgrim; returns its ID and token
+ * GET    /api/pilgrims/{id}                                (pilgrim) returns the pilgrim and its version
+ * PUT    /api/pilgrims/{id}                                (admin) updates the fields given, if "version" still matches
+ * POST   /api/pilgrims/{id}/token                          (admin) issues a new token for the pilgrim
+ * GET    /api/pilgrims/{id}/medical                        (pilgrim)
+ * POST   /api/pilgrims/{id}/medical                        (admin)
+ * PUT    /api/pilgrims/{id}/medical                        (admin) like PUT /api/pilgrims/{id}
+ * GET    /api/pilgrims/{id}/tickets                        (pilgrim)
+ * POST   /api/pilgrims/{id}/tickets         {scheduleID}   (pilgrim) books a seat
+ * POST   /api/pilgrims/{id}/waitlist        {scheduleID}   (pilgrim)
+ * PUT    /api/pilgrims/{id}/accommodation   {accommodationID}  (admin)
+ * POST   /api/pilgrims/{id}/permits         {permitID}     (admin)
+ * GET    /api/tickets/{number}                             (pilgrim) the ticket's pilgrim
+ * DELETE /api/tickets/{number}?pilgrimID=                  (pilgrim)
+ * GET    /api/schedules?after=&amp;limit=
+ * GET    /api/journeys?from=&amp;to=&amp;departAfter=HH:mm
+ * GET    /api/accommodations?after=&amp;limit=
+ * GET    /api/accommodations/nearest?lat=&amp;lon=&amp;limit=  or  &amp;radius= (metres)
+ * GET    /api/permits?after=&amp;limit=
+ * GET    /api/permits/nearest?lat=&amp;lon=&amp;limit=&amp;serviceType=  or  &amp;radius=
+ * GET    /api/metrics                                      (admin)
+ * </pre>
+ *
+ * Errors are returned as {@code {"error": "..."}} with a 4xx or 5xx status. A failed
+ * version check returns 409 with the record as now stored, a duplicate key 409, and any
+ * other failed database call 503.
+ */
+class ApiServer {
+    /** The port listened on, set with {@code hajjguide.api.port} */
+    static final int DEFAULT_PORT = Integer.getInteger("hajjguide.api.port", 8080);
+
+    private static final int BACKLOG = Integer.getInteger("hajjguide.api.backlog", 1024);
+    private static final int POOL_THREADS = Integer.getInteger("hajjguide.api.threads", 200);
+    private static final int MAX_BODY_BYTES = 64 * 1024;
+    private static final int DEFAULT_PAGE_SIZE = 50;
+    private static final int MAX_PAGE_SIZE = 500;
+    private static final int DEFAULT_NEAREST = 10;
+    private static final long TOKEN_TTL_SECONDS = Long.getLong("hajjguide.api.tokenTtlHours", 720L) * 3600;
+    private static final Pattern NUMBER = Pattern.compile("\\d+");
+
+    /** The pilgrim ID {@link #caller(HttpExchange)} returns for an administrator */
+    private static final int ADMIN_CALLER = -1;
+
+    static {
+        // The JDK server writes the headers and the body separately; with Nagle's algorithm on,
+        // each keep-alive response then waits about 40 ms for the client's delayed ACK
+        if (System.getProperty("sun.net.httpserver.nodelay") == null) {
+            System.setProperty("sun.net.httpserver.nodelay", "true");
+        }
+    }
+
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final SecretKeySpec tokenKey;
+
+    /** Initialized with tokenKey and never used itself; each signature is made with a clone of it */
+    private final Mac tokenMac;
+    private final Map<String, LatencyHistogram> latencies = new ConcurrentHashMap<>();
+
+    /**
+     * A request that cannot be served, answered with the given status.
+     */
+    private static final class ApiException extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        final int status;
+
+        ApiException(int status, String message) {
+            super(message);
+            this.status = status;
+        }
+    }
+
+    /**
+     * A response: a status and a body to send as JSON, or no body if null.
+     */
+    private record Response(int status, Object body) {
+        static Response ok(Object body) {
+            return new Response(200, body);
+        }
+    }
+
+    /**
+     * Creates a server bound to a port. It does not accept requests until {@link #start()}.
+     *
+     * @param port The port, or 0 for any free port
+     * @throws IOException if the port cannot be bound
+     */
+    ApiServer(int port) throws IOException {
+        server = HttpServer.create(new InetSocketAddress(port), BACKLOG);
+        executor = BlockingExecutors.create("hajjguide-api", POOL_THREADS);
+        String secret = System.getProperty("hajjguide.api.tokenSecret");
+        byte[] key;
+        if (secret != null && !secret.isEmpty()) {
+            key = secret.getBytes(StandardCharsets.UTF_8);
+        } else {
+            key = new byte[32];
+            new SecureRandom().nextBytes(key);
+        }
+        tokenKey = new SecretKeySpec(key, "HmacSHA256");
+        tokenMac = newMac();
+        server.setExecutor(executor);
+        server.createContext("/api/", this::handle);
+    }
+
+    /**
+     * Starts the server and the application's background services, and serves until the
+     * process is stopped.
+     *
+     * @param args Command line arguments (not used)
+     */
+    public static void main(String[] args) throws IOException {
+        HajjGuide.startServices();
+        ApiServer api = new ApiServer(DEFAULT_PORT);
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> api.stop(1), "hajjguide-api-stop"));
+        api.start();
+        System.out.println("Hajj Guide API listening on port " + api.getPort());
+    }
+
+    void start() {
+        server.start();
+    }
+
+    /**
+     * Stops accepting requests and waits up to the given time for those in progress.
+     */
+    void stop(int delaySeconds) {
+        server.stop(delaySeconds);
+        executor.shutdownNow();
+    }
+
+    /** @return The port the server is bound to */
+    int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    /**
+     * Serves one request, timing it under its route.
+     */
+    private void handle(HttpExchange exchange) throws IOException {
+        long started = System.nanoTime();
+        String method = exchange.getRequestMethod();
+        String[] path = exchange.getRequestURI().getPath().substring("/api/".length()).split("/");
+        Response response;
+        boolean routed = false;
+        try {
+            Map<String, String> query = parseQuery(exchange.getRequestURI().getRawQuery());
+            routed = true;
+            response = dispatch(method, path, query, exchange);
+        } catch (ApiException e) {
+            routed = e.status != 404 && e.status != 405;
+            response = new Response(e.status, error(e.getMessage()));
+        } catch (IllegalArgumentException e) {
+            response = new Response(400, error(e.getMessage()));
+        } catch (RejectedExecutionException e) {
+            response = new Response(503, error("Server busy"));
+        } catch (DataAccessException e) {
+            if (e.isConstraintViolation()) {
+                response = new Response(409, error("The request conflicts with stored data"));
+            } else {
+                ErrorLog.report("ApiServer", method + " " + exchange.getRequestURI().getPath() + " failed", e);
+                response = new Response(503, error("The database could not complete the request"));
+            }
+        } catch (RuntimeException e) {
+            ErrorLog.report("ApiServer", method + " " + exchange.getRequestURI().getPath() + " failed", e);
+            response = new Response(500, error("Internal error"));
+        }
+        try {
+            send(exchange, response);
+        } finally {
+            if (routed) {
+                // Only matched routes are timed, so unknown paths cannot grow the map
+                LatencyHistogram histogram = latencies.computeIfAbsent(routeOf(method, path),
+                        r -> DaoMetrics.histogram("ApiServer " + r));
+                histogram.record(System.nanoTime() - started);
+                if (response.status() >= 500) {
+                    histogram.recordError();
+                }
+            }
+        }
+    }
+
+    /**
+     * @return The route of a request, with IDs replaced by {id}, such as "GET /api/pilgrims/{id}"
+     */
+    private static String routeOf(String method, String[] path) {
+        StringBuilder route = new StringBuilder(method).append(" /api");
+        for (String part : path) {
+            route.append('/').append(NUMBER.matcher(part).matches() ? "{id}" : part);
+        }
+        return route.toString();
+    }
+
+    private Response dispatch(String method, String[] path, Map<String, String> query, HttpExchange exchange)
+            throws IOException {
+        String resource = path[0];
+        if (resource.equals("health") && path.length == 1) {
+            requireMethod(method, "GET");
+            return Response.ok(Map.of("status", "ok", "backend", Repositories.getBackend().name()));
+        }
+        if (resource.equals("metrics") && path.length == 1) {
+            requireMethod(method, "GET");
+            requireAdmin(exchange);
+            return Response.ok(Map.of("resources", Arrays.asList(DaoMetrics.resourceStats().split("\n")),
+                    "latencies", DaoMetrics.snapshots()));
+        }
+        if (resource.equals("pilgrims")) {
+            return pilgrims(method, path, query, exchange);
+        }
+        if (resource.equals("tickets") && path.length == 2) {
+            int ticketNumber = parseId(path[1]);
+            if (method.equals("GET")) {
+                int caller = caller(exchange);
+                Ticket ticket = Repositories.transportSchedules().getTicket(ticketNumber);
+                // Another pilgrim's ticket is reported as missing, so ticket numbers cannot be probed
+                return found(ticket != null && (caller == ADMIN_CALLER || caller == ticket.pilgrimID()) ? ticket : null,
+                        "Ticket not found");
+            }
+            requireMethod(method, "DELETE");
+            int pilgrimID = intParam(query, "pilgrimID", -1);
+            requireOwner(exchange, pilgrimID);
+            if (!Repositories.transportSchedules().cancelTicket(ticketNumber, pilgrimID)) {
+                throw new ApiException(404, "No booked ticket " + ticketNumber + " for pilgrim " + pilgrimID);
+            }
+            return new Response(204, null);
+        }
+        if (resource.equals("schedules") && path.length == 1) {
+            requireMethod(method, "GET");
+            return Response.ok(Repositories.transportSchedules().getTransportSchedulesPage(
+                    intParam(query, "after", 0), pageSize(query), null));
+        }
+        if (resource.equals("journeys") && path.length == 1) {
+            requireMethod(method, "GET");
+            int departAfter = JourneyPlanner.parseTime(query.getOrDefault("departAfter", "00:00"));
+            if (departAfter < 0) {
+                throw new IllegalArgumentException("departAfter must be HH:mm");
+            }
+            return found(Repositories.transportSchedules().planJourney(required(query, "from"), required(query, "to"),
+                    departAfter), "No journey found");
+        }
+        if (resource.equals("accommodations")) {
+            requireMethod(method, "GET");
+            AccommodationRepository accommodations = Repositories.accommodations();
+            if (path.length == 1) {
+                return Response.ok(accommodations.getAccommodationsPage(intParam(query, "after", 0), pageSize(query), null));
+            }
+            if (path.length == 2 && path[1].equals("nearest")) {
+                double latitude = doubleParam(query, "lat");
+                double longitude = doubleParam(query, "lon");
+                return Response.ok(query.containsKey("radius")
+                        ? accommodations.findAccommodationsWithin(latitude, longitude, doubleParam(query, "radius"))
+                        : accommodations.findNearestAccommodations(latitude, longitude, intParam(query, "limit", DEFAULT_NEAREST)));
+            }
+        }
+        if (resource.equals("permits")) {
+            requireMethod(method, "GET");
+            PermitRepository permits = Repositories.permits();
+            if (path.length == 1) {
+                return Response.ok(permits.getPermitsPage(intParam(query, "after", 0), pageSize(query), null));
+            }
+            if (path.length == 2 && path[1].equals("nearest")) {
+                double latitude = doubleParam(query, "lat");
+                double longitude = doubleParam(query, "lon");
+                String serviceType = query.get("serviceType");
+                return Response.ok(query.containsKey("radius")
+                        ? permits.findPermitsWithin(latitude, longitude, doubleParam(query, "radius"), serviceType)
+                        : permits.findNearestPermits(latitude, longitude, intParam(query, "limit", DEFAULT_NEAREST), serviceType));
+            }
+        }
+        throw new ApiException(404, "Not found");
+    }
+
+    /**
+     * Serves everything under /api/pilgrims.
+     */
+    private Response pilgrims(String method, String[] path, Map<String, String> query, HttpExchange exchange)
+            throws IOException {
+        PilgrimRepository pilgrims = Repositories.pilgrims();
+        if (path.length == 1) {
+            requireAdmin(exchange);
+            if (method.equals("GET")) {
+                return Response.ok(pilgrims.getPilgrimsPage(intParam(query, "after", 0), pageSize(query), null));
+            }
+            requireMethod(method, "POST");
+            Map<String, Object> body = readBody(exchange);
+            Pilgrim pilgrim = new Pilgrim(0, requiredString(body, "pilgrimName"), string(body, "phone", ""),
+                    string(body, "nationality", ""), string(body, "specialNeed", ""), string(body, "allergies", ""),
+                    integer(body, "pilgrimAge", null));
+            int pilgrimID = pilgrims.createPilgrimWithAssignedId(pilgrim);
+            if (pilgrimID < 0) {
+                throw new ApiException(500, "The pilgrim could not be created");
+            }
+            return new Response(201, Map.of("pilgrimID", pilgrimID, "token", issueToken(pilgrimID)));
+        }
+        if (path.length == 2 && path[1].equals("search")) {
+            requireMethod(method, "GET");
+            requireAdmin(exchange);
+            return Response.ok(pilgrims.searchPilgrimNames(required(query, "prefix"), pageSize(query)));
+        }
+
+        int pilgrimID = parseId(path[1]);
+        String sub = path.length == 3 ? path[2] : path.length == 2 ? "" : null;
+        if (sub == null) {
+            throw new ApiException(404, "Not found");
+        }
+        switch (sub) {
+            case "":
+                if (method.equals("GET")) {
+                    requireOwner(exchange, pilgrimID);
+                    return found(pilgrims.getVersionedPilgrim(pilgrimID), "Pilgrim not found");
+                }
+                requireMethod(method, "PUT");
+                requireAdmin(exchange);
+                return updatePilgrim(pilgrimID, readBody(exchange));
+            case "token":
+                requireMethod(method, "POST");
+                requireAdmin(exchange);
+                if (pilgrims.getPilgrimById(pilgrimID) == null) {
+                    throw new ApiException(404, "Pilgrim not found");
+                }
+                return new Response(201, Map.of("pilgrimID", pilgrimID, "token", issueToken(pilgrimID)));
+            case "medical":
+                MedicalProfileRepository profiles = Repositories.medicalProfiles();
+                if (method.equals("GET")) {
+                    requireOwner(exchange, pilgrimID);
+                    return found(profiles.getVersionedMedicalProfileByPilgrimId(pilgrimID), "Medical profile not found");
+                }
+                int adminID = requireAdmin(exchange);
+                Map<String, Object> body = readBody(exchange);
+                if (method.equals("POST")) {
+                    MedicalProfile profile = new MedicalProfile(integer(body, "profileID", pilgrimID),
+                            requiredString(body, "bloodType"), string(body, "medications", null),
+                            string(body, "medicalHistory", null), pilgrimID, adminID);
+                    if (!profiles.createMedicalProfile(profile)) {
+                        throw new ApiException(409, "The medical profile could not be created");
+                    }
+                    return new Response(201, profile);
+                }
+                requireMethod(method, "PUT");
+                return updateMedicalProfile(pilgrimID, body);
+            case "tickets":
+                TransportScheduleRepository schedules = Repositories.transportSchedules();
+                requireOwner(exchange, pilgrimID);
+                if (method.equals("GET")) {
+                    return Response.ok(schedules.getTicketsByPilgrim(pilgrimID));
+                }
+                requireMethod(method, "POST");
+                Ticket ticket = schedules.bookTicket(pilgrimID, integer(readBody(exchange), "scheduleID", null));
+                if (ticket == null) {
+                    throw new ApiException(409, "No seat available");
+                }
+                return new Response(201, ticket);
+            case "waitlist":
+                requireMethod(method, "POST");
+                requireOwner(exchange, pilgrimID);
+                int scheduleID = integer(readBody(exchange), "scheduleID", null);
+                if (!Repositories.transportSchedules().joinWaitlist(pilgrimID, scheduleID)) {
+                    throw new ApiException(409, "Could not join the waitlist");
+                }
+                return new Response(201, Map.of("pilgrimID", pilgrimID, "scheduleID", scheduleID));
+            case "accommodation":
+                requireMethod(method, "PUT");
+                requireAdmin(exchange);
+                int accommodationID = integer(readBody(exchange), "accommodationID", null);
+                if (!Repositories.accommodations().assignPilgrimToAccommodation(pilgrimID, accommodationID)) {
+                    throw new ApiException(409, "The accommodation could not be assigned");
+                }
+                return Response.ok(Map.of("pilgrimID", pilgrimID, "accommodationID", accommodationID));
+            case "permits":
+                requireMethod(method, "POST");
+                requireAdmin(exchange);
+                int permitID = integer(readBody(exchange), "permitID", null);
+                if (!Repositories.permits().assignPermitToPilgrim(pilgrimID, permitID)) {
+                    throw new ApiException(409, "The permit could not be assigned");
+                }
+                return new Response(201, Map.of("pilgrimID", pilgrimID, "permitID", permitID));
+            default:
+                throw new ApiException(404, "Not found");
+        }
+    }
+
+    /**
+     * Applies the fields present in the body over the stored pilgrim, if the body's
+     * "version" is still the stored version.
+     */
+    private Response updatePilgrim(int pilgrimID, Map<String, Object> body) {
+        Versioned<Pilgrim> current = Repositories.pilgrims().getVersionedPilgrim(pilgrimID);
+        if (current == null) {
+            throw new ApiException(404, "Pilgrim not found");
+        }
+        Pilgrim p = current.value();
+        Pilgrim edited = new Pilgrim(pilgrimID, string(body, "pilgrimName", p.pilgrimName()),
+                string(body, "phone", p.phone()), string(body, "nationality", p.nationality()),
+                string(body, "specialNeed", p.specialNeed()), string(body, "allergies", p.allergies()),
+                integer(body, "pilgrimAge", p.pilgrimAge()));
+        return updated(Repositories.pilgrims().updatePilgrim(edited, integer(body, "version", null)));
+    }
+
+    /**
+     * Like {@link #updatePilgrim(int, Map)}, for the pilgrim's medical profile.
+     */
+    private Response updateMedicalProfile(int pilgrimID, Map<String, Object> body) {
+        MedicalProfileRepository profiles = Repositories.medicalProfiles();
+        Versioned<MedicalProfile> current = profiles.getVersionedMedicalProfileByPilgrimId(pilgrimID);
+        if (current == null) {
+            throw new ApiException(404, "Medical profile not found");
+        }
+        MedicalProfile m = current.value();
+        MedicalProfile edited = new MedicalProfile(m.profileID(), string(body, "bloodType", m.bloodType()),
+                string(body, "medications", m.medications()), string(body, "medicalHistory", m.medicalHistory()),
+                pilgrimID, m.adminID());
+        return updated(profiles.updateMedicalProfile(edited, integer(body, "version", null)));
+    }
+
+    private static Response updated(UpdateResult<?> result) {
+        switch (result.status()) {
+            case UPDATED:
+                return Response.ok(result.current());
+            case CONFLICT:
+                return new Response(409, result);
+            default:
+                throw new ApiException(404, "Not found");
+        }
+    }
+
+    /**
+     * Checks the administrator headers against the admin repository.
+     *
+     * @return The administrator's ID
+     * @throws ApiException 401 if the headers are missing or wrong
+     */
+    private static int requireAdmin(HttpExchange exchange) {
+        String id = exchange.getRequestHeaders().getFirst("X-Admin-ID");
+        String password = exchange.getRequestHeaders().getFirst("X-Admin-Password");
+        if (id != null && password != null && NUMBER.matcher(id.trim()).matches()) {
+            int adminID = Integer.parseInt(id.trim());
+            if (Repositories.admins().validateAdmin(adminID, password)) {
+                return adminID;
+            }
+        }
+        throw new ApiException(401, "Administrator credentials required");
+    }
+
+    /**
+     * Identifies the caller of a pilgrim route: an administrator if the administrator
+     * headers are sent, or else the pilgrim whose token is in {@code X-Pilgrim-Token}.
+     *
+     * @return The pilgrim's ID, or {@link #ADMIN_CALLER} for an administrator
+     * @throws ApiException 401 if the credentials sent are missing or wrong
+     */
+    private int caller(HttpExchange exchange) {
+        if (exchange.getRequestHeaders().containsKey("X-Admin-ID")) {
+            requireAdmin(exchange);
+            return ADMIN_CALLER;
+        }
+        int pilgrimID = verifyToken(exchange.getRequestHeaders().getFirst("X-Pilgrim-Token"));
+        if (pilgrimID < 0) {
+            throw new ApiException(401, "Pilgrim token or administrator credentials required");
+        }
+        return pilgrimID;
+    }
+
+    /**
+     * Checks that the caller is an administrator or the given pilgrim.
+     *
+     * @throws ApiException 401 if the credentials are missing or wrong, 403 if they are
+     *                      another pilgrim's
+     */
+    private void requireOwner(HttpExchange exchange, int pilgrimID) {
+        int caller = caller(exchange);
+        if (caller != ADMIN_CALLER && caller != pilgrimID) {
+            throw new ApiException(403, "Not allowed for this pilgrim");
+        }
+    }
+
+    /**
+     * @return A token for the pilgrim, "{id}.{expiry}.{signature}", valid for
+     *         {@code hajjguide.api.tokenTtlHours}
+     */
+    String issueToken(int pilgrimID) {
+        String claims = pilgrimID + "." + (System.currentTimeMillis() / 1000 + TOKEN_TTL_SECONDS);
+        return claims + "." + Base64.getUrlEncoder().withoutPadding().encodeToString(sign(claims));
+    }
+
+    /**
+     * @return The pilgrim a token was issued to, or -1 if it is missing, forged or expired
+     */
+    int verifyToken(String token) {
+        if (token == null) {
+            return -1;
+        }
+        String[] parts = token.trim().split("\\.");
+        if (parts.length != 3 || !NUMBER.matcher(parts[0]).matches() || parts[0].length() > 9
+                || !NUMBER.matcher(parts[1]).matches() || parts[1].length() > 18) {
+            return -1;
+        }
+        byte[] signature;
+        try {
+            signature = Base64.getUrlDecoder().decode(parts[2]);
+        } catch (IllegalArgumentException e) {
+            return -1;
+        }
+        if (!MessageDigest.isEqual(signature, sign(parts[0] + "." + parts[1]))
+                || Long.parseLong(parts[1]) < System.currentTimeMillis() / 1000) {
+            return -1;
+        }
+        return Integer.parseInt(parts[0]);
+    }
+
+    private byte[] sign(String claims) {
+        // Cloning skips the provider lookup and key setup of Mac.getInstance and init
+        Mac mac;
+        try {
+            mac = (Mac) tokenMac.clone();
+        } catch (CloneNotSupportedException e) {
+            mac = newMac();
+        }
+        return mac.doFinal(claims.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private Mac newMac() {
+        try {
+            Mac mac = Mac.getInstance("HmacSHA256");
+            mac.init(tokenKey);
+            return mac;
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("HmacSHA256 is not available", e);
+        }
+    }
+
+    private static void requireMethod(String method, String allowed) {
+        if (!method.equals(allowed)) {
+            throw new ApiException(405, "Method not allowed");
+        }
+    }
+
+    private static Response found(Object value, String message) {
+        if (value == null) {
+            throw new ApiException(404, message);
+        }
+        return Response.ok(value);
+    }
+
+    private static Map<String, String> error(String message) {
+        return Map.of("error", message == null ? "Bad request" : message);
+    }
+
+    private static int parseId(String text) {
+        if (!NUMBER.matcher(text).matches() || text.length() > 9) {
+            throw new ApiException(404, "Not found");
+        }
+        return Integer.parseInt(text);
+    }
+
+    private static Map<String, String> parseQuery(String rawQuery) {
+        if (rawQuery == null || rawQuery.isEmpty()) {
+            return Collections.emptyMap();
+        }
+        Map<String, String> query = new HashMap<>();
+        for (String pair : rawQuery.split("&")) {
+            int eq = pair.indexOf('=');
+            String name = URLDecoder.decode(eq < 0 ? pair : pair.substring(0, eq), StandardCharsets.UTF_8);
+            String value = eq < 0 ? "" : URLDecoder.decode(pair.substring(eq + 1), StandardCharsets.UTF_8);
+            query.putIfAbsent(name, value);
+        }
+        return query;
+    }
+
+    private static String required(Map<String, String> query, String name) {
+        String value = query.get(name);
+        if (value == null || value.trim().isEmpty()) {
+            throw new IllegalArgumentException("Missing parameter: " + name);
+        }
+        return value.trim();
+    }
+
+    private static int intParam(Map<String, String> query, String name, int defaultValue) {
+        String value = query.get(name);
+        return value == null ? defaultValue : Integer.parseInt(value.trim());
+    }
+
+    private static double doubleParam(Map<String, String> query, String name) {
+        return Double.parseDouble(required(query, name));
+    }
+
+    private static int pageSize(Map<String, String> query) {
+        int limit = intParam(query, "limit", DEFAULT_PAGE_SIZE);
+        if (limit < 1 || limit > MAX_PAGE_SIZE) {
+            throw new IllegalArgumentException("limit must be between 1 and " + MAX_PAGE_SIZE);
+        }
+        return limit;
+    }
+
+    /**
+     * Reads a request body holding one flat JSON object.
+     *
+     * @throws ApiException 413 if the body is too large
+     */
+    private static Map<String, Object> readBody(HttpExchange exchange) throws IOException {
+        try (InputStream in = exchange.getRequestBody()) {
+            byte[] bytes = in.readNBytes(MAX_BODY_BYTES + 1);
+            if (bytes.length > MAX_BODY_BYTES) {
+                throw new ApiException(413, "Request body too large");
+            }
+            return Json.parseObject(new String(bytes, StandardCharsets.UTF_8));
+        }
+    }
+
+    private static String string(Map<String, Object> body, String name, String defaultValue) {
+        if (!body.containsKey(name)) {
+            return defaultValue;
+        }
+        Object value = body.get(name);
+        return value == null ? null : value.toString();
+    }
+
+    private static String requiredString(Map<String, Object> body, String name) {
+        String value = string(body, name, null);
+        if (value == null || value.trim().isEmpty()) {
+            throw new IllegalArgumentException("Missing field: " + name);
+        }
+        return value;
+    }
+
+    /**
+     * @param defaultValue The value when the field is absent, or null if it is required
+     */
+    private static int integer(Map<String, Object> body, String name, Integer defaultValue) {
+        Object value = body.get(name);
+        if (value == null) {
+            if (defaultValue == null) {
+                throw new IllegalArgumentException("Missing field: " + name);
+            }
+            return defaultValue;
+        }
+        if (value instanceof Number && ((Number) value).doubleValue() == ((Number) value).intValue()) {
+            return ((Number) value).intValue();
+        }
+        throw new IllegalArgumentException("Field " + name + " must be an integer");
+    }
+
+    private static void send(HttpExchange exchange, Response response) throws IOException {
+        try {
+            if (response.body() == null) {
+                exchange.sendResponseHeaders(response.status(), -1);
+                return;
+            }
+            byte[] bytes = Json.write(response.body()).getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+            exchange.sendResponseHeaders(response.status(), bytes.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(bytes);
+            }
+        } finally {
+            exchange.close();
+        }
+    }
+
+    /**
+     * Converts between JSON text and Java values. Records are written as objects of their
+     * components, pages as their rows and paging fields, and NaN as null. Only flat objects
+     * are read, which is all the request bodies need.
+     */
+    static final class Json {
+        private static final MethodType ACCESSOR_TYPE = MethodType.methodType(Object.class, Object.class);
+
+        /** The component names and accessors of each record class written, looked up once per class */
+        private static final ClassValue<RecordShape> SHAPES = new ClassValue<>() {
+            @Override
+            protected RecordShape computeValue(Class<?> type) {
+                return new RecordShape(type);
+            }
+        };
+
+        /**
+         * The components of one record class, with accessors adapted to take and return
+         * Object so that they can be called without reflection.
+         */
+        private static final class RecordShape {
+            final String[] names;
+            final MethodHandle[] accessors;
+
+            RecordShape(Class<?> type) {
+                RecordComponent[] components = type.getRecordComponents();
+                names = new String[components.length];
+                accessors = new MethodHandle[components.length];
+                MethodHandles.Lookup lookup = MethodHandles.lookup();
+                for (int i = 0; i < components.length; i++) {
+                    names[i] = components[i].getName();
+                    try {
+                        accessors[i] = lookup.unreflect(components[i].getAccessor()).asType(ACCESSOR_TYPE);
+                    } catch (IllegalAccessException e) {
+                        throw new IllegalStateException("Cannot read " + names[i] + " of " + type.getName(), e);
+                    }
+                }
+            }
+        }
+
+        private Json() {
+        }
+
+        static String write(Object value) {
+            StringBuilder sb = new StringBuilder(256);
+            append(sb, value);
+            return sb.toString();
+        }
+
+        private static void append(StringBuilder sb, Object value) {
+            if (value == null) {
+                sb.append("null");
+            } else if (value instanceof String) {
+                appendString(sb, (String) value);
+            } else if (value instanceof Double || value instanceof Float) {
+                double d = ((Number) value).doubleValue();
+                sb.append(Double.isNaN(d) || Double.isInfinite(d) ? "null" : String.valueOf(d));
+            } else if (value instanceof Number || value instanceof Boolean) {
+                sb.append(value);
+            } else if (value instanceof Enum) {
+                appendString(sb, ((Enum<?>) value).name());
+            } else if (value instanceof Map) {
+                sb.append('{');
+                boolean first = true;
+                for (Map.Entry<?, ?> e : ((Map<?, ?>) value).entrySet()) {
+                    sb.append(first ? "" : ",");
+                    appendString(sb, String.valueOf(e.getKey()));
+                    sb.append(':');
+                    append(sb, e.getValue());
+                    first = false;
+                }
+                sb.append('}');
+            } else if (value instanceof Collection) {
+                sb.append('[');
+                boolean first = true;
+                for (Object item : (Collection<?>) value) {
+                    sb.append(first ? "" : ",");
+                    append(sb, item);
+                    first = false;
+                }
+                sb.append(']');
+            } else if (value instanceof Page) {
+                Page<?> page = (Page<?>) value;
+                sb.append("{\"rows\":");
+                append(sb, page.getRows());
+                sb.append(",\"lastID\":").append(page.getLastID()).append(",\"hasMore\":").append(page.hasMore()).append('}');
+            } else if (value.getClass().isRecord()) {
+                sb.append('{');
+                RecordShape shape = SHAPES.get(value.getClass());
+                for (int i = 0; i < shape.names.length; i++) {
+                    sb.append(i == 0 ? "" : ",");
+                    appendString(sb, shape.names[i]);
+                    sb.append(':');
+                    Object component;
+                    try {
+                        component = (Object) shape.accessors[i].invokeExact(value);
+                    } catch (RuntimeException | Error e) {
+                        throw e;
+                    } catch (Throwable e) {
+                        throw new IllegalStateException("Cannot read " + shape.names[i], e);
+                    }
+                    append(sb, component);
+                }
+                sb.append('}');
+            } else {
+                appendString(sb, value.toString());
+            }
+        }
+
+        private static void appendString(StringBuilder sb, String s) {
+            sb.append('"');
+            for (int i = 0; i < s.length(); i++) {
+                char c = s.charAt(i);
+                switch (c) {
+                    case '"':
+                        sb.append("\\\"");
+                        break;
+                    case '\\':
+                        sb.append("\\\\");
+                        break;
+                    case '\n':
+                        sb.append("\\n");
+                        break;
+                    case '\r':
+                        sb.append("\\r");
+                        break;
+                    case '\t':
+                        sb.append("\\t");
+                        break;
+                    default:
+                        if (c < 0x20) {
+                            sb.append(String.format("\\u%04x", (int) c));
+                        } else {
+                            sb.append(c);
+                        }
+                }
+            }
+            sb.append('"');
+        }
+
+        /**
+         * Parses a JSON object whose values are strings, numbers, booleans or null.
+         *
+         * @return The fields in document order; numbers are Long or Double
+         * @throws IllegalArgumentException if the text is not such an object
+         */
+        static Map<String, Object> parseObject(String text) {
+            Parser p = new Parser(text);
+            Map<String, Object> fields = new LinkedHashMap<>();
+            p.expect('{');
+            if (!p.consume('}')) {
+                do {
+                    String name = p.string();
+                    p.expect(':');
+                    fields.put(name, p.value());
+                } while (p.consume(','));
+                p.expect('}');
+            }
+            p.skipWhitespace();
+            if (p.pos != text.length()) {
+                throw new IllegalArgumentException("Unexpected text after the JSON object");
+            }
+            return fields;
+        }
+
+        private static final class Parser {
+            private final String text;
+            private int pos = 0;
+
+            Parser(String text) {
+                this.text = text;
+            }
+
+            void skipWhitespace() {
+                while (pos < text.length() && Character.isWhitespace(text.charAt(pos))) {
+                    pos++;
+                }
+            }
+
+            boolean consume(char c) {
+                skipWhitespace();
+                if (pos < text.length() && text.charAt(pos) == c) {
+                    pos++;
+                    return true;
+                }
+                return false;
             }
-            e.printStackTrace();
-            JOptionPane.showMessageDialog(null, "Error creating permit: " + e.getMessage(), 
-                "Error", JOptionPane.ERROR_MESSAGE);
-            return false;
-        } finally {
-            try {
-                if (stmt != null) stmt.close();
-            } catch (SQLException e) {
-                e.printStackTrace();
+
+            void expect(char c) {
+                if (!consume(c)) {
+                    throw new IllegalArgumentException("Invalid JSON: expected '" + c + "' at " + pos);
+                }
             }
-        }
-    }
-    
-    /**
-     * Retrieves all permit records from the database.
-     * 
-     * @return A List of String arrays where each array represents a permit:
-     *         [PermitID, Name, location, serviceType]
-     *         Returns an empty list if no permits exist
-     * @throws SQLException if a database access error occurs
-     */
-    public static List<String[]> getAllPermits() {
-        List<String[]> permits = new ArrayList<>();
-        String sql = "SELECT PermitID, Name, location, serviceType FROM Permit";
-        
-        try (Connection conn = DBConnection.getConnection();
-             Statement stmt = conn.createStatement();
-             ResultSet rs = stmt.executeQuery(sql)) {
-            
-            while (rs.next()) {
-                String[] permit = new String[4];
-                permit[0] = String.valueOf(rs.getInt("PermitID"));
-                permit[1] = rs.getString("Name");
-                permit[2] = rs.getString("location");
-                permit[3] = rs.getString("serviceType");
-                permits.add(permit);
+
+            Object value() {
+                skipWhitespace();
+                if (pos >= text.length()) {
+                    throw new IllegalArgumentException("Invalid JSON: unexpected end");
+                }
+                char c = text.charAt(pos);
+                if (c == '"') {
+                    return string();
+                }
+                for (String literal : new String[] { "true", "false", "null" }) {
+                    if (text.startsWith(literal, pos)) {
+                        pos += literal.length();
+                        return literal.equals("null") ? null : Boolean.valueOf(literal);
+                    }
+                }
+                int start = pos;
+                while (pos < text.length() && "+-0123456789.eE".indexOf(text.charAt(pos)) >= 0) {
+                    pos++;
+                }
+                String number = text.substring(start, pos);
+                try {
+                    return number.matches("-?\\d{1,18}") ? (Object) Long.valueOf(number) : (Object) Double.valueOf(number);
+                } catch (NumberFormatException e) {
+                    throw new IllegalArgumentException("Invalid JSON value at " + start);
+                }
+            }
+
+            String string() {
+                expect('"');
+                StringBuilder sb = new StringBuilder();
+                while (pos < text.length()) {
+                    char c = text.charAt(pos++);
+                    if (c == '"') {
+                        return sb.toString();
+                    }
+                    if (c != '\\') {
+                        sb.append(c);
+                        continue;
+                    }
+                    if (pos >= text.length()) {
+                        break;
+                    }
+                    char e = text.charAt(pos++);
+                    switch (e) {
+                        case 'n':
+                            sb.append('\n');
+                            break;
+                        case 't':
+                            sb.append('\t');
+                            break;
+                        case 'r':
+                            sb.append('\r');
+                            break;
+                        case 'b':
+                            sb.append('\b');
+                            break;
+                        case 'f':
+                            sb.append('\f');
+                            break;
+                        case 'u':
+                            if (pos + 4 > text.length()) {
+                                throw new IllegalArgumentException("Invalid JSON escape at " + pos);
+                            }
+                            sb.append((char) Integer.parseInt(text.substring(pos, pos + 4), 16));
+                            pos += 4;
+                            break;
+                        default:
+                            sb.append(e);
+                    }
+                }
+                throw new IllegalArgumentException("Invalid JSON: unterminated string");
             }
-            
-        } catch (SQLException e) {
-            e.printStackTrace();
-            JOptionPane.showMessageDialog(null, "Error retrieving permits: " + e.getMessage(), 
-                "Error", JOptionPane.ERROR_MESSAGE);
         }
-        
-        return permits;
     }
-    
+}
+
+/**
+ * The ReferenceDataCache class keeps in-memory snapshots of the small, read-mostly
+ * reference tables: Permit, TransportSchedule and Accommodation.
+ *
+ * The tables are loaded once before {@link #start()} returns and then reloaded in the
+ * background on a fixed interval ({@code hajjguide.refdata.refreshMs}, default one minute).
+ * Each reload builds a complete new list and swaps it in with a single volatile write, so
+ * readers never block, never see a half-loaded table and never wait on the database.
+ * The matching {@code create*} DAO methods ask for an immediate reload of their table.
+ */
+class ReferenceDataCache {
+    private static final long REFRESH_INTERVAL_MS = Long.getLong("hajjguide.refdata.refreshMs", 60000L);
+
+    private static final ScheduledExecutorService loader = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "hajjguide-refdata-loader");
+        t.setDaemon(true);
+        return t;
+    });
+
+    /** Snapshot of the Permit table */
+    static final Table<Permit> PERMITS = new Table<>("permits", PermitDAO::queryAllPermits);
+
+    /** Snapshot of the TransportSchedule table */
+    static final Table<TransportSchedule> TRANSPORT_SCHEDULES =
+            new Table<>("transport schedules", TransportScheduleDAO::queryAllTransportSchedules);
+
+    /** Snapshot of the Accommodation table */
+    static final Table<Accommodation> ACCOMMODATIONS =
+            new Table<>("accommodations", AccommodationDAO::queryAllAccommodations);
+
+    private static boolean started = false;
+
+    private ReferenceDataCache() {
+    }
+
     /**
-     * Assigns a permit to a specific pilgrim.
-     * 
-     * @param pilgrimID The ID of the pilgrim to assign the permit to
-     * @param permitID The ID of the permit to assign
-     * @return true if the assignment was successful, false otherwise
-     * @throws SQLException if a database access error occurs or if the assignment violates constraints
+     * Loads every table and the location indexes built from them, waiting until the loads
+     * are done, then schedules the periodic reload. A table that fails to load stays empty
+     * until a later reload succeeds. The pilgrim name index is built in the background.
+     * After their first load the indexes are kept current by their DAOs. Calling this more
+     * than once has no effect.
      */
-    public static boolean assignPermitToPilgrim(int pilgrimID, int permitID) {
-        String sql = "INSERT INTO PilgrimPermit (PilgrimID, PermitID) VALUES (?, ?)";
-        
-        Connection conn = null;
-        PreparedStatement stmt = null;
-        
+    static synchronized void start() {
+        if (started) {
+            return;
+        }
+        started = true;
+        Runnable reloadAll = () -> {
+            PERMITS.reload();
+            TRANSPORT_SCHEDULES.reload();
+            ACCOMMODATIONS.reload();
+            AccommodationDAO.loadLocationIndex();
+            PermitDAO.loadLocationIndex();
+        };
         try {
-            conn = DBConnection.getConnection();
-            stmt = conn.prepareStatement(sql);
-            
-            stmt.setInt(1, pilgrimID);
-            stmt.setInt(2, permitID);
-            
-            int rowsAffected = stmt.executeUpdate();
-            conn.commit();
-            return rowsAffected > 0;
-            
-        } catch (SQLException e) {
-            try {
-                if (conn != null) conn.rollback();
-            } catch (SQLException ex) {
-                ex.printStackTrace();
-            }
-            e.printStackTrace();
-            JOptionPane.showMessageDialog(null, "Error assigning permit to pilgrim: " + e.getMessage(), 
-                "Error", JOptionPane.ERROR_MESSAGE);
-            return false;
-        } finally {
-            try {
-                if (stmt != null) stmt.close();
-            } catch (SQLException e) {
-                e.printStackTrace();
-            }
+            loader.submit(reloadAll).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            ErrorLog.report("ReferenceDataCache", "Could not load reference data: " + e.getCause());
         }
+        loader.execute(PilgrimDAO::loadNameIndex);
+        loader.scheduleWithFixedDelay(reloadAll, REFRESH_INTERVAL_MS, REFRESH_INTERVAL_MS, TimeUnit.MILLISECONDS);
     }
-}
 
+    /** @return The cached permits, or an empty list if they could not be loaded */
+    static List<Permit> getPermits() {
+        return PERMITS.get();
+    }
+
+    /** @return The cached transport schedules, or an empty list if they could not be loaded */
+    static List<TransportSchedule> getTransportSchedules() {
+        return TRANSPORT_SCHEDULES.get();
+    }
+
+    /** @return The cached accommodations, or an empty list if they could not be loaded */
+    static List<Accommodation> getAccommodations() {
+        return ACCOMMODATIONS.get();
+    }
 
-/**
- * The AdminDAO class provides data access operations for administrator accounts.
- * It handles authentication and retrieval of administrator information.
- * This class implements the Data Access Object (DAO) pattern to separate database operations
- * from business logic.
- */
-class AdminDAO {
-    
     /**
-     * Validates administrator credentials against the database.
-     * 
-     * @param adminID The unique identifier of the administrator
-     * @param password The password to validate (in plaintext)
-     * @return true if the credentials are valid, false otherwise
-     * @throws SQLException if a database access error occurs
-     * 
-     * @implNote This method performs a direct password comparison. In production environments,
-     *           consider using password hashing and salting for security.
+     * Builds a summary of every table's snapshot, one line per table.
+     *
+     * @return A human-readable statistics string
      */
-    public static boolean validateAdmin(int adminID, String password) {
-        String sql = "SELECT * FROM Admin WHERE AdminID = ? AND Password = ?";
-        
-        try (Connection conn = DBConnection.getConnection();
-             PreparedStatement stmt = conn.prepareStatement(sql)) {
-            
-            stmt.setInt(1, adminID);
-            stmt.setString(2, password);
-            
-            ResultSet rs = stmt.executeQuery();
-            boolean isValid = rs.next();
-            rs.close();
-            return isValid;
-            
-        } catch (SQLException e) {
-            e.printStackTrace();
-            JOptionPane.showMessageDialog(null, "Error validating admin: " + e.getMessage(), 
-                "Error", JOptionPane.ERROR_MESSAGE);
-            return false;
-        }
+    static String getStats() {
+        return PERMITS.getStats() + "\n" + TRANSPORT_SCHEDULES.getStats() + "\n" + ACCOMMODATIONS.getStats();
     }
-    
+
     /**
-     * Retrieves administrator information by ID.
-     * 
-     * @param adminID The unique identifier of the administrator
-     * @return A String array containing administrator details:
-     *         [AdminID, AdminName, phone, Email]
-     *         Returns an array with null elements if admin not found
-     * @throws SQLException if a database access error occurs
-     * 
-     * @see #validateAdmin For authentication before retrieving details
+     * Loads all rows of one table.
+     *
+     * @param <T> The type of row
      */
-    public static String[] getAdminById(int adminID) {
-        String sql = "SELECT AdminID, AdminName, phone, Email FROM Admin WHERE AdminID = ?";
-        String[] admin = new String[4];
-        
-        try (Connection conn = DBConnection.getConnection();
-             PreparedStatement stmt = conn.prepareStatement(sql)) {
-            
-            stmt.setInt(1, adminID);
-            ResultSet rs = stmt.executeQuery();
-            
-            if (rs.next()) {
-                admin[0] = String.valueOf(rs.getInt("AdminID"));
-                admin[1] = rs.getString("AdminName");
-                admin[2] = rs.getString("phone");
-                admin[3] = rs.getString("Email");
+    @FunctionalInterface
+    interface TableLoader<T> {
+        List<T> load() throws SQLException;
+    }
+
+    /**
+     * The snapshot of one reference table.
+     *
+     * @param <T> The type of row
+     */
+    static final class Table<T> {
+        private final String name;
+        private final TableLoader<T> tableLoader;
+        private final AtomicBoolean reloadPending = new AtomicBoolean(false);
+        private volatile List<T> snapshot = null;
+        private volatile long loadedAt = 0;
+        private final AtomicLong loadCount = new AtomicLong();
+        private final AtomicLong failureCount = new AtomicLong();
+
+        Table(String name, TableLoader<T> tableLoader) {
+            this.name = name;
+            this.tableLoader = tableLoader;
+        }
+
+        /**
+         * @return The current snapshot, or null if the table has not been loaded yet
+         */
+        List<T> current() {
+            return snapshot;
+        }
+
+        /**
+         * @return The current snapshot, or an empty list if the table has not been loaded yet
+         */
+        List<T> get() {
+            List<T> s = snapshot;
+            return s != null ? s : Collections.emptyList();
+        }
+
+        /**
+         * Asks for the table to be reloaded in the background as soon as possible.
+         * Several requests made before the reload starts are served by one reload.
+         */
+        void refreshAsync() {
+            if (reloadPending.compareAndSet(false, true)) {
+                loader.execute(() -> {
+                    reloadPending.set(false);
+                    reload();
+                });
             }
-            
-            rs.close();
-            
-        } catch (SQLException e) {
-            e.printStackTrace();
-            JOptionPane.showMessageDialog(null, "Error retrieving admin: " + e.getMessage(), 
-                "Error", JOptionPane.ERROR_MESSAGE);
         }
-        
-        return admin;
-    }
-}
 
+        /**
+         * Reloads the table and swaps in the new snapshot. If the rows have not changed
+         * the previous list is kept, so a snapshot's identity only changes with its contents
+         * and readers may key derived data on it. On failure the previous snapshot is kept.
+         * Runs on the loader thread.
+         */
+        private void reload() {
+            try {
+                List<T> rows = Collections.unmodifiableList(new ArrayList<>(tableLoader.load()));
+                if (!rows.equals(snapshot)) {
+                    snapshot = rows;
+                }
+                loadedAt = System.currentTimeMillis();
+                loadCount.incrementAndGet();
+            } catch (SQLException | RuntimeException e) {
+                failureCount.incrementAndGet();
+                ErrorLog.report("ReferenceDataCache", "Could not reload " + name + ": " + e.getMessage());
+            }
+        }
 
+        /**
+         * @return A one-line summary of this table's snapshot
+         */
+        String getStats() {
+            List<T> s = snapshot;
+            long age = loadedAt == 0 ? -1 : (System.currentTimeMillis() - loadedAt) / 1000;
+            return String.format("%s: rows=%s ageSeconds=%d loads=%d failures=%d", name,
+                    s == null ? "not loaded" : String.valueOf(s.size()), age, loadCount.get(), failureCount.get());
+        }
+    }
+}
 
 /**
  * The main class for the Hajj Guide application that serves as the entry point
@@ -1100,8 +12394,27 @@ public class HajjGuide {
      * @param args Command line arguments (not used)
      */
     public static void main(String[] args) {
+        startServices();
         new HajjGuide();
     }
+
+    /**
+     * Starts the background services of the data tier: seat reconciliation, the return of
+     * unused seats at shutdown and the reference data cache. Used by every entry point
+     * that serves users, including {@link ApiServer}.
+     */
+    static void startServices() {
+        if (Repositories.getBackend() == Repositories.Backend.JDBC) {
+            if (Boolean.getBoolean("hajjguide.seats.reconcileOnStart")) {
+                TransportScheduleDAO.reconcileSeatInventory();
+            }
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                TransportScheduleDAO.getWaitlistPromoter().flush();
+                TransportScheduleDAO.getSeatInventory().returnUnused();
+            }, "hajjguide-seat-return"));
+            ReferenceDataCache.start();
+        }
+    }
 }
 
 /**
@@ -1185,15 +12498,20 @@ class PilgrimLogin {
             String pass = new String(passwordField.getPassword());
             try {
                 int pilgrimID = Integer.parseInt(user);
-                String[] pilgrim = PilgrimDAO.getPilgrimById(pilgrimID);
-        
-                if (pilgrim[0] != null) { // Pilgrim exist
-                    // In a real app, you would verify the password against a stored hash
-                    frame.dispose();
-                    new PilgrimDashboard(pilgrimID);
-                } else {
-                    JOptionPane.showMessageDialog(frame, "Invalid login", "Error", JOptionPane.ERROR_MESSAGE);
-                }
+                Runnable done = AsyncRepositories.showLoading(frame, loginButton, "Logging in...");
+                AsyncRepositories.whenDone(AsyncRepositories.getPilgrimById(pilgrimID), pilgrim -> {
+                    done.run();
+                    if (pilgrim != null) { // Pilgrim exist
+                        // In a real app, you would verify the password against a stored hash
+                        frame.dispose();
+                        new PilgrimDashboard(pilgrimID);
+                    } else {
+                        JOptionPane.showMessageDialog(frame, "Invalid login", "Error", JOptionPane.ERROR_MESSAGE);
+                    }
+                }, error -> {
+                    done.run();
+                    JOptionPane.showMessageDialog(frame, "Login failed: " + error.getMessage(), "Error", JOptionPane.ERROR_MESSAGE);
+                });
             } catch (NumberFormatException ex) {
                 JOptionPane.showMessageDialog(frame, "Invalid ID format", "Error", JOptionPane.ERROR_MESSAGE);
             }
@@ -1295,7 +12613,7 @@ class PilgrimRegister {
 
         formPanel.add(createLabel("Full Name:", labelFont));
         formPanel.add(nameField);
-        formPanel.add(createLabel("ID Number:", labelFont));
+        formPanel.add(createLabel("ID Number (optional):", labelFont));
         formPanel.add(idField);
         formPanel.add(createLabel("Phone Number:", labelFont));
         formPanel.add(phoneField);
@@ -1327,29 +12645,41 @@ class PilgrimRegister {
         JOptionPane.showMessageDialog(frame, "Passwords do not match!", "Error", JOptionPane.ERROR_MESSAGE);
     } else {
         try {
-            int pilgrimID = Integer.parseInt(idField.getText());
+            // A blank ID lets the system assign the next free PilgrimID
+            String idText = idField.getText().trim();
+            int pilgrimID = idText.isEmpty() ? 0 : Integer.parseInt(idText);
             String pilgrimName = nameField.getText();
             String phone = phoneField.getText();
             String nationality = nationalityField.getText();
             
             // Call with correct parameters
-            boolean success = PilgrimDAO.createPilgrim(
-                pilgrimName, 
+            Pilgrim pilgrim = new Pilgrim(
                 pilgrimID, 
+                pilgrimName, 
                 phone, 
                 nationality, 
                 "", // specialNeed (empty for now)
                 "", // allergies (empty for now)
                 0   // age (0 for now)
             );
-            
-            if (success) {
-                JOptionPane.showMessageDialog(frame, "Registered successfully!", "Success", JOptionPane.INFORMATION_MESSAGE);
-                frame.dispose();
-                new PilgrimDashboard(pilgrimID);
-            } else {
-                JOptionPane.showMessageDialog(frame, "Registration failed!", "Error", JOptionPane.ERROR_MESSAGE);
-            }
+            Runnable done = AsyncRepositories.showLoading(frame, registerBtn, "Registering...");
+            CompletableFuture<Integer> created = idText.isEmpty()
+                ? AsyncRepositories.createPilgrimWithAssignedId(pilgrim)
+                : AsyncRepositories.createPilgrim(pilgrim).thenApply(ok -> ok ? pilgrimID : -1);
+            AsyncRepositories.whenDone(created, assignedID -> {
+                done.run();
+                if (assignedID > 0) {
+                    JOptionPane.showMessageDialog(frame, "Registered successfully!\nYour ID Number is " + assignedID,
+                        "Success", JOptionPane.INFORMATION_MESSAGE);
+                    frame.dispose();
+                    new PilgrimDashboard(assignedID);
+                } else {
+                    JOptionPane.showMessageDialog(frame, "Registration failed!", "Error", JOptionPane.ERROR_MESSAGE);
+                }
+            }, error -> {
+                done.run();
+                JOptionPane.showMessageDialog(frame, "Registration failed: " + error.getMessage(), "Error", JOptionPane.ERROR_MESSAGE);
+            });
         } catch(NumberFormatException ex) {
             JOptionPane.showMessageDialog(frame, "Invalid ID format!", "Error", JOptionPane.ERROR_MESSAGE);
         }    
@@ -1495,7 +12825,7 @@ class PilgrimDashboard {
         personalBtn.addActionListener(e -> new PilgrimPersonalInfo(pilgrimID));
         medicalBtn.addActionListener(e -> new PilgrimMedicalFile());
         accommodationBtn.addActionListener(e -> new PilgrimAccommodation());
-        transportBtn.addActionListener(e -> new PilgrimTransport());
+        transportBtn.addActionListener(e -> new PilgrimTransport(pilgrimID));
         permitBtn.addActionListener(e -> new PilgrimPermit());
 
         homeBtn.addActionListener(e -> {
@@ -1578,27 +12908,6 @@ class PilgrimPersonalInfo {
                 BorderFactory.createEmptyBorder(35, 35, 35, 35)
         ));
 
-        String[] pilgrim = PilgrimDAO.getPilgrimById(pilgrimID);
-        
-        // ===== Input Fields =====
-        
-        if (pilgrim[0] != null) {
-        card.add(createLabel("👤 Full Name:"));
-        card.add(createStyledTextField(pilgrim[1]));
-
-        card.add(createLabel("🆔 ID Number:"));
-        card.add(createStyledTextField(pilgrim[0]));
-
-        card.add(createLabel("📱 Phone Number:"));
-        card.add(createStyledTextField("0501234567"));
-
-        card.add(createLabel("🌍 Nationality:"));
-        card.add(createStyledTextField("Saudi"));
-
-        card.add(createLabel("✉️ Email:"));
-        card.add(createStyledTextField("john@example.com"));
-        }
-
         // ===== Buttons Panel =====
         JPanel buttonPanel = new JPanel(new GridLayout(1, 2, 15, 0));
         buttonPanel.setOpaque(false);
@@ -1626,6 +12935,42 @@ class PilgrimPersonalInfo {
         frame.add(buttonPanel, gbc);
 
         frame.setVisible(true);
+
+        Runnable loaded = AsyncRepositories.showLoading(frame, homeBtn, "Loading...");
+        AsyncRepositories.whenDone(AsyncRepositories.getPilgrimById(pilgrimID), pilgrim -> {
+            loaded.run();
+            if (pilgrim != null) {
+                showPilgrim(card, pilgrim);
+            }
+        }, error -> {
+            loaded.run();
+            JOptionPane.showMessageDialog(frame, "Could not load your information: " + error.getMessage(), "Error", JOptionPane.ERROR_MESSAGE);
+        });
+    }
+
+    /**
+     * Fills the card with the pilgrim's details once they have loaded.
+     * @param card The card panel
+     * @param pilgrim The pilgrim to show
+     */
+    private void showPilgrim(JPanel card, Pilgrim pilgrim) {
+        card.add(createLabel("👤 Full Name:"));
+        card.add(createStyledTextField(pilgrim.pilgrimName()));
+
+        card.add(createLabel("🆔 ID Number:"));
+        card.add(createStyledTextField(String.valueOf(pilgrim.pilgrimID())));
+
+        card.add(createLabel("📱 Phone Number:"));
+        card.add(createStyledTextField("0501234567"));
+
+        card.add(createLabel("🌍 Nationality:"));
+        card.add(createStyledTextField("Saudi"));
+
+        card.add(createLabel("✉️ Email:"));
+        card.add(createStyledTextField("john@example.com"));
+
+        card.revalidate();
+        card.repaint();
     }
 
     /**
@@ -1718,26 +13063,6 @@ class PilgrimMedicalFile {
                 BorderFactory.createEmptyBorder(35, 35, 35, 35)
         ));
 
-        String[] medicalProfile = MedicalProfileDAO.getMedicalProfileByPilgrimId(pilgrimID);
-        
-        // ===== Input Fields =====
-        if (medicalProfile[0] != null) {
-        card.add(createLabel("🩸 Blood Type:"));
-        card.add(createStyledTextField(medicalProfile[1]));
-
-        card.add(createLabel("🌾 Allergies:"));
-        card.add(createStyledTextField("None"));
-
-        card.add(createLabel("🧬 Medical Conditions:"));
-        card.add(createStyledTextField("None"));
-
-        card.add(createLabel("👨‍👩‍👦 Emergency Contact Name:"));
-        card.add(createStyledTextField("Ahmed"));
-
-        card.add(createLabel("📞 Emergency Contact Phone:"));
-        card.add(createStyledTextField("0509876543"));
-        }
-
         // ===== Buttons Panel =====
         JPanel buttonPanel = new JPanel(new GridLayout(1, 2, 15, 0));
         buttonPanel.setOpaque(false);
@@ -1765,6 +13090,42 @@ class PilgrimMedicalFile {
         frame.add(buttonPanel, gbc);
 
         frame.setVisible(true);
+
+        Runnable loaded = AsyncRepositories.showLoading(frame, homeBtn, "Loading...");
+        AsyncRepositories.whenDone(AsyncRepositories.getMedicalProfileByPilgrimId(pilgrimID), medicalProfile -> {
+            loaded.run();
+            if (medicalProfile != null) {
+                showMedicalProfile(card, medicalProfile);
+            }
+        }, error -> {
+            loaded.run();
+            JOptionPane.showMessageDialog(frame, "Could not load your medical file: " + error.getMessage(), "Error", JOptionPane.ERROR_MESSAGE);
+        });
+    }
+
+    /**
+     * Fills the card with the medical profile once it has loaded.
+     * @param card The card panel
+     * @param medicalProfile The profile to show
+     */
+    private void showMedicalProfile(JPanel card, MedicalProfile medicalProfile) {
+        card.add(createLabel("🩸 Blood Type:"));
+        card.add(createStyledTextField(medicalProfile.bloodType()));
+
+        card.add(createLabel("🌾 Allergies:"));
+        card.add(createStyledTextField("None"));
+
+        card.add(createLabel("🧬 Medical Conditions:"));
+        card.add(createStyledTextField("None"));
+
+        card.add(createLabel("👨‍👩‍👦 Emergency Contact Name:"));
+        card.add(createStyledTextField("Ahmed"));
+
+        card.add(createLabel("📞 Emergency Contact Phone:"));
+        card.add(createStyledTextField("0509876543"));
+
+        card.revalidate();
+        card.repaint();
     }
 
     /**
@@ -1976,11 +13337,15 @@ class PilgrimAccommodation {
  */
 class PilgrimTransport {
     JFrame frame;
+    private int pilgrimID;
 
     /**
      * Constructs the transportation interface.
+     * @param pilgrimID The ID of the signed-in pilgrim, who the tickets are booked for
      */
-    public PilgrimTransport() {
+    public PilgrimTransport(int pilgrimID) {
+        this.pilgrimID = pilgrimID;
+        
         frame = new JFrame("🚌 Transport");
         frame.setSize(680, 650);
         frame.setDefaultCloseOperation(JFrame.DISPOSE_ON_CLOSE);
@@ -2005,7 +13370,7 @@ class PilgrimTransport {
         Color exitColor = new Color(220, 53, 69); // Red
 
         // ===== Buttons =====
-        JButton viewOptionsBtn = createStyledButton("🗺️ View Transportation Options", mainColor);
+        JButton planJourneyBtn = createStyledButton("🗺️ Plan a Journey", mainColor);
         JButton bookTicketBtn = createStyledButton("🎫 Book a Ticket", mainColor);
         JButton viewTicketBtn = createStyledButton("🔍 View Your Ticket", mainColor);
         JButton cancelTicketBtn = createStyledButton("❌ Cancel Your Ticket", mainColor);
@@ -2013,10 +13378,10 @@ class PilgrimTransport {
         JButton exitBtn = createStyledButton("🚪 Exit", exitColor);
 
         // ===== Actions =====
-        viewOptionsBtn.addActionListener(e -> viewOptions());
-        bookTicketBtn.addActionListener(e -> bookTicket());
-        viewTicketBtn.addActionListener(e -> viewTicket());
-        cancelTicketBtn.addActionListener(e -> cancelTicket());
+        planJourneyBtn.addActionListener(e -> planJourney(planJourneyBtn));
+        bookTicketBtn.addActionListener(e -> bookTicket(bookTicketBtn));
+        viewTicketBtn.addActionListener(e -> viewTicket(viewTicketBtn));
+        cancelTicketBtn.addActionListener(e -> cancelTicket(cancelTicketBtn));
         homeBtn.addActionListener(e -> {
             frame.dispose();
             new HajjGuide();
@@ -2024,7 +13389,7 @@ class PilgrimTransport {
         exitBtn.addActionListener(e -> frame.dispose());
 
         // ===== Add Buttons =====
-        card.add(viewOptionsBtn);
+        card.add(planJourneyBtn);
         card.add(Box.createVerticalStrut(15));
         card.add(bookTicketBtn);
         card.add(Box.createVerticalStrut(15));
@@ -2041,50 +13406,233 @@ class PilgrimTransport {
     }
 
     /**
-     * Displays available transportation options.
+     * Asks where from, where to and when, and shows the journey that arrives earliest.
+     * @param button The button that started the search, disabled while it is busy
+     */
+    private void planJourney(JButton button) {
+        Runnable loaded = AsyncRepositories.showLoading(frame, button, "Loading...");
+        AsyncRepositories.whenDone(AsyncRepositories.getJourneyStops(), stops -> {
+            loaded.run();
+            if (stops.size() < 2) {
+                JOptionPane.showMessageDialog(frame, "⚠️ No routes are scheduled yet.", "Error", JOptionPane.ERROR_MESSAGE);
+                return;
+            }
+            JComboBox<String> fromBox = new JComboBox<>(stops.toArray(new String[0]));
+            JComboBox<String> toBox = new JComboBox<>(stops.toArray(new String[0]));
+            toBox.setSelectedIndex(1);
+            JTextField timeField = new JTextField(LocalDateTime.now().format(DateTimeFormatter.ofPattern("HH:mm")));
+            JPanel form = new JPanel(new GridLayout(3, 2, 8, 8));
+            form.add(new JLabel("From:"));
+            form.add(fromBox);
+            form.add(new JLabel("To:"));
+            form.add(toBox);
+            form.add(new JLabel("Leave after (HH:mm):"));
+            form.add(timeField);
+            if (JOptionPane.showConfirmDialog(frame, form, "🗺️ Plan a Journey",
+                    JOptionPane.OK_CANCEL_OPTION, JOptionPane.PLAIN_MESSAGE) != JOptionPane.OK_OPTION) {
+                return;
+            }
+            int after = JourneyPlanner.parseTime(timeField.getText());
+            if (after < 0) {
+                JOptionPane.showMessageDialog(frame, "⚠️ Please enter the time as HH:mm.", "Error", JOptionPane.ERROR_MESSAGE);
+                return;
+            }
+            String from = (String) fromBox.getSelectedItem();
+            String to = (String) toBox.getSelectedItem();
+            Runnable planned = AsyncRepositories.showLoading(frame, button, "Planning...");
+            AsyncRepositories.whenDone(AsyncRepositories.planJourney(from, to, after), journey -> {
+                planned.run();
+                if (journey == null) {
+                    JOptionPane.showMessageDialog(frame, "No connection from " + from + " to " + to
+                            + " after " + JourneyPlanner.formatTime(after) + " today or tomorrow.",
+                            "🗺️ No Journey Found", JOptionPane.INFORMATION_MESSAGE);
+                } else {
+                    JOptionPane.showMessageDialog(frame, journey.describe(), "🗺️ " + from + " to " + to,
+                            JOptionPane.INFORMATION_MESSAGE);
+                }
+            }, error -> {
+                planned.run();
+                JOptionPane.showMessageDialog(frame, "Could not plan the journey: " + error.getMessage(), "Error", JOptionPane.ERROR_MESSAGE);
+            });
+        }, error -> {
+            loaded.run();
+            JOptionPane.showMessageDialog(frame, "Could not load the routes: " + error.getMessage(), "Error", JOptionPane.ERROR_MESSAGE);
+        });
+    }
+
+    /**
+     * Handles the ticket booking process. The pilgrim picks a departure and a seat is booked
+     * on it in the background.
+     * @param button The button that started the booking, disabled while it is busy
      */
-    private void viewOptions() {
-        JOptionPane.showMessageDialog(frame,
-                "🚌 Available Bus Locations:\n- 🕋 Jabal Alnoor\n- 🏕️ Mina Camp\n- 🏞️ Arafat Plain\n- 🌌 Muzdalifah");
+    private void bookTicket(JButton button) {
+        Runnable loaded = AsyncRepositories.showLoading(frame, button, "Loading...");
+        AsyncRepositories.whenDone(AsyncRepositories.getAllTransportSchedules(), schedules -> {
+            loaded.run();
+            if (schedules.isEmpty()) {
+                JOptionPane.showMessageDialog(frame, "⚠️ No departures are scheduled yet.", "Error", JOptionPane.ERROR_MESSAGE);
+                return;
+            }
+            JComboBox<String> choices = new JComboBox<>();
+            for (TransportSchedule schedule : schedules) {
+                choices.addItem(schedule.route() + " at " + schedule.departureTime() + " (" + schedule.transportType() + ")");
+            }
+            if (JOptionPane.showConfirmDialog(frame, choices, "🎫 Choose a Departure",
+                    JOptionPane.OK_CANCEL_OPTION) != JOptionPane.OK_OPTION) {
+                return;
+            }
+            TransportSchedule chosen = schedules.get(choices.getSelectedIndex());
+            Runnable booked = AsyncRepositories.showLoading(frame, button, "Booking...");
+            AsyncRepositories.whenDone(AsyncRepositories.bookTicket(pilgrimID, chosen.scheduleID()), ticket -> {
+                booked.run();
+                if (ticket == null) {
+                    offerWaitlist(button, chosen);
+                    return;
+                }
+                showTicket("✅ Ticket Booked", ticket, chosen);
+            }, error -> {
+                booked.run();
+                JOptionPane.showMessageDialog(frame, "Could not book the ticket: " + error.getMessage(), "Error", JOptionPane.ERROR_MESSAGE);
+            });
+        }, error -> {
+            loaded.run();
+            JOptionPane.showMessageDialog(frame, "Could not load departures: " + error.getMessage(), "Error", JOptionPane.ERROR_MESSAGE);
+        });
     }
 
     /**
-     * Handles the ticket booking process.
+     * Offers to put the pilgrim on the waitlist of a departure they could not book.
+     * @param button The booking button, disabled while the request is busy
+     * @param schedule The departure that could not be booked
      */
-    private void bookTicket() {
-        JOptionPane.showMessageDialog(frame,
-                "✅ Ticket booked successfully!\n🎫 Ticket Number: 1000\n🛣️ Route: Mina Camp to Al Haram at 08:00 AM");
+    private void offerWaitlist(JButton button, TransportSchedule schedule) {
+        int choice = JOptionPane.showConfirmDialog(frame, "⚠️ No ticket was booked. This departure may be full, "
+            + "or you may already have a ticket on it.\n\nJoin the waitlist for " + schedule.route() + " at "
+            + schedule.departureTime() + "?\nElderly pilgrims and pilgrims with special needs are served first.",
+            "⏳ Waitlist", JOptionPane.YES_NO_OPTION, JOptionPane.WARNING_MESSAGE);
+        if (choice != JOptionPane.YES_OPTION) {
+            return;
+        }
+        Runnable joined = AsyncRepositories.showLoading(frame, button, "Joining...");
+        AsyncRepositories.whenDone(AsyncRepositories.joinWaitlist(pilgrimID, schedule.scheduleID()), success -> {
+            joined.run();
+            if (success) {
+                JOptionPane.showMessageDialog(frame, "⏳ You are on the waitlist. If a seat is freed, a ticket is booked "
+                    + "for you automatically and listed under View Your Ticket.");
+            } else {
+                JOptionPane.showMessageDialog(frame, "⚠️ Could not join the waitlist.", "Error", JOptionPane.ERROR_MESSAGE);
+            }
+        }, error -> {
+            joined.run();
+            JOptionPane.showMessageDialog(frame, "Could not join the waitlist: " + error.getMessage(), "Error", JOptionPane.ERROR_MESSAGE);
+        });
     }
 
     /**
-     * Displays ticket information.
+     * Displays ticket information, or all of the pilgrim's tickets if no number is entered.
+     * @param button The button that started the lookup, disabled while it is busy
      */
-    private void viewTicket() {
-        String ticket = JOptionPane.showInputDialog(frame, "🔎 Enter your ticket number:");
-        if (ticket != null && !ticket.trim().isEmpty()) {
-            if (ticket.equals("1000")) {
-                String[][] data = {
-                        {"🎫 Ticket Number", ticket},
-                        {"🛣️ Route", "Jabal Alnoor to Al Haram"},
-                        {"🕒 Time", "08:00 AM"}
-                };
-                String[] columns = {"Category", "Details"};
-                showTableDialog("📄 Ticket Details", data, columns);
-            } else {
+    private void viewTicket(JButton button) {
+        String input = JOptionPane.showInputDialog(frame, "🔎 Enter your ticket number, or leave it empty to list all your tickets:");
+        if (input == null) {
+            return;
+        }
+        if (input.trim().isEmpty()) {
+            listTickets(button);
+            return;
+        }
+        Integer ticketNumber = parseTicketNumber(input);
+        if (ticketNumber == null) {
+            return;
+        }
+        Runnable loaded = AsyncRepositories.showLoading(frame, button, "Loading...");
+        AsyncRepositories.whenDone(AsyncRepositories.getTicket(ticketNumber), ticket -> {
+            if (ticket == null || ticket.pilgrimID() != pilgrimID) {
+                loaded.run();
                 JOptionPane.showMessageDialog(frame, "⚠️ Ticket number not found!", "Error", JOptionPane.ERROR_MESSAGE);
+                return;
             }
-        }
+            AsyncRepositories.whenDone(AsyncRepositories.getAllTransportSchedules(), schedules -> {
+                loaded.run();
+                TransportSchedule schedule = null;
+                for (TransportSchedule s : schedules) {
+                    if (s.scheduleID() == ticket.scheduleID()) {
+                        schedule = s;
+                    }
+                }
+                showTicket("📄 Ticket Details", ticket, schedule);
+            }, error -> {
+                loaded.run();
+                showTicket("📄 Ticket Details", ticket, null);
+            });
+        }, error -> {
+            loaded.run();
+            JOptionPane.showMessageDialog(frame, "Could not look up the ticket: " + error.getMessage(), "Error", JOptionPane.ERROR_MESSAGE);
+        });
+    }
+
+    /**
+     * Lists all of the pilgrim's tickets, including those booked from the waitlist.
+     * @param button The button that started the lookup, disabled while it is busy
+     */
+    private void listTickets(JButton button) {
+        Runnable loaded = AsyncRepositories.showLoading(frame, button, "Loading...");
+        AsyncRepositories.whenDone(AsyncRepositories.getTicketsByPilgrim(pilgrimID), tickets -> {
+            if (tickets.isEmpty()) {
+                loaded.run();
+                JOptionPane.showMessageDialog(frame, "⚠️ You have no tickets yet.", "Error", JOptionPane.ERROR_MESSAGE);
+                return;
+            }
+            AsyncRepositories.whenDone(AsyncRepositories.getAllTransportSchedules(), schedules -> {
+                loaded.run();
+                Map<Integer, TransportSchedule> byId = new HashMap<>();
+                for (TransportSchedule s : schedules) {
+                    byId.put(s.scheduleID(), s);
+                }
+                String[][] data = new String[tickets.size()][];
+                for (int i = 0; i < data.length; i++) {
+                    Ticket ticket = tickets.get(i);
+                    TransportSchedule schedule = byId.get(ticket.scheduleID());
+                    data[i] = new String[] { String.valueOf(ticket.ticketNumber()),
+                            schedule == null ? "Schedule " + ticket.scheduleID() : schedule.route(),
+                            schedule == null ? "-" : schedule.departureTime(),
+                            ticket.isBooked() ? "Booked" : "Canceled" };
+                }
+                String[] columns = {"Ticket", "Route", "Time", "Status"};
+                showTableDialog("🎫 Your Tickets", data, columns);
+            }, error -> {
+                loaded.run();
+                JOptionPane.showMessageDialog(frame, "Could not load departures: " + error.getMessage(), "Error", JOptionPane.ERROR_MESSAGE);
+            });
+        }, error -> {
+            loaded.run();
+            JOptionPane.showMessageDialog(frame, "Could not load your tickets: " + error.getMessage(), "Error", JOptionPane.ERROR_MESSAGE);
+        });
     }
 
     /**
      * Handles the ticket cancellation process.
+     * @param button The button that started the cancellation, disabled while it is busy
      */
-    private void cancelTicket() {
-        String ticket = JOptionPane.showInputDialog(frame, "❌ Enter your ticket number to cancel:");
-        if (ticket != null && !ticket.trim().isEmpty()) {
-            if (ticket.equals("1000")) {
+    private void cancelTicket(JButton button) {
+        String input = JOptionPane.showInputDialog(frame, "❌ Enter your ticket number to cancel:");
+        if (input == null || input.trim().isEmpty()) {
+            return;
+        }
+        Integer ticketNumber = parseTicketNumber(input);
+        if (ticketNumber == null) {
+            return;
+        }
+        if (JOptionPane.showConfirmDialog(frame, "Cancel ticket " + ticketNumber + "? Your seat will be given up.",
+                "❌ Cancel Ticket", JOptionPane.YES_NO_OPTION) != JOptionPane.YES_OPTION) {
+            return;
+        }
+        Runnable cancelled = AsyncRepositories.showLoading(frame, button, "Cancelling...");
+        AsyncRepositories.whenDone(AsyncRepositories.cancelTicket(ticketNumber, pilgrimID), success -> {
+            cancelled.run();
+            if (success) {
                 String[][] data = {
-                        {"🗑️ Ticket Number", ticket},
+                        {"🗑️ Ticket Number", String.valueOf(ticketNumber)},
                         {"🚫 Status", "Canceled"}
                 };
                 String[] columns = {"Category", "Details"};
@@ -2092,9 +13640,44 @@ class PilgrimTransport {
             } else {
                 JOptionPane.showMessageDialog(frame, "⚠️ Ticket number not found or already canceled!", "Error", JOptionPane.ERROR_MESSAGE);
             }
+        }, error -> {
+            cancelled.run();
+            JOptionPane.showMessageDialog(frame, "Could not cancel the ticket: " + error.getMessage(), "Error", JOptionPane.ERROR_MESSAGE);
+        });
+    }
+
+    /**
+     * Parses a ticket number typed by the pilgrim.
+     * @param ticket The text entered
+     * @return The ticket number, or null if the text is not a number
+     */
+    private Integer parseTicketNumber(String ticket) {
+        try {
+            return Integer.parseInt(ticket.trim());
+        } catch (NumberFormatException e) {
+            JOptionPane.showMessageDialog(frame, "⚠️ Ticket numbers contain digits only.", "Error", JOptionPane.ERROR_MESSAGE);
+            return null;
         }
     }
 
+    /**
+     * Displays a ticket.
+     * @param title The dialog title
+     * @param ticket The ticket to display
+     * @param schedule The ticket's departure, or null if it is not known
+     */
+    private void showTicket(String title, Ticket ticket, TransportSchedule schedule) {
+        String[][] data = {
+                {"🎫 Ticket Number", String.valueOf(ticket.ticketNumber())},
+                {"🛣️ Route", schedule == null ? "Schedule " + ticket.scheduleID() : schedule.route()},
+                {"🕒 Time", schedule == null ? "-" : schedule.departureTime() + " - " + schedule.arrivalTime()},
+                {"📌 Status", ticket.isBooked() ? "Booked" : "Canceled"},
+                {"📅 Booked At", ticket.bookedAt()}
+        };
+        String[] columns = {"Category", "Details"};
+        showTableDialog(title, data, columns);
+    }
+
     /**
      * Displays a table dialog with specified data.
      * @param title The dialog title
@@ -2344,104 +13927,621 @@ class AdminLogin {
         formPanel.add(passLabel);
         formPanel.add(passwordField);
 
-        card.add(formPanel);
-        card.add(Box.createVerticalStrut(30));
+        card.add(formPanel);
+        card.add(Box.createVerticalStrut(30));
+
+        // ===== Buttons =====
+        JButton loginBtn = new JButton("Login");
+        JButton homeBtn = new JButton("Home Page");
+
+        styleButton(loginBtn, new Color(204, 0, 0));
+        styleButton(homeBtn, new Color(30, 144, 255));
+
+        JPanel btnPanel = new JPanel(new GridLayout(1, 2, 20, 0));
+        btnPanel.setOpaque(false);
+        btnPanel.add(loginBtn);
+        btnPanel.add(homeBtn);
+        card.add(btnPanel);
+
+        // ===== Button Actions =====
+        loginBtn.addActionListener(e -> {
+            String user = usernameField.getText();
+            String pass = new String(passwordField.getPassword());
+            
+            try {
+                int adminID = Integer.parseInt(user);
+                Runnable done = AsyncRepositories.showLoading(frame, loginBtn, "Logging in...");
+                AsyncRepositories.whenDone(AsyncRepositories.validateAdmin(adminID, pass), isValid -> {
+                    done.run();
+                    if (isValid) {
+                        frame.dispose();
+                        new AdminDashboard();
+                    } else {
+                        JOptionPane.showMessageDialog(frame, "Invalid login!", "Error", JOptionPane.ERROR_MESSAGE);
+                    }
+                }, error -> {
+                    done.run();
+                    JOptionPane.showMessageDialog(frame, "Login failed: " + error.getMessage(), "Error", JOptionPane.ERROR_MESSAGE);
+                });
+            } catch (NumberFormatException ex) {
+                JOptionPane.showMessageDialog(frame, "Invalid ID format", "Error", JOptionPane.ERROR_MESSAGE);
+            }
+        });
+
+        homeBtn.addActionListener(e -> {
+            frame.dispose();
+            new HajjGuide();
+        });
+
+        frame.add(card);
+        frame.setVisible(true);
+    }
+
+    /**
+     * Styles an input field with consistent visual properties.
+     * @param field The text field to style
+     */
+    private void styleInputField(JTextField field) {
+        field.setFont(new Font("Segoe UI", Font.PLAIN, 16));
+        field.setBackground(Color.WHITE);
+        field.setForeground(Color.DARK_GRAY);
+        field.setBorder(BorderFactory.createCompoundBorder(
+                BorderFactory.createLineBorder(new Color(180, 180, 180), 1, true),
+                BorderFactory.createEmptyBorder(10, 14, 10, 14)
+        ));
+        field.setPreferredSize(new Dimension(300, 40));
+    }
+
+    /**
+     * Creates a styled button for the dashboard.
+     * @param text The button text
+     * @param bgColor The background color
+     * @return The created JButton
+     */
+    private void styleButton(JButton button, Color bg) {
+        button.setFocusPainted(false);
+        button.setBackground(bg);
+        button.setForeground(Color.WHITE);
+        button.setFont(new Font("Segoe UI", Font.BOLD, 16));
+        button.setPreferredSize(new Dimension(120, 45));
+        button.setCursor(Cursor.getPredefinedCursor(Cursor.HAND_CURSOR));
+        button.setBorder(BorderFactory.createEmptyBorder(10, 20, 10, 20));
+
+        button.addMouseListener(new MouseAdapter() {
+            public void mouseEntered(MouseEvent e) {
+                button.setBackground(bg.darker());
+            }
+
+            public void mouseExited(MouseEvent e) {
+                button.setBackground(bg);
+            }
+        });
+    }
+}
+
+/**
+ * Provides the data viewing interface for administrators.
+ */
+class ViewDashboard {
+    JFrame frame;
+
+    /** The number of rows shown per page in the listings */
+    private static final int PAGE_SIZE = 50;
+
+    /**
+     * Constructs the view dashboard interface.
+     */
+    public ViewDashboard() {
+        frame = new JFrame("🔍 View Dashboard");
+        frame.setSize(680, 700);
+        frame.setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
+        frame.setLocationRelativeTo(null);
+        frame.setLayout(new GridLayout(10, 1, 15, 15));
+        frame.getContentPane().setBackground(new Color(245, 250, 255));
+
+        Color mainColor = new Color(0, 153, 76);
+        Color backColor = new Color(30, 144, 255);
+        Color exitColor = new Color(204, 0, 0);
+
+        JLabel title = new JLabel("View Pilgrim Data", JLabel.CENTER);
+        title.setFont(new Font("Segoe UI", Font.BOLD, 24));
+
+        JButton pilgrimBtn = createButton("🙍‍♂️ Pilgrims", mainColor);
+        JButton searchBtn = createButton("🔎 Search Pilgrims by Name", mainColor);
+        JButton medicalBtn = createButton("🩺 Medical Files", mainColor);
+        JButton accommodationBtn = createButton("🏨 Accommodations", mainColor);
+        JButton transportBtn = createButton("🚌 Transport", mainColor);
+        JButton permitBtn = createButton("📄 Permits", mainColor);
+        JButton nearbyBtn = createButton("📍 Nearby Services", mainColor);
+        JButton backBtn = createButton("🔙 Back", backColor);
+        JButton exitBtn = createButton("❌ Exit", exitColor);
+
+        pilgrimBtn.addActionListener(e -> new PagedTableView("🙍‍♂️ Pilgrims",
+                new String[] {"ID", "Name", "Phone", "Nationality", "Special Need", "Allergies", "Age"},
+                afterID -> Repositories.pilgrims().getPilgrimsPage(afterID, PAGE_SIZE, null).map(Pilgrim::toRow)));
+        searchBtn.addActionListener(e -> new PilgrimSearchView());
+        accommodationBtn.addActionListener(e -> new PagedTableView("🏨 Accommodations",
+                new String[] {"ID", "Hotel", "Room Type", "Capacity", "Address", "Admin"},
+                afterID -> Repositories.accommodations().getAccommodationsPage(afterID, PAGE_SIZE, null).map(Accommodation::toRow)));
+        transportBtn.addActionListener(e -> new PagedTableView("🚌 Transport",
+                new String[] {"ID", "Departure", "Arrival", "Route", "Type", "Admin"},
+                afterID -> Repositories.transportSchedules().getTransportSchedulesPage(afterID, PAGE_SIZE, null).map(TransportSchedule::toRow)));
+        permitBtn.addActionListener(e -> new PagedTableView("📄 Permits",
+                new String[] {"ID", "Name", "Location", "Service Type"},
+                afterID -> Repositories.permits().getPermitsPage(afterID, PAGE_SIZE, null).map(Permit::toRow)));
+        nearbyBtn.addActionListener(e -> new NearbyServicesView());
+
+        backBtn.addActionListener(e -> {
+            frame.dispose();
+            new AdminDashboard();
+        });
+
+        exitBtn.addActionListener(e -> System.exit(0));
+
+        frame.add(title);
+        frame.add(pilgrimBtn);
+        frame.add(searchBtn);
+        frame.add(medicalBtn);
+        frame.add(accommodationBtn);
+        frame.add(transportBtn);
+        frame.add(permitBtn);
+        frame.add(nearbyBtn);
+        frame.add(backBtn);
+        frame.add(exitBtn);
+
+        frame.setVisible(true);
+    }
+
+    /**
+     * Creates a styled button for the dashboard.
+     * @param text The button text
+     * @param bgColor The background color
+     * @return The created JButton
+     */
+    private JButton createButton(String text, Color bgColor) {
+        JButton btn = new JButton(text);
+        btn.setFont(new Font("Segoe UI Emoji", Font.BOLD, 18));
+        btn.setBackground(bgColor);
+        btn.setForeground(Color.WHITE);
+        btn.setFocusPainted(false);
+        btn.setCursor(Cursor.getPredefinedCursor(Cursor.HAND_CURSOR));
+        btn.setBorder(BorderFactory.createEmptyBorder(12, 24, 12, 24));
+        return btn;
+    }
+}
+
+/**
+ * Provides a paged table view of one listing for administrators.
+ * Pages are fetched on demand with keyset pagination, so browsing stays fast
+ * no matter how large the table is.
+ */
+class PagedTableView {
+    JFrame frame;
+    private final String[] columns;
+    private final IntFunction<Page<String[]>> loader;
+    private final DefaultTableModel model;
+    private final JLabel pageLabel;
+    private final JButton prevBtn;
+    private final JButton nextBtn;
+
+    /** The afterID used to load each page shown so far; the top is the current page */
+    private final ArrayDeque<Integer> pageStarts = new ArrayDeque<>();
+    private Page<String[]> current;
+
+    /**
+     * Constructs the paged table view and shows the first page.
+     * @param title The window title
+     * @param columns The column headers
+     * @param loader Loads the page that follows the given afterID
+     */
+    public PagedTableView(String title, String[] columns, IntFunction<Page<String[]>> loader) {
+        this.columns = columns;
+        this.loader = loader;
+
+        frame = new JFrame(title);
+        frame.setSize(680, 650);
+        frame.setDefaultCloseOperation(JFrame.DISPOSE_ON_CLOSE);
+        frame.setLocationRelativeTo(null);
+        frame.getContentPane().setBackground(new Color(245, 250, 255));
+        frame.setLayout(new BorderLayout());
+
+        model = new DefaultTableModel(new Object[0][], columns);
+        JTable table = new JTable(model);
+        table.setRowHeight(28);
+        table.setEnabled(false);
+        table.setFont(new Font("Segoe UI", Font.PLAIN, 14));
+        table.getTableHeader().setFont(new Font("Segoe UI", Font.BOLD, 14));
+        frame.add(new JScrollPane(table), BorderLayout.CENTER);
+
+        prevBtn = createButton("◀ Previous", new Color(30, 144, 255));
+        nextBtn = createButton("Next ▶", new Color(0, 153, 76));
+        pageLabel = new JLabel("", SwingConstants.CENTER);
+        pageLabel.setFont(new Font("Segoe UI", Font.PLAIN, 14));
+
+        prevBtn.addActionListener(e -> {
+            Iterator<Integer> starts = pageStarts.iterator();
+            starts.next();
+            showPage(starts.next(), false);
+        });
+        nextBtn.addActionListener(e -> showPage(current.getLastID(), true));
+
+        JPanel buttonPanel = new JPanel(new FlowLayout(FlowLayout.CENTER, 20, 10));
+        buttonPanel.setBackground(new Color(245, 250, 255));
+        buttonPanel.add(prevBtn);
+        buttonPanel.add(pageLabel);
+        buttonPanel.add(nextBtn);
+        frame.add(buttonPanel, BorderLayout.SOUTH);
+
+        showPage(0, true);
+        frame.setVisible(true);
+    }
+
+    /**
+     * Loads the page that follows the given key in the background and displays it.
+     * The buttons are disabled while the page loads; if loading fails the current
+     * page stays on screen.
+     * @param afterID The key of the last row of the previous page, or 0 for the first page
+     * @param forward true when moving to the next page, false when moving back
+     */
+    private void showPage(int afterID, boolean forward) {
+        prevBtn.setEnabled(false);
+        nextBtn.setEnabled(false);
+        pageLabel.setText("Loading...");
+        frame.setCursor(Cursor.getPredefinedCursor(Cursor.WAIT_CURSOR));
+
+        AsyncRepositories.whenDone(AsyncRepositories.supply(() -> loader.apply(afterID)), page -> {
+            if (forward) {
+                pageStarts.push(afterID);
+            } else {
+                pageStarts.pop();
+            }
+            current = page;
+            model.setRowCount(0);
+            for (String[] row : current.getRows()) {
+                model.addRow(row);
+            }
+            updateControls();
+        }, error -> {
+            updateControls();
+            JOptionPane.showMessageDialog(frame, "Could not load page: " + error.getMessage(), "Error", JOptionPane.ERROR_MESSAGE);
+        });
+    }
+
+    /**
+     * Updates the page label and buttons to match the page on screen.
+     */
+    private void updateControls() {
+        frame.setCursor(Cursor.getDefaultCursor());
+        pageLabel.setText(pageStarts.isEmpty() ? "" : "Page " + pageStarts.size());
+        prevBtn.setEnabled(pageStarts.size() > 1);
+        nextBtn.setEnabled(current != null && current.hasMore());
+    }
+
+    /**
+     * Creates a styled button for the view.
+     * @param text The button text
+     * @param bgColor The background color
+     * @return The created JButton
+     */
+    private JButton createButton(String text, Color bgColor) {
+        JButton btn = new JButton(text);
+        btn.setFont(new Font("Segoe UI", Font.BOLD, 15));
+        btn.setBackground(bgColor);
+        btn.setForeground(Color.WHITE);
+        btn.setFocusPainted(false);
+        btn.setCursor(Cursor.getPredefinedCursor(Cursor.HAND_CURSOR));
+        btn.setBorder(BorderFactory.createEmptyBorder(10, 20, 10, 20));
+        return btn;
+    }
+}
+
+/**
+ * Provides type-ahead search over pilgrim names for administrators. Matches are looked up
+ * shortly after the admin stops typing, so a fast typist does not start a search per key.
+ */
+class PilgrimSearchView {
+    JFrame frame;
+
+    /** The most matches shown at once */
+    private static final int MAX_RESULTS = 50;
+
+    /** How long typing must pause before a search starts */
+    private static final int TYPING_DELAY_MS = 150;
+
+    private final JTextField searchField;
+    private final DefaultTableModel model;
+    private final JLabel statusLabel;
+    private final Timer searchTimer;
 
-        // ===== Buttons =====
-        JButton loginBtn = new JButton("Login");
-        JButton homeBtn = new JButton("Home Page");
+    /** Incremented per search so that results of an earlier, slower search are ignored */
+    private int searchSequence = 0;
 
-        styleButton(loginBtn, new Color(204, 0, 0));
-        styleButton(homeBtn, new Color(30, 144, 255));
+    /**
+     * Constructs the pilgrim search screen.
+     */
+    public PilgrimSearchView() {
+        frame = new JFrame("🔎 Search Pilgrims");
+        frame.setSize(680, 650);
+        frame.setDefaultCloseOperation(JFrame.DISPOSE_ON_CLOSE);
+        frame.setLocationRelativeTo(null);
+        frame.getContentPane().setBackground(new Color(245, 250, 255));
+        frame.setLayout(new BorderLayout());
 
-        JPanel btnPanel = new JPanel(new GridLayout(1, 2, 20, 0));
-        btnPanel.setOpaque(false);
-        btnPanel.add(loginBtn);
-        btnPanel.add(homeBtn);
-        card.add(btnPanel);
+        searchField = new JTextField();
+        searchField.setFont(new Font("Segoe UI", Font.PLAIN, 16));
+        JLabel searchLabel = new JLabel("Name starts with:");
+        searchLabel.setFont(new Font("Segoe UI", Font.BOLD, 15));
+
+        JPanel searchPanel = new JPanel(new BorderLayout(10, 0));
+        searchPanel.setBackground(new Color(245, 250, 255));
+        searchPanel.setBorder(BorderFactory.createEmptyBorder(15, 15, 10, 15));
+        searchPanel.add(searchLabel, BorderLayout.WEST);
+        searchPanel.add(searchField, BorderLayout.CENTER);
+        frame.add(searchPanel, BorderLayout.NORTH);
+
+        model = new DefaultTableModel(new Object[0][], new String[] {"ID", "Name"});
+        JTable table = new JTable(model);
+        table.setRowHeight(28);
+        table.setEnabled(false);
+        table.setFont(new Font("Segoe UI", Font.PLAIN, 14));
+        table.getTableHeader().setFont(new Font("Segoe UI", Font.BOLD, 14));
+        table.getColumnModel().getColumn(0).setMaxWidth(120);
+        frame.add(new JScrollPane(table), BorderLayout.CENTER);
+
+        statusLabel = new JLabel("Type the start of a name, in Arabic or Latin letters", SwingConstants.CENTER);
+        statusLabel.setFont(new Font("Segoe UI", Font.PLAIN, 14));
+        JButton closeBtn = createButton("Close", new Color(30, 144, 255));
+        closeBtn.addActionListener(e -> frame.dispose());
+
+        JPanel bottomPanel = new JPanel(new FlowLayout(FlowLayout.CENTER, 20, 10));
+        bottomPanel.setBackground(new Color(245, 250, 255));
+        bottomPanel.add(statusLabel);
+        bottomPanel.add(closeBtn);
+        frame.add(bottomPanel, BorderLayout.SOUTH);
+
+        searchTimer = new Timer(TYPING_DELAY_MS, e -> search(searchField.getText()));
+        searchTimer.setRepeats(false);
+        searchField.getDocument().addDocumentListener(new DocumentListener() {
+            public void insertUpdate(DocumentEvent e) {
+                searchTimer.restart();
+            }
 
-        // ===== Button Actions =====
-        loginBtn.addActionListener(e -> {
-            String user = usernameField.getText();
-            String pass = new String(passwordField.getPassword());
-            
-            try {
-                int adminID = Integer.parseInt(user);
-                boolean isValid = AdminDAO.validateAdmin(adminID, pass);
-                
-                if (isValid) {
-                    frame.dispose();
-                    new AdminDashboard();
-                } else {
-                    JOptionPane.showMessageDialog(frame, "Invalid login!", "Error", JOptionPane.ERROR_MESSAGE);
-                }
-            } catch (NumberFormatException ex) {
-                JOptionPane.showMessageDialog(frame, "Invalid ID format", "Error", JOptionPane.ERROR_MESSAGE);
+            public void removeUpdate(DocumentEvent e) {
+                searchTimer.restart();
             }
-        });
 
-        homeBtn.addActionListener(e -> {
-            frame.dispose();
-            new HajjGuide();
+            public void changedUpdate(DocumentEvent e) {
+                searchTimer.restart();
+            }
+        });
+        frame.addWindowListener(new WindowAdapter() {
+            public void windowClosed(WindowEvent e) {
+                searchTimer.stop();
+            }
         });
 
-        frame.add(card);
         frame.setVisible(true);
     }
 
     /**
-     * Styles an input field with consistent visual properties.
-     * @param field The text field to style
+     * Looks up the names starting with the given text in the background and shows them.
+     * @param prefix The text typed so far
      */
-    private void styleInputField(JTextField field) {
-        field.setFont(new Font("Segoe UI", Font.PLAIN, 16));
-        field.setBackground(Color.WHITE);
-        field.setForeground(Color.DARK_GRAY);
-        field.setBorder(BorderFactory.createCompoundBorder(
-                BorderFactory.createLineBorder(new Color(180, 180, 180), 1, true),
-                BorderFactory.createEmptyBorder(10, 14, 10, 14)
-        ));
-        field.setPreferredSize(new Dimension(300, 40));
+    private void search(String prefix) {
+        int sequence = ++searchSequence;
+        if (prefix.trim().isEmpty()) {
+            model.setRowCount(0);
+            statusLabel.setText("");
+            return;
+        }
+        long started = System.nanoTime();
+        AsyncRepositories.whenDone(AsyncRepositories.searchPilgrimNames(prefix, MAX_RESULTS), matches -> {
+            if (sequence != searchSequence) {
+                return;
+            }
+            model.setRowCount(0);
+            for (PilgrimNameIndex.Match m : matches) {
+                model.addRow(new Object[] { m.pilgrimID(), m.pilgrimName() });
+            }
+            statusLabel.setText(String.format("%s%d match%s (%.1f ms)", matches.size() == MAX_RESULTS ? "First " : "",
+                    matches.size(), matches.size() == 1 ? "" : "es", (System.nanoTime() - started) / 1e6));
+        }, error -> {
+            if (sequence == searchSequence) {
+                statusLabel.setText("Search failed: " + error.getMessage());
+            }
+        });
     }
 
     /**
-     * Creates a styled button for the dashboard.
+     * Creates a styled button for the view.
      * @param text The button text
      * @param bgColor The background color
      * @return The created JButton
      */
-    private void styleButton(JButton button, Color bg) {
-        button.setFocusPainted(false);
-        button.setBackground(bg);
-        button.setForeground(Color.WHITE);
-        button.setFont(new Font("Segoe UI", Font.BOLD, 16));
-        button.setPreferredSize(new Dimension(120, 45));
-        button.setCursor(Cursor.getPredefinedCursor(Cursor.HAND_CURSOR));
-        button.setBorder(BorderFactory.createEmptyBorder(10, 20, 10, 20));
+    private JButton createButton(String text, Color bgColor) {
+        JButton btn = new JButton(text);
+        btn.setFont(new Font("Segoe UI", Font.BOLD, 15));
+        btn.setBackground(bgColor);
+        btn.setForeground(Color.WHITE);
+        btn.setFocusPainted(false);
+        btn.setCursor(Cursor.getPredefinedCursor(Cursor.HAND_CURSOR));
+        btn.setBorder(BorderFactory.createEmptyBorder(10, 20, 10, 20));
+        return btn;
+    }
+}
 
-        button.addMouseListener(new MouseAdapter() {
-            public void mouseEntered(MouseEvent e) {
-                button.setBackground(bg.darker());
+/**
+ * Finds the clinics, hotels or other service points nearest to a position, for field teams
+ * responding to an emergency. Positions are typed as "latitude, longitude", as read from a
+ * phone or map. Only places whose coordinates are recorded are found.
+ */
+class NearbyServicesView {
+    JFrame frame;
+
+    /** The service type of the permits that mark clinics and hospitals */
+    static final String HEALTH_SERVICE = "Health";
+
+    /** What the search can look for, in the order shown */
+    private static final String[] KINDS = { "Clinics and hospitals", "Hotels", "All service points" };
+
+    private final JTextField positionField;
+    private final JComboBox<String> kindBox;
+    private final JTextField countField;
+    private final JTextField radiusField;
+    private final DefaultTableModel model;
+    private final JLabel statusLabel;
+    private final JButton searchBtn;
+
+    /**
+     * Constructs the nearby services screen.
+     */
+    public NearbyServicesView() {
+        frame = new JFrame("📍 Nearby Services");
+        frame.setSize(780, 650);
+        frame.setDefaultCloseOperation(JFrame.DISPOSE_ON_CLOSE);
+        frame.setLocationRelativeTo(null);
+        frame.getContentPane().setBackground(new Color(245, 250, 255));
+        frame.setLayout(new BorderLayout());
+
+        positionField = new JTextField("21.4225, 39.8262", 16);
+        kindBox = new JComboBox<>(KINDS);
+        countField = new JTextField("5", 3);
+        radiusField = new JTextField("", 5);
+        searchBtn = createButton("Search", new Color(0, 153, 76));
+        searchBtn.addActionListener(e -> search());
+        positionField.addActionListener(e -> search());
+
+        JPanel searchPanel = new JPanel(new FlowLayout(FlowLayout.LEFT, 8, 10));
+        searchPanel.setBackground(new Color(245, 250, 255));
+        searchPanel.add(new JLabel("Position (lat, lon):"));
+        searchPanel.add(positionField);
+        searchPanel.add(kindBox);
+        searchPanel.add(new JLabel("Nearest:"));
+        searchPanel.add(countField);
+        searchPanel.add(new JLabel("or within m:"));
+        searchPanel.add(radiusField);
+        searchPanel.add(searchBtn);
+        frame.add(searchPanel, BorderLayout.NORTH);
+
+        model = new DefaultTableModel(new Object[0][], new String[] {"Distance (m)", "ID", "Name", "Type", "Location"});
+        JTable table = new JTable(model);
+        table.setRowHeight(28);
+        table.setEnabled(false);
+        table.setFont(new Font("Segoe UI", Font.PLAIN, 14));
+        table.getTableHeader().setFont(new Font("Segoe UI", Font.BOLD, 14));
+        frame.add(new JScrollPane(table), BorderLayout.CENTER);
+
+        statusLabel = new JLabel("Leave the radius empty to find the nearest places", SwingConstants.CENTER);
+        statusLabel.setFont(new Font("Segoe UI", Font.PLAIN, 14));
+        JButton closeBtn = createButton("Close", new Color(30, 144, 255));
+        closeBtn.addActionListener(e -> frame.dispose());
+
+        JPanel bottomPanel = new JPanel(new FlowLayout(FlowLayout.CENTER, 20, 10));
+        bottomPanel.setBackground(new Color(245, 250, 255));
+        bottomPanel.add(statusLabel);
+        bottomPanel.add(closeBtn);
+        frame.add(bottomPanel, BorderLayout.SOUTH);
+
+        frame.setVisible(true);
+    }
+
+    /**
+     * Runs the search described by the fields in the background and shows the results.
+     */
+    private void search() {
+        double latitude;
+        double longitude;
+        int count;
+        double radius;
+        try {
+            String[] parts = positionField.getText().trim().split("\\s*[,\\s]\\s*");
+            if (parts.length != 2) {
+                throw new NumberFormatException();
+            }
+            latitude = Double.parseDouble(parts[0]);
+            longitude = Double.parseDouble(parts[1]);
+            if (!(latitude >= -90 && latitude <= 90 && longitude >= -180 && longitude <= 180)) {
+                throw new NumberFormatException();
             }
+            count = Integer.parseInt(countField.getText().trim());
+            String r = radiusField.getText().trim();
+            radius = r.isEmpty() ? -1 : Double.parseDouble(r);
+        } catch (NumberFormatException e) {
+            JOptionPane.showMessageDialog(frame, "Enter the position as latitude, longitude (e.g. 21.4225, 39.8262), "
+                    + "a whole number of places and an optional radius in metres.", "Error", JOptionPane.ERROR_MESSAGE);
+            return;
+        }
 
-            public void mouseExited(MouseEvent e) {
-                button.setBackground(bg);
+        int kind = kindBox.getSelectedIndex();
+        CompletableFuture<List<Object[]>> rows;
+        if (kind == 1) {
+            rows = (radius < 0 ? AsyncRepositories.findNearestAccommodations(latitude, longitude, count)
+                    : AsyncRepositories.findAccommodationsWithin(latitude, longitude, radius))
+                    .thenApply(hits -> toRows(hits, a -> new Object[] { a.accommodationID(), a.hotelName(), "Hotel", a.address() }));
+        } else {
+            String serviceType = kind == 0 ? HEALTH_SERVICE : null;
+            rows = (radius < 0 ? AsyncRepositories.findNearestPermits(latitude, longitude, count, serviceType)
+                    : AsyncRepositories.findPermitsWithin(latitude, longitude, radius, serviceType))
+                    .thenApply(hits -> toRows(hits, p -> new Object[] { p.permitID(), p.name(), p.serviceType(), p.location() }));
+        }
+
+        long started = System.nanoTime();
+        Runnable done = AsyncRepositories.showLoading(frame, searchBtn, "Searching...");
+        AsyncRepositories.whenDone(rows, found -> {
+            done.run();
+            model.setRowCount(0);
+            for (Object[] row : found) {
+                model.addRow(row);
             }
+            statusLabel.setText(String.format("%d place%s found (%.1f ms)", found.size(), found.size() == 1 ? "" : "s",
+                    (System.nanoTime() - started) / 1e6));
+        }, error -> {
+            done.run();
+            statusLabel.setText("Search failed: " + error.getMessage());
         });
     }
+
+    /**
+     * Converts search hits to table rows, with the distance rounded to the metre in front.
+     */
+    private static <T> List<Object[]> toRows(List<SpatialIndex.Hit<T>> hits, Function<T, Object[]> columns) {
+        List<Object[]> rows = new ArrayList<>(hits.size());
+        for (SpatialIndex.Hit<T> hit : hits) {
+            Object[] c = columns.apply(hit.item());
+            rows.add(new Object[] { Math.round(hit.distanceMeters()), c[0], c[1], c[2], c[3] });
+        }
+        return rows;
+    }
+
+    /**
+     * Creates a styled button for the view.
+     * @param text The button text
+     * @param bgColor The background color
+     * @return The created JButton
+     */
+    private JButton createButton(String text, Color bgColor) {
+        JButton btn = new JButton(text);
+        btn.setFont(new Font("Segoe UI Emoji", Font.BOLD, 15));
+        btn.setBackground(bgColor);
+        btn.setForeground(Color.WHITE);
+        btn.setFocusPainted(false);
+        btn.setCursor(Cursor.getPredefinedCursor(Cursor.HAND_CURSOR));
+        btn.setBorder(BorderFactory.createEmptyBorder(8, 18, 8, 18));
+        return btn;
+    }
 }
 
 /**
- * Provides the data viewing interface for administrators.
+ * Provides the data editing interface for administrators.
  */
-class ViewDashboard {
+class EditDashboard {
     JFrame frame;
 
     /**
-     * Constructs the view dashboard interface.
+     * Constructs the edit dashboard interface.
      */
-    public ViewDashboard() {
-        frame = new JFrame("🔍 View Dashboard");
+    public EditDashboard() {
+        frame = new JFrame("✏️ Edit Dashboard");
         frame.setSize(680, 650);
         frame.setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
         frame.setLocationRelativeTo(null);
@@ -2452,7 +14552,7 @@ class ViewDashboard {
         Color backColor = new Color(30, 144, 255);
         Color exitColor = new Color(204, 0, 0);
 
-        JLabel title = new JLabel("View Pilgrim Data", JLabel.CENTER);
+        JLabel title = new JLabel("Edit Pilgrim Data", JLabel.CENTER);
         title.setFont(new Font("Segoe UI", Font.BOLD, 24));
 
         JButton pilgrimBtn = createButton("🙍‍♂️ Pilgrims", mainColor);
@@ -2463,6 +14563,10 @@ class ViewDashboard {
         JButton backBtn = createButton("🔙 Back", backColor);
         JButton exitBtn = createButton("❌ Exit", exitColor);
 
+        pilgrimBtn.addActionListener(e -> editPilgrim(pilgrimBtn));
+        medicalBtn.addActionListener(e -> editMedicalProfile(medicalBtn));
+        accommodationBtn.addActionListener(e -> allocateAccommodations(accommodationBtn));
+
         backBtn.addActionListener(e -> {
             frame.dispose();
             new AdminDashboard();
@@ -2482,6 +14586,216 @@ class ViewDashboard {
         frame.setVisible(true);
     }
 
+    /** The fields of {@link Pilgrim#toRow()}; all but the ID can be edited */
+    private static final String[] PILGRIM_FIELDS = {"Pilgrim ID", "Name", "Phone", "Nationality", "Special Needs", "Allergies", "Age"};
+    private static final boolean[] PILGRIM_EDITABLE = {false, true, true, true, true, true, true};
+
+    /** The fields of {@link MedicalProfile#toRow()}; only the medical details can be edited */
+    private static final String[] MEDICAL_FIELDS = {"Profile ID", "Blood Type", "Medications", "Medical History", "Pilgrim ID", "Admin ID"};
+    private static final boolean[] MEDICAL_EDITABLE = {false, true, true, true, false, false};
+
+    /**
+     * Asks for a pilgrim and opens their details for editing.
+     * @param button The button that started the edit, disabled while it is busy
+     */
+    private void editPilgrim(JButton button) {
+        Integer pilgrimID = askPilgrimID("🙍‍♂️ Enter the Pilgrim ID to edit:");
+        if (pilgrimID == null) {
+            return;
+        }
+        Runnable loaded = AsyncRepositories.showLoading(frame, button, "Loading...");
+        AsyncRepositories.whenDone(AsyncRepositories.getVersionedPilgrim(pilgrimID), pilgrim -> {
+            loaded.run();
+            if (pilgrim == null) {
+                JOptionPane.showMessageDialog(frame, "No pilgrim found with this ID.", "Not Found", JOptionPane.WARNING_MESSAGE);
+                return;
+            }
+            showEditForm(button, "Edit Pilgrim", PILGRIM_FIELDS, PILGRIM_EDITABLE, pilgrim,
+                Pilgrim::toRow, Pilgrim::fromRow, AsyncRepositories::updatePilgrim);
+        }, error -> {
+            loaded.run();
+            JOptionPane.showMessageDialog(frame, "Could not load the pilgrim: " + error.getMessage(), "Error", JOptionPane.ERROR_MESSAGE);
+        });
+    }
+
+    /**
+     * Asks for a pilgrim and opens their medical profile for editing.
+     * @param button The button that started the edit, disabled while it is busy
+     */
+    private void editMedicalProfile(JButton button) {
+        Integer pilgrimID = askPilgrimID("🩺 Enter the Pilgrim ID whose medical file to edit:");
+        if (pilgrimID == null) {
+            return;
+        }
+        Runnable loaded = AsyncRepositories.showLoading(frame, button, "Loading...");
+        AsyncRepositories.whenDone(AsyncRepositories.getVersionedMedicalProfileByPilgrimId(pilgrimID), profile -> {
+            loaded.run();
+            if (profile == null) {
+                JOptionPane.showMessageDialog(frame, "This pilgrim has no medical file.", "Not Found", JOptionPane.WARNING_MESSAGE);
+                return;
+            }
+            showEditForm(button, "Edit Medical File", MEDICAL_FIELDS, MEDICAL_EDITABLE, profile,
+                MedicalProfile::toRow, row -> new MedicalProfile(Integer.parseInt(row[0]), row[1], row[2], row[3],
+                    Integer.parseInt(row[4]), Integer.parseInt(row[5])),
+                AsyncRepositories::updateMedicalProfile);
+        }, error -> {
+            loaded.run();
+            JOptionPane.showMessageDialog(frame, "Could not load the medical file: " + error.getMessage(), "Error", JOptionPane.ERROR_MESSAGE);
+        });
+    }
+
+    /**
+     * Asks for a Pilgrim ID.
+     * @param prompt The question to show
+     * @return The ID, or null if the admin cancelled or typed something that is not a number
+     */
+    private Integer askPilgrimID(String prompt) {
+        String input = JOptionPane.showInputDialog(frame, prompt);
+        if (input == null || input.trim().isEmpty()) {
+            return null;
+        }
+        try {
+            return Integer.parseInt(input.trim());
+        } catch (NumberFormatException e) {
+            JOptionPane.showMessageDialog(frame, "Invalid Pilgrim ID format.", "Error", JOptionPane.ERROR_MESSAGE);
+            return null;
+        }
+    }
+
+    /**
+     * Shows a record for editing and saves it only if nobody else has changed it since it was
+     * loaded. No lock is held while the form is open. If someone else did save first, their
+     * changes are merged into the edit and the form is shown again on top of their version.
+     * @param button The button that started the edit, disabled while saving
+     * @param title The dialog title
+     * @param labels The label of each field in the row layout
+     * @param editable Which fields the admin may change
+     * @param base The record and version the edit starts from
+     * @param toRow Converts a record to its fields
+     * @param fromRow Parses edited fields back into a record
+     * @param save Saves a record if it is still at the given version
+     */
+    private <T> void showEditForm(JButton button, String title, String[] labels, boolean[] editable, Versioned<T> base,
+            Function<T, String[]> toRow, Function<String[], T> fromRow,
+            BiFunction<T, Integer, CompletableFuture<UpdateResult<T>>> save) {
+        showEditForm(button, title, labels, editable, base, blankNulls(toRow.apply(base.value())), toRow, fromRow, save);
+    }
+
+    private <T> void showEditForm(JButton button, String title, String[] labels, boolean[] editable, Versioned<T> base,
+            String[] values, Function<T, String[]> toRow, Function<String[], T> fromRow,
+            BiFunction<T, Integer, CompletableFuture<UpdateResult<T>>> save) {
+        JPanel form = new JPanel(new GridLayout(labels.length, 2, 8, 8));
+        JTextField[] fields = new JTextField[labels.length];
+        for (int i = 0; i < labels.length; i++) {
+            fields[i] = new JTextField(values[i], 24);
+            fields[i].setEditable(editable[i]);
+            form.add(new JLabel(labels[i]));
+            form.add(fields[i]);
+        }
+        if (JOptionPane.showConfirmDialog(frame, form, title, JOptionPane.OK_CANCEL_OPTION,
+                JOptionPane.PLAIN_MESSAGE) != JOptionPane.OK_OPTION) {
+            return;
+        }
+        String[] mine = new String[fields.length];
+        for (int i = 0; i < fields.length; i++) {
+            mine[i] = fields[i].getText().trim();
+        }
+        T edited;
+        try {
+            edited = fromRow.apply(mine);
+        } catch (IllegalArgumentException e) {
+            JOptionPane.showMessageDialog(frame, "Please check the entered values: " + e.getMessage(), "Error", JOptionPane.ERROR_MESSAGE);
+            showEditForm(button, title, labels, editable, base, mine, toRow, fromRow, save);
+            return;
+        }
+
+        Runnable saved = AsyncRepositories.showLoading(frame, button, "Saving...");
+        AsyncRepositories.whenDone(save.apply(edited, base.version()), result -> {
+            saved.run();
+            switch (result.status()) {
+                case UPDATED:
+                    JOptionPane.showMessageDialog(frame, "Changes saved.", "Success", JOptionPane.INFORMATION_MESSAGE);
+                    break;
+                case CONFLICT:
+                    String[] theirs = blankNulls(toRow.apply(result.current().value()));
+                    List<Integer> conflicts = new ArrayList<>();
+                    String[] merged = UpdateResult.merge(blankNulls(toRow.apply(base.value())), mine, theirs, conflicts);
+                    StringBuilder message = new StringBuilder(
+                        "Another admin saved this record while you were editing it.\nTheir changes have been merged into yours; nothing was saved yet.");
+                    if (!conflicts.isEmpty()) {
+                        message.append("\n\nYou both changed these fields; your values were kept:");
+                        for (int i : conflicts) {
+                            message.append("\n  ").append(labels[i]).append(" (theirs: ").append(theirs[i]).append(')');
+                        }
+                    }
+                    JOptionPane.showMessageDialog(frame, message.toString(), "Edit Conflict", JOptionPane.WARNING_MESSAGE);
+                    showEditForm(button, title, labels, editable, result.current(), merged, toRow, fromRow, save);
+                    break;
+                case NOT_FOUND:
+                    JOptionPane.showMessageDialog(frame, "This record has been deleted.", "Not Found", JOptionPane.WARNING_MESSAGE);
+                    break;
+            }
+        }, error -> {
+            saved.run();
+            JOptionPane.showMessageDialog(frame, "Could not save the changes: " + error.getMessage(), "Error", JOptionPane.ERROR_MESSAGE);
+        });
+    }
+
+    /**
+     * @return The row with null fields replaced by empty strings, as a text field shows them
+     */
+    private static String[] blankNulls(String[] row) {
+        String[] copy = row.clone();
+        for (int i = 0; i < copy.length; i++) {
+            if (copy[i] == null) {
+                copy[i] = "";
+            }
+        }
+        return copy;
+    }
+
+    /**
+     * Places every pilgrim without accommodation in one run. The plan is worked out in the
+     * background and shown for confirmation before anything is saved.
+     * @param button The button that started the run, disabled while it is busy
+     */
+    private void allocateAccommodations(JButton button) {
+        int choice = JOptionPane.showConfirmDialog(frame,
+            "Place every pilgrim who has no accommodation yet, keeping parties together?",
+            "Allocate Accommodations", JOptionPane.OK_CANCEL_OPTION);
+        if (choice != JOptionPane.OK_OPTION) {
+            return;
+        }
+        Runnable planned = AsyncRepositories.showLoading(frame, button, "Planning...");
+        AsyncRepositories.whenDone(AsyncRepositories.planAccommodations(), plan -> {
+            planned.run();
+            if (plan.assignments().isEmpty()) {
+                JOptionPane.showMessageDialog(frame, plan.summary(), "Nothing to Allocate", JOptionPane.INFORMATION_MESSAGE);
+                return;
+            }
+            if (JOptionPane.showConfirmDialog(frame, plan.summary() + "\n\nSave this allocation?",
+                    "Allocation Plan", JOptionPane.YES_NO_OPTION) != JOptionPane.YES_OPTION) {
+                return;
+            }
+            Runnable saved = AsyncRepositories.showLoading(frame, button, "Saving...");
+            AsyncRepositories.whenDone(AsyncRepositories.saveAllocations(plan.assignments()), count -> {
+                saved.run();
+                if (count >= 0) {
+                    JOptionPane.showMessageDialog(frame, count + " pilgrims assigned to accommodations.",
+                        "Success", JOptionPane.INFORMATION_MESSAGE);
+                } else {
+                    JOptionPane.showMessageDialog(frame, "The allocation was not saved.", "Error", JOptionPane.ERROR_MESSAGE);
+                }
+            }, error -> {
+                saved.run();
+                JOptionPane.showMessageDialog(frame, "Could not save the allocation: " + error.getMessage(), "Error", JOptionPane.ERROR_MESSAGE);
+            });
+        }, error -> {
+            planned.run();
+            JOptionPane.showMessageDialog(frame, "Could not plan the allocation: " + error.getMessage(), "Error", JOptionPane.ERROR_MESSAGE);
+        });
+    }
+
     /**
      * Creates a styled button for the dashboard.
      * @param text The button text
@@ -2501,70 +14815,124 @@ class ViewDashboard {
 }
 
 /**
- * Provides the data editing interface for administrators.
+ * Shows per-method DAO latencies, the connection pool and the caches to administrators.
+ * The figures refresh every two seconds and can be saved to a text file.
  */
-class EditDashboard {
+class SystemMetricsView {
     JFrame frame;
+    private final DefaultTableModel model;
+    private final JTextArea resourceArea;
+    private final Timer refreshTimer;
 
     /**
-     * Constructs the edit dashboard interface.
+     * Constructs the system metrics screen.
      */
-    public EditDashboard() {
-        frame = new JFrame("✏️ Edit Dashboard");
-        frame.setSize(680, 650);
-        frame.setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
+    public SystemMetricsView() {
+        frame = new JFrame("System Metrics");
+        frame.setSize(900, 650);
+        frame.setDefaultCloseOperation(JFrame.DISPOSE_ON_CLOSE);
         frame.setLocationRelativeTo(null);
-        frame.setLayout(new GridLayout(8, 1, 15, 15));
         frame.getContentPane().setBackground(new Color(245, 250, 255));
+        frame.setLayout(new BorderLayout());
 
-        Color mainColor = new Color(0, 153, 76);
-        Color backColor = new Color(30, 144, 255);
-        Color exitColor = new Color(204, 0, 0);
+        String[] columns = {"Method", "Calls", "Errors", "Error %", "p50 ms", "p95 ms", "p99 ms", "Max ms"};
+        model = new DefaultTableModel(new Object[0][], columns);
+        JTable table = new JTable(model);
+        table.setRowHeight(26);
+        table.setEnabled(false);
+        table.setFont(new Font("Segoe UI", Font.PLAIN, 13));
+        table.getTableHeader().setFont(new Font("Segoe UI", Font.BOLD, 13));
+        table.getColumnModel().getColumn(0).setPreferredWidth(280);
+        frame.add(new JScrollPane(table), BorderLayout.CENTER);
 
-        JLabel title = new JLabel("Edit Pilgrim Data", JLabel.CENTER);
-        title.setFont(new Font("Segoe UI", Font.BOLD, 24));
+        resourceArea = new JTextArea(7, 60);
+        resourceArea.setEditable(false);
+        resourceArea.setFont(new Font(Font.MONOSPACED, Font.PLAIN, 12));
 
-        JButton pilgrimBtn = createButton("🙍‍♂️ Pilgrims", mainColor);
-        JButton medicalBtn = createButton("🩺 Medical Files", mainColor);
-        JButton accommodationBtn = createButton("🏨 Accommodations", mainColor);
-        JButton transportBtn = createButton("🚌 Transport", mainColor);
-        JButton permitBtn = createButton("📄 Permits", mainColor);
-        JButton backBtn = createButton("🔙 Back", backColor);
-        JButton exitBtn = createButton("❌ Exit", exitColor);
+        JButton refreshBtn = createButton("Refresh", new Color(30, 144, 255));
+        JButton dumpBtn = createButton("Dump to File", new Color(0, 153, 76));
+        JButton backBtn = createButton("Back", new Color(204, 0, 0));
 
+        refreshBtn.addActionListener(e -> refresh());
+        dumpBtn.addActionListener(e -> dumpToFile());
         backBtn.addActionListener(e -> {
             frame.dispose();
             new AdminDashboard();
         });
 
-        exitBtn.addActionListener(e -> System.exit(0));
+        JPanel buttonPanel = new JPanel(new FlowLayout(FlowLayout.CENTER, 20, 10));
+        buttonPanel.setBackground(new Color(245, 250, 255));
+        buttonPanel.add(refreshBtn);
+        buttonPanel.add(dumpBtn);
+        buttonPanel.add(backBtn);
 
-        frame.add(title);
-        frame.add(pilgrimBtn);
-        frame.add(medicalBtn);
-        frame.add(accommodationBtn);
-        frame.add(transportBtn);
-        frame.add(permitBtn);
-        frame.add(backBtn);
-        frame.add(exitBtn);
+        JPanel south = new JPanel(new BorderLayout());
+        south.add(new JScrollPane(resourceArea), BorderLayout.CENTER);
+        south.add(buttonPanel, BorderLayout.SOUTH);
+        frame.add(south, BorderLayout.SOUTH);
+
+        refreshTimer = new Timer(2000, e -> refresh());
+        frame.addWindowListener(new WindowAdapter() {
+            public void windowClosed(WindowEvent e) {
+                refreshTimer.stop();
+            }
+        });
 
+        refresh();
+        refreshTimer.start();
         frame.setVisible(true);
     }
 
     /**
-     * Creates a styled button for the dashboard.
+     * Reloads the table and the resource statistics.
+     */
+    private void refresh() {
+        model.setRowCount(0);
+        for (LatencyHistogram.Snapshot s : DaoMetrics.snapshots()) {
+            model.addRow(new Object[] { s.name(), s.count(), s.errors(), String.format("%.2f", s.errorRate() * 100),
+                    millis(s.p50()), millis(s.p95()), millis(s.p99()), millis(s.max()) });
+        }
+        resourceArea.setText(DaoMetrics.resourceStats());
+    }
+
+    /**
+     * Asks for a file name and saves the current report to it.
+     */
+    private void dumpToFile() {
+        JFileChooser chooser = new JFileChooser();
+        chooser.setSelectedFile(new java.io.File("hajjguide-metrics-" + System.currentTimeMillis() + ".txt"));
+        if (chooser.showSaveDialog(frame) != JFileChooser.APPROVE_OPTION) {
+            return;
+        }
+        try {
+            DaoMetrics.dumpTo(chooser.getSelectedFile().toPath());
+            JOptionPane.showMessageDialog(frame, "Metrics saved to " + chooser.getSelectedFile(), "Success",
+                    JOptionPane.INFORMATION_MESSAGE);
+        } catch (IOException e) {
+            e.printStackTrace();
+            JOptionPane.showMessageDialog(frame, "Could not save metrics: " + e.getMessage(), "Error",
+                    JOptionPane.ERROR_MESSAGE);
+        }
+    }
+
+    private static String millis(long nanos) {
+        return String.format("%.3f", nanos / 1e6);
+    }
+
+    /**
+     * Creates a styled button for the view.
      * @param text The button text
      * @param bgColor The background color
      * @return The created JButton
      */
     private JButton createButton(String text, Color bgColor) {
         JButton btn = new JButton(text);
-        btn.setFont(new Font("Segoe UI Emoji", Font.BOLD, 18));
+        btn.setFont(new Font("Segoe UI", Font.BOLD, 15));
         btn.setBackground(bgColor);
         btn.setForeground(Color.WHITE);
         btn.setFocusPainted(false);
         btn.setCursor(Cursor.getPredefinedCursor(Cursor.HAND_CURSOR));
-        btn.setBorder(BorderFactory.createEmptyBorder(12, 24, 12, 24));
+        btn.setBorder(BorderFactory.createEmptyBorder(10, 20, 10, 20));
         return btn;
     }
 }
@@ -2591,7 +14959,7 @@ class AdminDashboard {
         JPanel card = new JPanel();
         card.setLayout(new BoxLayout(card, BoxLayout.Y_AXIS));
         card.setBackground(Color.WHITE);
-        card.setPreferredSize(new Dimension(500, 360));
+        card.setPreferredSize(new Dimension(500, 430));
         card.setBorder(BorderFactory.createCompoundBorder(
                 BorderFactory.createLineBorder(new Color(200, 200, 200), 1, true),
                 BorderFactory.createEmptyBorder(30, 30, 30, 30)
@@ -2613,6 +14981,7 @@ class AdminDashboard {
         // ===== Buttons =====
         JButton viewBtn = createStyledButton("🔍 View Pilgrim Data", mainColor);
         JButton editBtn = createStyledButton("✏️ Edit Pilgrim Data", mainColor);
+        JButton metricsBtn = createStyledButton("📊 System Metrics", mainColor);
         JButton backBtn = createStyledButton("🔙 Back to Home", backColor);
         JButton exitBtn = createStyledButton("❌ Exit", exitColor);
 
@@ -2627,6 +14996,11 @@ class AdminDashboard {
             new EditDashboard();
         });
 
+        metricsBtn.addActionListener(e -> {
+            frame.dispose();
+            new SystemMetricsView();
+        });
+
         backBtn.addActionListener(e -> {
             frame.dispose();
             new HajjGuide();
@@ -2639,6 +15013,8 @@ class AdminDashboard {
         card.add(Box.createVerticalStrut(20));
         card.add(editBtn);
         card.add(Box.createVerticalStrut(20));
+        card.add(metricsBtn);
+        card.add(Box.createVerticalStrut(20));
         card.add(backBtn);
         card.add(Box.createVerticalStrut(20));
         card.add(exitBtn);
@@ -88,6 +88,47 @@ CREATE TABLE Feedback (
     FOREIGN KEY (PilgrimID) REFERENCES Pilgrim(PilgrimID)
 );
 
+-- Next unused value of each application-generated ID. The application reserves IDs in
+-- blocks by advancing NextValue (see IdAllocator in HajjGuideP.java).
+CREATE TABLE IdSequence (
+    SequenceName VARCHAR(50) PRIMARY KEY,
+    NextValue BIGINT NOT NULL
+);
+
+-- Seats on each transport schedule. Leased counts the seats handed to application
+-- instances, which sell them from memory (see SeatInventory in HajjGuideP.java); it never
+-- exceeds Capacity.
+CREATE TABLE SeatInventory (
+    ScheduleID INT PRIMARY KEY,
+    Capacity INT NOT NULL,
+    Leased INT NOT NULL DEFAULT 0,
+    CHECK (Leased BETWEEN 0 AND Capacity),
+    FOREIGN KEY (ScheduleID) REFERENCES TransportSchedule(ScheduleID)
+);
+
+CREATE TABLE Ticket (
+    TicketNumber INT PRIMARY KEY,
+    PilgrimID INT NOT NULL,
+    ScheduleID INT NOT NULL,
+    Status VARCHAR(10) NOT NULL,
+    BookedAt DATETIME NOT NULL,
+    FOREIGN KEY (PilgrimID) REFERENCES Pilgrim(PilgrimID),
+    FOREIGN KEY (ScheduleID) REFERENCES TransportSchedule(ScheduleID)
+);
+
+-- Pilgrims waiting for a seat on a full departure. Seats freed by cancellations go to the
+-- highest Priority first (elderly and special-needs pilgrims), then in JoinedAt order.
+CREATE TABLE TransportWaitlist (
+    ScheduleID INT,
+    PilgrimID INT,
+    Priority INT NOT NULL DEFAULT 0,
+    JoinedAt DATETIME(6) NOT NULL,
+    PRIMARY KEY (ScheduleID, PilgrimID),
+    INDEX WaitlistOrder (ScheduleID, Priority, JoinedAt),
+    FOREIGN KEY (PilgrimID) REFERENCES Pilgrim(PilgrimID),
+    FOREIGN KEY (ScheduleID) REFERENCES TransportSchedule(ScheduleID)
+);
+
 INSERT INTO Admin VALUES 
 (1, 'Yara Alqahtani', '0551234567', 'Yory@admin.com', NULL),
 (2, 'Mona Saleh', '0552345678', 'mona@admin.com', 1),
@@ -203,9 +244,39 @@ INSERT INTO Feedback VALUES
 
 UPDATE Accommodation SET Street = 'New Ajyad Street' WHERE AccommodationID = 1;
 DELETE FROM Feedback WHERE FeedbackID = 7;
+INSERT INTO IdSequence (SequenceName, NextValue) SELECT 'Feedback', IFNULL(MAX(FeedbackID), 0) + 1 FROM Feedback;
+INSERT INTO IdSequence (SequenceName, NextValue) SELECT 'Pilgrim', IFNULL(MAX(PilgrimID), 0) + 1 FROM Pilgrim;
+INSERT INTO IdSequence (SequenceName, NextValue) SELECT 'TransportSchedule', IFNULL(MAX(ScheduleID), 0) + 1 FROM TransportSchedule;
+INSERT INTO IdSequence (SequenceName, NextValue) SELECT 'Accommodation', IFNULL(MAX(AccommodationID), 0) + 1 FROM Accommodation;
+INSERT INTO IdSequence (SequenceName, NextValue) SELECT 'Permit', IFNULL(MAX(PermitID), 0) + 1 FROM Permit;
 INSERT INTO PilgrimAccommodation VALUES (2, 3, 'Suite');
 UPDATE Permit SET ServiceType = 'Updated Religious' WHERE PermitID = 1;
 DELETE FROM PilgrimTransport WHERE PilgrimID = 5;
+INSERT INTO SeatInventory (ScheduleID, Capacity, Leased)
+SELECT ScheduleID, 50, (SELECT COUNT(*) FROM PilgrimTransport PT WHERE PT.ScheduleID = TS.ScheduleID) FROM TransportSchedule TS;
+INSERT INTO IdSequence (SequenceName, NextValue) SELECT 'Ticket', IFNULL(MAX(TicketNumber), 100000) + 1 FROM Ticket;
+-- Version numbers for compare-and-set edits; added after the seed rows, which insert without a column list
+ALTER TABLE Pilgrim ADD COLUMN PilgrimVersion INT NOT NULL DEFAULT 0;
+ALTER TABLE MedicalProfile ADD COLUMN ProfileVersion INT NOT NULL DEFAULT 0;
+-- Coordinates for the nearest hotel and clinic searches; NULL where the position is not known
+ALTER TABLE Accommodation ADD COLUMN Latitude DOUBLE, ADD COLUMN Longitude DOUBLE;
+ALTER TABLE Permit ADD COLUMN Latitude DOUBLE, ADD COLUMN Longitude DOUBLE;
+UPDATE Accommodation SET Latitude = 21.4190, Longitude = 39.8255 WHERE AccommodationID = 1;
+UPDATE Accommodation SET Latitude = 21.4200, Longitude = 39.8260 WHERE AccommodationID = 2;
+UPDATE Accommodation SET Latitude = 21.4178, Longitude = 39.8283 WHERE AccommodationID = 3;
+UPDATE Accommodation SET Latitude = 21.4189, Longitude = 39.8262 WHERE AccommodationID = 4;
+UPDATE Accommodation SET Latitude = 21.4171, Longitude = 39.8244 WHERE AccommodationID = 5;
+UPDATE Accommodation SET Latitude = 21.4186, Longitude = 39.8268 WHERE AccommodationID = 6;
+UPDATE Accommodation SET Latitude = 21.4205, Longitude = 39.8215 WHERE AccommodationID = 7;
+UPDATE Accommodation SET Latitude = 21.4193, Longitude = 39.8270 WHERE AccommodationID = 8;
+UPDATE Accommodation SET Latitude = 21.4090, Longitude = 39.8560 WHERE AccommodationID = 9;
+UPDATE Accommodation SET Latitude = 21.4305, Longitude = 39.8190 WHERE AccommodationID = 10;
+UPDATE Permit SET Latitude = 21.4225, Longitude = 39.8262 WHERE PermitID IN (1, 6);
+UPDATE Permit SET Latitude = 21.4133, Longitude = 39.8933 WHERE PermitID IN (2, 7);
+UPDATE Permit SET Latitude = 21.5433, Longitude = 39.1728 WHERE PermitID IN (3, 10);
+UPDATE Permit SET Latitude = 21.4150, Longitude = 39.8180 WHERE PermitID = 4;
+UPDATE Permit SET Latitude = 21.4245, Longitude = 39.8230 WHERE PermitID = 5;
+UPDATE Permit SET Latitude = 21.3549, Longitude = 39.9841 WHERE PermitID IN (8, 9);
 
 SELECT PilgrimName, PilgrimAge FROM Pilgrim;
 SELECT HotelName, Capacity FROM Accommodation;
@@ -244,13 +315,11 @@ END //
 DELIMITER ;
 
 CALL GetPilgrimDetails(1);
-DELIMITER //
-CREATE TRIGGER AfterNewPilgrim AFTER INSERT ON Pilgrim FOR EACH ROW
-BEGIN
-    INSERT INTO Feedback (FeedbackID, PilgrimID, Content, Rating, Date) 
-    VALUES ((SELECT IFNULL(MAX(FeedbackID),0)+1 FROM Feedback), NEW.PilgrimID, 'Auto feedback', 5, CURDATE());
-END //
-DELIMITER ;
+-- The automatic feedback entry for each new pilgrim is written by the application in the same
+-- transaction as the pilgrim, with a FeedbackID from the IdSequence table. It used to be an
+-- AfterNewPilgrim trigger that computed MAX(FeedbackID) + 1, which serialized registrations
+-- and produced duplicate IDs under concurrency.
+DROP TRIGGER IF EXISTS AfterNewPilgrim;
 
 CREATE VIEW PilgrimPermitView AS 
 SELECT PilgrimName, PilgrimAge, Name AS PermitName, ServiceType 
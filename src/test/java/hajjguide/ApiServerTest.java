@@ -0,0 +1,75 @@
+package hajjguide;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests for the JSON conversion and the pilgrim tokens of {@link ApiServer}.
+ */
+@SuppressWarnings("auxiliaryclass") // The classes under test share HajjGuideP.java
+class ApiServerTest {
+
+    @Test
+    void mapSurvivesARoundTrip() {
+        Map<String, Object> fields = new LinkedHashMap<>();
+        fields.put("name", "عبدالله \"Abdullah\" \\ O'Neil");
+        fields.put("controls", "tab\tnew line\n\u0001end");
+        fields.put("count", 42L);
+        fields.put("negative", -7L);
+        fields.put("ratio", 0.125);
+        fields.put("active", true);
+        fields.put("note", null);
+        fields.put("empty", "");
+
+        String json = ApiServer.Json.write(fields);
+        Map<String, Object> parsed = ApiServer.Json.parseObject(json);
+        assertEquals(fields, parsed);
+        assertEquals(new ArrayList<>(fields.keySet()), new ArrayList<>(parsed.keySet()), "field order");
+        assertEquals(json, ApiServer.Json.write(parsed));
+    }
+
+    @Test
+    void recordIsWrittenAsItsComponents() {
+        Pilgrim pilgrim = new Pilgrim(5, "Aisha", "0500000000", "Saudi", "None", "", 64);
+        Map<String, Object> record = ApiServer.Json.parseObject(ApiServer.Json.write(pilgrim));
+        assertEquals(5L, record.get("pilgrimID"));
+        assertEquals("Aisha", record.get("pilgrimName"));
+        assertEquals(64L, record.get("pilgrimAge"));
+
+        String versioned = ApiServer.Json.write(new Versioned<>(pilgrim, 3));
+        assertTrue(versioned.startsWith("{\"value\":{\"pilgrimID\":5,"), versioned);
+        assertTrue(versioned.endsWith("},\"version\":3}"), versioned);
+    }
+
+    @Test
+    void malformedJsonIsRejected() {
+        for (String bad : new String[] {"", "[1]", "{\"a\":}", "{\"a\":1", "{\"a\" 1}", "{\"a\":1}x"}) {
+            assertThrows(IllegalArgumentException.class, () -> ApiServer.Json.parseObject(bad), bad);
+        }
+    }
+
+    @Test
+    void tokenIsAcceptedOnlyAsIssued() throws Exception {
+        ApiServer server = new ApiServer(0);
+        String token = server.issueToken(42);
+        assertEquals(42, server.verifyToken(token));
+        assertEquals(42, server.verifyToken(token), "a token can be checked again");
+
+        String[] parts = token.split("\\.");
+        assertEquals(-1, server.verifyToken("43." + parts[1] + "." + parts[2]), "another pilgrim's ID");
+        assertEquals(-1, server.verifyToken(parts[0] + "." + parts[1] + ".AAAA"), "a forged signature");
+        assertEquals(-1, server.verifyToken(parts[0] + ".1." + parts[2]), "an expired token");
+        assertEquals(-1, server.verifyToken(null));
+        assertEquals(-1, server.verifyToken("not a token"));
+
+        assertNotEquals(token, new ApiServer(0).issueToken(42), "each server signs with its own key");
+    }
+}
@@ -0,0 +1,256 @@
+package hajjguide;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.Driver;
+import java.sql.DriverManager;
+import java.sql.DriverPropertyInfo;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.logging.Logger;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests for {@link ConnectionPool}, run against an in-process JDBC driver whose connections
+ * can be made to fail validation.
+ */
+@SuppressWarnings("auxiliaryclass") // The classes under test share HajjGuideP.java
+class ConnectionPoolTest {
+    private static final String URL = "jdbc:hajjguide-test:pool";
+
+    static {
+        try {
+            DriverManager.registerDriver(new FakeDriver());
+        } catch (SQLException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    /** The physical connections opened by the fake driver, in order */
+    private static final List<FakeConnection> opened = new CopyOnWriteArrayList<>();
+
+    /** Pools created by the current test, shut down after it */
+    private final List<Runnable> shutdowns = new ArrayList<>();
+
+    @BeforeEach
+    void clearConnections() {
+        opened.clear();
+    }
+
+    @AfterEach
+    void shutdownPools() {
+        shutdowns.forEach(Runnable::run);
+    }
+
+    @Test
+    void borrowTimesOutWhenEveryConnectionIsLent() throws SQLException {
+        ConnectionPool pool = new ConnectionPool(URL, "user", "password", 0, 1, 100, 60000, 0, false, 0);
+        shutdowns.add(pool::shutdown);
+        Connection held = pool.borrow();
+
+        long started = System.nanoTime();
+        SQLException e = assertThrows(SQLException.class, pool::borrow);
+        long waitedMs = (System.nanoTime() - started) / 1000000;
+        assertTrue(e.getMessage().startsWith("Timed out after 100 ms"), e.getMessage());
+        assertTrue(waitedMs >= 90, "waited " + waitedMs + " ms");
+        assertEquals(1, pool.getTimeoutCount());
+
+        held.close();
+        try (Connection again = pool.borrow()) {
+            assertFalse(again.isClosed());
+        }
+        assertEquals(1, opened.size());
+    }
+
+    @Test
+    void returnedConnectionIsReused() throws SQLException {
+        ConnectionPool pool = new ConnectionPool(URL, "user", "password", 0, 2, 1000, 60000, 0, false, 0);
+        shutdowns.add(pool::shutdown);
+        pool.borrow().close();
+        pool.borrow().close();
+        assertEquals(1, opened.size());
+        assertEquals(2, pool.getBorrowCount());
+        assertEquals(1, pool.getIdleCount());
+        assertEquals(0, pool.getActiveCount());
+    }
+
+    @Test
+    void closingTwiceReturnsTheConnectionOnce() throws SQLException {
+        ConnectionPool pool = new ConnectionPool(URL, "user", "password", 0, 2, 1000, 60000, 0, false, 0);
+        shutdowns.add(pool::shutdown);
+        Connection first = pool.borrow();
+        first.close();
+        Connection second = pool.borrow();
+        first.close();
+        assertEquals(1, pool.getActiveCount());
+        assertThrows(SQLException.class, () -> first.setAutoCommit(true));
+        second.close();
+        assertEquals(0, pool.getActiveCount());
+    }
+
+    @Test
+    void invalidIdleConnectionIsReplacedOnBorrow() throws SQLException {
+        ConnectionPool pool = new ConnectionPool(URL, "user", "password", 0, 2, 1000, 60000, 0, false, 0);
+        shutdowns.add(pool::shutdown);
+        pool.borrow().close();
+        FakeConnection broken = opened.get(0);
+        broken.valid = false;
+
+        try (Connection conn = pool.borrow()) {
+            assertFalse(conn.isClosed());
+        }
+        assertEquals(2, opened.size());
+        assertTrue(broken.closed, "the connection that failed validation is closed");
+        assertNotSame(broken, opened.get(1));
+        assertEquals(1, pool.getTotalCount());
+        assertTrue(pool.getStats().contains("validationFailures=1"), pool.getStats());
+    }
+
+    @Test
+    void connectionHeldPastTheThresholdIsReportedOnce() throws Exception {
+        ConnectionPool pool = new ConnectionPool(URL, "user", "password", 0, 2, 1000, 60000, 50, false, 0);
+        shutdowns.add(pool::shutdown);
+        Connection held = pool.borrow();
+        try (Connection returned = pool.borrow()) {
+            assertFalse(returned.isClosed());
+        }
+
+        pool.housekeep();
+        assertEquals(0, pool.getLeakCount(), "not yet past the threshold");
+
+        Thread.sleep(100);
+        pool.housekeep();
+        assertEquals(1, pool.getLeakCount());
+        pool.housekeep();
+        assertEquals(1, pool.getLeakCount(), "a leak is reported once");
+
+        held.close();
+        assertEquals(0, pool.getActiveCount());
+    }
+
+    @Test
+    void leakIsReportedWithDiagnosticsOn() throws Exception {
+        ConnectionPool pool = new ConnectionPool(URL, "user", "password", 0, 1, 1000, 60000, 20, true, 0);
+        shutdowns.add(pool::shutdown);
+        Connection held = pool.borrow();
+        Thread.sleep(50);
+        pool.housekeep();
+        assertEquals(1, pool.getLeakCount());
+        held.close();
+    }
+
+    @Test
+    void leakDetectionCanBeTurnedOff() throws Exception {
+        ConnectionPool pool = new ConnectionPool(URL, "user", "password", 0, 1, 1000, 60000, 0, false, 0);
+        shutdowns.add(pool::shutdown);
+        Connection held = pool.borrow();
+        Thread.sleep(20);
+        pool.housekeep();
+        assertEquals(0, pool.getLeakCount());
+        held.close();
+    }
+
+    @Test
+    void shutDownPoolRefusesBorrows() throws SQLException {
+        ConnectionPool pool = new ConnectionPool(URL, "user", "password", 0, 1, 1000, 60000, 0, false, 0);
+        shutdowns.add(pool::shutdown);
+        Connection held = pool.borrow();
+        pool.shutdown();
+        assertThrows(SQLException.class, pool::borrow);
+        held.close();
+        assertTrue(opened.get(0).closed, "a connection returned after shutdown is closed");
+    }
+
+    /**
+     * The state behind one fake physical connection.
+     */
+    static final class FakeConnection {
+        volatile boolean valid = true;
+        volatile boolean closed = false;
+        volatile boolean autoCommit = true;
+    }
+
+    /**
+     * A driver for {@link #URL} whose connections answer just the calls the pool makes.
+     */
+    static final class FakeDriver implements Driver {
+        @Override
+        public Connection connect(String url, Properties info) {
+            if (!acceptsURL(url)) {
+                return null;
+            }
+            FakeConnection state = new FakeConnection();
+            opened.add(state);
+            return (Connection) Proxy.newProxyInstance(ConnectionPoolTest.class.getClassLoader(),
+                    new Class<?>[] { Connection.class }, (proxy, method, args) -> {
+                        switch (method.getName()) {
+                            case "isValid":
+                                return state.valid && !state.closed;
+                            case "isClosed":
+                                return state.closed;
+                            case "close":
+                                state.closed = true;
+                                return null;
+                            case "setAutoCommit":
+                                state.autoCommit = (Boolean) args[0];
+                                return null;
+                            case "getAutoCommit":
+                                return state.autoCommit;
+                            case "rollback":
+                            case "clearWarnings":
+                                return null;
+                            case "equals":
+                                return proxy == args[0];
+                            case "hashCode":
+                                return System.identityHashCode(proxy);
+                            case "toString":
+                                return "FakeConnection";
+                            default:
+                                throw new SQLException("Not supported by the fake driver: " + method.getName());
+                        }
+                    });
+        }
+
+        @Override
+        public boolean acceptsURL(String url) {
+            return url.startsWith("jdbc:hajjguide-test:");
+        }
+
+        @Override
+        public DriverPropertyInfo[] getPropertyInfo(String url, Properties info) {
+            return new DriverPropertyInfo[0];
+        }
+
+        @Override
+        public int getMajorVersion() {
+            return 1;
+        }
+
+        @Override
+        public int getMinorVersion() {
+            return 0;
+        }
+
+        @Override
+        public boolean jdbcCompliant() {
+            return false;
+        }
+
+        @Override
+        public Logger getParentLogger() {
+            return Logger.getGlobal();
+        }
+    }
+}
@@ -0,0 +1,56 @@
+package hajjguide;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests for the versioned updates of {@link InMemoryPilgrimRepository}.
+ */
+@SuppressWarnings("auxiliaryclass") // The classes under test share HajjGuideP.java
+class InMemoryPilgrimRepositoryTest {
+
+    @Test
+    void updateWithTheCurrentVersionBumpsIt() {
+        InMemoryPilgrimRepository pilgrims = new InMemoryPilgrimRepository();
+        pilgrims.createPilgrim(new Pilgrim(1, "Amina", "0500000001", "Saudi", "None", "None", 40));
+
+        UpdateResult<Pilgrim> result = pilgrims.updatePilgrim(
+                new Pilgrim(1, "Amina Hassan", "0500000001", "Saudi", "None", "None", 40), 0);
+        assertEquals(UpdateResult.Status.UPDATED, result.status());
+        assertEquals(1, result.current().version());
+        assertEquals(1, pilgrims.getVersionedPilgrim(1).version());
+    }
+
+    @Test
+    void updateWithAStaleVersionConflicts() {
+        InMemoryPilgrimRepository pilgrims = new InMemoryPilgrimRepository();
+        pilgrims.createPilgrim(new Pilgrim(1, "Amina", "0500000001", "Saudi", "None", "None", 40));
+        pilgrims.updatePilgrim(new Pilgrim(1, "Amina Hassan", "0500000001", "Saudi", "None", "None", 40), 0);
+
+        UpdateResult<Pilgrim> result = pilgrims.updatePilgrim(
+                new Pilgrim(1, "Amina", "0509999999", "Saudi", "None", "None", 40), 0);
+        assertEquals(UpdateResult.Status.CONFLICT, result.status());
+        assertEquals("Amina Hassan", result.current().value().pilgrimName());
+        assertEquals(1, result.current().version());
+    }
+
+    @Test
+    void recreatedPilgrimDoesNotRepeatVersions() {
+        InMemoryPilgrimRepository pilgrims = new InMemoryPilgrimRepository();
+        pilgrims.createPilgrim(new Pilgrim(1, "Amina", "0500000001", "Saudi", "None", "None", 40));
+        Versioned<Pilgrim> before = pilgrims.getVersionedPilgrim(1);
+
+        assertTrue(pilgrims.deletePilgrim(1));
+        assertNull(pilgrims.getVersionedPilgrim(1));
+        assertEquals(UpdateResult.Status.NOT_FOUND, pilgrims.updatePilgrim(before.value(), before.version()).status());
+
+        pilgrims.createPilgrim(new Pilgrim(1, "Yusuf", "0500000002", "Egyptian", "None", "None", 70));
+        assertTrue(pilgrims.getVersionedPilgrim(1).version() > before.version());
+        UpdateResult<Pilgrim> stale = pilgrims.updatePilgrim(before.value(), before.version());
+        assertEquals(UpdateResult.Status.CONFLICT, stale.status(), "a copy read before the delete cannot be saved");
+        assertEquals("Yusuf", pilgrims.getPilgrimById(1).pilgrimName());
+    }
+}
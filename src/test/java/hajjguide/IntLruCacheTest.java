@@ -0,0 +1,125 @@
+package hajjguide;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntFunction;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests for {@link IntLruCache}.
+ */
+@SuppressWarnings("auxiliaryclass") // The classes under test share HajjGuideP.java
+class IntLruCacheTest {
+    private final AtomicInteger loads = new AtomicInteger();
+    private final IntFunction<String> loader = key -> {
+        loads.incrementAndGet();
+        return "v" + key;
+    };
+
+    /**
+     * @return The first keys from {@code first} up that fall in the same segment, using the
+     *         cache's Fibonacci hash over its 16 segments
+     */
+    private static int[] keysInOneSegment(int first, int count) {
+        int segment = (first * 0x9E3779B9) >>> 28;
+        int[] keys = new int[count];
+        keys[0] = first;
+        for (int key = first + 1, found = 1; found < count; key++) {
+            if ((key * 0x9E3779B9) >>> 28 == segment) {
+                keys[found++] = key;
+            }
+        }
+        return keys;
+    }
+
+    @Test
+    void hitDoesNotCallTheLoader() {
+        IntLruCache<String> cache = new IntLruCache<>(32, 60000);
+        assertEquals("v7", cache.getOrLoad(7, loader));
+        assertEquals("v7", cache.getOrLoad(7, loader));
+        assertEquals(1, loads.get());
+        assertEquals(1, cache.getHitCount());
+        assertEquals(1, cache.getMissCount());
+    }
+
+    @Test
+    void fullSegmentEvictsItsLeastRecentlyUsedEntry() {
+        // 32 entries over 16 segments: two per segment
+        IntLruCache<String> cache = new IntLruCache<>(32, 60000);
+        int[] keys = keysInOneSegment(1, 3);
+        cache.getOrLoad(keys[0], loader);
+        cache.getOrLoad(keys[1], loader);
+        cache.getOrLoad(keys[0], loader);
+
+        // keys[0] was used last, so adding keys[2] drops keys[1]
+        cache.getOrLoad(keys[2], loader);
+        assertEquals(1, cache.getEvictionCount());
+        cache.getOrLoad(keys[0], loader);
+        assertEquals(3, loads.get(), "the recently used key stays cached");
+        cache.getOrLoad(keys[1], loader);
+        assertEquals(4, loads.get(), "the least recently used key is loaded again");
+    }
+
+    @Test
+    void sizeStaysWithinTheBound() {
+        IntLruCache<String> cache = new IntLruCache<>(32, 60000);
+        for (int key = 1; key <= 1000; key++) {
+            cache.getOrLoad(key, loader);
+        }
+        assertTrue(cache.size() <= 32, "size " + cache.size());
+        assertTrue(cache.getEvictionCount() >= 1000 - 32);
+    }
+
+    @Test
+    void invalidatedAndClearedKeysAreLoadedAgain() {
+        IntLruCache<String> cache = new IntLruCache<>(32, 60000);
+        cache.getOrLoad(5, loader);
+        cache.invalidate(5);
+        cache.getOrLoad(5, loader);
+        assertEquals(2, loads.get());
+        cache.clear();
+        assertEquals(0, cache.size());
+        cache.getOrLoad(5, loader);
+        assertEquals(3, loads.get());
+    }
+
+    @Test
+    void expiredEntryIsLoadedAgain() throws InterruptedException {
+        IntLruCache<String> cache = new IntLruCache<>(16, 1);
+        cache.getOrLoad(7, loader);
+        Thread.sleep(5);
+        cache.getOrLoad(7, loader);
+        assertEquals(2, loads.get());
+    }
+
+    @Test
+    void nullIsReturnedButNotCached() {
+        IntLruCache<String> cache = new IntLruCache<>(16, 60000);
+        assertNull(cache.getOrLoad(9, key -> {
+            loads.incrementAndGet();
+            return null;
+        }));
+        assertEquals("v9", cache.getOrLoad(9, loader));
+        assertEquals(2, loads.get());
+    }
+
+    @Test
+    void invalidationDuringALoadKeepsTheLoadedValueOutOfTheCache() {
+        IntLruCache<String> cache = new IntLruCache<>(16, 60000);
+        assertEquals("stale", cache.getOrLoad(3, key -> {
+            cache.invalidate(3);
+            return "stale";
+        }));
+        assertEquals("v3", cache.getOrLoad(3, loader));
+    }
+
+    @Test
+    void sizeMustBePositive() {
+        assertThrows(IllegalArgumentException.class, () -> new IntLruCache<String>(0, 1000));
+    }
+}
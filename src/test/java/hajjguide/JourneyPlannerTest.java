@@ -0,0 +1,95 @@
+package hajjguide;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests for {@link JourneyPlanner}. Schedule 4 leaves Mina before the least transfer time
+ * has passed after schedule 2 arrives, so it cannot be used to change there.
+ */
+@SuppressWarnings("auxiliaryclass") // The classes under test share HajjGuideP.java
+class JourneyPlannerTest {
+
+    @Test
+    void findsTheEarliestArrival() {
+        List<TransportSchedule> schedules = List.of(
+                new TransportSchedule(1, "08:00", "11:00", "Makkah - Arafat", "Bus", 1),
+                new TransportSchedule(2, "08:00", "08:30", "Makkah - Mina", "Train", 1),
+                new TransportSchedule(3, "08:45", "09:30", "Mina - Arafat", "Train", 1),
+                new TransportSchedule(4, "08:35", "09:00", "Mina - Arafat", "Bus", 1));
+        JourneyPlanner planner = new JourneyPlanner();
+
+        JourneyPlanner.Journey journey = planner.plan(schedules, "Makkah", "Arafat", JourneyPlanner.parseTime("07:00"));
+        assertNotNull(journey);
+        assertEquals(JourneyPlanner.parseTime("09:30"), journey.arrival(), "arrival changing at Mina");
+        assertEquals(1, journey.transfers());
+        assertEquals(2, journey.legs().get(0).scheduleID());
+        assertEquals(3, journey.legs().get(1).scheduleID());
+
+        // Every morning departure has left, so the best journey is the next day's
+        journey = planner.plan(schedules, "Makkah", "Arafat", JourneyPlanner.parseTime("08:10"));
+        assertNotNull(journey);
+        assertEquals(JourneyPlanner.SECONDS_PER_DAY + JourneyPlanner.parseTime("09:30"), journey.arrival());
+
+        journey = planner.plan(schedules, "Mina", "Arafat", JourneyPlanner.parseTime("08:30"));
+        assertEquals(JourneyPlanner.parseTime("09:00"), journey.arrival(), "a direct trip needs no transfer time");
+        assertEquals(0, journey.transfers());
+    }
+
+    @Test
+    void handlesUnknownAndSameStops() {
+        List<TransportSchedule> schedules = List.of(
+                new TransportSchedule(1, "08:00", "11:00", "Makkah - Arafat", "Bus", 1),
+                new TransportSchedule(2, "08:00", "08:30", "Makkah - Mina", "Train", 1),
+                new TransportSchedule(3, "08:45", "09:30", "Mina - Arafat", "Train", 1),
+                new TransportSchedule(4, "08:35", "09:00", "Mina - Arafat", "Bus", 1));
+        JourneyPlanner planner = new JourneyPlanner();
+
+        assertNull(planner.plan(schedules, "Makkah", "Jeddah", 0), "an unknown destination");
+        assertNull(planner.plan(schedules, "Arafat", "Makkah", 0), "an unreachable destination");
+        JourneyPlanner.Journey journey = planner.plan(schedules, "Mina", "Mina", 0);
+        assertNotNull(journey);
+        assertTrue(journey.legs().isEmpty());
+
+        planner.plan(schedules, "Makkah", "Arafat", 0);
+        assertTrue(planner.getStats().contains("builds=1 "), planner.getStats());
+    }
+
+    @Test
+    void concurrentQueriesDoNotShareWorkingArrays() throws Exception {
+        List<TransportSchedule> schedules = List.of(
+                new TransportSchedule(1, "08:00", "11:00", "Makkah - Arafat", "Bus", 1),
+                new TransportSchedule(2, "08:00", "08:30", "Makkah - Mina", "Train", 1),
+                new TransportSchedule(3, "08:45", "09:30", "Mina - Arafat", "Train", 1),
+                new TransportSchedule(4, "08:35", "09:00", "Mina - Arafat", "Bus", 1));
+        JourneyPlanner planner = new JourneyPlanner();
+        int viaMina = JourneyPlanner.parseTime("09:30");
+        int direct = JourneyPlanner.parseTime("09:00");
+
+        ExecutorService pool = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<Boolean>> results = new ArrayList<>();
+            for (int i = 0; i < 2000; i++) {
+                boolean fromMakkah = i % 2 == 0;
+                results.add(pool.submit(() -> fromMakkah
+                        ? planner.plan(schedules, "Makkah", "Arafat", JourneyPlanner.parseTime("07:00")).arrival() == viaMina
+                        : planner.plan(schedules, "Mina", "Arafat", JourneyPlanner.parseTime("08:30")).arrival() == direct));
+            }
+            for (Future<Boolean> result : results) {
+                assertTrue(result.get());
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+}
@@ -0,0 +1,155 @@
+package hajjguide;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests for {@link SeatInventory} and for how the in-memory backend hands cancelled seats
+ * to the waitlist.
+ */
+@SuppressWarnings("auxiliaryclass") // The classes under test share HajjGuideP.java
+class SeatInventoryTest {
+
+    @Test
+    void neverOversellsUnderContention() throws Exception {
+        PersistedSeats persisted = new PersistedSeats(1000);
+        SeatInventory inventory = new SeatInventory(persisted::take, persisted::give, 7);
+        AtomicInteger sold = new AtomicInteger();
+        onThreads(8, () -> {
+            try {
+                while (inventory.tryReserve(1)) {
+                    sold.incrementAndGet();
+                }
+            } catch (SQLException e) {
+                throw new IllegalStateException(e);
+            }
+        });
+        assertEquals(1000, sold.get());
+        assertEquals(0, persisted.unleased.get());
+        assertEquals(0, inventory.getLocalFree(1));
+        assertFalse(inventory.tryReserve(1), "a sold-out schedule refuses a booking");
+    }
+
+    @Test
+    void returnUnusedGivesBackEverySeatNotHeld() throws Exception {
+        PersistedSeats persisted = new PersistedSeats(500);
+        SeatInventory inventory = new SeatInventory(persisted::take, persisted::give, 20);
+        AtomicInteger held = new AtomicInteger();
+        onThreads(8, () -> {
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            try {
+                for (int i = 0; i < 20000; i++) {
+                    if (inventory.tryReserve(1)) {
+                        if (random.nextInt(4) == 0) {
+                            held.incrementAndGet();
+                        } else {
+                            inventory.release(1);
+                        }
+                    }
+                }
+            } catch (SQLException e) {
+                throw new IllegalStateException(e);
+            }
+        });
+        assertEquals(500, held.get() + inventory.getLocalFree(1) + persisted.unleased.get(),
+                "seats held, pooled and unleased add up to the capacity");
+        inventory.returnUnused();
+        assertEquals(0, inventory.getLocalFree(1));
+        assertEquals(500 - held.get(), persisted.unleased.get());
+    }
+
+    @Test
+    void cancelledSeatGoesToTheWaitlist() {
+        InMemoryPilgrimRepository pilgrims = new InMemoryPilgrimRepository();
+        pilgrims.createPilgrim(new Pilgrim(1, "Amina", "0500000001", "Saudi", "None", "None", 40));
+        pilgrims.createPilgrim(new Pilgrim(2, "Yusuf", "0500000002", "Egyptian", "None", "None", 70));
+        InMemoryTransportScheduleRepository schedules = new InMemoryTransportScheduleRepository(pilgrims);
+        schedules.createTransportSchedule(new TransportSchedule(1, "08:00", "09:00", "Mina - Arafat", "Bus", 1));
+
+        Ticket ticket = schedules.bookTicket(1, 1);
+        assertNotNull(ticket);
+        assertTrue(schedules.joinWaitlist(2, 1));
+        int pooled = schedules.getSeatInventory().getLocalFree(1);
+        assertTrue(schedules.cancelTicket(ticket.ticketNumber(), 1));
+        assertEquals(pooled, schedules.getSeatInventory().getLocalFree(1), "the seat is held for the waitlist");
+
+        schedules.getWaitlistPromoter().flush();
+        List<Ticket> promoted = schedules.getTicketsByPilgrim(2);
+        assertEquals(1, promoted.size());
+        assertTrue(promoted.get(0).isBooked());
+    }
+
+    @Test
+    void cancelledSeatGoesBackOnSaleWithNobodyWaiting() {
+        InMemoryPilgrimRepository pilgrims = new InMemoryPilgrimRepository();
+        pilgrims.createPilgrim(new Pilgrim(1, "Amina", "0500000001", "Saudi", "None", "None", 40));
+        InMemoryTransportScheduleRepository schedules = new InMemoryTransportScheduleRepository(pilgrims);
+        schedules.createTransportSchedule(new TransportSchedule(1, "08:00", "09:00", "Mina - Arafat", "Bus", 1));
+
+        Ticket ticket = schedules.bookTicket(1, 1);
+        int pooled = schedules.getSeatInventory().getLocalFree(1);
+        assertTrue(schedules.cancelTicket(ticket.ticketNumber(), 1));
+        assertEquals(pooled + 1, schedules.getSeatInventory().getLocalFree(1));
+        assertFalse(schedules.cancelTicket(ticket.ticketNumber(), 1), "a ticket is cancelled once");
+    }
+
+    /**
+     * Runs a task on several threads at once and waits for them all.
+     */
+    private static void onThreads(int threads, Runnable task) throws InterruptedException {
+        CountDownLatch start = new CountDownLatch(1);
+        List<Thread> workers = new ArrayList<>();
+        for (int i = 0; i < threads; i++) {
+            Thread worker = new Thread(() -> {
+                try {
+                    start.await();
+                    task.run();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            });
+            worker.start();
+            workers.add(worker);
+        }
+        start.countDown();
+        for (Thread worker : workers) {
+            worker.join();
+        }
+    }
+
+    /**
+     * A persisted seat count, standing in for the SeatInventory table.
+     */
+    private static final class PersistedSeats {
+        final AtomicInteger unleased;
+
+        PersistedSeats(int seats) {
+            unleased = new AtomicInteger(seats);
+        }
+
+        int take(int scheduleID, int max) {
+            while (true) {
+                int free = unleased.get();
+                int granted = Math.min(free, max);
+                if (unleased.compareAndSet(free, free - granted)) {
+                    return granted;
+                }
+            }
+        }
+
+        void give(int scheduleID, int count) {
+            unleased.addAndGet(count);
+        }
+    }
+}